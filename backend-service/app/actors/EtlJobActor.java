@@ -41,9 +41,7 @@ public class EtlJobActor extends UntypedActor {
     if (message instanceof EtlJobMessage) {
       EtlJobMessage msg = (EtlJobMessage) message;
       try {
-        Properties props = EtlJobPropertyDao.getJobProperties(msg.getEtlJobName(), msg.getRefId());
-        Properties whProps = EtlJobPropertyDao.getWherehowsProperties();
-        props.putAll(whProps);
+        Properties props = EtlJobPropertyDao.getLaunchProperties(msg.getEtlJobName(), msg.getRefId());
         EtlJobDao.startRun(msg.getWhEtlExecId(), "Job started!");
 
         // start a new process here
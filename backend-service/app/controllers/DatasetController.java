@@ -18,12 +18,12 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.sql.SQLException;
 import java.util.Map;
 import models.daos.DatasetDao;
-import models.utils.Urn;
 import org.springframework.dao.EmptyResultDataAccessException;
 import play.libs.Json;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
 import play.mvc.Result;
+import wherehows.common.DatasetUrn;
 
 
 /**
@@ -50,7 +50,7 @@ public class DatasetController extends Controller {
 
     String urn = request().getQueryString("urn");
     if(urn != null) {
-      if(!Urn.validateUrn(urn)) {
+      if(!DatasetUrn.isValid(urn)) {
         resultJson.put("return_code", 400);
         resultJson.put("error_message", "Urn format wrong!");
         return ok(resultJson);
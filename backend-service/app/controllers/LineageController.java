@@ -13,17 +13,24 @@
  */
 package controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import models.daos.LineageBatchInserter;
 import models.daos.LineageDao;
-import models.utils.Urn;
 import play.libs.Json;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
+import play.mvc.Http.RawBuffer;
 import play.mvc.Result;
+import wherehows.common.DatasetUrn;
 
 
 /**
@@ -31,7 +38,7 @@ import play.mvc.Result;
  */
 public class LineageController extends Controller {
   public static Result getJobsByDataset(String urn) throws SQLException {
-    if(!Urn.validateUrn(urn)){
+    if(!DatasetUrn.isValid(urn)){
       ObjectNode resultJson = Json.newObject();
       resultJson.put("return_code", 400);
       resultJson.put("error_message", "Urn format wrong!");
@@ -143,4 +150,50 @@ public class LineageController extends Controller {
 
     return ok(resultJson);
   }
+
+  /**
+   * Insert the lineage of many jobs, the body is a JSON array or one JSON object per line
+   */
+  @BodyParser.Of(value = BodyParser.Raw.class, maxLength = 64 * 1024 * 1024)
+  public static Result addJobLineages() {
+    ObjectNode resultJson = Json.newObject();
+    try {
+      RawBuffer raw = request().body().asRaw();
+      byte[] bytes = raw.asBytes();
+      List<JsonNode> lineages;
+      try (InputStream body = bytes != null ? new ByteArrayInputStream(bytes) : new FileInputStream(raw.asFile())) {
+        lineages = LineageBatchInserter.readLineages(body);
+      } catch (JsonProcessingException | IllegalArgumentException e) {
+        resultJson.put("return_code", 400);
+        resultJson.put("error_message", e.getMessage());
+        return ok(resultJson);
+      }
+
+      int failed = 0;
+      ArrayNode jobs = Json.newObject().arrayNode();
+      for (LineageBatchInserter.JobResult result : LineageDao.insertLineages(lineages)) {
+        ObjectNode job = Json.newObject();
+        job.put("index", result.getIndex());
+        job.put("job_name", result.getJobName());
+        job.put("job_exec_id", result.getJobExecId());
+        job.put("success", result.isSuccess());
+        if (result.isSuccess()) {
+          job.put("rows", result.getRows());
+        } else {
+          job.put("error_message", result.getError());
+          failed++;
+        }
+        jobs.add(job);
+      }
+      resultJson.put("return_code", 200);
+      resultJson.put("message", (lineages.size() - failed) + " of " + lineages.size() + " job lineages inserted");
+      resultJson.set("jobs", jobs);
+    } catch (Exception e) {
+      e.printStackTrace();
+      resultJson.put("return_code", 404);
+      resultJson.put("error_message", e.getMessage());
+    }
+
+    return ok(resultJson);
+  }
 }
@@ -14,8 +14,10 @@
 package models.daos;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import play.Play;
 import utils.JdbcUtil;
 import utils.JsonUtil;
+import wherehows.common.utils.CfgRegistry;
 
 import java.util.HashMap;
 import java.util.List;
@@ -23,16 +25,15 @@ import java.util.Map;
 
 
 /**
+ * The lookups read the cached registry, which is reloaded every cfg.refresh.interval seconds and right after a
+ * change made through this DAO.
  * Created by zechen on 10/21/15.
  */
 public class CfgDao {
 
-  public static final String FIND_APP_INFO_BY_NAME = "SELECT * FROM cfg_application where short_connection_string = :name";
-  public static final String FIND_DB_INFO_BY_NAME = "SELECT * from cfg_database where short_connection_string = :name";
-  public static final String FIND_APP_INFO_BY_ID = "SELECT * FROM cfg_application where app_id = :id";
-  public static final String FIND_DB_INFO_BY_ID = "SELECT * from cfg_database where db_id = :id";
-  public static final String GET_ALL_APPS = "SELECT * FROM cfg_application order by app_id";
-  public static final String GET_ALL_DBS = "SELECT * from cfg_database order by db_id";
+  public static final CfgRegistry REGISTRY = new CfgRegistry(JdbcUtil.dataSource,
+    Play.application().configuration().getLong("cfg.refresh.interval", 60L) * 1000);
+
   public static final String INSERT_NEW_APP = "INSERT INTO cfg_application (app_id, app_code, description, uri, short_connection_string, parent_app_id, app_status, is_logical) "
     + "VALUES (:appId, :appCode, :description, :uri, :shortConnectionString, :parentAppId, :appStatus, :isLogical)";
   public static final String UPDATE_APP = "UPDATE cfg_application SET app_code = :appCode, description = :description, uri = :uri, short_connection_string = :shortConnectionString, " +
@@ -44,35 +45,42 @@ public class CfgDao {
 
 
   public static Map<String, Object> getAppByName(String name) throws Exception {
-    Map<String, Object> params = new HashMap<>();
-    params.put("name", name);
-    return JdbcUtil.wherehowsNamedJdbcTemplate.queryForMap(FIND_APP_INFO_BY_NAME, params);
+    return REGISTRY.getAppByName(name);
   }
 
   public static Map<String, Object> getDbByName(String name) throws Exception {
-    Map<String, Object> params = new HashMap<>();
-    params.put("name", name);
-    return JdbcUtil.wherehowsNamedJdbcTemplate.queryForMap(FIND_DB_INFO_BY_NAME, params);
+    return REGISTRY.getDbByName(name);
   }
 
   public static Map<String, Object> getAppById(int id) throws Exception {
-    Map<String, Object> params = new HashMap<>();
-    params.put("id", id);
-    return JdbcUtil.wherehowsNamedJdbcTemplate.queryForMap(FIND_APP_INFO_BY_ID, params);
+    return REGISTRY.getAppById(id);
   }
 
   public static Map<String, Object> getDbById(int id) throws Exception {
-    Map<String, Object> params = new HashMap<>();
-    params.put("id", id);
-    return JdbcUtil.wherehowsNamedJdbcTemplate.queryForMap(FIND_DB_INFO_BY_ID, params);
+    return REGISTRY.getDbById(id);
   }
 
   public static List<Map<String, Object>> getAllApps() throws Exception {
-    return JdbcUtil.wherehowsJdbcTemplate.queryForList(GET_ALL_APPS);
+    return REGISTRY.getAllApps();
   }
 
   public static List<Map<String, Object>> getAllDbs() throws Exception {
-    return JdbcUtil.wherehowsJdbcTemplate.queryForList(GET_ALL_DBS);
+    return REGISTRY.getAllDbs();
+  }
+
+  /**
+   * Ids of the applications whose short connection string is like the instance, all of them if it is empty.
+   * Used instead of joining cfg_application in the queries.
+   */
+  public static List<Integer> getAppIdsByInstance(String instance) {
+    return REGISTRY.getAppIdsLike(instance == null || instance.isEmpty() ? "%" : instance);
+  }
+
+  /**
+   * Ids of the databases whose short connection string is like the cluster, all of them if it is empty
+   */
+  public static List<Integer> getDbIdsByCluster(String cluster) {
+    return REGISTRY.getDbIdsLike(cluster == null || cluster.isEmpty() ? "%" : cluster);
   }
 
   public static void insertApp(JsonNode app) throws Exception {
@@ -99,6 +107,7 @@ public class CfgDao {
     } else {
       JdbcUtil.wherehowsNamedJdbcTemplate.update(UPDATE_APP, params);
     }
+    REGISTRY.refresh();
   }
 
 
@@ -129,5 +138,6 @@ public class CfgDao {
     } else {
       JdbcUtil.wherehowsNamedJdbcTemplate.update(UPDATE_DB, params);
     }
+    REGISTRY.refresh();
   }
 }
@@ -63,7 +63,7 @@ public class DatasetDao {
 
     // Find layout id
     if (record.getSamplePartitionFullPath() != null) {
-      PartitionPatternMatcher ppm = new PartitionPatternMatcher(PartitionLayoutDao.getPartitionLayouts());
+      PartitionPatternMatcher ppm = PartitionLayoutDao.getPartitionPatternMatcher();
       record.setPartitionLayoutPatternId(ppm.analyze(record.getSamplePartitionFullPath()));
     }
 
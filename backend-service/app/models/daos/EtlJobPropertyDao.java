@@ -15,19 +15,19 @@ package models.daos;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import metadata.etl.models.EtlJobName;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.support.KeyHolder;
-import play.Logger;
+import play.Play;
 import utils.JdbcUtil;
 import utils.JsonUtil;
-import utils.PasswordManager;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 
 /**
+ * The reads go through the cached {@link EtlPropertyStore}, which is invalidated by every change made here.
  * Created by zechen on 9/24/15.
  */
 public class EtlJobPropertyDao {
@@ -44,18 +44,11 @@ public class EtlJobPropertyDao {
           + "VALUES(:etlJobName, :refId, :refIdType, :propertyName, :propertyValue, :isEncrypted)"
         + "ON DUPLICATE KEY UPDATE property_value = :propertyValue, is_encrypted = :isEncrypted";
 
-  public static final String GET_JOB_PROPERTIES =
-    "SELECT * FROM wh_etl_job_property WHERE wh_etl_job_name = :etlJobName and ref_id = :refId";
-
-  public static final String GET_JOB_PROPERTY =
-    "SELECT * FROM wh_etl_job_property WHERE wh_etl_job_name = :etlJobName and ref_id = :refId and property_name = :propertyName";
-
-  public static final String GET_WHEREHOWS_PROPERTIES = "SELECT * FROM wh_property";
-
-  public static final String GET_WHEREHOWS_PROPERTY = "SELECT * FROM wh_property WHERE property_name = :propertyName";
-
   public static final String DEFAULT_MASTER_KEY_LOC = System.getProperty("user.home") + "/.wherehows/master_key";
 
+  public static final EtlPropertyStore STORE = new EtlPropertyStore(JdbcUtil.dataSource,
+    Play.application().configuration().getLong("etl.property.refresh.interval", 300L) * 1000, DEFAULT_MASTER_KEY_LOC);
+
   public static int insertJobProperty(EtlJobName etlJobName, Integer refId, String propertyName, String propertyValue,
     boolean isEncrypted)
     throws Exception {
@@ -72,6 +65,7 @@ public class EtlJobPropertyDao {
       params.put("isEncrypted", "N");
     }
     KeyHolder kh = JdbcUtil.insertRow(INSERT_JOB_PROPERTY, params);
+    STORE.invalidate();
     return kh.getKey().intValue();
   }
 
@@ -90,6 +84,7 @@ public class EtlJobPropertyDao {
     }
     params.put("groupName", groupName);
     KeyHolder kh = JdbcUtil.insertRow(INSERT_WHEREHOWS_PROPERTY, params);
+    STORE.invalidate();
     return kh.getKey().intValue();
   }
 
@@ -120,85 +115,61 @@ public class EtlJobPropertyDao {
       params.put("isEncrypted", "N");
     }
     JdbcUtil.wherehowsNamedJdbcTemplate.update(UPDATE_JOB_PROPERTY, params);
+    STORE.invalidate();
   }
 
+  /**
+   * @return the cached, read only properties of the job
+   */
   public static Properties getJobProperties(EtlJobName etlJobName, Integer refId)
     throws Exception {
-    Map<String, Object> params = new HashMap<>();
-    params.put("etlJobName", etlJobName.toString());
-    params.put("refId", refId);
-    List<Map<String, Object>> rows = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_JOB_PROPERTIES, params);
-    Properties ret = new Properties();
-    for (Map<String, Object> row : rows) {
-      if ((row.get("is_encrypted")).equals("N")) {
-        ret.put(row.get("property_name"), row.get("property_value"));
-      } else {
-        ret.put(row.get("property_name"), decrypt((String) row.get("property_value")));
-      }
-    }
-    return ret;
+    return STORE.getJobProperties(etlJobName, refId);
   }
 
   public static String getJobProperty(EtlJobName etlJobName, Integer refId, String propertyName)
     throws Exception {
-    Map<String, Object> params = new HashMap<>();
-    params.put("etlJobName", etlJobName.toString());
-    params.put("refId", refId);
-    params.put("propertyName", propertyName);
-    Map<String, Object> row = JdbcUtil.wherehowsNamedJdbcTemplate.queryForMap(GET_JOB_PROPERTY, params);
-    if ((row.get("is_encrypted")).equals("N")) {
-      return (String) row.get("property_value");
-    } else {
-      return decrypt((String) row.get("property_value"));
-    }
+    return found(STORE.getJobProperties(etlJobName, refId), propertyName);
   }
 
+  /**
+   * @return the cached, read only wherehows properties
+   */
   public static Properties getWherehowsProperties()
     throws Exception {
-    List<Map<String, Object>> rows = JdbcUtil.wherehowsJdbcTemplate.queryForList(GET_WHEREHOWS_PROPERTIES);
-    Properties ret = new Properties();
-    for (Map<String, Object> row : rows) {
-      if ((row.get("is_encrypted")).equals("N")) {
-        ret.put(row.get("property_name"), row.get("property_value"));
-      } else {
-        ret.put(row.get("property_name"), decrypt((String) row.get("property_value")));
-      }
-    }
-    return ret;
+    return STORE.getWherehowsProperties();
   }
 
   public static String getWherehowsProperty(String propertyName)
     throws Exception {
-    Map<String, Object> params = new HashMap<>();
-    params.put("propertyName", propertyName);
-    Map<String, Object> row = JdbcUtil.wherehowsNamedJdbcTemplate.queryForMap(GET_WHEREHOWS_PROPERTY, params);
-    if ((row.get("is_encrypted")).equals("N")) {
-      return (String) row.get("property_value");
-    } else {
-      return decrypt((String) row.get("property_value"));
-    }
+    return found(STORE.getWherehowsProperties(), propertyName);
   }
 
-  public static String encrypt(String value)
+  /**
+   * @return the read only properties to launch a job with, the job properties overridden by the wherehows properties
+   */
+  public static Properties getLaunchProperties(EtlJobName etlJobName, Integer refId)
     throws Exception {
-    String masterKeyLoc = getMasterKeyLoc();
-    return PasswordManager.encryptPassword(value, masterKeyLoc);
+    return STORE.getLaunchProperties(etlJobName, refId);
   }
 
-  public static String decrypt(String value)
+  /**
+   * @throws EmptyResultDataAccessException if there is no such property, like queryForMap
+   */
+  private static String found(Properties properties, String propertyName) {
+    String value = properties.getProperty(propertyName);
+    if (value == null) {
+      throw new EmptyResultDataAccessException("No property " + propertyName, 1);
+    }
+    return value;
+  }
+
+  public static String encrypt(String value)
     throws Exception {
-    String masterKeyLoc = getMasterKeyLoc();
-    return PasswordManager.decryptPassword(value, masterKeyLoc);
+    return STORE.encrypt(value);
   }
 
-  private static String getMasterKeyLoc()
+  public static String decrypt(String value)
     throws Exception {
-    try {
-      return getWherehowsProperty("wherehows.encrypt.master.key.loc");
-    } catch (Exception e) {
-      e.printStackTrace();
-      Logger.warn("master key location is not found, using default location: {}", DEFAULT_MASTER_KEY_LOC);
-    }
-    return DEFAULT_MASTER_KEY_LOC;
+    return STORE.decrypt(value);
   }
 }
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package models.daos;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import metadata.etl.models.EtlJobName;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import play.Logger;
+import utils.ImmutableProperties;
+import utils.PasswordManager;
+
+
+/**
+ * Decrypted wh_property and wh_etl_job_property, cached for the ETL job launches.
+ * <p>
+ * The properties are loaded and decrypted once, and kept as read only snapshots tagged with the version of the store
+ * they were loaded at. {@link #invalidate()} bumps the version, so every snapshot is reloaded on its next use; it is
+ * called whenever a property is changed through the DAO. A snapshot is also reloaded after the refresh interval, for
+ * the properties changed directly in the database.
+ */
+public class EtlPropertyStore {
+  public static final String GET_JOB_PROPERTIES =
+    "SELECT property_name, property_value, is_encrypted FROM wh_etl_job_property "
+      + "WHERE wh_etl_job_name = :etlJobName and ref_id = :refId";
+
+  public static final String GET_WHEREHOWS_PROPERTIES =
+    "SELECT property_name, property_value, is_encrypted FROM wh_property";
+
+  public static final String MASTER_KEY_LOC_KEY = "wherehows.encrypt.master.key.loc";
+
+  /**
+   * Properties and the version of the store they were loaded at.
+   */
+  static class Snapshot {
+    final long version;
+    final long loadedTime;
+    final ImmutableProperties properties;
+
+    Snapshot(long version, ImmutableProperties properties) {
+      this.version = version;
+      this.loadedTime = System.currentTimeMillis();
+      this.properties = properties;
+    }
+  }
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final long refreshIntervalMs;
+  private final String defaultMasterKeyLoc;
+
+  private final AtomicLong version = new AtomicLong();
+  private volatile Snapshot wherehowsProperties;
+  private final ConcurrentMap<String, Snapshot> jobProperties = new ConcurrentHashMap<>();
+
+  public EtlPropertyStore(DataSource dataSource, long refreshIntervalMs, String defaultMasterKeyLoc) {
+    this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    this.refreshIntervalMs = refreshIntervalMs;
+    this.defaultMasterKeyLoc = defaultMasterKeyLoc;
+  }
+
+  /**
+   * Make all the snapshots stale. The master keys stay cached by location, a changed location is read on first use.
+   */
+  public void invalidate() {
+    version.incrementAndGet();
+  }
+
+  public long getVersion() {
+    return version.get();
+  }
+
+  private boolean isCurrent(Snapshot snapshot) {
+    return snapshot != null && snapshot.version == version.get()
+      && System.currentTimeMillis() - snapshot.loadedTime <= refreshIntervalMs;
+  }
+
+  public Properties getWherehowsProperties() {
+    Snapshot snapshot = wherehowsProperties;
+    if (isCurrent(snapshot)) {
+      return snapshot.properties;
+    }
+    // read the version before the rows, a change made during the load makes this snapshot stale at once
+    long loadVersion = version.get();
+    List<Map<String, Object>> rows =
+      jdbcTemplate.queryForList(GET_WHEREHOWS_PROPERTIES, new HashMap<String, Object>());
+    // the master key location itself is not encrypted
+    String masterKeyLoc = defaultMasterKeyLoc;
+    for (Map<String, Object> row : rows) {
+      if (MASTER_KEY_LOC_KEY.equals(row.get("property_name")) && "N".equals(row.get("is_encrypted"))) {
+        masterKeyLoc = (String) row.get("property_value");
+      }
+    }
+    snapshot = new Snapshot(loadVersion, decrypt(rows, masterKeyLoc));
+    wherehowsProperties = snapshot;
+    return snapshot.properties;
+  }
+
+  public Properties getJobProperties(EtlJobName etlJobName, Integer refId) {
+    String key = etlJobName + ":" + refId;
+    Snapshot snapshot = jobProperties.get(key);
+    if (isCurrent(snapshot)) {
+      return snapshot.properties;
+    }
+    long loadVersion = version.get();
+    String masterKeyLoc = getMasterKeyLoc();
+    Map<String, Object> params = new HashMap<>();
+    params.put("etlJobName", etlJobName.toString());
+    params.put("refId", refId);
+    snapshot = new Snapshot(loadVersion, decrypt(jdbcTemplate.queryForList(GET_JOB_PROPERTIES, params), masterKeyLoc));
+    jobProperties.put(key, snapshot);
+    return snapshot.properties;
+  }
+
+  /**
+   * The properties to launch a job with: the job properties overridden by the wherehows properties
+   */
+  public Properties getLaunchProperties(EtlJobName etlJobName, Integer refId) {
+    Map<Object, Object> merged = new HashMap<>(getJobProperties(etlJobName, refId));
+    merged.putAll(getWherehowsProperties());
+    return new ImmutableProperties(merged);
+  }
+
+  public String getMasterKeyLoc() {
+    String masterKeyLoc = getWherehowsProperties().getProperty(MASTER_KEY_LOC_KEY);
+    if (masterKeyLoc == null) {
+      Logger.warn("master key location is not found, using default location: {}", defaultMasterKeyLoc);
+      return defaultMasterKeyLoc;
+    }
+    return masterKeyLoc;
+  }
+
+  public String encrypt(String value) {
+    return PasswordManager.encryptPassword(value, getMasterKeyLoc());
+  }
+
+  public String decrypt(String value) {
+    return PasswordManager.decryptPassword(value, getMasterKeyLoc());
+  }
+
+  private static ImmutableProperties decrypt(List<Map<String, Object>> rows, String masterKeyLoc) {
+    Map<Object, Object> values = new HashMap<>();
+    for (Map<String, Object> row : rows) {
+      Object value = row.get("property_value");
+      if (value == null) {
+        continue;
+      }
+      if ("N".equals(row.get("is_encrypted"))) {
+        values.put(row.get("property_name"), value);
+      } else {
+        values.put(row.get("property_name"), PasswordManager.decryptPassword((String) value, masterKeyLoc));
+      }
+    }
+    return new ImmutableProperties(values);
+  }
+}
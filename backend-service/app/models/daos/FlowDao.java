@@ -13,7 +13,9 @@
  */
 package models.daos;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import utils.JdbcUtil;
@@ -25,43 +27,49 @@ import utils.JdbcUtil;
 public class FlowDao {
 
   public static final String FIND_FLOW_OWNERS =
-    " SELECT DISTINCT ca.short_connection_string as instance, fop.owner_id, fop.permissions, fop.owner_type FROM flow_owner_permission fop "
+    " SELECT DISTINCT fop.app_id, fop.owner_id, fop.permissions, fop.owner_type FROM flow_owner_permission fop "
       + " JOIN flow f ON fop.flow_id = f.flow_id and fop.app_id = f.app_id "
-      + " JOIN cfg_application ca ON fop.app_id = ca.app_id "
       + " WHERE f.flow_path = :flow_path "
-      + " AND ca.short_connection_string LIKE :instance ";
+      + " AND fop.app_id IN (:app_ids) ";
 
   public static final String FIND_FLOW_SCHEDULES =
-    " SELECT DISTINCT ca.short_connection_string as instance, fs.frequency, fs.unit, fs.effective_start_time, fs.effective_end_time FROM flow_schedule fs "
+    " SELECT DISTINCT fs.app_id, fs.frequency, fs.unit, fs.effective_start_time, fs.effective_end_time FROM flow_schedule fs "
       + " JOIN flow f ON fs.flow_id = f.flow_id and fs.app_id = f.app_id "
-      + " JOIN cfg_application ca ON fs.app_id = ca.app_id "
       + " WHERE f.flow_path = :flow_path "
-      + " AND ca.short_connection_string LIKE :instance "
+      + " AND fs.app_id IN (:app_ids) "
       + " AND fs.is_active = 'Y'";
 
   public static List<Map<String, Object>> getFlowOwner(String flowPath, String instance) {
-    Map<String, Object> params = new HashMap<>();
-    params.put("flow_path", flowPath);
-    if (instance == null || instance.isEmpty()) {
-      params.put("instance", "%");
-    } else {
-      params.put("instance", instance);
-    }
-    List<Map<String, Object>> owners = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(FIND_FLOW_OWNERS, params);
-
-    return owners;
+    return findByFlowPath(FIND_FLOW_OWNERS, flowPath, instance);
   }
 
   public static List<Map<String, Object>> getFlowSchedules(String flowPath, String instance) {
+    return findByFlowPath(FIND_FLOW_SCHEDULES, flowPath, instance);
+  }
+
+  /**
+   * Run the query on the applications matching the instance, and replace the app_id of the rows by the instance
+   */
+  private static List<Map<String, Object>> findByFlowPath(String query, String flowPath, String instance) {
+    List<Map<String, Object>> results = new ArrayList<>();
+    List<Integer> appIds = CfgDao.getAppIdsByInstance(instance);
+    if (appIds.isEmpty()) {
+      return results;
+    }
     Map<String, Object> params = new HashMap<>();
     params.put("flow_path", flowPath);
-    if (instance == null || instance.isEmpty()) {
-      params.put("instance", "%");
-    } else {
-      params.put("instance", instance);
+    params.put("app_ids", appIds);
+    for (Map<String, Object> row : JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(query, params)) {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("instance", CfgDao.REGISTRY.findAppShortConnectionString(((Number) row.get("app_id")).intValue()));
+      for (Map.Entry<String, Object> e : row.entrySet()) {
+        if (!e.getKey().equalsIgnoreCase("app_id")) {
+          result.put(e.getKey(), e.getValue());
+        }
+      }
+      results.add(result);
     }
-    List<Map<String, Object>> schedules = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(FIND_FLOW_SCHEDULES, params);
-    return schedules;
+    return results;
   }
 
 }
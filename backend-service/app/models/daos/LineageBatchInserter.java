@@ -0,0 +1,335 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package models.daos;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import play.Logger;
+import wherehows.common.schemas.LineageRecord;
+import wherehows.common.utils.CfgRegistry;
+import wherehows.common.utils.PartitionPatternMatcher;
+
+
+/**
+ * Insert the lineage of many jobs in one go.
+ * <p>
+ * Application and database names are resolved to ids through the cfg registry, and the layout ids through the
+ * shared partition pattern matcher. The rows of all the jobs are written with batched inserts in one transaction. If the
+ * transaction fails, each job is retried in its own transaction so that one bad job does not fail the others, and
+ * the result of every job is reported.
+ */
+public class LineageBatchInserter {
+  public static final String INSERT_LINEAGE = "INSERT INTO job_execution_data_lineage (app_id, flow_exec_id, "
+    + " job_exec_id, job_exec_uuid, job_name, job_start_unixtime, job_finished_unixtime, db_id, abstracted_object_name, "
+    + " full_object_name, partition_start, partition_end, partition_type, layout_id, storage_type, source_target_type, "
+    + " srl_no, source_srl_no, operation, record_count, insert_count, delete_count, update_count, flow_path, "
+    + " created_date, wh_etl_exec_id) "
+    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  static final int BATCH_SIZE = 1000;
+
+  /**
+   * Outcome of the lineage of one job.
+   */
+  public static class JobResult {
+    private final int index;
+    private final String jobName;
+    private final Long jobExecId;
+    private boolean success;
+    private int rows;
+    private String error;
+    private Collection<LineageRecord> records;
+
+    JobResult(int index, String jobName, Long jobExecId) {
+      this.index = index;
+      this.jobName = jobName;
+      this.jobExecId = jobExecId;
+    }
+
+    void fail(Exception e) {
+      this.success = false;
+      this.error = e.getMessage();
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public String getJobName() {
+      return jobName;
+    }
+
+    public Long getJobExecId() {
+      return jobExecId;
+    }
+
+    public boolean isSuccess() {
+      return success;
+    }
+
+    public int getRows() {
+      return rows;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final CfgRegistry registry;
+  private final Supplier<PartitionPatternMatcher> matcherSupplier;
+
+  public LineageBatchInserter(DataSource dataSource, CfgRegistry registry,
+    Supplier<PartitionPatternMatcher> matcherSupplier) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    this.registry = registry;
+    this.matcherSupplier = matcherSupplier;
+  }
+
+  /**
+   * Read the job lineages of a request body, either a JSON array or one JSON object per line.
+   * @param body
+   * @return the job lineages in order
+   * @throws IOException if the body is not valid JSON
+   * @throws IllegalArgumentException if a job lineage is not a JSON object
+   */
+  public static List<JsonNode> readLineages(InputStream body)
+    throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    List<JsonNode> lineages = new ArrayList<>();
+    try (JsonParser parser = mapper.getFactory().createParser(body)) {
+      JsonToken token = parser.nextToken();
+      if (token == null) {
+        return lineages;
+      }
+      if (token == JsonToken.START_ARRAY) {
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+          lineages.add(readLineage(mapper, parser, lineages.size()));
+        }
+      } else {
+        // root level values separated by new lines
+        do {
+          lineages.add(readLineage(mapper, parser, lineages.size()));
+        } while (parser.nextToken() != null);
+      }
+    }
+    return lineages;
+  }
+
+  private static JsonNode readLineage(ObjectMapper mapper, JsonParser parser, int index)
+    throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      throw new IllegalArgumentException("Job lineage " + index + " is not a JSON object: " + parser.getText());
+    }
+    return (JsonNode) mapper.readTree(parser);
+  }
+
+  /**
+   * Insert the lineage of the jobs
+   * @param lineages job lineages, in the format of POST /lineage
+   * @return the result of each job, in the order of the input
+   */
+  public List<JobResult> insert(List<JsonNode> lineages) {
+    List<JobResult> results = new ArrayList<>(lineages.size());
+    List<JobResult> parsed = new ArrayList<>(lineages.size());
+    PartitionPatternMatcher matcher = null;
+    for (JsonNode lineage : lineages) {
+      JobResult result = new JobResult(results.size(), lineage.findPath("job_name").asText(),
+        lineage.findPath("job_exec_id").asLong());
+      results.add(result);
+      try {
+        if (matcher == null) {
+          matcher = matcherSupplier.get();
+        }
+        result.records = toRecords(lineage, matcher);
+        parsed.add(result);
+      } catch (Exception e) {
+        result.fail(e);
+      }
+    }
+
+    try {
+      write(parsed);
+    } catch (DataAccessException e) {
+      Logger.warn("Batch of " + parsed.size() + " job lineages failed, retrying each job alone: " + e.getMessage());
+      for (JobResult result : parsed) {
+        try {
+          write(Collections.singletonList(result));
+        } catch (DataAccessException je) {
+          result.fail(je);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Write the records of the jobs in one transaction, and mark them successful once committed
+   */
+  private void write(final List<JobResult> jobs) {
+    if (jobs.isEmpty()) {
+      return;
+    }
+    transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+      @Override
+      protected void doInTransactionWithoutResult(TransactionStatus status) {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (JobResult job : jobs) {
+          for (LineageRecord record : job.records) {
+            batch.add(record.fillAllFields().toArray());
+            if (batch.size() == BATCH_SIZE) {
+              jdbcTemplate.batchUpdate(INSERT_LINEAGE, batch);
+              batch.clear();
+            }
+          }
+        }
+        if (batch.size() > 0) {
+          jdbcTemplate.batchUpdate(INSERT_LINEAGE, batch);
+        }
+      }
+    });
+    for (JobResult job : jobs) {
+      job.success = true;
+      job.error = null;
+      job.rows = job.records.size();
+    }
+  }
+
+  /**
+   * Convert the lineage of one job to records, ordered and numbered by their key
+   * @param lineage
+   * @param matcher to find the layout of the nodes without layout id
+   * @return the records of the job
+   * @throws IllegalArgumentException if an application or database name is unknown
+   */
+  Collection<LineageRecord> toRecords(JsonNode lineage, PartitionPatternMatcher matcher) {
+    TreeMap<String, LineageRecord> records = new TreeMap<>();
+    Map<String, String> refSourceMap = new HashMap<>();
+    Integer appId = lineage.findPath("app_id").asInt();
+    String appName = lineage.findPath("app_name").asText();
+    // Set application id if app id is not set or equals to 0
+    if (appId == 0) {
+      appId = registry.findAppId(appName);
+      if (appId == null) {
+        throw new IllegalArgumentException("Unknown application " + appName);
+      }
+    }
+
+    Long flowExecId = lineage.findPath("flow_exec_id").asLong();
+    Long jobExecId = lineage.findPath("job_exec_id").asLong();
+    String jobExecUuid = lineage.findPath("job_exec_uuid").asText();
+    String jobName = lineage.findPath("job_name").asText();
+    Integer jobStartTime = lineage.findPath("job_start_unixtime").asInt();
+    Integer jobEndTime = lineage.findPath("job_end_unixtime").asInt();
+    String flowPath = lineage.findPath("flow_path").asText();
+
+    JsonNode nodes = lineage.findPath("lineages");
+    if (nodes.isArray()) {
+      for (JsonNode node : nodes) {
+        Integer databaseId = node.findPath("db_id").asInt();
+        String databaseName = node.findPath("database_name").asText();
+        // Set database id if db id is not set or equals to 0
+        if (databaseId == 0) {
+          databaseId = registry.findDbId(databaseName);
+          if (databaseId == null) {
+            throw new IllegalArgumentException("Unknown database " + databaseName);
+          }
+        }
+
+        String abstractedObjectName = node.findPath("abstracted_object_name").asText();
+        String fullObjectName = node.findPath("full_object_name").asText();
+        String storageType = node.findPath("storage_type").asText();
+        String partitionStart = node.findPath("partition_start").asText();
+        String partitionEnd = node.findPath("partition_end").asText();
+        String partitionType = node.findPath("partition_type").asText();
+        Integer layoutId = node.findPath("layout_id").asInt();
+        // Get layout id if layout id is not set or equals to 0
+        if (layoutId == 0) {
+          layoutId = matcher.analyze(fullObjectName);
+        }
+
+        String sourceTargetType = node.findPath("source_target_type").textValue();
+        String operation = node.findPath("operation").textValue();
+        Long recordCount = node.findPath("record_count").longValue();
+        Long insertCount = node.findPath("insert_count").longValue();
+        Long deleteCount = node.findPath("delete_count").longValue();
+        Long updateCount = node.findPath("update_count").longValue();
+
+        LineageRecord record = new LineageRecord(appId, flowExecId, jobName, jobExecId);
+        record.setJobExecUUID(jobExecUuid);
+        record.setJobStartTime(jobStartTime);
+        record.setJobEndTime(jobEndTime);
+        record.setFlowPath(flowPath);
+        record.setDatabaseId(databaseId);
+        record.setAbstractObjectName(abstractedObjectName);
+        record.setFullObjectName(fullObjectName);
+        record.setStorageType(storageType);
+        record.setPartitionStart(partitionStart);
+        record.setPartitionEnd(partitionEnd);
+        record.setPartitionType(partitionType);
+        record.setLayoutId(layoutId);
+        record.setSourceTargetType(sourceTargetType);
+        record.setOperation(operation);
+        record.setRecordCount(recordCount);
+        record.setInsertCount(insertCount);
+        record.setDeleteCount(deleteCount);
+        record.setUpdateCount(updateCount);
+        records.put(record.getLineageRecordKey(), record);
+
+        JsonNode sourceName = node.findPath("ref_source_object_name");
+        JsonNode sourceDb = node.findPath("ref_source_db_id");
+        if ("target".equals(sourceTargetType) &&
+          !sourceName.isMissingNode() && !sourceDb.isMissingNode()) {
+          refSourceMap.put(record.getLineageRecordKey(), "source-" + sourceDb.intValue() + "-" + sourceName.textValue());
+        }
+      }
+
+      int srlNo = 0;
+      for (LineageRecord r : records.values()) {
+        r.setSrlNo(srlNo++);
+      }
+
+      for (String target : refSourceMap.keySet()) {
+        String sourceKey = refSourceMap.get(target);
+        if (records.containsKey(sourceKey)) {
+          LineageRecord r = records.get(target);
+          r.setRelatedSrlNo(records.get(sourceKey).getSrlNo());
+        }
+      }
+    }
+    return records.values();
+  }
+}
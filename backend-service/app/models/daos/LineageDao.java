@@ -14,17 +14,17 @@
 package models.daos;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import models.utils.Urn;
+import java.util.function.Supplier;
 import utils.JdbcUtil;
-import wherehows.common.schemas.LineageRecord;
+import wherehows.common.DatasetUrn;
 import wherehows.common.utils.PartitionPatternMatcher;
-import wherehows.common.writers.DatabaseWriter;
 
 
 /**
@@ -34,15 +34,13 @@ import wherehows.common.writers.DatabaseWriter;
  */
 public class LineageDao {
   public static final String FIND_JOBS_BY_DATASET =
-    " select distinct ca.short_connection_string, jedl.job_name, jedl.flow_path "
+    " select distinct jedl.app_id, jedl.job_name, jedl.flow_path "
     + " from job_execution_data_lineage jedl "
-    + " join cfg_application ca on ca.app_id = jedl.app_id "
-    + " join cfg_database cd on cd.db_id = jedl.db_id "
     + " where source_target_type = :source_target_type "
     + " and jedl.abstracted_object_name = :abstracted_object_name "
     + " and jedl.job_finished_unixtime > UNIX_TIMESTAMP(subdate(current_date, :period)) "
-    + " and ca.short_connection_string like :instance "
-    + " and cd.short_connection_string like :cluster ";
+    + " and jedl.app_id in (:app_ids) "
+    + " and jedl.db_id in (:db_ids) ";
 
   public static final String FIND_DATASETS_BY_JOB =
     " select distinct jedl.abstracted_object_name, jedl.db_id, jedl.partition_start, jedl.partition_end, "
@@ -53,51 +51,51 @@ public class LineageDao {
       + " and jedl.flow_path = :flow_path "
       + " group by app_id) a "
       + " on jedl.app_id = a.app_id and jedl.job_exec_id = a.job_exec_id "
-      + " join cfg_application ca on ca.app_id = jedl.app_id "
       + " where jedl.source_target_type = :source_target_type "
-      + " and ca.short_connection_string like :instance ";
+      + " and jedl.app_id in (:app_ids) ";
 
 
   public static final String FIND_DATASETS_BY_FLOW_EXEC =
     " select distinct jedl.abstracted_object_name, jedl.db_id, jedl.partition_start, jedl.partition_end, "
       + " jedl.storage_type, jedl.record_count, jedl.insert_count, jedl.update_count, jedl.delete_count "
       + " from job_execution_data_lineage jedl "
-      + " join cfg_application ca on ca.app_id = jedl.app_id "
       + " where jedl.job_name = :job_name "
       + " and jedl.flow_exec_id = :flow_exec_id "
       + " and jedl.source_target_type = :source_target_type "
-      + " and ca.short_connection_string like :instance ";
+      + " and jedl.app_id in (:app_ids) ";
 
 
   public static final String FIND_DATASETS_BY_JOB_EXEC =
     " select distinct jedl.abstracted_object_name, jedl.db_id, jedl.partition_start, jedl.partition_end, "
       + " jedl.storage_type, jedl.record_count, jedl.insert_count, jedl.update_count, jedl.delete_count "
       + " from job_execution_data_lineage jedl "
-      + " join cfg_application ca on ca.app_id = jedl.app_id "
       + " where jedl.job_exec_id = :job_exec_id "
       + " and jedl.source_target_type = :source_target_type "
-      + " and ca.short_connection_string like :instance ";
-
+      + " and jedl.app_id in (:app_ids) ";
 
   public static List<Map<String, Object>> getJobsByDataset(String urn, String period, String cluster, String instance, String sourceTargetType)
     throws SQLException {
-    Urn u = new Urn(urn);
     Map<String, Object> params = new HashMap<>();
-    params.put("abstracted_object_name", u.abstractObjectName);
+    params.put("abstracted_object_name", DatasetUrn.parse(urn).getAbstractObjectName());
     params.put("period", period);
     params.put("source_target_type", sourceTargetType);
-
-    if (cluster == null || cluster.isEmpty()) {
-      params.put("cluster", "%");
-    } else {
-      params.put("cluster", cluster);
+    List<Integer> appIds = CfgDao.getAppIdsByInstance(instance);
+    List<Integer> dbIds = CfgDao.getDbIdsByCluster(cluster);
+    List<Map<String, Object>> jobs = new ArrayList<>();
+    if (appIds.isEmpty() || dbIds.isEmpty()) {
+      return jobs;
     }
-    if (instance == null || instance.isEmpty()) {
-      params.put("instance", "%");
-    } else {
-      params.put("instance", instance);
+    params.put("app_ids", appIds);
+    params.put("db_ids", dbIds);
+
+    for (Map<String, Object> row : JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(FIND_JOBS_BY_DATASET, params)) {
+      Map<String, Object> job = new LinkedHashMap<>();
+      job.put("short_connection_string",
+        CfgDao.REGISTRY.findAppShortConnectionString(((Number) row.get("app_id")).intValue()));
+      job.put("job_name", row.get("job_name"));
+      job.put("flow_path", row.get("flow_path"));
+      jobs.add(job);
     }
-    List<Map<String, Object>> jobs = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(FIND_JOBS_BY_DATASET, params);
     return jobs;
   }
 
@@ -106,11 +104,11 @@ public class LineageDao {
     params.put("flow_path", flowPath);
     params.put("job_name", jobName);
     params.put("source_target_type", sourceTargetType);
-    if (instance == null || instance.isEmpty()) {
-      params.put("instance", "%");
-    } else {
-      params.put("instance", instance);
+    List<Integer> appIds = CfgDao.getAppIdsByInstance(instance);
+    if (appIds.isEmpty()) {
+      return new ArrayList<>();
     }
+    params.put("app_ids", appIds);
     List<Map<String, Object>> datasets = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(FIND_DATASETS_BY_JOB, params);
     return datasets;
   }
@@ -120,11 +118,11 @@ public class LineageDao {
     params.put("flow_exec_id", flowExecId);
     params.put("job_name", jobName);
     params.put("source_target_type", sourceTargetType);
-    if (instance == null || instance.isEmpty()) {
-      params.put("instance", "%");
-    } else {
-      params.put("instance", instance);
+    List<Integer> appIds = CfgDao.getAppIdsByInstance(instance);
+    if (appIds.isEmpty()) {
+      return new ArrayList<>();
     }
+    params.put("app_ids", appIds);
     List<Map<String, Object>> datasets = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(FIND_DATASETS_BY_FLOW_EXEC, params);
     return datasets;
   }
@@ -133,124 +131,43 @@ public class LineageDao {
     Map<String, Object> params = new HashMap<>();
     params.put("job_exec_id", jobExecId);
     params.put("source_target_type", sourceTargetType);
-    if (instance == null || instance.isEmpty()) {
-      params.put("instance", "%");
-    } else {
-      params.put("instance", instance);
+    List<Integer> appIds = CfgDao.getAppIdsByInstance(instance);
+    if (appIds.isEmpty()) {
+      return new ArrayList<>();
     }
+    params.put("app_ids", appIds);
     List<Map<String, Object>> datasets = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(FIND_DATASETS_BY_JOB_EXEC, params);
     return datasets;
   }
 
-  public static void insertLineage(JsonNode lineage) throws Exception {
-    TreeMap<String, LineageRecord> records = new TreeMap<>();
-    Map<String, String> refSourceMap = new HashMap<>();
-    Integer appId = lineage.findPath("app_id").asInt();
-    String appName = lineage.findPath("app_name").asText();
-    // Set application id if app id is not set or equals to 0
-    if (appId == 0) {
-      appId = (Integer) CfgDao.getAppByName(appName).get("id");
-    }
+  private static LineageBatchInserter batchInserter;
 
-    Long flowExecId = lineage.findPath("flow_exec_id").asLong();
-    Long jobExecId = lineage.findPath("job_exec_id").asLong();
-    String jobExecUuid = lineage.findPath("job_exec_uuid").asText();
-    String jobName = lineage.findPath("job_name").asText();
-    Integer jobStartTime = lineage.findPath("job_start_unixtime").asInt();
-    Integer jobEndTime = lineage.findPath("job_end_unixtime").asInt();
-    String flowPath = lineage.findPath("flow_path").asText();
-
-    JsonNode nodes = lineage.findPath("lineages");
-    if (nodes.isArray()) {
-      PartitionPatternMatcher ppm = null;
-      for (JsonNode node : nodes) {
-        Integer databaseId = node.findPath("db_id").asInt();
-        String databaseName = node.findPath("database_name").asText();
-        // Set application id if app id is not set or equals to 0
-        if (databaseId == 0) {
-          databaseId = (Integer) CfgDao.getDbByName(databaseName).get("id");
-        }
-
-        String abstractedObjectName = node.findPath("abstracted_object_name").asText();
-        String fullObjectName = node.findPath("full_object_name").asText();
-        String storageType = node.findPath("storage_type").asText();
-        String partitionStart = node.findPath("partition_start").asText();
-        String partitionEnd = node.findPath("partition_end").asText();
-        String partitionType = node.findPath("partition_type").asText();
-        Integer layoutId = node.findPath("layout_id").asInt();
-        // Get layout id if layout id is not set or equals to 0
-        if (layoutId == 0) {
-          if (ppm == null) {
-            ppm = new PartitionPatternMatcher(PartitionLayoutDao.getPartitionLayouts());
+  public static synchronized LineageBatchInserter getBatchInserter() {
+    if (batchInserter == null) {
+      batchInserter = new LineageBatchInserter(JdbcUtil.dataSource, CfgDao.REGISTRY,
+        new Supplier<PartitionPatternMatcher>() {
+          @Override
+          public PartitionPatternMatcher get() {
+            return PartitionLayoutDao.getPartitionPatternMatcher();
           }
-          layoutId = ppm.analyze(fullObjectName);
-        }
-
-        String sourceTargetType = node.findPath("source_target_type").textValue();
-        String operation = node.findPath("operation").textValue();
-        Long recordCount = node.findPath("record_count").longValue();
-        Long insertCount = node.findPath("insert_count").longValue();
-        Long deleteCount = node.findPath("delete_count").longValue();
-        Long updateCount = node.findPath("update_count").longValue();
-
-        LineageRecord record = new LineageRecord(appId, flowExecId, jobName, jobExecId);
-        record.setJobExecUUID(jobExecUuid);
-        record.setJobStartTime(jobStartTime);
-        record.setJobEndTime(jobEndTime);
-        record.setFlowPath(flowPath);
-        record.setDatabaseId(databaseId);
-        record.setAbstractObjectName(abstractedObjectName);
-        record.setFullObjectName(fullObjectName);
-        record.setStorageType(storageType);
-        record.setPartitionStart(partitionStart);
-        record.setPartitionEnd(partitionEnd);
-        record.setPartitionType(partitionType);
-        record.setLayoutId(layoutId);
-        record.setSourceTargetType(sourceTargetType);
-        record.setOperation(operation);
-        record.setRecordCount(recordCount);
-        record.setInsertCount(insertCount);
-        record.setDeleteCount(deleteCount);
-        record.setUpdateCount(updateCount);
-        records.put(record.getLineageRecordKey(), record);
-
-        JsonNode sourceName = node.findPath("ref_source_object_name");
-        JsonNode sourceDb = node.findPath("ref_source_db_id");
-        if (sourceTargetType.equals("target") &&
-          !sourceName.isMissingNode() && !sourceDb.isMissingNode()) {
-          refSourceMap.put(record.getLineageRecordKey(), "source-" + sourceDb.intValue() + "-" + sourceName.textValue());
-        }
-      }
-
-      int srlNo = 0;
-      for (LineageRecord r : records.values()) {
-        r.setSrlNo(srlNo++);
-      }
-
-      for (String target : refSourceMap.keySet()) {
-        String sourceKey = refSourceMap.get(target);
-        if (records.containsKey(sourceKey)) {
-          LineageRecord r = records.get(target);
-          r.setRelatedSrlNo(records.get(sourceKey).getSrlNo());
-        }
-      }
+        });
     }
+    return batchInserter;
+  }
 
-    DatabaseWriter dw = new DatabaseWriter(JdbcUtil.wherehowsJdbcTemplate, "job_execution_data_lineage");
-    try {
-      for (LineageRecord record : records.values()) {
-        dw.append(record);
-      }
-      dw.flush();
-    } catch (IOException | SQLException e) {
-      e.printStackTrace();
-    } finally {
-      try {
-        dw.close();
-      } catch (SQLException e) {
-        e.printStackTrace();
-      }
+  public static void insertLineage(JsonNode lineage) throws Exception {
+    LineageBatchInserter.JobResult result = getBatchInserter().insert(Collections.singletonList(lineage)).get(0);
+    if (!result.isSuccess()) {
+      throw new Exception(result.getError());
     }
+  }
 
+  /**
+   * Insert the lineage of many jobs in one transaction
+   * @param lineages
+   * @return the result of each job
+   */
+  public static List<LineageBatchInserter.JobResult> insertLineages(List<JsonNode> lineages) {
+    return getBatchInserter().insert(lineages);
   }
 }
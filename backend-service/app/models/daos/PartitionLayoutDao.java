@@ -14,12 +14,19 @@
 package models.daos;
 
 import java.util.List;
+import java.util.Map;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import play.Logger;
+import play.Play;
 import utils.JdbcUtil;
 import wherehows.common.schemas.PartitionLayout;
+import wherehows.common.utils.PartitionPatternMatcher;
 
 
 /**
+ * The partition layouts, and one compiled matcher shared by the requests. The matcher is rebuilt when the checksum
+ * of dataset_partition_layout_pattern changes, which is checked at most once per interval, or right after a layout
+ * is added through this service.
  * Created by zechen on 10/16/15.
  */
 public class PartitionLayoutDao {
@@ -27,8 +34,49 @@ public class PartitionLayoutDao {
     " SELECT layout_id, regex, mask, leading_path_index, partition_index, second_partition_index, sort_id, partition_pattern_group "
       + " FROM dataset_partition_layout_pattern ";
 
+  public static final String GET_LAYOUTS_CHECKSUM =
+    " SELECT COUNT(*) AS layout_count, COALESCE(SUM(CRC32(CONCAT_WS('|', layout_id, regex, leading_path_index, "
+      + " partition_index, second_partition_index, sort_id, partition_pattern_group))), 0) AS checksum "
+      + " FROM dataset_partition_layout_pattern ";
+
+  private static final long CHECK_INTERVAL_MS =
+    Play.application().configuration().getLong("partition.layout.check.interval", 60L) * 1000;
+
+  private static volatile PartitionPatternMatcher matcher;
+  private static String checksum;
+  private static volatile long checkedTime;
+
   public static List<PartitionLayout> getPartitionLayouts() {
     return JdbcUtil.wherehowsJdbcTemplate.query(GET_LAYOUTS, new BeanPropertyRowMapper<>(PartitionLayout.class));
   }
 
+  /**
+   * The matcher of the current layouts, rebuilt only if the layouts changed since it was built
+   */
+  public static PartitionPatternMatcher getPartitionPatternMatcher() {
+    if (matcher == null || System.currentTimeMillis() - checkedTime > CHECK_INTERVAL_MS) {
+      synchronized (PartitionLayoutDao.class) {
+        long now = System.currentTimeMillis();
+        if (matcher == null || now - checkedTime > CHECK_INTERVAL_MS) {
+          Map<String, Object> row = JdbcUtil.wherehowsJdbcTemplate.queryForMap(GET_LAYOUTS_CHECKSUM);
+          String current = row.get("layout_count") + "-" + row.get("checksum");
+          if (matcher == null || !current.equals(checksum)) {
+            matcher = new PartitionPatternMatcher(getPartitionLayouts());
+            checksum = current;
+            Logger.info("Loaded " + matcher.size() + " partition layouts");
+          }
+          checkedTime = now;
+        }
+      }
+    }
+    return matcher;
+  }
+
+  /**
+   * Check the layouts again on the next call of {@link #getPartitionPatternMatcher()}
+   */
+  public static void invalidate() {
+    checkedTime = 0;
+  }
+
 }
@@ -74,6 +74,7 @@ public class PatternDao {
     params.put("comments", JsonUtil.getJsonValue(datasetPartitionPattern, "comments", String.class, null));
 
     KeyHolder kh = JdbcUtil.insertRow(INSERT_DATASET_PARTITION_PATTERN, params);
+    PartitionLayoutDao.invalidate();
     return kh.getKey().intValue();
   }
 
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package utils;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+
+/**
+ * Read only {@link Properties}, to share one snapshot of properties between several readers.
+ * All the methods that would change the content throw {@link UnsupportedOperationException}.
+ */
+public final class ImmutableProperties extends Properties {
+
+  // read only view for keySet, entrySet and values, whose entries cannot be changed either
+  private final Map<Object, Object> view;
+
+  public ImmutableProperties(Map<?, ?> values) {
+    for (Map.Entry<?, ?> e : values.entrySet()) {
+      super.put(e.getKey(), e.getValue());
+    }
+    view = Collections.unmodifiableMap(new HashMap<Object, Object>(values));
+  }
+
+  private static UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("The properties are read only");
+  }
+
+  @Override
+  public synchronized Object put(Object key, Object value) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object setProperty(String key, String value) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized void load(Reader reader) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized void load(InputStream inStream) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized void loadFromXML(InputStream in) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized void putAll(Map<?, ?> t) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object remove(Object key) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized boolean remove(Object key, Object value) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized void clear() {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object putIfAbsent(Object key, Object value) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object replace(Object key, Object value) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object computeIfPresent(Object key,
+    BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+    throw readOnly();
+  }
+
+  @Override
+  public synchronized Object merge(Object key, Object value,
+    BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+    throw readOnly();
+  }
+
+  @Override
+  public Set<Object> keySet() {
+    return view.keySet();
+  }
+
+  @Override
+  public Set<Map.Entry<Object, Object>> entrySet() {
+    return view.entrySet();
+  }
+
+  @Override
+  public Collection<Object> values() {
+    return view.values();
+  }
+}
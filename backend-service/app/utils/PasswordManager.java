@@ -23,6 +23,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.jasypt.util.text.BasicTextEncryptor;
 import play.Logger;
 
@@ -39,13 +41,19 @@ public class PasswordManager {
   private static final String ERROR_ENCRY_MSG = "A master password needs to be provided for encrypting passwords, check your master key location!";
   private static final String ERROR_DECRY_MSG = "A master password needs to be provided for decrypting passwords, check your master key location!";
 
+  /**
+   * Encryptors by master key location. The key file is read and the encryptor initialized once per location, the
+   * encryptor is thread safe and its key derivation is the expensive part.
+   */
+  private static final ConcurrentMap<String, BasicTextEncryptor> ENCRYPTORS = new ConcurrentHashMap<>();
+
   public static String encryptPassword(String plain, String masterPwdLoc) {
-    return encryptPassword(plain, getMasterPassword(masterPwdLoc));
+    return encrypt(plain, getCachedEncryptor(masterPwdLoc));
   }
 
 
   public static String decryptPassword(String plain, String masterPwdLoc) {
-    return decryptPassword(plain, getMasterPassword(masterPwdLoc));
+    return decrypt(plain, getCachedEncryptor(masterPwdLoc));
   }
   /**
    * Encrypt a password. A master password must have been provided in the constructor.
@@ -53,14 +61,7 @@ public class PasswordManager {
    * @return The encrypted password.
    */
   public static String encryptPassword(String plain, Optional<String> masterPassword) {
-    Optional<BasicTextEncryptor> encryptor = getEncryptor(masterPassword);
-    Preconditions.checkArgument(getEncryptor(masterPassword).isPresent(), ERROR_ENCRY_MSG);
-
-    try {
-      return encryptor.get().encrypt(plain);
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to encrypt password", e);
-    }
+    return encrypt(plain, getEncryptor(masterPassword));
   }
 
   /**
@@ -69,7 +70,20 @@ public class PasswordManager {
    * @return The decrypted password.
    */
   public static String decryptPassword(String encrypted, Optional<String> masterPassword) {
-    Optional<BasicTextEncryptor> encryptor = getEncryptor(masterPassword);
+    return decrypt(encrypted, getEncryptor(masterPassword));
+  }
+
+  private static String encrypt(String plain, Optional<BasicTextEncryptor> encryptor) {
+    Preconditions.checkArgument(encryptor.isPresent(), ERROR_ENCRY_MSG);
+
+    try {
+      return encryptor.get().encrypt(plain);
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to encrypt password", e);
+    }
+  }
+
+  private static String decrypt(String encrypted, Optional<BasicTextEncryptor> encryptor) {
     Preconditions
       .checkArgument(encryptor.isPresent(), ERROR_DECRY_MSG);
 
@@ -80,6 +94,25 @@ public class PasswordManager {
     }
   }
 
+  /**
+   * The cached encryptor of the master key location. A missing key is not cached, the file is checked again on the
+   * next call.
+   */
+  private static Optional<BasicTextEncryptor> getCachedEncryptor(String masterPwdLoc) {
+    BasicTextEncryptor encryptor = ENCRYPTORS.get(masterPwdLoc);
+    if (encryptor != null) {
+      return Optional.of(encryptor);
+    }
+    Optional<BasicTextEncryptor> created = getEncryptor(getMasterPassword(masterPwdLoc));
+    if (created.isPresent()) {
+      BasicTextEncryptor previous = ENCRYPTORS.putIfAbsent(masterPwdLoc, created.get());
+      if (previous != null) {
+        return Optional.of(previous);
+      }
+    }
+    return created;
+  }
+
   private static Optional<BasicTextEncryptor> getEncryptor(Optional<String> masterPassword) {
     Optional<BasicTextEncryptor> encryptor;
     if (masterPassword.isPresent()) {
@@ -105,7 +138,7 @@ public class PasswordManager {
         LOG.warn(masterPwdLoc + " does not exist or is not a file. Cannot decrypt any encrypted password.");
         return Optional.absent();
       }
-      InputStream in = new FileInputStream(file);
+      InputStream in = closer.register(new FileInputStream(file));
       return Optional.of(new LineReader(new InputStreamReader(in, Charsets.UTF_8)).readLine());
     } catch (IOException e) {
       throw new RuntimeException("Failed to obtain master password from " + masterPwdLoc, e);
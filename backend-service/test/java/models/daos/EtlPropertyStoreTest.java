@@ -0,0 +1,124 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package models.daos;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import metadata.etl.models.EtlJobName;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import utils.PasswordManager;
+
+
+/**
+ * Runs the store against an in-memory H2 database and a temporary master key.
+ */
+public class EtlPropertyStoreTest {
+  private static final EtlJobName JOB = EtlJobName.HADOOP_DATASET_METADATA_ETL;
+
+  DriverManagerDataSource dataSource;
+  JdbcTemplate jdbcTemplate;
+  File masterKey;
+
+  @BeforeMethod
+  public void setUp()
+    throws Exception {
+    masterKey = File.createTempFile("master_key", ".tmp");
+    masterKey.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(masterKey)) {
+      out.write("the master key\n".getBytes(StandardCharsets.UTF_8));
+    }
+    dataSource = new DriverManagerDataSource("jdbc:h2:mem:etl_property;DB_CLOSE_DELAY=-1", "sa", "");
+    dataSource.setDriverClassName("org.h2.Driver");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("DROP ALL OBJECTS");
+    jdbcTemplate.execute("CREATE TABLE wh_property (property_name VARCHAR(127) PRIMARY KEY, "
+      + "property_value VARCHAR(4000), is_encrypted CHAR(1) DEFAULT 'N', group_name VARCHAR(127))");
+    jdbcTemplate.execute("CREATE TABLE wh_etl_job_property (id INT AUTO_INCREMENT PRIMARY KEY, "
+      + "wh_etl_job_name VARCHAR(127), ref_id SMALLINT, ref_id_type VARCHAR(20), property_name VARCHAR(127), "
+      + "property_value VARCHAR(4000), is_encrypted CHAR(1) DEFAULT 'N')");
+    jdbcTemplate.update("INSERT INTO wh_property VALUES (?, ?, 'N', null), ('wherehows.app_folder', '/var/tmp', 'N', null)",
+      EtlPropertyStore.MASTER_KEY_LOC_KEY, masterKey.getPath());
+    jdbcTemplate.update("INSERT INTO wh_etl_job_property (wh_etl_job_name, ref_id, ref_id_type, property_name, "
+      + "property_value, is_encrypted) VALUES (?, 1, 'DB', 'hdfs.cluster', 'prod', 'N'), "
+      + "(?, 1, 'DB', 'hdfs.password', ?, 'Y'), (?, 1, 'DB', 'wherehows.app_folder', '/tmp', 'N'), "
+      + "(?, 2, 'DB', 'hdfs.cluster', 'dev', 'N')",
+      JOB.toString(), JOB.toString(), PasswordManager.encryptPassword("secret", masterKey.getPath()), JOB.toString(),
+      JOB.toString());
+  }
+
+  @Test
+  public void testLaunchProperties() {
+    EtlPropertyStore store = new EtlPropertyStore(dataSource, 60000, "/no/such/key");
+    Properties props = store.getLaunchProperties(JOB, 1);
+    Assert.assertEquals(props.getProperty("hdfs.cluster"), "prod");
+    Assert.assertEquals(props.getProperty("hdfs.password"), "secret");
+    // the wherehows properties win
+    Assert.assertEquals(props.getProperty("wherehows.app_folder"), "/var/tmp");
+    Assert.assertEquals(store.getLaunchProperties(JOB, 2).getProperty("hdfs.cluster"), "dev");
+
+    try {
+      props.setProperty("hdfs.cluster", "dev");
+      Assert.fail("read only");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      props.keySet().clear();
+      Assert.fail("read only");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    Assert.assertEquals(props.stringPropertyNames().size(), 4);
+  }
+
+  @Test
+  public void testInvalidate() {
+    EtlPropertyStore store = new EtlPropertyStore(dataSource, 60000, "/no/such/key");
+    Properties props = store.getJobProperties(JOB, 1);
+    Assert.assertSame(store.getJobProperties(JOB, 1), props);
+    Assert.assertSame(store.getWherehowsProperties(), store.getWherehowsProperties());
+
+    jdbcTemplate.update("UPDATE wh_etl_job_property SET property_value = 'test' WHERE property_name = 'hdfs.cluster'");
+    Assert.assertEquals(store.getJobProperties(JOB, 1).getProperty("hdfs.cluster"), "prod");
+    long version = store.getVersion();
+    store.invalidate();
+    Assert.assertEquals(store.getVersion(), version + 1);
+    Assert.assertEquals(store.getJobProperties(JOB, 1).getProperty("hdfs.cluster"), "test");
+    Assert.assertEquals(store.getJobProperties(JOB, 1).getProperty("hdfs.password"), "secret");
+  }
+
+  @Test
+  public void testRefreshInterval()
+    throws InterruptedException {
+    EtlPropertyStore store = new EtlPropertyStore(dataSource, 0, "/no/such/key");
+    Assert.assertEquals(store.getWherehowsProperties().getProperty("wherehows.app_folder"), "/var/tmp");
+    jdbcTemplate.update("UPDATE wh_property SET property_value = '/data' WHERE property_name = 'wherehows.app_folder'");
+    Thread.sleep(5);
+    Assert.assertEquals(store.getWherehowsProperties().getProperty("wherehows.app_folder"), "/data");
+  }
+
+  @Test
+  public void testEncrypt() {
+    EtlPropertyStore store = new EtlPropertyStore(dataSource, 60000, "/no/such/key");
+    String encrypted = store.encrypt("another secret");
+    Assert.assertNotEquals(encrypted, "another secret");
+    Assert.assertEquals(store.decrypt(encrypted), "another secret");
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package models.daos;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import wherehows.common.schemas.PartitionLayout;
+import wherehows.common.utils.CfgRegistry;
+import wherehows.common.utils.PartitionPatternMatcher;
+
+
+/**
+ * Runs the inserter against an in-memory H2 database.
+ */
+public class LineageBatchInserterTest {
+  private static final Logger logger = LoggerFactory.getLogger(LineageBatchInserterTest.class);
+
+  DriverManagerDataSource dataSource;
+  JdbcTemplate jdbcTemplate;
+  LineageBatchInserter inserter;
+
+  @BeforeClass
+  public void setUp() {
+    dataSource = new DriverManagerDataSource("jdbc:h2:mem:lineage;DB_CLOSE_DELAY=-1", "sa", "");
+    dataSource.setDriverClassName("org.h2.Driver");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("CREATE TABLE cfg_application (app_id INT PRIMARY KEY, app_code VARCHAR(128), "
+      + "short_connection_string VARCHAR(50))");
+    jdbcTemplate.execute("CREATE TABLE cfg_database (db_id INT PRIMARY KEY, db_code VARCHAR(30), "
+      + "short_connection_string VARCHAR(50))");
+    jdbcTemplate.execute("CREATE TABLE job_execution_data_lineage (app_id INT NOT NULL, flow_exec_id BIGINT, "
+      + "job_exec_id BIGINT, job_exec_uuid VARCHAR(100), job_name VARCHAR(255), job_start_unixtime BIGINT, "
+      + "job_finished_unixtime BIGINT, db_id INT, abstracted_object_name VARCHAR(255) NOT NULL, "
+      + "full_object_name VARCHAR(255), partition_start VARCHAR(50), partition_end VARCHAR(50), "
+      + "partition_type VARCHAR(20), layout_id INT, storage_type VARCHAR(16), source_target_type VARCHAR(10) NOT NULL, "
+      + "srl_no INT NOT NULL, source_srl_no INT, operation VARCHAR(64), record_count BIGINT, insert_count BIGINT, "
+      + "delete_count BIGINT, update_count BIGINT, flow_path VARCHAR(1024), created_date INT, wh_etl_exec_id INT, "
+      + "PRIMARY KEY (app_id, job_exec_id, srl_no))");
+    jdbcTemplate.execute("INSERT INTO cfg_application VALUES (31, 'AZKABAN PROD', 'azkaban-prod')");
+    jdbcTemplate.execute("INSERT INTO cfg_database VALUES (1, 'HDFS', 'hdfs-prod'), (2, 'TERADATA', 'teradata-prod')");
+
+    final PartitionPatternMatcher matcher = new PartitionPatternMatcher(Collections.singletonList(
+      new PartitionLayout(7, "(/.*)/daily/(\\d{4}/\\d{2}/\\d{2})", null, 1, 2, null, 1, "daily")));
+    inserter = new LineageBatchInserter(dataSource, new CfgRegistry(dataSource, 60000),
+      new Supplier<PartitionPatternMatcher>() {
+        @Override
+        public PartitionPatternMatcher get() {
+          return matcher;
+        }
+      });
+  }
+
+  @BeforeMethod
+  public void clear() {
+    jdbcTemplate.execute("DELETE FROM job_execution_data_lineage");
+  }
+
+  private static String lineage(String appName, long jobExecId) {
+    return "{\"app_name\": \"" + appName + "\", \"flow_exec_id\": 100, \"job_exec_id\": " + jobExecId + ", "
+      + "\"job_name\": \"job" + jobExecId + "\", \"flow_path\": \"project:flow\", \"lineages\": ["
+      + "{\"database_name\": \"hdfs-prod\", \"abstracted_object_name\": \"/data/tracking/PageViewEvent\", "
+      + "\"full_object_name\": \"/data/tracking/PageViewEvent/daily/2015/12/01\", \"source_target_type\": \"source\", "
+      + "\"operation\": \"read\"}, "
+      + "{\"db_id\": 2, \"abstracted_object_name\": \"dwh.page_view\", \"full_object_name\": \"dwh.page_view\", "
+      + "\"layout_id\": 3, \"source_target_type\": \"target\", \"operation\": \"insert\", \"record_count\": 10, "
+      + "\"ref_source_object_name\": \"/data/tracking/PageViewEvent\", \"ref_source_db_id\": 1}]}";
+  }
+
+  private static List<JsonNode> read(String body)
+    throws Exception {
+    return LineageBatchInserter.readLineages(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testReadLineages()
+    throws Exception {
+    Assert.assertEquals(read("[" + lineage("azkaban-prod", 1) + ", " + lineage("azkaban-prod", 2) + "]").size(), 2);
+    List<JsonNode> lineages = read(lineage("azkaban-prod", 1) + "\n" + lineage("azkaban-prod", 2) + "\n");
+    Assert.assertEquals(lineages.size(), 2);
+    Assert.assertEquals(lineages.get(1).get("job_exec_id").asLong(), 2L);
+    Assert.assertTrue(read("").isEmpty());
+    Assert.assertTrue(read("[]").isEmpty());
+  }
+
+  @Test
+  public void testReadLineagesRejectsNonObjects()
+    throws Exception {
+    try {
+      read("[" + lineage("azkaban-prod", 1) + ", 2, " + lineage("azkaban-prod", 3) + "]");
+      Assert.fail("expected the number to be rejected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(e.getMessage(), "Job lineage 1 is not a JSON object: 2");
+    }
+    try {
+      read(lineage("azkaban-prod", 1) + "\n[" + lineage("azkaban-prod", 2) + "]\n");
+      Assert.fail("expected the array to be rejected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(e.getMessage(), "Job lineage 1 is not a JSON object: [");
+    }
+  }
+
+  @Test
+  public void testInsert()
+    throws Exception {
+    List<LineageBatchInserter.JobResult> results =
+      inserter.insert(read("[" + lineage("azkaban-prod", 1) + ", " + lineage("unknown", 2) + "]"));
+    Assert.assertEquals(results.size(), 2);
+    Assert.assertTrue(results.get(0).isSuccess());
+    Assert.assertEquals(results.get(0).getRows(), 2);
+    Assert.assertFalse(results.get(1).isSuccess());
+    Assert.assertEquals(results.get(1).getError(), "Unknown application unknown");
+
+    Map<String, Object> source = jdbcTemplate.queryForMap(
+      "SELECT app_id, db_id, layout_id, srl_no FROM job_execution_data_lineage WHERE source_target_type = 'source'");
+    Assert.assertEquals(((Number) source.get("app_id")).intValue(), 31);
+    Assert.assertEquals(((Number) source.get("db_id")).intValue(), 1);
+    Assert.assertEquals(((Number) source.get("layout_id")).intValue(), 7);
+    Assert.assertEquals(jdbcTemplate.queryForObject(
+      "SELECT source_srl_no FROM job_execution_data_lineage WHERE source_target_type = 'target'", Integer.class),
+      Integer.valueOf(((Number) source.get("srl_no")).intValue()));
+  }
+
+  @Test
+  public void testRetryEachJob()
+    throws Exception {
+    // the second job has the same key as the first one, so the batch fails and only the second job is rejected
+    List<LineageBatchInserter.JobResult> results = inserter.insert(
+      read(lineage("azkaban-prod", 1) + "\n" + lineage("azkaban-prod", 1) + "\n" + lineage("azkaban-prod", 3)));
+    Assert.assertTrue(results.get(0).isSuccess());
+    Assert.assertFalse(results.get(1).isSuccess());
+    Assert.assertNotNull(results.get(1).getError());
+    Assert.assertTrue(results.get(2).isSuccess());
+    Assert.assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM job_execution_data_lineage", Integer.class),
+      Integer.valueOf(4));
+  }
+
+  // timing run on 10000 jobs, excluded from the default test task, see performanceTest
+  @Test(groups = {"performance"})
+  public void testThroughput()
+    throws Exception {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      body.append(lineage("azkaban-prod", 1000 + i)).append('\n');
+    }
+    List<JsonNode> lineages = read(body.toString());
+
+    long start = System.currentTimeMillis();
+    for (LineageBatchInserter.JobResult result : inserter.insert(lineages)) {
+      Assert.assertTrue(result.isSuccess(), result.getError());
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    Assert.assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM job_execution_data_lineage", Integer.class),
+      Integer.valueOf(20000));
+    logger.info("10000 job lineages inserted in {} ms", elapsed);
+  }
+}
@@ -49,6 +49,7 @@ CREATE TABLE `stg_dict_dataset` (
   `created_time`                INT UNSIGNED COMMENT 'wherehows created time',
   `modified_time`               INT UNSIGNED COMMENT 'latest wherehows modified',
   `wh_etl_exec_id`              BIGINT COMMENT 'wherehows etl execution id that modified this record',
+  `content_hash`                CHAR(32) COMMENT 'md5 of the loaded columns, compared with dict_dataset.content_hash',
   PRIMARY KEY (`db_id`, `urn`)
 )
   ENGINE = InnoDB
@@ -88,8 +89,15 @@ CREATE TABLE `dict_dataset` (
   `created_time`                INT UNSIGNED COMMENT 'wherehows created time',
   `modified_time`               INT UNSIGNED COMMENT 'latest wherehows modified',
   `wh_etl_exec_id`              BIGINT COMMENT 'wherehows etl execution id that modified this record',
+  `db_id`                       SMALLINT UNSIGNED COMMENT 'database id of the ETL job that loaded this record',
+  `content_hash`                CHAR(32) COMMENT 'md5 of the loaded columns, the row is only rewritten when it changes',
+  `urn_path`                    VARCHAR(200) COMMENT 'normalized path of the urn, what follows ://, to join with the lineage',
+  `is_deleted`                  CHAR(1)                                                                                     DEFAULT 'N'
+  COMMENT 'Y once the dataset is missing from a full extract of its db_id, N again when it comes back',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uq_dataset_urn` (`urn`),
+  KEY `idx_dataset_db_id` (`db_id`),
+  KEY `idx_dataset_urn_path` (`urn_path`),
   FULLTEXT KEY `fti_datasets_all` (`name`, `schema`, `properties`, `urn`)
 )
   ENGINE = MyISAM
@@ -192,7 +200,9 @@ CREATE TABLE `dict_field_detail` (
   `modified`           TIMESTAMP            NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`field_id`),
   KEY `idx_dict_field__datasetid_fieldname` (`dataset_id`, `field_name`) USING BTREE,
-  KEY `idx_dict_field__fieldslayoutid` (`fields_layout_id`) USING BTREE
+  KEY `idx_dict_field__fieldslayoutid` (`fields_layout_id`) USING BTREE,
+  KEY `idx_dict_field__fieldname` (`field_name`) USING BTREE,
+  KEY `idx_dict_field__modified` (`modified`) USING BTREE
 )
   ENGINE = MyISAM
   AUTO_INCREMENT = 0
@@ -206,8 +216,22 @@ CREATE TABLE `dict_dataset_schema_history` (
   `urn`           VARCHAR(128)           NOT NULL,
   `modified_date` DATE                   NULL,
   `schema`        MEDIUMTEXT             NULL,
+  `schema_hash`   CHAR(40)               NULL
+  COMMENT 'SHA-1 of the schema, versions with the same schema share their fields',
+  `field_count`   INT(11)                NULL
+  COMMENT 'null until the version is analyzed by the dataset ETL',
+  `fields_added`  INT(11)                NULL,
+  `fields_removed` INT(11)               NULL,
+  `fields_changed` INT(11)               NULL,
+  `fields`        MEDIUMTEXT             NULL
+  COMMENT 'path and signature of each field, see wherehows.common.utils.SchemaFields',
+  `field_diff`    MEDIUMTEXT             NULL
+  COMMENT 'fields added, removed and changed since the previous version',
   PRIMARY KEY (id),
-  UNIQUE KEY `uk_dict_dataset_sample_schema_urn` (`urn`, `modified_date`)
+  UNIQUE KEY `uk_dict_dataset_sample_schema_urn` (`urn`, `modified_date`),
+  KEY `idx_dict_dataset_schema_history__datasetid` (`dataset_id`),
+  KEY `idx_dict_dataset_schema_history__hash` (`schema_hash`),
+  KEY `idx_dict_dataset_schema_history__fieldcount` (`field_count`)
 )
   ENGINE = InnoDB
   AUTO_INCREMENT = 0;
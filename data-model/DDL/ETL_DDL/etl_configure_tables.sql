@@ -58,6 +58,8 @@ CREATE TABLE `wh_etl_job_execution` (
   COMMENT 'end time of the execution',
   `message`        VARCHAR(1024)                DEFAULT NULL
   COMMENT 'debug information message',
+  `step_timings`   TEXT                         DEFAULT NULL
+  COMMENT 'json of milliseconds and rows per step',
   PRIMARY KEY (`wh_etl_exec_id`)
 )
   ENGINE = InnoDB
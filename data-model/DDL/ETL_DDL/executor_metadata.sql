@@ -257,6 +257,47 @@ CREATE TABLE flow_execution_id_map (
   DEFAULT CHARSET = utf8
   COMMENT = 'Scheduler flow execution id mapping table' PARTITION BY HASH (app_id) PARTITIONS 8;
 
+CREATE TABLE flow_execution_watermark (
+  app_id                 SMALLINT UNSIGNED NOT NULL
+  COMMENT 'application id of the scheduler',
+  etl_name               VARCHAR(31)       NOT NULL
+  COMMENT 'etl reading the executions : exec, lineage',
+  end_time               BIGINT COMMENT 'source end time of the last processed execution',
+  exec_id                BIGINT COMMENT 'source id of the last processed execution',
+  recent_execs           MEDIUMTEXT COMMENT 'exec_id:end_time of the executions processed within the overlap',
+  wh_etl_exec_id         BIGINT COMMENT 'wherehows etl execution id that committed the watermark',
+  pending_end_time       BIGINT COMMENT 'end time reached by a run not loaded yet',
+  pending_exec_id        BIGINT COMMENT 'exec id reached by a run not loaded yet',
+  pending_recent_execs   MEDIUMTEXT COMMENT 'recent executions of a run not loaded yet',
+  pending_wh_etl_exec_id BIGINT COMMENT 'wherehows etl execution id of the pending watermark',
+  modified_time          INT UNSIGNED COMMENT 'latest wherehows modified',
+  PRIMARY KEY (app_id, etl_name)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  COMMENT = 'Last scheduler execution processed by an etl';
+
+CREATE TABLE flow_project_version (
+  app_id                 SMALLINT UNSIGNED NOT NULL
+  COMMENT 'application id of the scheduler',
+  project_id             INT UNSIGNED      NOT NULL
+  COMMENT 'source project id',
+  project_name           VARCHAR(255) COMMENT 'source project name, flow_group of its flows',
+  source_version         INT COMMENT 'source project version of the loaded flows',
+  is_active              CHAR(1) COMMENT 'determine if the project was active when loaded',
+  wh_etl_exec_id         BIGINT COMMENT 'wherehows etl execution id that loaded the version',
+  pending_version        INT COMMENT 'project version extracted by a run not loaded yet',
+  pending_is_active      CHAR(1) COMMENT 'project state extracted by a run not loaded yet',
+  pending_wh_etl_exec_id BIGINT COMMENT 'wherehows etl execution id of the pending version',
+  modified_time          INT UNSIGNED COMMENT 'latest wherehows modified',
+  PRIMARY KEY (app_id, project_id),
+  INDEX pending_idx (app_id, pending_wh_etl_exec_id),
+  INDEX project_name_idx (app_id, project_name)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  COMMENT = 'Last scheduler project version loaded by the flow etl';
+
 CREATE TABLE stg_flow_execution (
   app_id           SMALLINT UNSIGNED NOT NULL
   COMMENT 'application id of the flow',
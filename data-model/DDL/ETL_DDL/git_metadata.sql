@@ -29,7 +29,8 @@ CREATE TABLE `source_code_commit_info` (
   `wh_etl_exec_id`  BIGINT COMMENT 'wherehows etl execution id that modified this record',
   PRIMARY KEY (repository_urn, file_path, commit_id),
   KEY (commit_id),
-  KEY (repository_urn, file_name, committer_email)
+  KEY (repository_urn, file_name, committer_email),
+  KEY (repository_urn, commit_time)
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8;
 
 CREATE TABLE `stg_source_code_commit_info` (
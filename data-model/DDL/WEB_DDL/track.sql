@@ -14,13 +14,46 @@
 
 -- tracking user access
 CREATE TABLE track_object_access_log (
+  `id`              BIGINT(20) UNSIGNED                                                                                                  NOT NULL AUTO_INCREMENT
+  COMMENT 'read position of the access stats aggregation',
   `access_unixtime` BIGINT(20) UNSIGNED                                                                                                  NOT NULL,
   `login_id`        INT(10) UNSIGNED                                                                                                     NOT NULL,
   `object_type`     ENUM('dataset', 'metric', 'glossary', 'flow', 'lineage:data', 'lineage:flow', 'lineage:metric', 'lineage:metricJob') NOT NULL DEFAULT 'dataset',
   `object_id`       BIGINT(20)                                                                                                           NULL,
   `object_name`     VARCHAR(500)                                                                                                         NULL,
   `parameters`      VARCHAR(500)                                                                                                         NULL,
-  PRIMARY KEY (access_unixtime, login_id, object_type)
+  `logged_time`     TIMESTAMP                                                                                                            NOT NULL DEFAULT CURRENT_TIMESTAMP
+  COMMENT 'server time of the insert, access_unixtime comes from the client clock',
+  PRIMARY KEY (access_unixtime, login_id, object_type),
+  UNIQUE KEY uk_track_object_access_log_id (id)
 )
   ENGINE = InnoDB
-  AUTO_INCREMENT = 0
+  AUTO_INCREMENT = 0;
+
+-- views and distinct users of each object per hour and per day, rolled up from track_object_access_log
+CREATE TABLE track_object_access_stats (
+  `object_type`    ENUM('dataset', 'metric', 'glossary', 'flow', 'lineage:data', 'lineage:flow', 'lineage:metric', 'lineage:metricJob') NOT NULL,
+  `object_id`      BIGINT(20)                                                                                                           NOT NULL,
+  `period`         ENUM('hour', 'day')                                                                                                  NOT NULL,
+  `period_start`   INT(10) UNSIGNED                                                                                                     NOT NULL
+  COMMENT 'epoch seconds, UTC',
+  `views`          INT(10) UNSIGNED                                                                                                     NOT NULL DEFAULT 0,
+  `distinct_users` INT(10) UNSIGNED                                                                                                     NOT NULL DEFAULT 0,
+  `users_sketch`   VARBINARY(2049)                                                                                                      NULL
+  COMMENT 'serialized wherehows.common.utils.HyperLogLog of the login ids',
+  `modified_time`  INT(10) UNSIGNED                                                                                                     NULL,
+  PRIMARY KEY (object_type, object_id, period, period_start),
+  KEY idx_track_object_access_stats_period (object_type, period, period_start)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
+
+-- last track_object_access_log id rolled up into track_object_access_stats
+CREATE TABLE track_object_access_stats_offset (
+  `name`          VARCHAR(50)         NOT NULL,
+  `last_id`       BIGINT(20) UNSIGNED NOT NULL DEFAULT 0,
+  `modified_time` INT(10) UNSIGNED    NULL,
+  PRIMARY KEY (name)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
@@ -13,20 +13,21 @@
  */
 package wherehows;
 
+import org.apache.avro.file.DataFileConstants;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.SeekableInput;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.mapred.FsInput;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import wherehows.common.schemas.DatasetJsonRecord;
 import wherehows.common.schemas.SampleDataRecord;
+import wherehows.common.utils.StringUtil;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 
@@ -34,6 +35,7 @@ import java.util.List;
  * Created by zsun on 8/18/15.
  */
 public class AvroFileAnalyzer extends FileAnalyzer {
+  private static final byte[] MAGIC = DataFileConstants.MAGIC;
 
   public AvroFileAnalyzer(FileSystem fs) {
     super(fs);
@@ -41,47 +43,80 @@ public class AvroFileAnalyzer extends FileAnalyzer {
   }
 
   @Override
-  public DatasetJsonRecord getSchema(Path targetFilePath)
-    throws IOException {
-    System.out.println("avro file path : " + targetFilePath.toUri().getPath());
+  public byte[] getMagic() {
+    return MAGIC;
+  }
+
+  /**
+   * Avro input over a stream opened by the caller, closing it leaves the stream open.
+   */
+  static class StreamInput implements SeekableInput {
+    private final FSDataInputStream in;
+    private final long length;
+
+    StreamInput(FSDataInputStream in, long length) {
+      this.in = in;
+      this.length = length;
+    }
 
-    SeekableInput sin = new FsInput(targetFilePath, fs.getConf());
-    DataFileReader<GenericRecord> reader =
-      new DataFileReader<GenericRecord>(sin, new GenericDatumReader<GenericRecord>());
-    String codec = reader.getMetaString("avro.codec");
-    long record_count = reader.getBlockCount();
-
-    String schemaString = reader.getSchema().toString();
-    String storage = STORAGE_TYPE;
-    String abstractPath = targetFilePath.toUri().getPath();
-
-    FileStatus fstat = fs.getFileStatus(targetFilePath);
-    DatasetJsonRecord datasetJsonRecord =
-      new DatasetJsonRecord(schemaString, abstractPath, fstat.getModificationTime(), fstat.getOwner(), fstat.getGroup(),
-        fstat.getPermission().toString(), codec, storage, "");
-    reader.close();
-    sin.close();
-    return datasetJsonRecord;
+    @Override
+    public void seek(long p)
+      throws IOException {
+      in.seek(p);
+    }
+
+    @Override
+    public long tell()
+      throws IOException {
+      return in.getPos();
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+      throws IOException {
+      return in.read(b, off, len);
+    }
+
+    @Override
+    public void close() {
+    }
   }
 
+  /**
+   * Read the schema from the file header and the sample records from the first block(s) with one reader.
+   */
   @Override
-  public SampleDataRecord getSampleData(Path targetFilePath)
+  public DatasetAnalysis analyze(FileStatus fstat, FSDataInputStream in, int sampleSize)
     throws IOException {
-    SeekableInput sin = new FsInput(targetFilePath, fs.getConf());
-    DataFileReader<GenericRecord> reader =
-      new DataFileReader<GenericRecord>(sin, new GenericDatumReader<GenericRecord>());
-
-    Iterator<GenericRecord> iter = reader.iterator();
-    int count = 0;
-    List<Object> list = new ArrayList<Object>();
-    //JSONArray list = new JSONArray();
-    while (iter.hasNext() && count < 10) {
-      // TODO handle out of memory error
-      list.add(iter.next().toString().replaceAll("[\\n\\r\\p{C}]", "").replaceAll("\"", "\\\""));
-      count++;
-    }
-    SampleDataRecord sampleDataRecord = new SampleDataRecord(targetFilePath.toUri().getPath(), list);
+    Path targetFilePath = fstat.getPath();
+    System.out.println("avro file path : " + targetFilePath.toUri().getPath());
+
+    in.seek(0);
+    try (DataFileReader<GenericRecord> reader = new DataFileReader<GenericRecord>(new StreamInput(in, fstat.getLen()),
+      new GenericDatumReader<GenericRecord>())) {
+      String codec = reader.getMetaString("avro.codec");
+      String schemaString = reader.getSchema().toString();
+      String storage = STORAGE_TYPE;
+      String abstractPath = targetFilePath.toUri().getPath();
+
+      DatasetJsonRecord datasetJsonRecord =
+        new DatasetJsonRecord(schemaString, abstractPath, fstat.getModificationTime(), fstat.getOwner(),
+          fstat.getGroup(), fstat.getPermission().toString(), codec, storage, "");
 
-    return sampleDataRecord;
+      List<Object> list = new ArrayList<Object>(sampleSize);
+      GenericRecord record = null;
+      while (list.size() < sampleSize && reader.hasNext()) {
+        record = reader.next(record);
+        list.add(StringUtil.removeControlCharacters(record.toString()));
+      }
+      SampleDataRecord sampleDataRecord = new SampleDataRecord(abstractPath, list);
+
+      return new DatasetAnalysis(datasetJsonRecord, sampleDataRecord);
+    }
   }
 }
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.fs.Path;
+
+
+/**
+ * Checkpoint of the previous hdfs metadata collection, one line per dataset :
+ * abstract path, newest modification time, sample file path relative to the dataset, schema fingerprint.
+ * <p>
+ * Only the datasets seen in the current run are written back, so datasets that disappeared drop out.
+ */
+public class CheckpointManifest {
+  private static final String DELIMITER = "\t";
+
+  public static class Entry {
+    final long newestModificationTime;
+    final String sampleFile;
+    final String fingerprint;
+
+    Entry(long newestModificationTime, String sampleFile, String fingerprint) {
+      this.newestModificationTime = newestModificationTime;
+      this.sampleFile = sampleFile;
+      this.fingerprint = fingerprint;
+    }
+
+    public long getNewestModificationTime() {
+      return newestModificationTime;
+    }
+
+    public String getSampleFile() {
+      return sampleFile;
+    }
+
+    public String getFingerprint() {
+      return fingerprint;
+    }
+  }
+
+  private final Map<String, Entry> previous;
+  private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+  public CheckpointManifest() {
+    this(new ConcurrentHashMap<String, Entry>());
+  }
+
+  private CheckpointManifest(Map<String, Entry> previous) {
+    this.previous = previous;
+  }
+
+  /**
+   * Load the manifest written by the previous run. A missing file gives an empty manifest (full scan).
+   */
+  public static CheckpointManifest load(File file)
+    throws IOException {
+    Map<String, Entry> entries = new ConcurrentHashMap<>();
+    if (file.isFile()) {
+      try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] columns = line.split(DELIMITER, -1);
+          if (columns.length == 4) {
+            entries.put(columns[0], new Entry(Long.parseLong(columns[1]), columns[2], columns[3]));
+          }
+        }
+      }
+    }
+    return new CheckpointManifest(entries);
+  }
+
+  /**
+   * Write the datasets seen in this run to a temporary file, then move it in place.
+   */
+  public void save(File file)
+    throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (BufferedWriter writer = new BufferedWriter(
+      new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+      for (Map.Entry<String, Entry> e : current.entrySet()) {
+        Entry entry = e.getValue();
+        writer.write(e.getKey() + DELIMITER + entry.newestModificationTime + DELIMITER + entry.sampleFile + DELIMITER
+          + entry.fingerprint);
+        writer.newLine();
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Cannot replace checkpoint " + file.getPath());
+    }
+    if (!tmp.renameTo(file)) {
+      throw new IOException("Cannot move checkpoint " + tmp.getPath() + " to " + file.getPath());
+    }
+  }
+
+  /**
+   * @return the entry of the previous run, or null if the dataset is new
+   */
+  public Entry getPrevious(String datasetPath) {
+    return previous.get(datasetPath);
+  }
+
+  /**
+   * Carry over the previous entry of an unchanged dataset.
+   */
+  public void keep(String datasetPath) {
+    Entry entry = previous.get(datasetPath);
+    if (entry != null) {
+      current.put(datasetPath, entry);
+    }
+  }
+
+  public void update(String datasetPath, long newestModificationTime, String sampleFile, String fingerprint) {
+    current.put(datasetPath, new Entry(newestModificationTime, sampleFile, fingerprint == null ? "" : fingerprint));
+  }
+
+  public int size() {
+    return current.size();
+  }
+
+  /**
+   * Path of the sample file relative to the dataset, empty if the dataset itself is a file.
+   */
+  public static String relativize(Path datasetPath, Path sampleFile) {
+    String dataset = datasetPath.toUri().getPath();
+    String sample = sampleFile.toUri().getPath();
+    if (sample.length() > dataset.length() && sample.startsWith(dataset)) {
+      return sample.substring(dataset.length() + 1);
+    }
+    return "";
+  }
+
+  public static String fingerprint(String schema) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("MD5");
+      byte[] digest = md.digest(schema.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows;
+
+import wherehows.common.schemas.DatasetJsonRecord;
+import wherehows.common.schemas.SampleDataRecord;
+
+
+/**
+ * Schema and sample data of one dataset, produced by a single open of its sample file.
+ */
+public class DatasetAnalysis {
+  private final DatasetJsonRecord schema;
+  private final SampleDataRecord sampleData;
+
+  public DatasetAnalysis(DatasetJsonRecord schema, SampleDataRecord sampleData) {
+    this.schema = schema;
+    this.sampleData = sampleData;
+  }
+
+  public DatasetJsonRecord getSchema() {
+    return schema;
+  }
+
+  public SampleDataRecord getSampleData() {
+    return sampleData;
+  }
+
+  public void setAbstractPath(String abstractPath) {
+    if (schema != null) {
+      schema.setAbstractPath(abstractPath);
+    }
+    if (sampleData != null) {
+      sampleData.setAbstractPath(abstractPath);
+    }
+  }
+}
@@ -13,10 +13,11 @@
  */
 package wherehows;
 
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import wherehows.common.schemas.DatasetJsonRecord;
-import wherehows.common.schemas.DatasetSchemaRecord;
 import wherehows.common.schemas.SampleDataRecord;
 
 import java.io.IOException;
@@ -26,16 +27,65 @@ import java.io.IOException;
  * Created by zsun on 8/18/15.
  */
 public abstract class FileAnalyzer {
+  /** Number of records collected as sample data */
+  public static final int SAMPLE_SIZE = 10;
+
+  /**
+   * Taken before every open of a file, the crawler hands one out per namenode rpc.
+   */
+  public interface OpenPermit {
+    void acquire()
+      throws IOException;
+  }
+
+  static final OpenPermit UNLIMITED = new OpenPermit() {
+    @Override
+    public void acquire() {
+    }
+  };
+
   String STORAGE_TYPE;
   FileSystem fs;
+  OpenPermit openPermit = UNLIMITED;
 
   public FileAnalyzer(FileSystem fs) {
     this.fs = fs;
   }
 
-  public abstract DatasetJsonRecord getSchema(Path path)
-    throws IOException;
+  /**
+   * Magic bytes at the beginning of the files this analyzer reads. Analyzers without magic return null and are
+   * only tried for files no other analyzer claims.
+   */
+  public byte[] getMagic() {
+    return null;
+  }
 
-  public abstract SampleDataRecord getSampleData(Path path)
+  /**
+   * Read the schema and the first records of a file from a stream opened by the caller.
+   * @param fstat status of the file, used for the length, owner, group, permission and modification time
+   * @param in the open file, at any position, it is left open
+   * @param sampleSize maximum number of sample records
+   */
+  public abstract DatasetAnalysis analyze(FileStatus fstat, FSDataInputStream in, int sampleSize)
     throws IOException;
+
+  FSDataInputStream open(Path path)
+    throws IOException {
+    openPermit.acquire();
+    return fs.open(path);
+  }
+
+  public DatasetJsonRecord getSchema(Path path)
+    throws IOException {
+    try (FSDataInputStream in = open(path)) {
+      return analyze(fs.getFileStatus(path), in, 0).getSchema();
+    }
+  }
+
+  public SampleDataRecord getSampleData(Path path)
+    throws IOException {
+    try (FSDataInputStream in = open(path)) {
+      return analyze(fs.getFileStatus(path), in, SAMPLE_SIZE).getSampleData();
+    }
+  }
 }
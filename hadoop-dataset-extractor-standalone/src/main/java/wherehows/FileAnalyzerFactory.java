@@ -13,14 +13,17 @@
  */
 package wherehows;
 
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import wherehows.common.schemas.DatasetJsonRecord;
-import wherehows.common.schemas.DatasetSchemaRecord;
 import wherehows.common.schemas.SampleDataRecord;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -29,46 +32,133 @@ import java.util.List;
  */
 public class FileAnalyzerFactory {
   List<FileAnalyzer> allFileAnalyzer;
+  FileSystem fs;
+  FileAnalyzer.OpenPermit openPermit;
+  int maxMagicLength;
 
   public FileAnalyzerFactory(FileSystem fs) {
+    this(fs, FileAnalyzer.UNLIMITED);
+  }
+
+  /**
+   * @param openPermit taken before every open of a file, by the factory and by the analyzers
+   */
+  public FileAnalyzerFactory(FileSystem fs, FileAnalyzer.OpenPermit openPermit) {
+    this.fs = fs;
+    this.openPermit = openPermit;
     allFileAnalyzer = new ArrayList<FileAnalyzer>();
     allFileAnalyzer.add(new AvroFileAnalyzer(fs));
-    // allFileAnalyzer.add(new OrcFileAnalyzer(fs));
+    allFileAnalyzer.add(new OrcFileAnalyzer(fs));
+    allFileAnalyzer.add(new ParquetFileAnalyzer(fs));
     // linkedin specific
     // allFileAnalyzer.add(new BinaryJsonFileAnalyzer(fs));
-  }
 
-  // iterate through all possibilities
-  public SampleDataRecord getSampleData(Path path, String abstractPath) {
-    SampleDataRecord sampleData = null;
     for (FileAnalyzer fileAnalyzer : allFileAnalyzer) {
-      try {
-        sampleData = fileAnalyzer.getSampleData(path);
-        sampleData.setAbstractPath(abstractPath);
-      } catch (Exception ignored) {
+      fileAnalyzer.openPermit = openPermit;
+      if (fileAnalyzer.getMagic() != null) {
+        maxMagicLength = Math.max(maxMagicLength, fileAnalyzer.getMagic().length);
       }
-      if (sampleData != null) {
+    }
+  }
+
+  /**
+   * Read the bytes the magics are compared with, the file may be shorter.
+   */
+  byte[] readHeader(FSDataInputStream in)
+    throws IOException {
+    byte[] header = new byte[maxMagicLength];
+    int length = 0;
+    while (length < header.length) {
+      int n = in.read(header, length, header.length - length);
+      if (n < 0) {
         break;
       }
+      length += n;
     }
-    return sampleData;
+    return length == header.length ? header : Arrays.copyOf(header, length);
   }
 
-  public DatasetJsonRecord getSchema(Path path, String abstractPath)
-    throws IOException {
-    DatasetJsonRecord schema = null;
+  /**
+   * Pick the analyzers for a file from the magic bytes at its beginning.
+   * @return the analyzer whose magic matches, otherwise the analyzers that do not declare a magic
+   */
+  List<FileAnalyzer> candidates(byte[] header) {
+    List<FileAnalyzer> fallback = new ArrayList<FileAnalyzer>();
     for (FileAnalyzer fileAnalyzer : allFileAnalyzer) {
-      System.out.println("try file analyzer: " + fileAnalyzer.STORAGE_TYPE);
+      byte[] magic = fileAnalyzer.getMagic();
+      if (magic == null) {
+        fallback.add(fileAnalyzer);
+      } else if (startsWith(header, magic)) {
+        return Collections.singletonList(fileAnalyzer);
+      }
+    }
+    return fallback;
+  }
+
+  private static boolean startsWith(byte[] header, byte[] magic) {
+    if (header.length < magic.length) {
+      return false;
+    }
+    for (int i = 0; i < magic.length; i++) {
+      if (header[i] != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get schema and sample data of a file, using the analyzer that matches its magic bytes. The file is opened once,
+   * the stream the magic was read from is handed to the analyzers.
+   * @param fstat the file to analyze
+   * @param abstractPath the dataset path the records are reported under
+   * @return the analysis, or null if no analyzer can read the file
+   */
+  public DatasetAnalysis analyze(FileStatus fstat, String abstractPath) {
+    FSDataInputStream in;
+    List<FileAnalyzer> candidates;
+    try {
+      openPermit.acquire();
+      in = fs.open(fstat.getPath());
+    } catch (IOException e) {
+      System.out.println("Debug: cannot read " + fstat.getPath() + " " + e);
+      return null;
+    }
+    try {
       try {
-        schema = fileAnalyzer.getSchema(path);
-        schema.setAbstractPath(abstractPath);
-      } catch (Exception ignored) {
-        System.out.println("Debug: " + ignored);
+        candidates = candidates(readHeader(in));
+      } catch (IOException e) {
+        System.out.println("Debug: cannot read " + fstat.getPath() + " " + e);
+        return null;
       }
-      if (schema != null) {
-        break;
+      for (FileAnalyzer fileAnalyzer : candidates) {
+        try {
+          DatasetAnalysis analysis = fileAnalyzer.analyze(fstat, in, FileAnalyzer.SAMPLE_SIZE);
+          analysis.setAbstractPath(abstractPath);
+          return analysis;
+        } catch (Exception ignored) {
+          System.out.println("Debug: " + fileAnalyzer.STORAGE_TYPE + " " + ignored);
+        }
+      }
+      return null;
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {
+        System.out.println("Debug: cannot close " + fstat.getPath() + " " + e);
       }
     }
-    return schema;
+  }
+
+  public SampleDataRecord getSampleData(Path path, String abstractPath)
+    throws IOException {
+    DatasetAnalysis analysis = analyze(fs.getFileStatus(path), abstractPath);
+    return analysis == null ? null : analysis.getSampleData();
+  }
+
+  public DatasetJsonRecord getSchema(Path path, String abstractPath)
+    throws IOException {
+    DatasetAnalysis analysis = analyze(fs.getFileStatus(path), abstractPath);
+    return analysis == null ? null : analysis.getSchema();
   }
 }
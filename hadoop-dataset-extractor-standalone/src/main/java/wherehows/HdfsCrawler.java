@@ -0,0 +1,397 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.security.AccessControlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.utils.RateLimiter;
+
+
+/**
+ * Work-stealing crawler over a hdfs directory tree.
+ * <p>
+ * Every directory is a fork-join task, so one large folder is split across all threads instead of pinning one.
+ * Each directory is listed exactly once; the listing is handed to the dataset detection and to the sample file
+ * lookup, which never list or summarize the same directory again. All NameNode RPCs go through a shared
+ * {@link RateLimiter}.
+ * <p>
+ * With a {@link CheckpointManifest} the crawler runs incrementally : a dataset is skipped when neither the dataset
+ * directory nor any directory on the path to its previous sample file was modified since the last run. That costs one
+ * getFileStatus per level instead of listing the partitions and opening the data file again.
+ */
+public class HdfsCrawler {
+  private static final Logger logger = LoggerFactory.getLogger(HdfsCrawler.class);
+
+  private static final Pattern HIDDEN_DIR = Pattern.compile("(_|\\.|tmp|temp|_distcp|\\*|test).*");
+  private static final Pattern PARTITION_TYPE_DIR =
+    Pattern.compile("daily|hourly|monthly|weekly|year=[0-9]+|month=[0-9]+|country=.*");
+  private static final Pattern PARTITION_DIR = Pattern.compile(
+    "[0-9\\-_]+\\w+[0-9\\-_]+|\\w+_day=[0-9\\-_]+|\\p{Alnum}+=[0-9\\-_]+|[0-9\\-_]+|[0-9]{14}_\\w+|[0-9]{8}_\\w+|[0-9]{4}-[0-9]{2}-[0-9]{2}.*");
+  private static final Pattern SKIPPED_TABLE = Pattern.compile("(_|\\.|tmp|temp|stg|test|\\*).*");
+  private static final Pattern SCHEMA_FILE = Pattern.compile("\\.pig_schema|.*\\.avsc|\\.dataset");
+  private static final Pattern TEMPORARY_FILE = Pattern.compile("(_|\\.|tmp|temp).*");
+  private static final Pattern HIDDEN_FILE = Pattern.compile("(_|\\.).*");
+  private static final Pattern NON_DATA_FILE = Pattern.compile("(_|\\.).*|.*\\.(jar|json|txt|csv|tsv|zip|gz|lzo)");
+
+  private static final long PROGRESS_INTERVAL_SECONDS = 60;
+
+  /**
+   * Callback invoked for every dataset found by the crawler.
+   */
+  public interface DatasetHandler {
+    /**
+     * @param datasetPath the directory (or file) that represents the dataset
+     * @param sampleFile the file to read the schema and sample data from
+     * @param newestModificationTime newest modification time seen on the way from the dataset to the sample file
+     */
+    void handle(Path datasetPath, FileStatus sampleFile, long newestModificationTime)
+      throws Exception;
+  }
+
+  private final FileSystem fs;
+  private final int parallelism;
+  private final RateLimiter rateLimiter;
+  private final CheckpointManifest manifest;
+
+  private final AtomicLong directoriesListed = new AtomicLong();
+  private final AtomicLong rpcCount = new AtomicLong();
+  private final AtomicLong datasetsFound = new AtomicLong();
+  private final AtomicLong datasetsUnchanged = new AtomicLong();
+  private final AtomicLong errorCount = new AtomicLong();
+
+  public HdfsCrawler(FileSystem fs, int parallelism, double maxRpcPerSecond) {
+    this(fs, parallelism, maxRpcPerSecond, null);
+  }
+
+  /**
+   * @param manifest checkpoint of the previous run, null to trace every dataset
+   */
+  public HdfsCrawler(FileSystem fs, int parallelism, double maxRpcPerSecond, CheckpointManifest manifest) {
+    this.fs = fs;
+    this.parallelism = parallelism > 0 ? parallelism : 1;
+    this.rateLimiter = new RateLimiter(maxRpcPerSecond);
+    this.manifest = manifest;
+  }
+
+  /**
+   * Crawl all the root folders and invoke the handler for each dataset, blocking until the crawl is done.
+   * @param roots start points of the crawl
+   * @param handler dataset callback, may be invoked concurrently
+   */
+  public void crawl(List<Path> roots, DatasetHandler handler)
+    throws IOException, InterruptedException {
+    final long startTime = System.currentTimeMillis();
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    reporter.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        logProgress(startTime, pool.getQueuedTaskCount());
+      }
+    }, PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    try {
+      List<DirectoryTask> rootTasks = new ArrayList<>();
+      for (Path root : roots) {
+        FileStatus rootStatus;
+        try {
+          rootStatus = getFileStatus(root);
+        } catch (IOException e) {
+          logger.info("path : " + root.toUri().getPath() + " doesn't exist or is not accessible : " + e.getMessage());
+          errorCount.incrementAndGet();
+          continue;
+        }
+        if (rootStatus.isDirectory()) {
+          rootTasks.add(new DirectoryTask(rootStatus, handler));
+        } else {
+          traceDataset(rootStatus, null, handler);
+        }
+      }
+      for (DirectoryTask task : rootTasks) {
+        pool.execute(task);
+      }
+      for (DirectoryTask task : rootTasks) {
+        task.join();
+      }
+    } finally {
+      reporter.shutdownNow();
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    logProgress(startTime, 0);
+  }
+
+  private void logProgress(long startTime, long queuedTasks) {
+    double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+    logger.info(String.format(
+      "crawl progress : %d directories listed (%.1f/s), %d namenode rpc (%.1f/s), %d datasets, %d unchanged, %d errors, %d queued",
+      directoriesListed.get(), directoriesListed.get() / seconds, rpcCount.get(), rpcCount.get() / seconds,
+      datasetsFound.get(), datasetsUnchanged.get(), errorCount.get(), queuedTasks));
+  }
+
+  public long getDirectoriesListed() {
+    return directoriesListed.get();
+  }
+
+  public long getRpcCount() {
+    return rpcCount.get();
+  }
+
+  public long getDatasetsFound() {
+    return datasetsFound.get();
+  }
+
+  public long getDatasetsUnchanged() {
+    return datasetsUnchanged.get();
+  }
+
+  public long getErrorCount() {
+    return errorCount.get();
+  }
+
+  FileStatus[] listStatus(Path path)
+    throws IOException {
+    acquireRpc();
+    directoriesListed.incrementAndGet();
+    return fs.listStatus(path);
+  }
+
+  FileStatus getFileStatus(Path path)
+    throws IOException {
+    acquireRpc();
+    return fs.getFileStatus(path);
+  }
+
+  /**
+   * Permit for the opens of the file analyzers, so they count against the same rpc rate as the crawl.
+   */
+  public FileAnalyzer.OpenPermit openPermit() {
+    return new FileAnalyzer.OpenPermit() {
+      @Override
+      public void acquire()
+        throws IOException {
+        acquireRpc();
+      }
+    };
+  }
+
+  private void acquireRpc()
+    throws IOException {
+    try {
+      rateLimiter.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for namenode rpc permit", e);
+    }
+    rpcCount.incrementAndGet();
+  }
+
+  /**
+   * Decide whether a directory is a dataset from the listing of its sub directories
+   *
+   * @param listing children of the directory
+   * @return true : empty dataset or lowest level dataset
+   * false : may have sub dataset
+   */
+  static boolean isTable(FileStatus[] listing) {
+    int datePartitionCount = 0;
+    int dataSetCount = 0;
+
+    for (FileStatus fstat : listing) {
+      String objName = fstat.getPath().getName();
+      if (!fstat.isDirectory() || HIDDEN_DIR.matcher(objName).matches()) {
+        // file or hidden/temporary fs object
+        continue;
+      }
+      if (PARTITION_TYPE_DIR.matcher(objName).matches() || PARTITION_DIR.matcher(objName).matches()) {
+        // temporal partition
+        datePartitionCount++;
+      } else {
+        // sub directory
+        dataSetCount++;
+      }
+    }
+
+    return listing.length == 0 || dataSetCount == 0 || datePartitionCount > 0;
+  }
+
+  /**
+   * Find the file that represents one dataset and hand it to the handler.
+   *
+   * @param datasetStatus status of the dataset directory or file
+   * @param listing the children of the dataset directory if already listed, otherwise null
+   */
+  void traceDataset(FileStatus datasetStatus, FileStatus[] listing, DatasetHandler handler) {
+    Path datasetPath = datasetStatus.getPath();
+    logger.info("trace table : " + datasetPath.toUri().getPath());
+    if (SKIPPED_TABLE.matcher(datasetPath.getName()).matches()) { // skip _temporary _schema.avsc
+      return;
+    }
+
+    if (manifest != null && isUnchanged(datasetStatus)) {
+      manifest.keep(datasetPath.toUri().getPath());
+      datasetsUnchanged.incrementAndGet();
+      return;
+    }
+
+    FileStatus fstat = datasetStatus;
+    FileStatus[] children = listing;
+    long newestModificationTime = datasetStatus.getModificationTime();
+    try {
+      while (fstat.isDirectory()) {
+        if (children == null) {
+          children = listStatus(fstat.getPath());
+        }
+        if (children.length == 0) { // empty directory
+          logger.info(fstat.getPath().toUri().getPath() + " is empty.");
+          return;
+        }
+
+        FileStatus visible = null;
+        for (int i = children.length - 1; i >= 0; i--) { // iterate from the last item back to the first
+          FileStatus candidate = children[i];
+          String name = candidate.getPath().getName();
+
+          if (SCHEMA_FILE.matcher(name).matches()) {
+            visible = candidate;
+            break;
+          } else if (name.equals("hourly") && i > 0 && children[i - 1].getPath().getName().equals("daily")) {
+            continue; // try to traverse "daily" instead of "hourly" when possible
+          } else if (TEMPORARY_FILE.matcher(name).matches()) {
+            continue;
+          }
+
+          if (!candidate.isDirectory() && !NON_DATA_FILE.matcher(name).matches()) {
+            visible = candidate;
+            break;
+          }
+          if (candidate.isDirectory() && !HIDDEN_FILE.matcher(name).matches()) {
+            // access is checked when the directory is listed in the next iteration
+            visible = candidate;
+            break;
+          }
+        }
+        if (visible == null) {
+          return;
+        }
+        fstat = visible;
+        children = null;
+        newestModificationTime = Math.max(newestModificationTime, fstat.getModificationTime());
+      }
+    } catch (AccessControlException e) {
+      logger.error("* TblInfo() Cannot access " + fstat.getPath().toUri().getPath());
+      errorCount.incrementAndGet();
+      return;
+    } catch (IOException e) {
+      logger.error("* TblInfo() Failed to list " + fstat.getPath().toUri().getPath() + " : " + e.getMessage());
+      errorCount.incrementAndGet();
+      return;
+    }
+
+    datasetsFound.incrementAndGet();
+    try {
+      handler.handle(datasetPath, fstat, newestModificationTime);
+    } catch (Exception e) {
+      logger.error("* Failed to collect metadata of " + datasetPath.toUri().getPath(), e);
+      errorCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Check the dataset against the checkpoint. Adding a partition changes the modification time of its parent
+   * directory, so it is enough to look at the directories on the path to the previous sample file. An entry
+   * without a fingerprint was written for a dataset whose schema could not be read and is traced again.
+   */
+  boolean isUnchanged(FileStatus datasetStatus) {
+    Path datasetPath = datasetStatus.getPath();
+    CheckpointManifest.Entry entry = manifest.getPrevious(datasetPath.toUri().getPath());
+    if (entry == null || entry.getFingerprint().isEmpty() || datasetStatus.getModificationTime() > entry.getNewestModificationTime()) {
+      return false;
+    }
+
+    try {
+      Path p = entry.getSampleFile().isEmpty() ? datasetPath : new Path(datasetPath, entry.getSampleFile());
+      for (; p != null && !p.equals(datasetPath); p = p.getParent()) {
+        if (getFileStatus(p).getModificationTime() > entry.getNewestModificationTime()) {
+          return false;
+        }
+      }
+    } catch (IOException e) {
+      // the previous sample file or one of its parents is gone
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * One directory of the crawl. Lists the directory once, then either traces it as a dataset or forks a task
+   * per sub directory.
+   */
+  class DirectoryTask extends RecursiveAction {
+    private final FileStatus directory;
+    private final DatasetHandler handler;
+
+    DirectoryTask(FileStatus directory, DatasetHandler handler) {
+      this.directory = directory;
+      this.handler = handler;
+    }
+
+    @Override
+    protected void compute() {
+      Path path = directory.getPath();
+      FileStatus[] listing;
+      try {
+        listing = listStatus(path);
+      } catch (AccessControlException e) {
+        logger.error("* scanPath(e) Permission denied. Cannot access: " + path.toUri().getPath() + " owner:"
+          + directory.getOwner() + " group: " + directory.getGroup());
+        errorCount.incrementAndGet();
+        return;
+      } catch (IOException e) {
+        logger.error("* scanPath(e) Failed to list " + path.toUri().getPath() + " : " + e.getMessage());
+        errorCount.incrementAndGet();
+        return;
+      }
+
+      if (isTable(listing)) {
+        traceDataset(directory, listing, handler);
+        return;
+      }
+
+      List<DirectoryTask> subTasks = new ArrayList<>();
+      for (FileStatus child : listing) {
+        if (child.isDirectory()) {
+          subTasks.add(new DirectoryTask(child, handler));
+        } else {
+          traceDataset(child, null, handler);
+        }
+      }
+      invokeAll(subTasks);
+    }
+  }
+}
@@ -13,24 +13,36 @@
  */
 package wherehows;
 
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.io.orc.OrcFile;
 import org.apache.hadoop.hive.ql.io.orc.Reader;
 import org.apache.hadoop.hive.ql.io.orc.RecordReader;
+import org.apache.hadoop.hive.ql.io.orc.StripeInformation;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import wherehows.common.schemas.DatasetJsonRecord;
 import wherehows.common.schemas.SampleDataRecord;
+import wherehows.common.utils.StringUtil;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 
 /**
  * Created by zsun on 8/18/15.
  */
 public class OrcFileAnalyzer extends FileAnalyzer {
+  private static final byte[] MAGIC = "ORC".getBytes(StandardCharsets.US_ASCII);
 
   public OrcFileAnalyzer(FileSystem fs) {
     super(fs);
@@ -38,36 +50,127 @@ public class OrcFileAnalyzer extends FileAnalyzer {
   }
 
   @Override
-  public DatasetJsonRecord getSchema(Path targetFilePath)
+  public byte[] getMagic() {
+    return MAGIC;
+  }
+
+  /**
+   * Schema, row count and compression come from the postscript and footer only. The sample rows are read from the
+   * byte range of the first stripe, so no other stripe is touched.
+   * <p>
+   * The hive reader can not read from the caller's stream, it opens the file itself for the footer and again for
+   * the stripe. Each of those opens takes a permit.
+   */
+  @Override
+  public DatasetAnalysis analyze(FileStatus fstat, FSDataInputStream in, int sampleSize)
     throws IOException {
+    Path targetFilePath = fstat.getPath();
+    openPermit.acquire();
     Reader orcReader = OrcFile.createReader(fs, targetFilePath);
     String codec = String.valueOf(orcReader.getCompression());
-    String schemaString = orcReader.getObjectInspector().getTypeName();
+    ObjectInspector inspector = orcReader.getObjectInspector();
+    String schemaString = inspector instanceof StructObjectInspector
+      ? toSchemaJson(targetFilePath.getName(), (StructObjectInspector) inspector)
+      : SchemaJson.record(targetFilePath.getName(), new ArrayList<String>());
     String storage = STORAGE_TYPE;
     String abstractPath = targetFilePath.toUri().getPath();
 
-    FileStatus fstat = fs.getFileStatus(targetFilePath);
     DatasetJsonRecord datasetJsonRecord =
       new DatasetJsonRecord(schemaString, abstractPath, fstat.getModificationTime(), fstat.getOwner(), fstat.getGroup(),
         fstat.getPermission().toString(), codec, storage, "");
+    datasetJsonRecord.setRecordCount(orcReader.getNumberOfRows());
+
+    List<Object> list = new ArrayList<Object>(sampleSize);
+    List<StripeInformation> stripes = orcReader.getStripes();
+    if (sampleSize > 0 && !stripes.isEmpty()) {
+      StripeInformation firstStripe = stripes.get(0);
+      openPermit.acquire();
+      RecordReader recordReader =
+        orcReader.rowsOptions(new Reader.Options().range(firstStripe.getOffset(), firstStripe.getLength()));
+      try {
+        Object row = null;
+        while (recordReader.hasNext() && list.size() < sampleSize) {
+          row = recordReader.next(row);
+          list.add(StringUtil.removeControlCharacters(toJson(row, inspector)));
+        }
+      } finally {
+        recordReader.close();
+      }
+    }
+    SampleDataRecord sampleDataRecord = new SampleDataRecord(abstractPath, list);
 
-    return datasetJsonRecord;
+    return new DatasetAnalysis(datasetJsonRecord, sampleDataRecord);
   }
 
-  @Override
-  public SampleDataRecord getSampleData(Path targetFilePath)
-    throws IOException {
-    Reader orcReader = OrcFile.createReader(fs, targetFilePath);
-    RecordReader recordReader = orcReader.rows();
-    int count = 0;
-    List<Object> list = new ArrayList<Object>();
-    Object row = null;
-    while (recordReader.hasNext() && count < 10) {
-      count++;
-      row = recordReader.next(row);
-      list.add(row.toString().replaceAll("[\\n\\r\\p{C}]", ""));
+  static String toSchemaJson(String name, StructObjectInspector inspector) {
+    List<String> fields = new ArrayList<String>();
+    for (StructField field : inspector.getAllStructFieldRefs()) {
+      fields.add(SchemaJson.field(field.getFieldName(), toTypeJson(field.getFieldName(), field.getFieldObjectInspector())));
+    }
+    return SchemaJson.record(name, fields);
+  }
+
+  static String toTypeJson(String name, ObjectInspector inspector) {
+    switch (inspector.getCategory()) {
+      case STRUCT:
+        return toSchemaJson(name, (StructObjectInspector) inspector);
+      case LIST:
+        return SchemaJson.array(toTypeJson(name, ((ListObjectInspector) inspector).getListElementObjectInspector()));
+      case MAP:
+        return SchemaJson.map(toTypeJson(name, ((MapObjectInspector) inspector).getMapValueObjectInspector()));
+      default:
+        return SchemaJson.quote(inspector.getTypeName());
+    }
+  }
+
+  static String toJson(Object data, ObjectInspector inspector) {
+    if (data == null) {
+      return "null";
+    }
+    StringBuilder sb = new StringBuilder();
+    switch (inspector.getCategory()) {
+      case PRIMITIVE:
+        Object value = ((PrimitiveObjectInspector) inspector).getPrimitiveJavaObject(data);
+        if (value instanceof Number || value instanceof Boolean) {
+          return value.toString();
+        } else if (value instanceof byte[]) {
+          return SchemaJson.quote("** " + ((byte[]) value).length + " bytes binary data **");
+        }
+        return SchemaJson.quote(String.valueOf(value));
+      case STRUCT:
+        StructObjectInspector structInspector = (StructObjectInspector) inspector;
+        sb.append('{');
+        for (StructField field : structInspector.getAllStructFieldRefs()) {
+          if (sb.length() > 1) {
+            sb.append(", ");
+          }
+          sb.append(SchemaJson.quote(field.getFieldName())).append(": ")
+            .append(toJson(structInspector.getStructFieldData(data, field), field.getFieldObjectInspector()));
+        }
+        return sb.append('}').toString();
+      case LIST:
+        ListObjectInspector listInspector = (ListObjectInspector) inspector;
+        sb.append('[');
+        for (Object element : listInspector.getList(data)) {
+          if (sb.length() > 1) {
+            sb.append(", ");
+          }
+          sb.append(toJson(element, listInspector.getListElementObjectInspector()));
+        }
+        return sb.append(']').toString();
+      case MAP:
+        MapObjectInspector mapInspector = (MapObjectInspector) inspector;
+        sb.append('{');
+        for (Map.Entry<?, ?> entry : mapInspector.getMap(data).entrySet()) {
+          if (sb.length() > 1) {
+            sb.append(", ");
+          }
+          sb.append(SchemaJson.quote(String.valueOf(entry.getKey()))).append(": ")
+            .append(toJson(entry.getValue(), mapInspector.getMapValueObjectInspector()));
+        }
+        return sb.append('}').toString();
+      default:
+        return SchemaJson.quote(data.toString());
     }
-    SampleDataRecord sampleDataRecord = new SampleDataRecord(targetFilePath.toUri().getPath(), list);
-    return sampleDataRecord;
   }
 }
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import wherehows.common.schemas.DatasetJsonRecord;
+import wherehows.common.schemas.SampleDataRecord;
+import wherehows.common.utils.StringUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Analyze parquet files. Schema, row count and compression come from the footer, read from the caller's stream;
+ * sample rows are read from the first row group only.
+ */
+public class ParquetFileAnalyzer extends FileAnalyzer {
+  private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+  public ParquetFileAnalyzer(FileSystem fs) {
+    super(fs);
+    STORAGE_TYPE = "parquet";
+  }
+
+  @Override
+  public byte[] getMagic() {
+    return MAGIC;
+  }
+
+  /**
+   * The footer is read from the open stream. The reader of the first row group opens the file itself, that open
+   * takes a permit.
+   */
+  @Override
+  public DatasetAnalysis analyze(FileStatus fstat, FSDataInputStream in, int sampleSize)
+    throws IOException {
+    Path targetFilePath = fstat.getPath();
+    ParquetMetadata footer = readFooter(in, fstat.getLen());
+    MessageType schema = footer.getFileMetaData().getSchema();
+    List<BlockMetaData> blocks = footer.getBlocks();
+
+    long rowCount = 0;
+    for (BlockMetaData block : blocks) {
+      rowCount += block.getRowCount();
+    }
+    String codec = "UNCOMPRESSED";
+    if (!blocks.isEmpty() && !blocks.get(0).getColumns().isEmpty()) {
+      codec = String.valueOf(blocks.get(0).getColumns().get(0).getCodec());
+    }
+    String storage = STORAGE_TYPE;
+    String abstractPath = targetFilePath.toUri().getPath();
+
+    DatasetJsonRecord datasetJsonRecord =
+      new DatasetJsonRecord(toSchemaJson(schema), abstractPath, fstat.getModificationTime(), fstat.getOwner(),
+        fstat.getGroup(), fstat.getPermission().toString(), codec, storage, "");
+    datasetJsonRecord.setRecordCount(rowCount);
+
+    List<Object> list = new ArrayList<Object>(sampleSize);
+    if (sampleSize > 0 && !blocks.isEmpty()) {
+      openPermit.acquire();
+      try (ParquetFileReader reader = new ParquetFileReader(fs.getConf(), footer.getFileMetaData(), targetFilePath,
+        Collections.singletonList(blocks.get(0)), schema.getColumns())) {
+        PageReadStore rowGroup = reader.readNextRowGroup();
+        if (rowGroup != null) {
+          MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(schema);
+          RecordReader<Group> recordReader = columnIO.getRecordReader(rowGroup, new GroupRecordConverter(schema));
+          long count = Math.min(sampleSize, rowGroup.getRowCount());
+          for (long i = 0; i < count; i++) {
+            list.add(StringUtil.removeControlCharacters(toJson(recordReader.read())));
+          }
+        }
+      }
+    }
+    SampleDataRecord sampleDataRecord = new SampleDataRecord(abstractPath, list);
+
+    return new DatasetAnalysis(datasetJsonRecord, sampleDataRecord);
+  }
+
+  /**
+   * Parse the footer at the end of the file : footer, footer length as 4 bytes little endian, magic.
+   */
+  static ParquetMetadata readFooter(FSDataInputStream in, long fileLength)
+    throws IOException {
+    int tailLength = 4 + MAGIC.length;
+    if (fileLength < MAGIC.length + tailLength) {
+      throw new IOException("too small to be a parquet file : " + fileLength + " bytes");
+    }
+    byte[] tail = new byte[tailLength];
+    in.readFully(fileLength - tailLength, tail);
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (tail[4 + i] != MAGIC[i]) {
+        throw new IOException("no parquet magic at the end of the file");
+      }
+    }
+    int footerLength = (tail[0] & 0xff) | (tail[1] & 0xff) << 8 | (tail[2] & 0xff) << 16 | (tail[3] & 0xff) << 24;
+    long footerStart = fileLength - tailLength - footerLength;
+    if (footerLength < 0 || footerStart < MAGIC.length) {
+      throw new IOException("corrupted parquet footer length : " + footerLength);
+    }
+    byte[] footer = new byte[footerLength];
+    in.readFully(footerStart, footer);
+    return new ParquetMetadataConverter().readParquetMetadata(new ByteArrayInputStream(footer),
+      ParquetMetadataConverter.NO_FILTER);
+  }
+
+  static String toSchemaJson(GroupType group) {
+    List<String> fields = new ArrayList<String>();
+    for (Type field : group.getFields()) {
+      fields.add(SchemaJson.field(field.getName(), toTypeJson(field)));
+    }
+    return SchemaJson.record(group.getName(), fields);
+  }
+
+  static String toTypeJson(Type type) {
+    String typeJson;
+    if (type.isPrimitive()) {
+      typeJson = type.getOriginalType() != null
+        ? SchemaJson.quote(type.getOriginalType().name().toLowerCase())
+        : SchemaJson.quote(type.asPrimitiveType().getPrimitiveTypeName().name().toLowerCase());
+    } else {
+      typeJson = toSchemaJson(type.asGroupType());
+    }
+
+    if (type.isRepetition(Type.Repetition.REPEATED)) {
+      return SchemaJson.array(typeJson);
+    } else if (type.isRepetition(Type.Repetition.OPTIONAL)) {
+      return SchemaJson.nullable(typeJson);
+    }
+    return typeJson;
+  }
+
+  static String toJson(Group group) {
+    GroupType type = group.getType();
+    StringBuilder sb = new StringBuilder();
+    sb.append('{');
+    for (int i = 0; i < type.getFieldCount(); i++) {
+      Type field = type.getType(i);
+      int count = group.getFieldRepetitionCount(i);
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(SchemaJson.quote(field.getName())).append(": ");
+      if (field.isRepetition(Type.Repetition.REPEATED)) {
+        sb.append('[');
+        for (int j = 0; j < count; j++) {
+          if (j > 0) {
+            sb.append(", ");
+          }
+          sb.append(toJson(group, i, j, field));
+        }
+        sb.append(']');
+      } else {
+        sb.append(count == 0 ? "null" : toJson(group, i, 0, field));
+      }
+    }
+    return sb.append('}').toString();
+  }
+
+  private static String toJson(Group group, int fieldIndex, int index, Type field) {
+    if (!field.isPrimitive()) {
+      return toJson(group.getGroup(fieldIndex, index));
+    }
+    switch (field.asPrimitiveType().getPrimitiveTypeName()) {
+      case INT32:
+      case INT64:
+      case FLOAT:
+      case DOUBLE:
+      case BOOLEAN:
+        return group.getValueToString(fieldIndex, index);
+      default:
+        return SchemaJson.quote(group.getValueToString(fieldIndex, index));
+    }
+  }
+}
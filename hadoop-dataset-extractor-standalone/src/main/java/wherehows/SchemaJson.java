@@ -0,0 +1,79 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows;
+
+/**
+ * Helpers to render columnar schemas and rows in the avro-like json the hdfs transform expects.
+ */
+class SchemaJson {
+
+  private SchemaJson() {
+  }
+
+  static String quote(String s) {
+    if (s == null) {
+      return "null";
+    }
+    StringBuilder sb = new StringBuilder(s.length() + 2);
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  static String field(String name, String typeJson) {
+    return "{\"name\":" + quote(name) + ",\"type\":" + typeJson + "}";
+  }
+
+  static String record(String name, Iterable<String> fields) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"type\":\"record\",\"name\":").append(quote(name)).append(",\"fields\":[");
+    boolean first = true;
+    for (String field : fields) {
+      if (!first) {
+        sb.append(',');
+      }
+      sb.append(field);
+      first = false;
+    }
+    return sb.append("]}").toString();
+  }
+
+  static String array(String itemsJson) {
+    return "{\"type\":\"array\",\"items\":" + itemsJson + "}";
+  }
+
+  static String map(String valuesJson) {
+    return "{\"type\":\"map\",\"values\":" + valuesJson + "}";
+  }
+
+  static String nullable(String typeJson) {
+    return "[\"null\"," + typeJson + "]";
+  }
+}
@@ -16,6 +16,7 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
+import wherehows.DatasetAnalysis;
 import wherehows.FileAnalyzerFactory;
 import wherehows.common.schemas.DatasetJsonRecord;
 import wherehows.common.schemas.DatasetSchemaRecord;
@@ -53,6 +54,21 @@ public class FileAnalyzerTest {
     assert sampleData != null;
   }
 
+  @Test
+  public void testAnalyzeAvro()
+    throws IOException, URISyntaxException {
+    URL url = ClassLoader.getSystemResource("test_sample.avro");
+    Path pt = new Path(url.toURI());
+    FileAnalyzerFactory fileAnalyzerFactory = new FileAnalyzerFactory(fs);
+    DatasetAnalysis analysis = fileAnalyzerFactory.analyze(fs.getFileStatus(pt), "test_sample.avro");
+
+    assert analysis != null;
+    assert analysis.getSchema() != null;
+    assert analysis.getSchema().toCsvString().contains("\"uri\":\"hdfs://test_sample.avro\"");
+    assert analysis.getSampleData() != null;
+    assert analysis.getSampleData().toCsvString().startsWith("hdfs://test_sample.avro");
+  }
+
   @Test(enabled = false)
   public void testOrc()
     throws IOException, URISyntaxException {
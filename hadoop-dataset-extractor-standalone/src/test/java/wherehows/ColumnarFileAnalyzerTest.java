@@ -0,0 +1,206 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.Writer;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.GroupWriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+
+/**
+ * Generates small ORC and Parquet files and checks footer-based schemas, bounded samples and magic-byte detection.
+ */
+public class ColumnarFileAnalyzerTest {
+  private static final int ROWS = 100;
+
+  File root;
+  FileSystem fs;
+  Configuration conf;
+  FileAnalyzerFactory fileAnalyzerFactory;
+
+  public static class Member {
+    int id;
+    String name;
+
+    Member(int id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+  @BeforeClass
+  public void setUp()
+    throws IOException {
+    root = Files.createTempDirectory("columnar_analyzer").toFile();
+    conf = new Configuration();
+    fs = FileSystem.getLocal(conf);
+    fileAnalyzerFactory = new FileAnalyzerFactory(fs);
+
+    writeOrc(path("member.orc"));
+    writeParquet(path("member.parquet"));
+    try (FileOutputStream out = new FileOutputStream(new File(root, "member.txt"))) {
+      out.write("1\tjohn\n2\tjane\n".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws IOException {
+    FileUtil.fullyDelete(root);
+  }
+
+  private Path path(String relative) {
+    return new Path(new File(root, relative).getAbsolutePath());
+  }
+
+  private void writeOrc(Path path)
+    throws IOException {
+    ObjectInspector inspector = ObjectInspectorFactory.getReflectionObjectInspector(Member.class,
+      ObjectInspectorFactory.ObjectInspectorOptions.JAVA);
+    Writer writer = OrcFile.createWriter(path, OrcFile.writerOptions(conf).inspector(inspector));
+    try {
+      for (int i = 0; i < ROWS; i++) {
+        writer.addRow(new Member(i, "member" + i));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void writeParquet(Path path)
+    throws IOException {
+    MessageType schema =
+      MessageTypeParser.parseMessageType("message member { required int32 id; optional binary name (UTF8); }");
+    Configuration parquetConf = new Configuration(conf);
+    GroupWriteSupport.setSchema(schema, parquetConf);
+    SimpleGroupFactory factory = new SimpleGroupFactory(schema);
+    try (ParquetWriter<Group> writer = new ParquetWriter<Group>(path, new GroupWriteSupport(),
+      CompressionCodecName.UNCOMPRESSED, ParquetWriter.DEFAULT_BLOCK_SIZE, ParquetWriter.DEFAULT_PAGE_SIZE,
+      ParquetWriter.DEFAULT_PAGE_SIZE, ParquetWriter.DEFAULT_IS_DICTIONARY_ENABLED,
+      ParquetWriter.DEFAULT_IS_VALIDATING_ENABLED, ParquetWriter.DEFAULT_WRITER_VERSION, parquetConf)) {
+      for (int i = 0; i < ROWS; i++) {
+        writer.write(factory.newGroup().append("id", i).append("name", "member" + i));
+      }
+    }
+  }
+
+  private List<FileAnalyzer> candidates(String relative)
+    throws IOException {
+    try (FSDataInputStream in = fs.open(path(relative))) {
+      return fileAnalyzerFactory.candidates(fileAnalyzerFactory.readHeader(in));
+    }
+  }
+
+  @Test
+  public void testDetect()
+    throws IOException {
+    List<FileAnalyzer> orc = candidates("member.orc");
+    Assert.assertEquals(orc.size(), 1);
+    Assert.assertEquals(orc.get(0).STORAGE_TYPE, "orc");
+
+    List<FileAnalyzer> parquet = candidates("member.parquet");
+    Assert.assertEquals(parquet.size(), 1);
+    Assert.assertEquals(parquet.get(0).STORAGE_TYPE, "parquet");
+
+    // every registered analyzer declares a magic, so a text file has no candidate at all
+    Assert.assertTrue(candidates("member.txt").isEmpty());
+    Assert.assertNull(fileAnalyzerFactory.analyze(fs.getFileStatus(path("member.txt")), "member.txt"));
+  }
+
+  @Test
+  public void testOrc()
+    throws IOException {
+    DatasetAnalysis analysis = fileAnalyzerFactory.analyze(fs.getFileStatus(path("member.orc")), "/data/member_orc");
+    Assert.assertNotNull(analysis);
+
+    String schema = analysis.getSchema().toCsvString();
+    Assert.assertTrue(schema.contains("\"storage_type\": \"orc\""), schema);
+    Assert.assertTrue(schema.contains("\"record_count\":" + ROWS), schema);
+    Assert.assertTrue(schema.contains("{\"name\":\"id\""), schema);
+    Assert.assertTrue(schema.contains("{\"name\":\"name\""), schema);
+
+    String sample = analysis.getSampleData().toCsvString();
+    Assert.assertTrue(sample.startsWith("hdfs:///data/member_orc"), sample);
+    Assert.assertTrue(sample.contains("member" + (FileAnalyzer.SAMPLE_SIZE - 1)), sample);
+    Assert.assertFalse(sample.contains("member" + FileAnalyzer.SAMPLE_SIZE), sample);
+  }
+
+  @Test
+  public void testParquet()
+    throws IOException {
+    DatasetAnalysis analysis =
+      fileAnalyzerFactory.analyze(fs.getFileStatus(path("member.parquet")), "/data/member_parquet");
+    Assert.assertNotNull(analysis);
+
+    String schema = analysis.getSchema().toCsvString();
+    Assert.assertTrue(schema.contains("\"storage_type\": \"parquet\""), schema);
+    Assert.assertTrue(schema.contains("\"record_count\":" + ROWS), schema);
+    Assert.assertTrue(schema.contains("{\"name\":\"id\""), schema);
+    Assert.assertTrue(schema.contains("{\"name\":\"name\""), schema);
+
+    String sample = analysis.getSampleData().toCsvString();
+    Assert.assertTrue(sample.startsWith("hdfs:///data/member_parquet"), sample);
+    Assert.assertTrue(sample.contains("member" + (FileAnalyzer.SAMPLE_SIZE - 1)), sample);
+    Assert.assertFalse(sample.contains("member" + FileAnalyzer.SAMPLE_SIZE), sample);
+  }
+
+  @Test
+  public void testOpensTakePermits()
+    throws IOException {
+    final AtomicInteger permits = new AtomicInteger();
+    FileAnalyzerFactory counted = new FileAnalyzerFactory(fs, new FileAnalyzer.OpenPermit() {
+      @Override
+      public void acquire() {
+        permits.incrementAndGet();
+      }
+    });
+
+    // the sniffing open, then the open of the first row group
+    Assert.assertNotNull(counted.analyze(fs.getFileStatus(path("member.parquet")), "/data/member_parquet"));
+    Assert.assertEquals(permits.get(), 2);
+
+    // the sniffing open, then the footer and stripe opens of the hive reader
+    permits.set(0);
+    Assert.assertNotNull(counted.analyze(fs.getFileStatus(path("member.orc")), "/data/member_orc"));
+    Assert.assertEquals(permits.get(), 3);
+
+    permits.set(0);
+    Assert.assertNull(counted.analyze(fs.getFileStatus(path("member.txt")), "member.txt"));
+    Assert.assertEquals(permits.get(), 1);
+  }
+}
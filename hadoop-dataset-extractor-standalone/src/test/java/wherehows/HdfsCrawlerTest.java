@@ -0,0 +1,198 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+
+public class HdfsCrawlerTest {
+  File root;
+  FileSystem fs;
+
+  @BeforeClass
+  public void setUp()
+    throws IOException {
+    root = Files.createTempDirectory("hdfs_crawler").toFile();
+    // /data/tracking/PageViewEvent/daily/2015/part-0.avro : partitioned dataset
+    touch("data/tracking/PageViewEvent/daily/2015/part-0.avro");
+    touch("data/tracking/PageViewEvent/hourly/2015/part-0.avro");
+    // /data/derived/member/part-0.avro, /data/derived/company/_SUCCESS + part-1.avro : plain datasets
+    touch("data/derived/member/part-0.avro");
+    touch("data/derived/company/_SUCCESS");
+    touch("data/derived/company/part-1.avro");
+    // hidden and temporary folders are not datasets
+    touch("data/derived/_temporary/part-0.avro");
+    // a file directly under a non-dataset folder is a dataset of its own
+    touch("data/derived/lookup.avro");
+    // empty dataset
+    new File(root, "data/derived/empty").mkdirs();
+
+    touch("incremental/tracking/LoginEvent/daily/2015/part-0.avro");
+    touch("incremental/derived/member/part-0.avro");
+
+    fs = new RawLocalFileSystem();
+    fs.initialize(new File("/").toURI(), new Configuration());
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws IOException {
+    fs.close();
+    FileUtil.fullyDelete(root);
+  }
+
+  private void touch(String relative)
+    throws IOException {
+    File f = new File(root, relative);
+    f.getParentFile().mkdirs();
+    f.createNewFile();
+  }
+
+  private Path path(String relative) {
+    return new Path(new File(root, relative).getAbsolutePath());
+  }
+
+  @Test
+  public void testCrawl()
+    throws Exception {
+    final Map<String, String> found = new ConcurrentHashMap<>();
+    HdfsCrawler crawler = new HdfsCrawler(fs, 4, 0);
+    crawler.crawl(Arrays.asList(path("data")), new HdfsCrawler.DatasetHandler() {
+      @Override
+      public void handle(Path datasetPath, FileStatus sampleFile, long newestModificationTime)
+        throws Exception {
+        found.put(datasetPath.toUri().getPath(), sampleFile.getPath().getName());
+      }
+    });
+
+    Assert.assertEquals(found.size(), 4, found.toString());
+    Assert.assertEquals(found.get(path("data/tracking/PageViewEvent").toUri().getPath()), "part-0.avro");
+    Assert.assertEquals(found.get(path("data/derived/member").toUri().getPath()), "part-0.avro");
+    Assert.assertEquals(found.get(path("data/derived/company").toUri().getPath()), "part-1.avro");
+    Assert.assertEquals(found.get(path("data/derived/lookup.avro").toUri().getPath()), "lookup.avro");
+    Assert.assertEquals(crawler.getDatasetsFound(), 4);
+  }
+
+  @Test
+  public void testEachDirectoryListedOnce()
+    throws Exception {
+    HdfsCrawler crawler = new HdfsCrawler(fs, 2, 0);
+    crawler.crawl(Arrays.asList(path("data/derived")), new HdfsCrawler.DatasetHandler() {
+      @Override
+      public void handle(Path datasetPath, FileStatus sampleFile, long newestModificationTime) {
+      }
+    });
+    // derived, member, company, _temporary, empty : one listing each
+    Assert.assertEquals(crawler.getDirectoriesListed(), 5);
+    Assert.assertEquals(crawler.getErrorCount(), 0);
+  }
+
+  @Test
+  public void testRateLimit()
+    throws Exception {
+    HdfsCrawler crawler = new HdfsCrawler(fs, 4, 20);
+    long start = System.currentTimeMillis();
+    crawler.crawl(Arrays.asList(path("data")), new HdfsCrawler.DatasetHandler() {
+      @Override
+      public void handle(Path datasetPath, FileStatus sampleFile, long newestModificationTime) {
+      }
+    });
+    long elapsed = System.currentTimeMillis() - start;
+    // at 20 rpc per second every rpc after the first one waits 50 ms
+    Assert.assertTrue(elapsed >= (crawler.getRpcCount() - 1) * 50 - 20, "elapsed " + elapsed);
+  }
+
+  private Set<String> crawlIncremental(CheckpointManifest manifest)
+    throws Exception {
+    return crawlIncremental(manifest, Collections.<String>emptySet());
+  }
+
+  /** the datasets in failed are not checkpointed, like the ones whose schema SchemaFetch could not read */
+  private Set<String> crawlIncremental(final CheckpointManifest manifest, final Set<String> failed)
+    throws Exception {
+    final Set<String> traced = new HashSet<>();
+    HdfsCrawler crawler = new HdfsCrawler(fs, 2, 0, manifest);
+    crawler.crawl(Arrays.asList(path("incremental")), new HdfsCrawler.DatasetHandler() {
+      @Override
+      public synchronized void handle(Path datasetPath, FileStatus sampleFile, long newestModificationTime) {
+        traced.add(datasetPath.getName());
+        if (failed.contains(datasetPath.getName())) {
+          return;
+        }
+        manifest.update(datasetPath.toUri().getPath(), newestModificationTime,
+          CheckpointManifest.relativize(datasetPath, sampleFile.getPath()), "fingerprint");
+      }
+    });
+    return traced;
+  }
+
+  @Test
+  public void testIncremental()
+    throws Exception {
+    File checkpoint = new File(root, "checkpoint");
+
+    CheckpointManifest manifest = CheckpointManifest.load(checkpoint);
+    Assert.assertEquals(crawlIncremental(manifest), new HashSet<>(Arrays.asList("LoginEvent", "member")));
+    manifest.save(checkpoint);
+
+    // nothing changed, nothing is traced but the checkpoint still covers both datasets
+    manifest = CheckpointManifest.load(checkpoint);
+    Assert.assertTrue(crawlIncremental(manifest).isEmpty());
+    Assert.assertEquals(manifest.size(), 2);
+    manifest.save(checkpoint);
+
+    // a new partition changes the modification time of the partition folder
+    touch("incremental/tracking/LoginEvent/daily/2016/part-0.avro");
+    new File(root, "incremental/tracking/LoginEvent/daily").setLastModified(System.currentTimeMillis() + 60000);
+    manifest = CheckpointManifest.load(checkpoint);
+    Assert.assertEquals(crawlIncremental(manifest), new HashSet<>(Arrays.asList("LoginEvent")));
+    Assert.assertEquals(manifest.getPrevious(path("incremental/tracking/LoginEvent").toUri().getPath()).getSampleFile(),
+      "daily/2015/part-0.avro");
+  }
+
+  @Test
+  public void testIncrementalRetriesFailures()
+    throws Exception {
+    File checkpoint = new File(root, "checkpoint-failures");
+
+    CheckpointManifest manifest = CheckpointManifest.load(checkpoint);
+    Assert.assertEquals(crawlIncremental(manifest, Collections.singleton("member")),
+      new HashSet<>(Arrays.asList("LoginEvent", "member")));
+    Assert.assertEquals(manifest.size(), 1);
+    manifest.save(checkpoint);
+
+    // nothing changed, the dataset that failed is traced again
+    manifest = CheckpointManifest.load(checkpoint);
+    Assert.assertEquals(crawlIncremental(manifest), new HashSet<>(Arrays.asList("member")));
+    Assert.assertEquals(manifest.size(), 2);
+  }
+}
@@ -39,6 +39,8 @@ public abstract class EtlJob {
 
   public PythonInterpreter interpreter;
   public Properties prop;
+  // the arguments of the jython scripts, sys.argv[1]
+  private PyDictionary jythonArgs;
   public ClassLoader classLoader = getClass().getClassLoader();
   protected final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -120,6 +122,7 @@ public abstract class EtlJob {
       config.put(new PyString(key), new PyString(value));
     }
 
+    jythonArgs = config;
     PySystemState sys = new PySystemState();
     sys.argv.append(config);
     return sys;
@@ -144,6 +147,7 @@ public abstract class EtlJob {
       String value = prop.getProperty(key);
       config.put(new PyString(key), new PyString(value));
     }
+    jythonArgs = config;
     PySystemState sys = new PySystemState();
     sys.argv.append(config);
     return sys;
@@ -162,6 +166,14 @@ public abstract class EtlJob {
   public abstract void load()
     throws Exception;
 
+  /**
+   * Set a property for the rest of the job, the jython scripts run afterwards see it in their arguments too
+   */
+  protected void setProperty(String key, String value) {
+    prop.setProperty(key, value);
+    jythonArgs.put(new PyString(key), new PyString(value));
+  }
+
   public void setup()
     throws Exception {
 
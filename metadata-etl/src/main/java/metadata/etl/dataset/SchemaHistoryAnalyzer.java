@@ -0,0 +1,329 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.dataset;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+import wherehows.common.utils.SchemaFields;
+
+
+/**
+ * Analyze the new versions of dict_dataset_schema_history once, so the schema history pages only read the results.
+ * <p>
+ * For each version not analyzed yet, the fields of its schema are flattened to {@link SchemaFields} and compared with
+ * the previous version of the same urn : the field count, the number of fields added, removed and changed, and the
+ * lists of those fields are stored next to the schema. A schema is parsed at most once, versions with the same
+ * schema hash reuse the fields already stored. When a version is inserted before versions already analyzed, the
+ * diff of the version following it is updated too.
+ */
+public class SchemaHistoryAnalyzer {
+  private static final Logger logger = LoggerFactory.getLogger(SchemaHistoryAnalyzer.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  // fields of the schemas already seen in this run, by schema hash
+  static final int KNOWN_FIELDS_SIZE = 1000;
+  // hex digits of the field signatures
+  private static final int SIGNATURE_LENGTH = 16;
+
+  private static final String GET_PENDING_URNS =
+    "SELECT DISTINCT urn FROM dict_dataset_schema_history WHERE field_count IS NULL";
+  private static final String GET_VERSIONS = "SELECT id, field_count, fields FROM dict_dataset_schema_history "
+    + "WHERE urn = ? ORDER BY modified_date, id";
+  private static final String GET_SCHEMA = "SELECT `schema` FROM dict_dataset_schema_history WHERE id = ?";
+  private static final String GET_FIELDS_BY_HASH = "SELECT fields FROM dict_dataset_schema_history "
+    + "WHERE schema_hash = ? AND field_count IS NOT NULL LIMIT 1";
+  private static final String UPDATE_VERSION = "UPDATE dict_dataset_schema_history SET schema_hash = ?, "
+    + "field_count = ?, fields = ?, fields_added = ?, fields_removed = ?, fields_changed = ?, field_diff = ? "
+    + "WHERE id = ?";
+  private static final String UPDATE_DIFF = "UPDATE dict_dataset_schema_history SET fields_added = ?, "
+    + "fields_removed = ?, fields_changed = ?, field_diff = ? WHERE id = ?";
+
+  private final String jdbcUrl;
+  private final String username;
+  private final String password;
+
+  private final Map<String, String> knownFields = new LinkedHashMap<String, String>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      return size() > KNOWN_FIELDS_SIZE;
+    }
+  };
+  private int parsed = 0;
+  private int reused = 0;
+
+  public SchemaHistoryAnalyzer(Properties prop)
+    throws ClassNotFoundException {
+    this.jdbcUrl = prop.getProperty(Constant.WH_DB_URL_KEY);
+    this.username = prop.getProperty(Constant.WH_DB_USERNAME_KEY);
+    this.password = prop.getProperty(Constant.WH_DB_PASSWORD_KEY);
+    if (prop.getProperty(Constant.WH_DB_DRIVER_KEY) != null) {
+      Class.forName(prop.getProperty(Constant.WH_DB_DRIVER_KEY));
+    }
+  }
+
+  /**
+   * Analyze all the pending versions, one transaction per urn.
+   * @return number of versions analyzed
+   */
+  public int run()
+    throws SQLException {
+    int analyzed = 0;
+    List<String> urns = new ArrayList<>();
+    try (Connection conn = DriverManager.getConnection(jdbcUrl, username, password)) {
+      try (PreparedStatement stmt = conn.prepareStatement(GET_PENDING_URNS);
+        ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          urns.add(rs.getString(1));
+        }
+      }
+      conn.setAutoCommit(false);
+      for (String urn : urns) {
+        try {
+          analyzed += analyzeUrn(conn, urn);
+          conn.commit();
+        } catch (SQLException e) {
+          conn.rollback();
+          throw e;
+        }
+      }
+    }
+    logger.info("{} schema history versions of {} urns analyzed, {} schemas parsed, {} reused", analyzed,
+      urns.size(), parsed, reused);
+    return analyzed;
+  }
+
+  int getParsed() {
+    return parsed;
+  }
+
+  int getReused() {
+    return reused;
+  }
+
+  private int analyzeUrn(Connection conn, String urn)
+    throws SQLException {
+    List<Object[]> versions = new ArrayList<>();
+    try (PreparedStatement stmt = conn.prepareStatement(GET_VERSIONS)) {
+      stmt.setString(1, urn);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          int fieldCount = rs.getInt("field_count");
+          versions.add(new Object[]{rs.getInt("id"), rs.wasNull() ? null : fieldCount, rs.getString("fields")});
+        }
+      }
+    }
+
+    int analyzed = 0;
+    Map<String, String> previous = new LinkedHashMap<>();
+    boolean previousChanged = false;
+    try (PreparedStatement updateVersion = conn.prepareStatement(UPDATE_VERSION);
+      PreparedStatement updateDiff = conn.prepareStatement(UPDATE_DIFF)) {
+      for (Object[] version : versions) {
+        int id = (Integer) version[0];
+        Map<String, String> fields;
+        if (version[1] == null) {
+          String schema = getSchema(conn, id);
+          String hash = schema == null ? null : sha1(schema);
+          String encoded = getFields(conn, hash, schema);
+          fields = SchemaFields.decode(encoded);
+          SchemaFields.Diff diff = SchemaFields.diff(previous, fields);
+          updateVersion.setString(1, hash);
+          updateVersion.setInt(2, fields.size());
+          updateVersion.setString(3, encoded);
+          setDiff(updateVersion, 4, diff);
+          updateVersion.setInt(8, id);
+          updateVersion.addBatch();
+          analyzed++;
+          previousChanged = true;
+        } else {
+          fields = SchemaFields.decode((String) version[2]);
+          if (previousChanged) {
+            setDiff(updateDiff, 1, SchemaFields.diff(previous, fields));
+            updateDiff.setInt(5, id);
+            updateDiff.addBatch();
+          }
+          previousChanged = false;
+        }
+        previous = fields;
+      }
+      updateVersion.executeBatch();
+      updateDiff.executeBatch();
+    }
+    return analyzed;
+  }
+
+  private static void setDiff(PreparedStatement stmt, int index, SchemaFields.Diff diff)
+    throws SQLException {
+    stmt.setInt(index, diff.added.size());
+    stmt.setInt(index + 1, diff.removed.size());
+    stmt.setInt(index + 2, diff.changed.size());
+    stmt.setString(index + 3, diff.encode());
+  }
+
+  private static String getSchema(Connection conn, int id)
+    throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(GET_SCHEMA)) {
+      stmt.setInt(1, id);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getString(1) : null;
+      }
+    }
+  }
+
+  /**
+   * @return the encoded fields of the schema, from this run, from a version with the same hash, or parsed
+   */
+  private String getFields(Connection conn, String hash, String schema)
+    throws SQLException {
+    if (hash == null) {
+      return "";
+    }
+    String encoded = knownFields.get(hash);
+    if (encoded == null) {
+      try (PreparedStatement stmt = conn.prepareStatement(GET_FIELDS_BY_HASH)) {
+        stmt.setString(1, hash);
+        try (ResultSet rs = stmt.executeQuery()) {
+          if (rs.next()) {
+            encoded = rs.getString(1);
+          }
+        }
+      }
+    }
+    if (encoded == null) {
+      parsed++;
+      try {
+        encoded = SchemaFields.encode(flatten(MAPPER.readTree(schema)));
+      } catch (IOException e) {
+        // stored as a schema without fields, it is not parsed again
+        logger.warn("Can not parse schema {}: {}", hash, e.getMessage());
+        encoded = "";
+      }
+    } else {
+      reused++;
+    }
+    knownFields.put(hash, encoded);
+    return encoded;
+  }
+
+  /**
+   * Path and signature of every field of the schema. The fields are the elements of the "fields" arrays found at
+   * any depth, a field of a nested record is named after the fields containing it, e.g. address.city. The
+   * signature covers the definition of the field without its nested fields, so a change deep in a record only
+   * changes the nested field.
+   */
+  static Map<String, String> flatten(JsonNode schema) {
+    Map<String, String> fields = new TreeMap<>();
+    if (schema != null) {
+      flatten(schema, "", fields);
+    }
+    return fields;
+  }
+
+  private static void flatten(JsonNode node, String prefix, Map<String, String> fields) {
+    if (node.isArray()) {
+      for (JsonNode element : node) {
+        flatten(element, prefix, fields);
+      }
+      return;
+    }
+    Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+    while (it.hasNext()) {
+      Map.Entry<String, JsonNode> e = it.next();
+      if ("fields".equalsIgnoreCase(e.getKey()) && e.getValue().isArray()) {
+        int index = 0;
+        for (JsonNode field : e.getValue()) {
+          String name = fieldName(field, index++);
+          String path = prefix.isEmpty() ? name : prefix + "." + name;
+          fields.put(path, signature(field));
+          if (field.isContainerNode()) {
+            flatten(field, path, fields);
+          }
+        }
+      } else if (e.getValue().isContainerNode()) {
+        flatten(e.getValue(), prefix, fields);
+      }
+    }
+  }
+
+  private static String fieldName(JsonNode field, int index) {
+    if (field.isObject() && field.hasNonNull("name")) {
+      return field.get("name").asText();
+    }
+    if (field.isValueNode()) {
+      return field.asText();
+    }
+    return "[" + index + "]";
+  }
+
+  private static String signature(JsonNode field) {
+    JsonNode definition = field.isContainerNode() ? withoutFields(field.deepCopy()) : field;
+    return sha1(definition.toString()).substring(0, SIGNATURE_LENGTH);
+  }
+
+  private static JsonNode withoutFields(JsonNode node) {
+    if (node.isObject()) {
+      ObjectNode object = (ObjectNode) node;
+      List<String> names = new ArrayList<>();
+      Iterator<String> it = object.fieldNames();
+      while (it.hasNext()) {
+        names.add(it.next());
+      }
+      for (String name : names) {
+        if ("fields".equalsIgnoreCase(name) && object.get(name).isArray()) {
+          object.remove(name);
+        } else {
+          withoutFields(object.get(name));
+        }
+      }
+    } else if (node.isArray()) {
+      for (JsonNode element : node) {
+        withoutFields(element);
+      }
+    }
+    return node;
+  }
+
+  static String sha1(String text) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -25,6 +25,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Properties;
 import metadata.etl.EtlJob;
+import metadata.etl.dataset.SchemaHistoryAnalyzer;
 import wherehows.common.Constant;
 
 
@@ -57,23 +58,11 @@ public class HdfsMetadataEtl extends EtlJob {
   public void extract()
     throws Exception {
     logger.info("Begin hdfs metadata extract!");
-    JSch jsch = new JSch();
-    //jsch.setLogger(logger);
     final Log4JOutputStream log4JOutputStream = new Log4JOutputStream();
     Session session = null;
     try {
       // set up session
-      session =
-        jsch.getSession(this.prop.getProperty(Constant.HDFS_REMOTE_USER_KEY), this.prop.getProperty(Constant.HDFS_REMOTE_MACHINE_KEY));
-      // use private key instead of username/password
-      session.setConfig(
-        "PreferredAuthentications",
-        "publickey,gssapi-with-mic,keyboard-interactive,password");
-      jsch.addIdentity(this.prop.getProperty(Constant.HDFS_PRIVATE_KEY_LOCATION_KEY));
-      java.util.Properties config = new java.util.Properties();
-      config.put("StrictHostKeyChecking", "no");
-      session.setConfig(config);
-      session.connect();
+      session = openSession();
 
       // copy jar file to remote
 
@@ -99,6 +88,7 @@ public class HdfsMetadataEtl extends EtlJob {
       String cluster = prop.getProperty(Constant.HDFS_CLUSTER_KEY);
       String whiteList = prop.getProperty(Constant.HDFS_WHITE_LIST_KEY);
       String numOfThread = prop.getProperty(Constant.HDFS_NUM_OF_THREAD_KEY, String.valueOf(1));
+      String maxRpcPerSecond = prop.getProperty(Constant.HDFS_NAMENODE_MAX_RPC_PER_SECOND_KEY, String.valueOf(0));
       String execCmd =
         "cd " + wherehowsExecFolder + ";"
           + "export HADOOP_CLIENT_OPTS=\"-Xmx2048m $HADOOP_CLIENT_OPTS\";"
@@ -107,7 +97,14 @@ public class HdfsMetadataEtl extends EtlJob {
           + " -D " + Constant.HDFS_SAMPLE_REMOTE_PATH_KEY + "=" + sampleDataFile
           + " -D " + Constant.HDFS_CLUSTER_KEY + "=" + cluster
           + " -D " + Constant.HDFS_WHITE_LIST_KEY + "=" + whiteList
-          + " -D " + Constant.HDFS_NUM_OF_THREAD_KEY + "=" + numOfThread;
+          + " -D " + Constant.HDFS_NUM_OF_THREAD_KEY + "=" + numOfThread
+          + " -D " + Constant.HDFS_NAMENODE_MAX_RPC_PER_SECOND_KEY + "=" + maxRpcPerSecond;
+      String remoteCheckpointFile = prop.getProperty(Constant.HDFS_CHECKPOINT_REMOTE_PATH_KEY);
+      if (remoteCheckpointFile != null) {
+        execCmd = execCmd
+          + " -D " + Constant.HDFS_CHECKPOINT_REMOTE_PATH_KEY + "=" + remoteCheckpointFile.split("/")[1]
+          + " -D " + Constant.HDFS_FULL_RESCAN_KEY + "=" + prop.getProperty(Constant.HDFS_FULL_RESCAN_KEY, "false");
+      }
       logger.info("executue remote command : " + execCmd);
       Channel execChannel = session.openChannel("exec");
       ((ChannelExec) execChannel).setCommand(execCmd);
@@ -126,6 +123,11 @@ public class HdfsMetadataEtl extends EtlJob {
       }
 
       logger.info("Debug : execChannel exit-status: " + execChannel.getExitStatus());
+      if (execChannel.getExitStatus() != 0) {
+        // a partial crawl does not tell which datasets are gone
+        logger.warn("hdfs metadata extract reported errors, missing datasets will not be marked as deleted");
+        setProperty(Constant.DICT_DATASET_EXTRACT_ERRORS_KEY, "true");
+      }
 
 
       logger.debug("execute finished!");
@@ -144,6 +146,59 @@ public class HdfsMetadataEtl extends EtlJob {
       e.printStackTrace(pw);
       logger.error(sw.toString());
       throw e;
+    } finally {
+      if (session != null) {
+        session.disconnect();
+      }
+    }
+  }
+
+  private Session openSession()
+    throws Exception {
+    JSch jsch = new JSch();
+    //jsch.setLogger(logger);
+    Session session =
+      jsch.getSession(this.prop.getProperty(Constant.HDFS_REMOTE_USER_KEY), this.prop.getProperty(Constant.HDFS_REMOTE_MACHINE_KEY));
+    // use private key instead of username/password
+    session.setConfig(
+      "PreferredAuthentications",
+      "publickey,gssapi-with-mic,keyboard-interactive,password");
+    jsch.addIdentity(this.prop.getProperty(Constant.HDFS_PRIVATE_KEY_LOCATION_KEY));
+    java.util.Properties config = new java.util.Properties();
+    config.put("StrictHostKeyChecking", "no");
+    session.setConfig(config);
+    session.connect();
+    return session;
+  }
+
+  /**
+   * Replace the remote checkpoint with the one written by this run. Only called after the load succeeded,
+   * so a failed load makes the next run collect the same changes again.
+   */
+  private void commitCheckpoint()
+    throws Exception {
+    String remoteCheckpointFile = prop.getProperty(Constant.HDFS_CHECKPOINT_REMOTE_PATH_KEY);
+    if (remoteCheckpointFile == null) {
+      return;
+    }
+    String wherehowsExecFolder = prop.getProperty(Constant.HDFS_REMOTE_JAR_KEY).split("/")[0];
+    String checkpointFile = remoteCheckpointFile.split("/")[1];
+    String execCmd = "cd " + wherehowsExecFolder + ";"
+      + "mv -f " + checkpointFile + Constant.HDFS_CHECKPOINT_PENDING_SUFFIX + " " + checkpointFile;
+    logger.info("executue remote command : " + execCmd);
+
+    Session session = openSession();
+    try {
+      Channel execChannel = session.openChannel("exec");
+      ((ChannelExec) execChannel).setCommand(execCmd);
+      execChannel.connect();
+      while (execChannel.getExitStatus() == -1) {
+        Thread.sleep(100);
+      }
+      if (execChannel.getExitStatus() != 0) {
+        logger.error("commit hdfs checkpoint failed, exit-status: " + execChannel.getExitStatus());
+      }
+      execChannel.disconnect();
     } finally {
       session.disconnect();
     }
@@ -167,6 +222,8 @@ public class HdfsMetadataEtl extends EtlJob {
     InputStream inputStream = classLoader.getResourceAsStream("jython/HdfsLoad.py");
     interpreter.execfile(inputStream);
     inputStream.close();
+    commitCheckpoint();
+    new SchemaHistoryAnalyzer(prop).run();
     logger.info("hdfs metadata load finished");
   }
 }
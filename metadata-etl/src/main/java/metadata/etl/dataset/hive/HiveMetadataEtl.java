@@ -13,9 +13,12 @@
  */
 package metadata.etl.dataset.hive;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.Properties;
 import metadata.etl.EtlJob;
+import metadata.etl.dataset.SchemaHistoryAnalyzer;
+import wherehows.common.Constant;
 
 
 /**
@@ -36,11 +39,9 @@ public class HiveMetadataEtl extends EtlJob {
   @Override
   public void extract()
     throws Exception {
-    logger.info("In Hive metadata ETL, launch extract jython scripts");
-    InputStream inputStream = classLoader.getResourceAsStream("jython/HiveExtract.py");
-    //logger.info("before call scripts " + interpreter.getSystemState().argv);
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    logger.info("In Hive metadata ETL, extract hive metastore");
+    HiveMetastoreExtractor extractor = new HiveMetastoreExtractor(prop);
+    extractor.run(new File(prop.getProperty(Constant.HIVE_SCHEMA_JSON_FILE_KEY)));
   }
 
   @Override
@@ -59,5 +60,6 @@ public class HiveMetadataEtl extends EtlJob {
       InputStream inputStream = classLoader.getResourceAsStream("jython/HiveLoad.py");
       interpreter.execfile(inputStream);
       inputStream.close();
+      new SchemaHistoryAnalyzer(prop).run();
   }
 }
@@ -0,0 +1,464 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.dataset.hive;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+
+
+/**
+ * Extract table and column metadata from the hive metastore database into the json file read by HiveTransform.py.
+ * <p>
+ * Databases are collected in parallel, each worker borrowing one connection from a pool bounded by the number of
+ * workers. Rows are streamed with a fetch size and every table is written to a per database spool file as soon as
+ * its last row is read, so memory does not grow with the size of the metastore. Finished databases are appended
+ * to the output in completion order, the output keeps the format of HiveExtract.py :
+ * [{"database": _, "type": "Hive", "tables": [{...}, ...]}, ...]
+ */
+public class HiveMetastoreExtractor {
+  private static final Logger logger = LoggerFactory.getLogger(HiveMetastoreExtractor.class);
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 4;
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  // keys of the table records, see TableInfo in HiveExtract.py
+  static final String TABLE_NAME = "name";
+  static final String TYPE = "type";
+  static final String SERIALIZATION_FORMAT = "serialization_format";
+  static final String CREATE_TIME = "create_time";
+  static final String SCHEMA_URL = "schema_url";
+  static final String FIELD_DELIMITER = "field_delimiter";
+  static final String DB_ID = "DB_ID";
+  static final String TABLE_ID = "TBL_ID";
+  static final String SERDE_ID = "SD_ID";
+  static final String TABLE_TYPE = "tbl_type";
+  static final String LOCATION = "location";
+  static final String VIEW_EXPANDED_TEXT = "view_expanded_text";
+  static final String INPUT_FORMAT = "input_format";
+  static final String OUTPUT_FORMAT = "output_format";
+  static final String IS_COMPRESSED = "is_compressed";
+  static final String IS_STOREDASSUBDIRECTORIES = "is_storedassubdirectories";
+  static final String ETL_SOURCE = "etl_source";
+  static final String FIELD_LIST = "field_list";
+  static final String SCHEMA_LITERAL = "schema_literal";
+
+  private static final String DATABASES_SQL =
+    "SELECT NAME FROM DBS WHERE NAME NOT LIKE 'u\\_%' OR NAME IN (%s)";
+
+  private static final String TABLE_COLUMNS =
+    "t.TBL_ID, t.TBL_NAME, t.CREATE_TIME, t.DB_ID, t.TBL_TYPE, t.VIEW_EXPANDED_TEXT, s.SD_ID, s.LOCATION, "
+      + "s.INPUT_FORMAT, s.OUTPUT_FORMAT, s.IS_COMPRESSED, s.IS_STOREDASSUBDIRECTORIES";
+
+  // tables with an avro schema literal, schema url or field delimiter in their serde parameters
+  private static final String SERDE_PARAMS_SQL = "SELECT " + TABLE_COLUMNS + ", sp.PARAM_KEY, sp.PARAM_VALUE "
+    + "FROM SERDE_PARAMS sp JOIN TBLS t ON sp.SERDE_ID = t.SD_ID "
+    + "JOIN DBS d ON t.DB_ID = d.DB_ID "
+    + "JOIN SDS s ON t.SD_ID = s.SD_ID "
+    + "WHERE d.NAME = ? AND sp.PARAM_KEY IN "
+    + "('avro.schema.literal', 'schema.literal', 'avro.schema.url', 'schema.url', 'field.delim') "
+    + "ORDER BY t.TBL_NAME, t.TBL_ID";
+
+  private static final String COLUMNS_V2_SQL = "SELECT " + TABLE_COLUMNS
+    + ", c.INTEGER_IDX, c.COLUMN_NAME, c.TYPE_NAME, c.COMMENT "
+    + "FROM TBLS t JOIN DBS d ON t.DB_ID = d.DB_ID "
+    + "JOIN SDS s ON t.SD_ID = s.SD_ID "
+    + "JOIN COLUMNS_V2 c ON s.CD_ID = c.CD_ID "
+    + "WHERE d.NAME = ? "
+    + "ORDER BY t.TBL_NAME, t.TBL_ID, c.INTEGER_IDX";
+
+  private final String jdbcUrl;
+  private final String username;
+  private final String password;
+  private final int maxConnections;
+  private final int fetchSize;
+  private final String databaseWhiteList;
+
+  private final JsonFactory jsonFactory = new MappingJsonFactory();
+  private final ConcurrentLinkedQueue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+
+  public HiveMetastoreExtractor(Properties prop)
+    throws ClassNotFoundException {
+    String driver = prop.getProperty(Constant.HIVE_METASTORE_JDBC_DRIVER);
+    if (driver != null) {
+      Class.forName(driver);
+    }
+    this.jdbcUrl = prop.getProperty(Constant.HIVE_METASTORE_JDBC_URL);
+    this.username = prop.getProperty(Constant.HIVE_METASTORE_USERNAME);
+    this.password = prop.getProperty(Constant.HIVE_METASTORE_PASSWORD);
+    this.maxConnections = Integer.parseInt(
+      prop.getProperty(Constant.HIVE_METASTORE_MAX_CONNECTIONS_KEY, String.valueOf(DEFAULT_MAX_CONNECTIONS)));
+    this.fetchSize =
+      Integer.parseInt(prop.getProperty(Constant.HIVE_METASTORE_FETCH_SIZE_KEY, String.valueOf(DEFAULT_FETCH_SIZE)));
+    this.databaseWhiteList = prop.getProperty(Constant.HIVE_DATABASE_WHITELIST_KEY, "");
+  }
+
+  /**
+   * Extract every database into the output json file.
+   * @return number of tables written
+   */
+  public int run(File output)
+    throws Exception {
+    List<String> databases;
+    Connection conn = borrowConnection();
+    try {
+      databases = getAllDatabases(conn);
+    } finally {
+      releaseConnection(conn);
+    }
+    logger.info("Collecting hive tables of {} databases with {} connections", databases.size(), maxConnections);
+
+    File spoolDir = Files.createTempDirectory("hive_metastore").toFile();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, maxConnections));
+    int tableCount = 0;
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+      CompletionService<DatabaseResult> completion = new ExecutorCompletionService<>(executor);
+      for (int i = 0; i < databases.size(); i++) {
+        final String database = databases.get(i);
+        final File spool = new File(spoolDir, i + ".json");
+        completion.submit(new Callable<DatabaseResult>() {
+          @Override
+          public DatabaseResult call()
+            throws Exception {
+            return extractDatabase(database, spool);
+          }
+        });
+      }
+
+      out.write('[');
+      boolean first = true;
+      for (int i = 0; i < databases.size(); i++) {
+        DatabaseResult result;
+        try {
+          result = completion.take().get();
+        } catch (ExecutionException e) {
+          throw new Exception("Failed to collect hive database", e.getCause());
+        }
+        if (result.tableCount > 0) {
+          if (!first) {
+            out.write(',');
+          }
+          first = false;
+          Files.copy(result.spool.toPath(), out);
+          tableCount += result.tableCount;
+        }
+        result.spool.delete();
+      }
+      out.write(']');
+      out.write('\n');
+    } finally {
+      executor.shutdownNow();
+      for (File f : spoolDir.listFiles()) {
+        f.delete();
+      }
+      spoolDir.delete();
+      closeConnections();
+    }
+    output.setReadable(true, false);
+    output.setWritable(true, false);
+    logger.info("{} hive tables written to {}", tableCount, output.getPath());
+    return tableCount;
+  }
+
+  List<String> getAllDatabases(Connection conn)
+    throws SQLException {
+    String[] whiteList = databaseWhiteList.split(",");
+    StringBuilder placeholders = new StringBuilder();
+    for (int i = 0; i < whiteList.length; i++) {
+      placeholders.append(i == 0 ? "?" : ", ?");
+    }
+    List<String> databases = new ArrayList<>();
+    try (PreparedStatement stmt = conn.prepareStatement(String.format(DATABASES_SQL, placeholders))) {
+      for (int i = 0; i < whiteList.length; i++) {
+        stmt.setString(i + 1, whiteList[i].trim());
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          databases.add(rs.getString(1));
+        }
+      }
+    }
+    return databases;
+  }
+
+  static class DatabaseResult {
+    final File spool;
+    final int tableCount;
+
+    DatabaseResult(File spool, int tableCount) {
+      this.spool = spool;
+      this.tableCount = tableCount;
+    }
+  }
+
+  /**
+   * Write one database object to the spool file. Tables found in SERDE_PARAMS take precedence over COLUMNS_V2,
+   * like in HiveExtract.py.
+   */
+  DatabaseResult extractDatabase(String database, File spool)
+    throws SQLException, IOException {
+    long start = System.currentTimeMillis();
+    Connection conn = borrowConnection();
+    int tableCount = 0;
+    try (JsonGenerator json = jsonFactory.createGenerator(spool, JsonEncoding.UTF8)) {
+      json.writeStartObject();
+      json.writeStringField("database", database);
+      json.writeStringField("type", "Hive");
+      json.writeArrayFieldStart("tables");
+
+      Set<String> serdeTables = new HashSet<>();
+      try (PreparedStatement stmt = prepareStreaming(conn, SERDE_PARAMS_SQL)) {
+        stmt.setString(1, database);
+        try (ResultSet rs = stmt.executeQuery()) {
+          tableCount += writeSerdeTables(rs, json, serdeTables);
+        }
+      }
+      try (PreparedStatement stmt = prepareStreaming(conn, COLUMNS_V2_SQL)) {
+        stmt.setString(1, database);
+        try (ResultSet rs = stmt.executeQuery()) {
+          tableCount += writeColumnV2Tables(rs, json, serdeTables);
+        }
+      }
+
+      json.writeEndArray();
+      json.writeEndObject();
+    } finally {
+      releaseConnection(conn);
+    }
+    logger.info("{} tables collected for database {} in {} ms", tableCount, database,
+      System.currentTimeMillis() - start);
+    return new DatabaseResult(spool, tableCount);
+  }
+
+  private int writeSerdeTables(ResultSet rs, JsonGenerator json, Set<String> serdeTables)
+    throws SQLException, IOException {
+    int count = 0;
+    boolean hasRow = rs.next();
+    while (hasRow) {
+      long tableId = rs.getLong("TBL_ID");
+      String tableName = rs.getString("TBL_NAME");
+      TableRecord table = new TableRecord(rs, "SERDE_PARAMS");
+      String schemaLiteral = null;
+      String schemaUrl = null;
+      String fieldDelimiter = null;
+      boolean qualified = false;
+      while (hasRow && rs.getLong("TBL_ID") == tableId) {
+        String key = rs.getString("PARAM_KEY");
+        String value = rs.getString("PARAM_VALUE");
+        if (isSerdeValue(value)) {
+          qualified = true;
+          if (key.endsWith("schema.literal")) {
+            schemaLiteral = max(schemaLiteral, value);
+          } else if (key.endsWith("schema.url")) {
+            schemaUrl = max(schemaUrl, value);
+          } else {
+            fieldDelimiter = max(fieldDelimiter, value);
+          }
+        }
+        hasRow = rs.next();
+      }
+
+      if (qualified && serdeTables.add(tableName)) {
+        json.writeStartObject();
+        table.write(json);
+        json.writeStringField(SCHEMA_LITERAL, schemaLiteral == null ? null : schemaLiteral.replace('\n', ' '));
+        json.writeStringField(SCHEMA_URL, schemaUrl);
+        json.writeStringField(FIELD_DELIMITER, fieldDelimiter);
+        json.writeEndObject();
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private int writeColumnV2Tables(ResultSet rs, JsonGenerator json, Set<String> serdeTables)
+    throws SQLException, IOException {
+    int count = 0;
+    boolean hasRow = rs.next();
+    while (hasRow) {
+      long tableId = rs.getLong("TBL_ID");
+      String tableName = rs.getString("TBL_NAME");
+      boolean skip = serdeTables.contains(tableName);
+      if (!skip) {
+        json.writeStartObject();
+        new TableRecord(rs, "COLUMN_V2").write(json);
+        json.writeArrayFieldStart(FIELD_LIST);
+      }
+      while (hasRow && rs.getLong("TBL_ID") == tableId) {
+        if (!skip) {
+          json.writeStartObject();
+          json.writeObjectField("IntegerIndex", rs.getObject("INTEGER_IDX"));
+          json.writeStringField("ColumnName", rs.getString("COLUMN_NAME"));
+          json.writeStringField("TypeName", rs.getString("TYPE_NAME"));
+          json.writeStringField("Comment", rs.getString("COMMENT"));
+          json.writeEndObject();
+        }
+        hasRow = rs.next();
+      }
+      if (!skip) {
+        json.writeEndArray();
+        json.writeEndObject();
+        serdeTables.add(tableName);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Columns shared by both sources of a table, read from the first row of the table.
+   */
+  static class TableRecord {
+    final Object[] values;
+
+    TableRecord(ResultSet rs, String etlSource)
+      throws SQLException {
+      String inputFormat = rs.getString("INPUT_FORMAT");
+      values = new Object[]{
+        rs.getString("TBL_NAME"), "Table", serializationFormat(inputFormat), rs.getObject("CREATE_TIME"),
+        rs.getObject("DB_ID"), rs.getObject("TBL_ID"), rs.getObject("SD_ID"), locationPath(rs.getString("LOCATION")),
+        rs.getString("TBL_TYPE"), rs.getString("VIEW_EXPANDED_TEXT"), inputFormat, rs.getString("OUTPUT_FORMAT"),
+        rs.getObject("IS_COMPRESSED"), rs.getObject("IS_STOREDASSUBDIRECTORIES"), etlSource};
+    }
+
+    void write(JsonGenerator json)
+      throws IOException {
+      String[] keys = {TABLE_NAME, TYPE, SERIALIZATION_FORMAT, CREATE_TIME, DB_ID, TABLE_ID, SERDE_ID, LOCATION,
+        TABLE_TYPE, VIEW_EXPANDED_TEXT, INPUT_FORMAT, OUTPUT_FORMAT, IS_COMPRESSED, IS_STOREDASSUBDIRECTORIES,
+        ETL_SOURCE};
+      for (int i = 0; i < keys.length; i++) {
+        json.writeObjectField(keys[i], values[i]);
+      }
+    }
+  }
+
+  /**
+   * Short name of the input format, same mapping as the case expression of HiveExtract.py
+   */
+  static String serializationFormat(String inputFormat) {
+    if (inputFormat == null) {
+      return null;
+    }
+    String lower = inputFormat.toLowerCase();
+    if (lower.contains(".textinput")) {
+      return "Text";
+    } else if (lower.contains(".avro")) {
+      return "Avro";
+    } else if (lower.contains(".rcfile")) {
+      return "RC";
+    } else if (lower.contains(".orc")) {
+      return "ORC";
+    } else if (lower.contains(".sequence")) {
+      return "Sequence";
+    } else if (lower.contains(".parquet")) {
+      return "Parquet";
+    }
+    return inputFormat;
+  }
+
+  /**
+   * Strip scheme and authority : hdfs://namenode:9000/path -> /path
+   */
+  static String locationPath(String location) {
+    if (location == null) {
+      return null;
+    }
+    int index = -1;
+    for (int i = 0; i < 3; i++) {
+      index = location.indexOf('/', index + 1);
+      if (index < 0) {
+        return "";
+      }
+    }
+    return location.substring(index);
+  }
+
+  /**
+   * Only delimiters and inline schemas are kept, the same filter as the PARAM_VALUE regexp of HiveExtract.py
+   */
+  static boolean isSerdeValue(String value) {
+    if (value == null || value.isEmpty()) {
+      return false;
+    }
+    char c = value.charAt(0);
+    return c == ',' || c == '{' || c == '\\' || c == '|';
+  }
+
+  private static String max(String current, String value) {
+    return current == null || value.compareTo(current) > 0 ? value : current;
+  }
+
+  private PreparedStatement prepareStreaming(Connection conn, String sql)
+    throws SQLException {
+    PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    // MySQL Connector/J only streams row by row with Integer.MIN_VALUE, unless cursor fetch is enabled in the url
+    if (jdbcUrl.startsWith("jdbc:mysql") && !jdbcUrl.contains("useCursorFetch=true")) {
+      stmt.setFetchSize(Integer.MIN_VALUE);
+    } else {
+      stmt.setFetchSize(fetchSize);
+    }
+    return stmt;
+  }
+
+  private Connection borrowConnection()
+    throws SQLException {
+    Connection conn = idleConnections.poll();
+    if (conn == null) {
+      conn = DriverManager.getConnection(jdbcUrl, username, password);
+    }
+    return conn;
+  }
+
+  private void releaseConnection(Connection conn) {
+    idleConnections.offer(conn);
+  }
+
+  private void closeConnections() {
+    Connection conn;
+    while ((conn = idleConnections.poll()) != null) {
+      try {
+        conn.close();
+      } catch (SQLException e) {
+        logger.warn("Failed to close hive metastore connection", e);
+      }
+    }
+  }
+}
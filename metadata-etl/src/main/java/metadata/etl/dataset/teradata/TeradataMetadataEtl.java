@@ -16,6 +16,8 @@ package metadata.etl.dataset.teradata;
 import java.io.InputStream;
 import java.util.Properties;
 import metadata.etl.EtlJob;
+import metadata.etl.dataset.SchemaHistoryAnalyzer;
+import wherehows.common.Constant;
 
 /**
  * Created by zsun on 7/29/15.
@@ -43,6 +45,10 @@ public class TeradataMetadataEtl extends EtlJob {
     InputStream inputStream = classLoader.getResourceAsStream("jython/TeradataExtract.py");
     interpreter.execfile(inputStream);
     inputStream.close();
+
+    logger.info("In teradata metadata ETL, collect sample data");
+    TeradataSampleCollector sampleCollector = new TeradataSampleCollector(prop);
+    sampleCollector.run(prop.getProperty(Constant.TD_SCHEMA_OUTPUT_KEY), prop.getProperty(Constant.TD_SAMPLE_OUTPUT_KEY));
   }
 
   @Override
@@ -60,8 +66,10 @@ public class TeradataMetadataEtl extends EtlJob {
     logger.info("In teradata metadata ETL, launch load jython scripts");
     InputStream inputStream = classLoader.getResourceAsStream("jython/TeradataLoad.py");
     interpreter.execfile(inputStream);
-    logger.info("Teradata dataset ETL finished");
     inputStream.close();
+    TeradataSampleCollector.commitCheckpoint(prop);
+    new SchemaHistoryAnalyzer(prop).run();
+    logger.info("Teradata dataset ETL finished");
   }
 
 }
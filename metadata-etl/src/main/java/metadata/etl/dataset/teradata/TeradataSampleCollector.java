@@ -0,0 +1,391 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.dataset.teradata;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+import wherehows.common.DatasetUrn;
+import wherehows.common.schemas.SampleDataRecord;
+import wherehows.common.utils.RateLimiter;
+import wherehows.common.writers.FileWriter;
+
+
+/**
+ * Collect the top rows of every teradata table and view listed in the schema json written by TeradataExtract.py.
+ * <p>
+ * Sample queries run on a pool of connections bounded by the number of workers, each with a query timeout and
+ * all of them under one global rate limit. Records are appended to the writer as soon as a query completes.
+ * When a checkpoint file is configured, tables whose last alter time and size are the same as in the previous
+ * run are skipped; their sample in dict_dataset_sample is left untouched by the load.
+ */
+public class TeradataSampleCollector {
+  private static final Logger logger = LoggerFactory.getLogger(TeradataSampleCollector.class);
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 4;
+  public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 60;
+  public static final double DEFAULT_MAX_QUERIES_PER_SECOND = 5;
+  public static final int SAMPLE_SIZE = 10;
+
+  // no select permission on these databases, the sample is taken from the table of the same name in DWH_STG
+  private static final Set<String> STAGED_DATABASES =
+    new HashSet<>(Arrays.asList("DWH_DIM", "DWH_FACT", "DWH_TRK", "DWH_AGG", "DWH_CPY", "DWH_MSTR", "DWH_SEC"));
+  private static final String STAGING_DATABASE = "DWH_STG";
+  private static final String DELIMITER = "\t";
+  private static final String PENDING_SUFFIX = ".new";
+
+  private final String jdbcUrl;
+  private final String username;
+  private final String password;
+  private final int maxConnections;
+  private final int queryTimeout;
+  private final RateLimiter rateLimiter;
+  private final File checkpoint;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final ConcurrentLinkedQueue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+  private final Map<String, String> previousStats = new ConcurrentHashMap<>();
+  private final Map<String, String> currentStats = new ConcurrentHashMap<>();
+
+  private final AtomicInteger sampled = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+
+  public TeradataSampleCollector(Properties prop)
+    throws ClassNotFoundException {
+    String driver = prop.getProperty(Constant.TD_DB_DRIVER_KEY);
+    if (driver != null) {
+      Class.forName(driver);
+    }
+    this.jdbcUrl = prop.getProperty(Constant.TD_DB_URL_KEY);
+    this.username = prop.getProperty(Constant.TD_DB_USERNAME_KEY);
+    this.password = prop.getProperty(Constant.TD_DB_PASSWORD_KEY);
+    this.maxConnections = Integer.parseInt(
+      prop.getProperty(Constant.TD_SAMPLE_MAX_CONNECTIONS_KEY, String.valueOf(DEFAULT_MAX_CONNECTIONS)));
+    this.queryTimeout = Integer.parseInt(
+      prop.getProperty(Constant.TD_SAMPLE_QUERY_TIMEOUT_KEY, String.valueOf(DEFAULT_QUERY_TIMEOUT_SECONDS)));
+    this.rateLimiter = new RateLimiter(Double.parseDouble(
+      prop.getProperty(Constant.TD_SAMPLE_MAX_QUERIES_PER_SECOND_KEY, String.valueOf(DEFAULT_MAX_QUERIES_PER_SECOND))));
+    String checkpointFile = prop.getProperty(Constant.TD_SAMPLE_CHECKPOINT_KEY);
+    this.checkpoint = checkpointFile == null || checkpointFile.isEmpty() ? null : new File(checkpointFile);
+  }
+
+  /**
+   * One sample query, shared by every table that reads its sample from the same source table.
+   */
+  static class SampleTask {
+    final String sourceDatabase;
+    final String sourceTable;
+    final List<String[]> targets = new ArrayList<>(); // {database, table, stats}
+
+    SampleTask(String sourceDatabase, String sourceTable) {
+      this.sourceDatabase = sourceDatabase;
+      this.sourceTable = sourceTable;
+    }
+
+    String refUrn() {
+      return DatasetUrn.of(DatasetUrn.TERADATA, sourceDatabase, sourceTable).getUrn();
+    }
+  }
+
+  public void run(String schemaFile, String sampleOutputFile)
+    throws Exception {
+    if (checkpoint != null) {
+      loadCheckpoint();
+    }
+    Map<String, SampleTask> tasks = readTasks(new File(schemaFile));
+    logger.info("{} sample queries to run, {} tables unchanged since the last run", tasks.size(), skipped.get());
+
+    File output = new File(sampleOutputFile);
+    final FileWriter writer = new FileWriter(sampleOutputFile);
+    output.setReadable(true, false);
+    output.setWritable(true, false);
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, maxConnections));
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (final SampleTask task : tasks.values()) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            collect(task, writer);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      writer.close();
+      closeConnections();
+    }
+
+    if (checkpoint != null) {
+      saveCheckpoint();
+    }
+    logger.info("Teradata samples : {} sampled, {} skipped, {} failed", sampled.get(), skipped.get(), failed.get());
+  }
+
+  /**
+   * Stream the schema json one database at a time and group the tables by the source table of their sample.
+   */
+  Map<String, SampleTask> readTasks(File schemaFile)
+    throws IOException {
+    Map<String, SampleTask> tasks = new LinkedHashMap<>();
+    try (JsonParser parser = mapper.getFactory().createParser(schemaFile)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new IOException("Unexpected teradata schema format in " + schemaFile);
+      }
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        JsonNode database = mapper.readTree(parser);
+        String databaseName = database.get("database").asText();
+        JsonNode tables = database.has("tables") ? database.get("tables") : database.get("views");
+        if (tables == null) {
+          continue;
+        }
+        for (JsonNode table : tables) {
+          String originalName = table.get("original_name").asText();
+          String tableName = originalName.substring(originalName.indexOf('.') + 1);
+          String key = databaseName + "." + tableName;
+          String stats = table.path("lastAlterTime").asText() + "|" + table.path("sizeInMbytes").asText();
+          if (stats.equals(previousStats.get(key))) {
+            currentStats.put(key, stats);
+            skipped.incrementAndGet();
+            continue;
+          }
+
+          String sourceDatabase = STAGED_DATABASES.contains(databaseName) ? STAGING_DATABASE : databaseName;
+          String sourceKey = sourceDatabase + "." + tableName;
+          SampleTask task = tasks.get(sourceKey);
+          if (task == null) {
+            task = new SampleTask(sourceDatabase, tableName);
+            tasks.put(sourceKey, task);
+          }
+          task.targets.add(new String[]{databaseName, tableName, stats});
+        }
+      }
+    }
+    return tasks;
+  }
+
+  private void collect(SampleTask task, FileWriter writer) {
+    String sql = "LOCK ROW FOR ACCESS SELECT TOP " + SAMPLE_SIZE + " * FROM " + task.sourceDatabase + ".\""
+      + task.sourceTable + "\"";
+    String data;
+    try {
+      rateLimiter.acquire();
+      data = querySample(sql);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (Exception e) {
+      // the table stays out of the checkpoint, so it is tried again in the next run
+      logger.error("dataset {} is not accessible : {}", task.refUrn(), e.getMessage());
+      failed.addAndGet(task.targets.size());
+      return;
+    }
+
+    for (String[] target : task.targets) {
+      String database = target[0];
+      String refUrn = database.equals(task.sourceDatabase) ? "" : task.refUrn();
+      try {
+        writer.append(new SampleDataRecord("teradata", "/" + database + "/" + target[1], refUrn, data));
+        currentStats.put(database + "." + target[1], target[2]);
+        sampled.incrementAndGet();
+      } catch (Exception e) {
+        logger.error("Failed to write sample of " + database + "." + target[1], e);
+        failed.incrementAndGet();
+      }
+    }
+  }
+
+  private String querySample(String sql)
+    throws SQLException, IOException {
+    Connection conn = borrowConnection();
+    boolean healthy = false;
+    try (Statement stmt = conn.createStatement()) {
+      stmt.setQueryTimeout(queryTimeout);
+      ArrayNode sample = mapper.createArrayNode();
+      try (ResultSet rs = stmt.executeQuery(sql)) {
+        ResultSetMetaData meta = rs.getMetaData();
+        while (rs.next()) {
+          ObjectNode row = sample.addObject();
+          for (int i = 1; i <= meta.getColumnCount(); i++) {
+            row.put(meta.getColumnLabel(i), toText(rs.getObject(i)));
+          }
+        }
+      }
+      healthy = true;
+      ObjectNode result = mapper.createObjectNode();
+      result.set("sample", sample);
+      return mapper.writeValueAsString(result);
+    } finally {
+      releaseConnection(conn, healthy);
+    }
+  }
+
+  static String toText(Object value) {
+    if (value == null) {
+      return "";
+    }
+    if (value instanceof byte[]) {
+      StringBuilder sb = new StringBuilder();
+      for (byte b : (byte[]) value) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    }
+    return value.toString();
+  }
+
+  private Connection borrowConnection()
+    throws SQLException {
+    Connection conn = idleConnections.poll();
+    if (conn == null) {
+      conn = DriverManager.getConnection(jdbcUrl, username, password);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SET QUERY_BAND = 'script=" + getClass().getSimpleName() + ";' FOR SESSION");
+      }
+    }
+    return conn;
+  }
+
+  /**
+   * A connection whose query failed (timeout, access error) is closed rather than reused.
+   */
+  private void releaseConnection(Connection conn, boolean healthy) {
+    if (healthy) {
+      idleConnections.offer(conn);
+    } else {
+      try {
+        conn.close();
+      } catch (SQLException ignored) {
+      }
+    }
+  }
+
+  private void closeConnections() {
+    Connection conn;
+    while ((conn = idleConnections.poll()) != null) {
+      try {
+        conn.close();
+      } catch (SQLException e) {
+        logger.warn("Failed to close teradata connection", e);
+      }
+    }
+  }
+
+  void loadCheckpoint()
+    throws IOException {
+    if (!checkpoint.isFile()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new FileInputStream(checkpoint), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] columns = line.split(DELIMITER, -1);
+        if (columns.length == 2) {
+          previousStats.put(columns[0], columns[1]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the stats of this run next to the checkpoint, {@link #commitCheckpoint} moves it in place once the samples
+   * are loaded.
+   */
+  private void saveCheckpoint()
+    throws IOException {
+    File pending = new File(checkpoint.getPath() + PENDING_SUFFIX);
+    try (BufferedWriter writer = new BufferedWriter(
+      new OutputStreamWriter(new FileOutputStream(pending), StandardCharsets.UTF_8))) {
+      for (Map.Entry<String, String> e : currentStats.entrySet()) {
+        writer.write(e.getKey() + DELIMITER + e.getValue());
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Replace the checkpoint by the one written in the extract, if any.
+   */
+  public static void commitCheckpoint(Properties prop)
+    throws IOException {
+    String checkpointFile = prop.getProperty(Constant.TD_SAMPLE_CHECKPOINT_KEY);
+    if (checkpointFile == null || checkpointFile.isEmpty()) {
+      return;
+    }
+    File checkpoint = new File(checkpointFile);
+    File pending = new File(checkpointFile + PENDING_SUFFIX);
+    if (!pending.isFile()) {
+      return;
+    }
+    if (checkpoint.exists() && !checkpoint.delete()) {
+      throw new IOException("Cannot replace checkpoint " + checkpoint.getPath());
+    }
+    if (!pending.renameTo(checkpoint)) {
+      throw new IOException("Cannot move checkpoint " + pending.getPath() + " to " + checkpoint.getPath());
+    }
+  }
+
+  public int getSampled() {
+    return sampled.get();
+  }
+
+  public int getSkipped() {
+    return skipped.get();
+  }
+
+  public int getFailed() {
+    return failed.get();
+  }
+}
@@ -14,11 +14,27 @@
 package metadata.etl.git;
 
 import java.io.File;
-import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import metadata.etl.EtlJob;
+import metadata.etl.load.BulkLoader;
+import metadata.etl.load.LoadSpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import wherehows.common.Constant;
@@ -35,6 +51,7 @@ public class GitMetadataEtl extends EtlJob {
   public ClassLoader classLoader = getClass().getClassLoader();
   protected final Logger logger = LoggerFactory.getLogger(getClass());
   public static final String COMMIT_OUTPUT_FILE = "commit.csv";
+  public static final int DEFAULT_EXTRACT_THREADS = 4;
 
   public GitMetadataEtl(int appId, long whExecId) {
     super(appId, null, whExecId);
@@ -44,50 +61,145 @@ public class GitMetadataEtl extends EtlJob {
     super(appId, null, whExecId, prop);
   }
 
+  /**
+   * Fetch the repos of the whitelisted projects in parallel and write the commits that are not loaded yet.
+   * Clones are kept between runs, and only the commits after the latest one of each repo in
+   * source_code_commit_info are walked. A repo that fails is logged and skipped, the next run catches up.
+   */
   public void extract() throws Exception {
     logger.info("git extract");
     String gitHost = this.prop.getProperty(Constant.GIT_HOST_KEY);
     String[] projects = (this.prop.getProperty(Constant.GIT_PROJECT_WHITELIST_KEY)).trim().split("\\s*,\\s*");
-    String localDir = this.prop.getProperty(Constant.WH_APP_FOLDER_KEY) + "/" + this.prop.getProperty(Constant.APP_ID_KEY);
+    final String localDir = this.prop.getProperty(Constant.WH_APP_FOLDER_KEY) + "/" + this.prop.getProperty(Constant.APP_ID_KEY);
     File dir = new File(localDir);
     if (!dir.exists()) {
       if (!dir.mkdirs()) {
         throw new Exception("can not create metadata directory");
       }
     }
-    FileWriter fw = new FileWriter(localDir + "/" + COMMIT_OUTPUT_FILE);
+
+    Map<String, String> repos = new LinkedHashMap<>();
     for (String project : projects) {
-      Map<String, String> repos = GitUtil.getRepoListFromProject(GitUtil.getHttpsUrl(gitHost, project));
-      for (String repo : repos.keySet()) {
-        String repoUri = repos.get(repo);
-        String repoDir = localDir + "/" + repo;
-        GitUtil.clone(repoUri, repoDir);
-        List<GitUtil.CommitMetadata> commitMetadataList = GitUtil.getRepoMetadata(repoDir);
-        for (GitUtil.CommitMetadata m : commitMetadataList) {
-          fw.append(new GitCommitRecord(m, repoUri));
+      repos.putAll(GitUtil.getRepoListFromProject(GitUtil.getHttpsUrl(gitHost, project)));
+    }
+    final Map<String, List<String>> lastCommits = getLastCommits();
+
+    final FileWriter fw = new FileWriter(localDir + "/" + COMMIT_OUTPUT_FILE);
+    int threads = Integer.parseInt(this.prop.getProperty(Constant.GIT_EXTRACT_THREADS_KEY,
+        String.valueOf(DEFAULT_EXTRACT_THREADS)));
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, repos.size())));
+    try {
+      Map<String, Future<Integer>> futures = new LinkedHashMap<>();
+      for (final Map.Entry<String, String> repo : repos.entrySet()) {
+        futures.put(repo.getKey(), executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            List<String> processed = lastCommits.get(repo.getValue());
+            return extractRepo(repo.getValue(), localDir + "/" + repo.getKey(),
+                processed == null ? Collections.<String>emptyList() : processed, fw);
+          }
+        }));
+      }
+
+      int failed = 0;
+      for (Map.Entry<String, Future<Integer>> e : futures.entrySet()) {
+        try {
+          logger.info("{} new commit files in repo {}", e.getValue().get(), e.getKey());
+        } catch (ExecutionException ex) {
+          failed++;
+          logger.error("Failed to extract git repo " + e.getKey(), ex.getCause());
+        }
+      }
+      logger.info("{} git repos extracted, {} failed", repos.size() - failed, failed);
+    } finally {
+      executor.shutdownNow();
+      fw.close();
+    }
+  }
+
+  /**
+   * Fetch one repo and append its new commits to the shared writer.
+   * @return number of commit files written
+   */
+  protected int extractRepo(String repoUri, String repoDir, Collection<String> processedCommitIds, FileWriter fw)
+      throws Exception {
+    GitUtil.cloneOrFetch(repoUri, repoDir);
+    List<GitUtil.CommitMetadata> commitMetadataList = GitUtil.getRepoMetadata(repoDir, processedCommitIds);
+    List<GitCommitRecord> records = new ArrayList<>(commitMetadataList.size());
+    for (GitUtil.CommitMetadata m : commitMetadataList) {
+      records.add(new GitCommitRecord(m, repoUri));
+    }
+    synchronized (fw) {
+      for (GitCommitRecord r : records) {
+        fw.append(r);
+      }
+      fw.flush();
+    }
+    return records.size();
+  }
+
+  /**
+   * @return repository_urn -> ids of its latest loaded commit, empty when wherehows is not configured
+   */
+  protected Map<String, List<String>> getLastCommits() throws SQLException, ClassNotFoundException {
+    Map<String, List<String>> lastCommits = new HashMap<>();
+    if (this.prop.getProperty(Constant.WH_DB_URL_KEY) == null) {
+      return lastCommits;
+    }
+    if (this.prop.getProperty(Constant.WH_DB_DRIVER_KEY) != null) {
+      Class.forName(this.prop.getProperty(Constant.WH_DB_DRIVER_KEY));
+    }
+    try (Connection conn = DriverManager.getConnection(this.prop.getProperty(Constant.WH_DB_URL_KEY),
+        this.prop.getProperty(Constant.WH_DB_USERNAME_KEY), this.prop.getProperty(Constant.WH_DB_PASSWORD_KEY));
+        PreparedStatement stmt = conn.prepareStatement("SELECT DISTINCT s.repository_urn, s.commit_id "
+            + "FROM source_code_commit_info s JOIN (SELECT repository_urn, MAX(commit_time) AS commit_time "
+            + "FROM source_code_commit_info WHERE app_id = ? GROUP BY repository_urn) m "
+            + "ON s.repository_urn = m.repository_urn AND s.commit_time = m.commit_time WHERE s.app_id = ?")) {
+      stmt.setInt(1, Integer.parseInt(this.prop.getProperty(Constant.APP_ID_KEY)));
+      stmt.setInt(2, Integer.parseInt(this.prop.getProperty(Constant.APP_ID_KEY)));
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          List<String> commits = lastCommits.get(rs.getString(1));
+          if (commits == null) {
+            commits = new ArrayList<>();
+            lastCommits.put(rs.getString(1), commits);
+          }
+          commits.add(rs.getString(2));
         }
       }
     }
-    fw.close();
+    return lastCommits;
   }
 
   @Override
   public void transform()
       throws Exception {
     logger.info("git transform");
-    InputStream inputStream = classLoader.getResourceAsStream("jython/GitTransform.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    new BulkLoader(prop).stage(loadSpec());
   }
 
   @Override
   public void load()
       throws Exception {
     logger.info("git load");
-    InputStream inputStream = classLoader.getResourceAsStream("jython/GitLoad.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    new BulkLoader(prop).merge(loadSpec());
   }
 
-
+  LoadSpec loadSpec() {
+    int appId = Integer.parseInt(prop.getProperty(Constant.APP_ID_KEY));
+    long whExecId = Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY));
+    String localDir = prop.getProperty(Constant.WH_APP_FOLDER_KEY) + "/" + appId;
+    return new LoadSpec("git.commit")
+        .stage("stg_source_code_commit_info", localDir + "/" + COMMIT_OUTPUT_FILE,
+            "repository_urn, commit_id, file_path, file_name, commit_time, committer_name, committer_email, "
+                + "author_name, author_email, message", "app_id = ?", appId)
+        .set("app_id", String.valueOf(appId))
+        .set("wh_etl_exec_id", String.valueOf(whExecId))
+        .merge("insert", "INSERT IGNORE INTO source_code_commit_info (app_id, repository_urn, commit_id, file_path, "
+            + "file_name, commit_time, committer_name, committer_email, author_name, author_email, message, "
+            + "created_time, wh_etl_exec_id) "
+            + "SELECT app_id, repository_urn, commit_id, file_path, file_name, commit_time, committer_name, "
+            + "committer_email, author_name, author_email, message, UNIX_TIMESTAMP(NOW()), wh_etl_exec_id "
+            + "FROM stg_source_code_commit_info s WHERE s.app_id = ?", appId);
+  }
 }
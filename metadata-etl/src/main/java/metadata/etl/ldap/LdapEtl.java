@@ -16,6 +16,8 @@ package metadata.etl.ldap;
 import java.io.InputStream;
 import java.util.Properties;
 import metadata.etl.EtlJob;
+import metadata.etl.load.BulkLoader;
+import metadata.etl.load.LoadSpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,10 +39,7 @@ public class LdapEtl extends EtlJob {
 
   public void extract() throws Exception {
     logger.info("ldap db extract");
-    // call a python script to do the extraction
-    InputStream inputStream = classLoader.getResourceAsStream("jython/LdapExtract.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    new LdapExtractor(prop).run();
   }
 
   @Override
@@ -57,9 +56,45 @@ public class LdapEtl extends EtlJob {
   public void load()
       throws Exception {
     logger.info("ldap db load");
-    // call a python script to do the loading
-    InputStream inputStream = classLoader.getResourceAsStream("jython/LdapLoad.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    new BulkLoader(prop).merge(loadSpecs());
+  }
+
+  /**
+   * Merge the staging tables filled by LdapTransform.py.
+   */
+  LoadSpec[] loadSpecs() {
+    LoadSpec user = new LoadSpec("ldap.user")
+        .merge("upsert", "INSERT INTO dir_external_user_info (app_id, user_id, urn, full_name, display_name, title, "
+            + "employee_number, manager_urn, manager_user_id, manager_employee_number, default_group_name, email, "
+            + "department_id, department_name, start_date, mobile_phone, is_active, org_hierarchy, "
+            + "org_hierarchy_depth, created_time, wh_etl_exec_id) "
+            + "SELECT app_id, user_id, urn, full_name, display_name, title, employee_number, manager_urn, "
+            + "manager_user_id, manager_employee_number, default_group_name, email, department_id, department_name, "
+            + "start_date, mobile_phone, is_active, org_hierarchy, org_hierarchy_depth, UNIX_TIMESTAMP(NOW()), "
+            + "wh_etl_exec_id "
+            + "FROM stg_dir_external_user_info s "
+            + "ON DUPLICATE KEY UPDATE urn = s.urn, full_name = s.full_name, display_name = TRIM(s.display_name), "
+            + "title = TRIM(s.title), employee_number = COALESCE(s.employee_number, @employee_number), "
+            + "manager_urn = s.manager_urn, manager_user_id = s.manager_user_id, "
+            + "manager_employee_number = s.manager_employee_number, default_group_name = s.default_group_name, "
+            + "email = s.email, department_id = COALESCE(s.department_id, @department_id), "
+            + "department_name = COALESCE(TRIM(s.department_name), @department_name), start_date = s.start_date, "
+            + "mobile_phone = TRIM(s.mobile_phone), is_active = s.is_active, "
+            + "org_hierarchy = COALESCE(s.org_hierarchy, @org_hierarchy), "
+            + "org_hierarchy_depth = COALESCE(s.org_hierarchy_depth, @org_hierarchy_depth), "
+            + "modified_time = UNIX_TIMESTAMP(NOW()), wh_etl_exec_id = s.wh_etl_exec_id");
+    LoadSpec group = new LoadSpec("ldap.group")
+        .merge("upsert", groupMapUpsert("dir_external_group_user_map", "stg_dir_external_group_user_map"));
+    LoadSpec flatten = new LoadSpec("ldap.group_flatten")
+        .merge("upsert", groupMapUpsert("dir_external_group_user_map_flatten",
+            "stg_dir_external_group_user_map_flatten"));
+    return new LoadSpec[]{user, group, flatten};
+  }
+
+  private static String groupMapUpsert(String table, String stagingTable) {
+    return "INSERT INTO " + table + " (app_id, group_id, sort_id, user_app_id, user_id, created_time, wh_etl_exec_id) "
+        + "SELECT app_id, group_id, sort_id, user_app_id, user_id, UNIX_TIMESTAMP(NOW()), wh_etl_exec_id "
+        + "FROM " + stagingTable + " s "
+        + "ON DUPLICATE KEY UPDATE modified_time = UNIX_TIMESTAMP(NOW()), wh_etl_exec_id = s.wh_etl_exec_id";
   }
 }
@@ -0,0 +1,310 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.ldap;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+import wherehows.common.schemas.LdapGroupMemberRecord;
+import wherehows.common.schemas.LdapUserRecord;
+import wherehows.common.writers.FileWriter;
+
+
+/**
+ * Write the ldap users, the direct members of the groups and the flattened groups to ldap_user_record.csv,
+ * ldap_group_record.csv and ldap_group_flatten_record.csv.
+ * <p>
+ * Searches are paged and every entry is written as soon as it is read, only the user ids and the direct group
+ * members are kept in memory. Groups are flattened in parallel by {@link LdapGroupFlattener}.
+ */
+public class LdapExtractor {
+  private static final Logger logger = LoggerFactory.getLogger(LdapExtractor.class);
+
+  public static final int DEFAULT_PAGE_SIZE = 500;
+  public static final int DEFAULT_FLATTEN_THREADS = 4;
+  private static final int FLUSH_SIZE = 1000;
+  // special group that contains all the users
+  private static final String ALL_USERS_GROUP = "users";
+
+  private final Properties prop;
+  private final int appId;
+  private final int groupAppId;
+  private final long whExecId;
+  private final String metadataFolder;
+  private final int pageSize;
+  private final int flattenThreads;
+
+  /**
+   * Receives the attributes of every entry of a search.
+   */
+  interface EntryHandler {
+    void handle(String searchBase, Attributes attributes)
+      throws Exception;
+  }
+
+  public LdapExtractor(Properties prop) {
+    this.prop = prop;
+    this.appId = Integer.parseInt(prop.getProperty(Constant.APP_ID_KEY));
+    this.groupAppId = Integer.parseInt(prop.getProperty(Constant.LDAP_GROUP_APP_ID_KEY));
+    this.whExecId = Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY));
+    this.metadataFolder = prop.getProperty(Constant.WH_APP_FOLDER_KEY) + "/" + appId;
+    this.pageSize = Integer.parseInt(
+      prop.getProperty(Constant.LDAP_SEARCH_PAGE_SIZE_KEY, String.valueOf(DEFAULT_PAGE_SIZE)));
+    this.flattenThreads = Integer.parseInt(
+      prop.getProperty(Constant.LDAP_GROUP_FLATTEN_THREADS_KEY, String.valueOf(DEFAULT_FLATTEN_THREADS)));
+  }
+
+  public void run()
+    throws Exception {
+    new File(metadataFolder).mkdirs();
+    Set<String> users = fetchUsers(metadataFolder + "/ldap_user_record.csv");
+    Map<String, List<String>> groups = fetchGroups(metadataFolder + "/ldap_group_record.csv", users);
+    flattenGroups(metadataFolder + "/ldap_group_flatten_record.csv", groups, users);
+  }
+
+  /**
+   * @return ids of the users written
+   */
+  Set<String> fetchUsers(String file)
+    throws Exception {
+    // user_id, distinct_name, name, display_name, title, employee_number, manager, mail, department_number,
+    // department, start_date, mobile
+    final String[] attributes = splitProperty(prop.getProperty(Constant.LDAP_SEARCH_RETURN_ATTRS_KEY));
+    final String inactiveDomain = prop.getProperty(Constant.LDAP_INACTIVE_DOMAIN_KEY);
+    final Set<String> users = new HashSet<>();
+    final FileWriter writer = new FileWriter(file);
+
+    LdapContext ctx = connect(prop.getProperty(Constant.LDAP_CONTEXT_FACTORY_KEY),
+      prop.getProperty(Constant.LDAP_CONTEXT_PROVIDER_URL_KEY),
+      prop.getProperty(Constant.LDAP_CONTEXT_SECURITY_PRINCIPAL_KEY),
+      prop.getProperty(Constant.LDAP_CONTEXT_SECURITY_CREDENTIALS_KEY));
+    try {
+      for (String searchBase : splitProperty(prop.getProperty(Constant.LDAP_SEARCH_DOMAINS_KEY))) {
+        search(ctx, searchBase, "(objectClass=person)", attributes, new EntryHandler() {
+          @Override
+          public void handle(String searchBase, Attributes entry)
+            throws Exception {
+            String userId = value(entry.get(attributes[0]));
+            if (userId == null) {
+              logger.warn("Skip ldap person without {} in {}", attributes[0], searchBase);
+              return;
+            }
+            users.add(userId);
+
+            List<String> values = new ArrayList<>(attributes.length);
+            for (int i = 0; i < attributes.length; i++) {
+              String v = value(entry.get(attributes[i]));
+              // start dates with only the year
+              if (i == 10 && v != null && v.length() == 4) {
+                v += "0101";
+              }
+              values.add(v == null ? "" : v);
+            }
+            writer.append(new LdapUserRecord(appId, searchBase.equals(inactiveDomain) ? 'N' : 'Y', values, whExecId));
+            if (users.size() % FLUSH_SIZE == 0) {
+              writer.flush();
+            }
+          }
+        });
+      }
+    } finally {
+      ctx.close();
+      writer.close();
+    }
+    logger.info("{} records found in ldap search", users.size());
+    return users;
+  }
+
+  /**
+   * @return group -> direct members, for the groups that have members
+   */
+  Map<String, List<String>> fetchGroups(String file, final Set<String> users)
+    throws Exception {
+    // group_id, member_ids
+    final String[] attributes = splitProperty(prop.getProperty(Constant.LDAP_GROUP_SEARCH_RETURN_ATTRS_KEY));
+    final Map<String, List<String>> groups = new LinkedHashMap<>();
+    final FileWriter writer = new FileWriter(file);
+
+    LdapContext ctx = connect(prop.getProperty(Constant.LDAP_GROUP_CONTEXT_FACTORY_KEY),
+      prop.getProperty(Constant.LDAP_GROUP_CONTEXT_PROVIDER_URL_KEY),
+      prop.getProperty(Constant.LDAP_GROUP_CONTEXT_SECURITY_PRINCIPAL_KEY),
+      prop.getProperty(Constant.LDAP_GROUP_CONTEXT_SECURITY_CREDENTIALS_KEY));
+    try {
+      for (String searchBase : splitProperty(prop.getProperty(Constant.LDAP_GROUP_SEARCH_DOMAINS_KEY))) {
+        search(ctx, searchBase, "(objectClass=posixGroup)", attributes, new EntryHandler() {
+          @Override
+          public void handle(String searchBase, Attributes entry)
+            throws Exception {
+            String group = value(entry.get(attributes[0]));
+            Attribute memberIds = entry.get(attributes[1]);
+            if (group == null || group.equals(ALL_USERS_GROUP) || memberIds == null) {
+              return;
+            }
+
+            List<String> members = new ArrayList<>(memberIds.size());
+            NamingEnumeration<?> all = memberIds.getAll();
+            while (all.hasMore()) {
+              String member = clean(all.next());
+              writer.append(new LdapGroupMemberRecord(groupAppId, group, members.size(),
+                users.contains(member) ? appId : groupAppId, member, whExecId));
+              members.add(member);
+            }
+            groups.put(group, members);
+            if (groups.size() % FLUSH_SIZE == 0) {
+              writer.flush();
+            }
+          }
+        });
+      }
+    } finally {
+      ctx.close();
+      writer.close();
+    }
+    logger.info("{} records found in group accounts", groups.size());
+    return groups;
+  }
+
+  void flattenGroups(String file, Map<String, List<String>> groups, Set<String> users)
+    throws Exception {
+    final LdapGroupFlattener flattener = new LdapGroupFlattener(groups, users);
+    logger.info("{} groups in {} components to flatten", groups.size(), flattener.getComponentCount());
+
+    FileWriter writer = new FileWriter(file);
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, flattenThreads));
+    try {
+      Map<String, Future<List<String>>> futures = new LinkedHashMap<>();
+      for (final String group : groups.keySet()) {
+        futures.put(group, executor.submit(new Callable<List<String>>() {
+          @Override
+          public List<String> call()
+            throws Exception {
+            return flattener.flatten(group);
+          }
+        }));
+      }
+
+      long count = 0;
+      for (Map.Entry<String, Future<List<String>>> e : futures.entrySet()) {
+        List<String> members;
+        try {
+          members = e.getValue().get();
+        } catch (ExecutionException ex) {
+          throw new Exception("Failed to flatten ldap group " + e.getKey(), ex.getCause());
+        }
+        for (int i = 0; i < members.size(); i++) {
+          writer.append(new LdapGroupMemberRecord(groupAppId, e.getKey(), i, appId, members.get(i), whExecId));
+        }
+        count += members.size();
+        writer.flush();
+      }
+      logger.info("{} flattened group members", count);
+    } finally {
+      executor.shutdownNow();
+      writer.close();
+    }
+  }
+
+  /**
+   * Search the subtree of the base page by page.
+   */
+  void search(LdapContext ctx, String searchBase, String filter, String[] attributes, EntryHandler handler)
+    throws Exception {
+    SearchControls controls = new SearchControls();
+    controls.setReturningAttributes(attributes);
+    controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+
+    byte[] cookie = null;
+    do {
+      // not critical, servers without paging return everything at once
+      ctx.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL)});
+      NamingEnumeration<SearchResult> results = ctx.search(searchBase, filter, controls);
+      try {
+        while (results.hasMore()) {
+          handler.handle(searchBase, results.next().getAttributes());
+        }
+      } finally {
+        results.close();
+      }
+
+      cookie = null;
+      Control[] responseControls = ctx.getResponseControls();
+      if (responseControls != null) {
+        for (Control c : responseControls) {
+          if (c instanceof PagedResultsResponseControl) {
+            cookie = ((PagedResultsResponseControl) c).getCookie();
+          }
+        }
+      }
+    } while (cookie != null && cookie.length > 0);
+  }
+
+  static LdapContext connect(String factory, String url, String principal, String credentials)
+    throws NamingException {
+    Hashtable<String, String> settings = new Hashtable<>();
+    settings.put(Context.INITIAL_CONTEXT_FACTORY, factory);
+    settings.put(Context.PROVIDER_URL, url);
+    if (principal != null) {
+      settings.put(Context.SECURITY_PRINCIPAL, principal);
+    }
+    if (credentials != null) {
+      settings.put(Context.SECURITY_CREDENTIALS, credentials);
+    }
+    return new InitialLdapContext(settings, null);
+  }
+
+  /**
+   * Split a property formatted as 'value1','value2','value3,with comma'
+   */
+  static String[] splitProperty(String value) {
+    return value.replaceAll("^['\\s]+|['\\s]+$", "").split("\\s*'\\s*,\\s*'\\s*");
+  }
+
+  /**
+   * @return the first value of the attribute without line breaks, null when there is none
+   */
+  static String value(Attribute attribute)
+    throws NamingException {
+    return attribute == null || attribute.size() == 0 ? null : clean(attribute.get(0));
+  }
+
+  private static String clean(Object value) {
+    return value.toString().replaceAll("\r|\n", "").trim();
+  }
+}
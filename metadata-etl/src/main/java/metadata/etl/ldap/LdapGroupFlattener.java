@@ -0,0 +1,201 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.ldap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Expand ldap groups to all the users of their nested groups.
+ * <p>
+ * Groups that contain each other have the same users, so the cycles are first collapsed into strongly connected
+ * components, which leaves a DAG. Every component is then flattened once, from the flattened components it
+ * contains, and the result is shared by all the groups that reach it. Flattening is thread safe : a component
+ * requested by several threads is computed by the first one while the others wait for it.
+ * <p>
+ * Like the original script, a member that is a user is never expanded, and a member that is neither a user nor
+ * a group is ignored.
+ */
+class LdapGroupFlattener {
+  private final Map<String, List<String>> groupMembers;
+  private final Set<String> users;
+
+  // group -> index of its component in componentGroups
+  private final Map<String, Integer> components = new HashMap<>();
+  private final List<List<String>> componentGroups = new ArrayList<>();
+  private final ConcurrentMap<Integer, FutureTask<List<String>>> flattened = new ConcurrentHashMap<>();
+
+  /**
+   * A group being visited by the component search, with the position of its next member.
+   */
+  private static class Visit {
+    final String group;
+    int next = 0;
+
+    Visit(String group) {
+      this.group = group;
+    }
+  }
+
+  /**
+   * @param groupMembers group -> direct members, users or groups
+   * @param users all the user ids
+   */
+  LdapGroupFlattener(Map<String, List<String>> groupMembers, Set<String> users) {
+    this.groupMembers = groupMembers;
+    this.users = users;
+    findComponents();
+  }
+
+  int getComponentCount() {
+    return componentGroups.size();
+  }
+
+  /**
+   * @return the distinct users of the group and of its nested groups, in the order they are found
+   */
+  List<String> flatten(String group)
+    throws InterruptedException {
+    if (users.contains(group)) {
+      return Collections.singletonList(group);
+    }
+    Integer component = components.get(group);
+    return component == null ? Collections.<String>emptyList() : flattenComponent(component);
+  }
+
+  private List<String> flattenComponent(final int component)
+    throws InterruptedException {
+    FutureTask<List<String>> task = flattened.get(component);
+    if (task == null) {
+      FutureTask<List<String>> newTask = new FutureTask<>(new Callable<List<String>>() {
+        @Override
+        public List<String> call()
+          throws Exception {
+          return computeComponent(component);
+        }
+      });
+      task = flattened.putIfAbsent(component, newTask);
+      if (task == null) {
+        task = newTask;
+        task.run();
+      }
+    }
+    try {
+      return task.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof InterruptedException) {
+        throw (InterruptedException) e.getCause();
+      }
+      throw new IllegalStateException("Failed to flatten " + componentGroups.get(component), e.getCause());
+    }
+  }
+
+  private List<String> computeComponent(int component)
+    throws InterruptedException {
+    Set<String> result = new LinkedHashSet<>();
+    for (String group : componentGroups.get(component)) {
+      for (String member : groupMembers.get(group)) {
+        if (users.contains(member)) {
+          result.add(member);
+        } else {
+          Integer memberComponent = components.get(member);
+          // groups of the same component are expanded by this loop
+          if (memberComponent != null && memberComponent != component) {
+            result.addAll(flattenComponent(memberComponent));
+          }
+        }
+      }
+    }
+    return Collections.unmodifiableList(new ArrayList<>(result));
+  }
+
+  private boolean isGroup(String member) {
+    return !users.contains(member) && groupMembers.containsKey(member);
+  }
+
+  /**
+   * Tarjan's strongly connected components, with an explicit stack as nesting can be deep.
+   */
+  private void findComponents() {
+    Map<String, Integer> index = new HashMap<>();
+    Map<String, Integer> lowLink = new HashMap<>();
+    Deque<String> stack = new ArrayDeque<>();
+    Set<String> onStack = new HashSet<>();
+    Deque<Visit> visits = new ArrayDeque<>();
+
+    for (String root : groupMembers.keySet()) {
+      if (index.containsKey(root) || !isGroup(root)) {
+        continue;
+      }
+      index.put(root, index.size());
+      lowLink.put(root, index.get(root));
+      stack.push(root);
+      onStack.add(root);
+      visits.push(new Visit(root));
+
+      while (!visits.isEmpty()) {
+        Visit visit = visits.peek();
+        List<String> members = groupMembers.get(visit.group);
+        if (visit.next < members.size()) {
+          String member = members.get(visit.next++);
+          if (!isGroup(member)) {
+            continue;
+          }
+          if (!index.containsKey(member)) {
+            index.put(member, index.size());
+            lowLink.put(member, index.get(member));
+            stack.push(member);
+            onStack.add(member);
+            visits.push(new Visit(member));
+          } else if (onStack.contains(member)) {
+            lowLink.put(visit.group, Math.min(lowLink.get(visit.group), index.get(member)));
+          }
+          continue;
+        }
+
+        visits.pop();
+        if (!visits.isEmpty()) {
+          String parent = visits.peek().group;
+          lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(visit.group)));
+        }
+        if (lowLink.get(visit.group).equals(index.get(visit.group))) {
+          List<String> groups = new ArrayList<>();
+          String group;
+          do {
+            group = stack.pop();
+            onStack.remove(group);
+            components.put(group, componentGroups.size());
+            groups.add(group);
+          } while (!group.equals(visit.group));
+          Collections.reverse(groups);
+          componentGroups.add(groups);
+        }
+      }
+    }
+  }
+}
@@ -18,11 +18,9 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.io.IOUtils;
-import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
+import metadata.etl.scheduler.azkaban.AzkabanExecWatermark;
+import metadata.etl.scheduler.azkaban.AzkabanFlowData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import wherehows.common.Constant;
@@ -100,20 +98,46 @@ public class AzJobChecker {
     throws SQLException, IOException {
 
     logger.info("Get the jobs from time : {} to time : {}", startTimeStamp, endTimeStamp);
-    List<AzkabanJobExecRecord> results = new ArrayList<>();
-    Statement stmt = conn.createStatement();
-    final String cmd =
-      "select exec_id, flow_id, status, submit_user, flow_data from execution_flows where end_time > " + startTimeStamp
-        + " and end_time < " + endTimeStamp ;
-    logger.info("Get recent flow sql : " + cmd);
-    final ResultSet rs = stmt.executeQuery(cmd); // this sql take 3 second to execute
-
-    while (rs.next()) {
-      long execId = rs.getLong("exec_id");
-      Blob flowBlob = rs.getBlob("flow_data");
-      GZIPInputStream gzip = new GZIPInputStream(flowBlob.getBinaryStream());
-      String flowJson = IOUtils.toString(gzip, "UTF-8");
-      results.addAll(parseJson(flowJson, execId));
+    List<Long> execIds = new ArrayList<>();
+    final String cmd = "select exec_id from execution_flows where end_time > ? and end_time < ?";
+    try (PreparedStatement stmt = conn.prepareStatement(cmd)) {
+      stmt.setLong(1, startTimeStamp);
+      stmt.setLong(2, endTimeStamp);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          execIds.add(rs.getLong(1));
+        }
+      }
+    }
+    return getFinishedJobs(execIds);
+  }
+
+  /**
+   * Get the jobs of the flows finished after the watermark of the lineage ETL.
+   * @param watermark last processed execution, saved as pending once the jobs are read
+   * @param fallbackStartTimeStamp begin timestamp in milli seconds when the watermark is empty
+   * @param endTimeStamp only flows finished before, in milli seconds, or 0 for no limit
+   */
+  public List<AzkabanJobExecRecord> getNewFinishedJobFromFlow(AzkabanExecWatermark watermark,
+    long fallbackStartTimeStamp, long endTimeStamp)
+    throws SQLException, IOException {
+    return getFinishedJobs(watermark.selectNewExecIds(conn, fallbackStartTimeStamp, endTimeStamp));
+  }
+
+  private List<AzkabanJobExecRecord> getFinishedJobs(List<Long> execIds)
+    throws SQLException, IOException {
+    final List<AzkabanJobExecRecord> results = new ArrayList<>();
+    try {
+      AzkabanFlowData.readExecutions(conn, execIds, new AzkabanFlowData.Handler() {
+        @Override
+        public void handle(AzkabanFlowData flow) {
+          results.addAll(toJobExecRecords(flow, flow.execId));
+        }
+      });
+    } catch (SQLException | IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
     }
     return results;
   }
@@ -127,38 +151,32 @@ public class AzJobChecker {
    */
   public List<AzkabanJobExecRecord> parseJson(String flowJson, long flowExecId)
     throws IOException {
+    return toJobExecRecords(AzkabanFlowData.parse(flowJson), flowExecId);
+  }
 
-    ObjectMapper mapper = new ObjectMapper();
-    JsonNode wholeFlow = mapper.readTree(flowJson);
-    JsonNode allJobs = wholeFlow.get("nodes");
-    String flowPath = wholeFlow.get("projectName").asText() + ":" + wholeFlow.get("flowId").asText();
-    List<AzkabanJobExecRecord> results = parseJsonHelper(allJobs, flowExecId, flowPath);
+  private List<AzkabanJobExecRecord> toJobExecRecords(AzkabanFlowData flow, long flowExecId) {
+    List<AzkabanJobExecRecord> results = parseJsonHelper(flow.nodes, flowExecId, flow.getFlowPath());
     AzkabanJobExecUtil.sortAndSet(results);
     return results;
   }
 
   /**
    * Recursively process the execution info to get {@AzkabanJobExecRecord}
-   * @param allJobs JsonNode in "nodes" field
+   * @param allJobs nodes of the flow
    * @param flowExecId
    * @param flowPath Format : project_name:first_level_flow/sub_flow/sub_flow
    * @return
    */
-  private List<AzkabanJobExecRecord> parseJsonHelper(JsonNode allJobs, long flowExecId, String flowPath) {
+  private List<AzkabanJobExecRecord> parseJsonHelper(List<AzkabanFlowData.Node> allJobs, long flowExecId,
+    String flowPath) {
     List<AzkabanJobExecRecord> results = new ArrayList<>();
-    for (JsonNode oneJob : allJobs) {
-      if (oneJob.has("nodes")) { // is a subflow
-        String subFlowName = oneJob.get("id").asText();
-        flowPath += "/" + subFlowName;
-        results.addAll(parseJsonHelper(oneJob.get("nodes"), flowExecId, flowPath));
+    for (AzkabanFlowData.Node oneJob : allJobs) {
+      if (oneJob.nodes != null) { // is a subflow
+        results.addAll(parseJsonHelper(oneJob.nodes, flowExecId, flowPath + "/" + oneJob.id));
       } else {
-        String jobName = oneJob.get("id").asText();
-        long startTime = oneJob.get("startTime").asLong();
-        long endTime = oneJob.get("endTime").asLong();
-        String status = oneJob.get("status").asText();
         AzkabanJobExecRecord azkabanJobExecRecord =
-            new AzkabanJobExecRecord(appId, jobName, flowExecId, (int) (startTime / 1000), (int) (endTime / 1000),
-                status, flowPath);
+            new AzkabanJobExecRecord(appId, oneJob.id, flowExecId, (int) (oneJob.startTime / 1000),
+                (int) (oneJob.endTime / 1000), oneJob.status, flowPath);
         results.add(azkabanJobExecRecord);
       }
     }
@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import metadata.etl.scheduler.azkaban.AzkabanExecWatermark;
 import org.slf4j.LoggerFactory;
 import scala.concurrent.Await;
 import scala.concurrent.Future;
@@ -78,6 +79,42 @@ public class AzLineageExtractorMaster {
     AzJobChecker azJobChecker = new AzJobChecker(prop);
     List<AzkabanJobExecRecord> jobExecList = azJobChecker.getRecentFinishedJobFromFlow(timeFrame, endTimeStamp);
     azJobChecker.close();
+    run(jobExecList);
+  }
+
+  /**
+   * Entry point of the scheduled runs.
+   * Lineage of the azkaban jobs finished since the last processed flow, the watermark is saved as pending and
+   * committed by the load step.
+   * @param timeFrame in minutes, only used when there is no watermark yet
+   * @throws Exception
+   */
+  public void runIncremental(int timeFrame)
+    throws Exception {
+    int appId = Integer.valueOf(prop.getProperty(Constant.APP_ID_KEY));
+    long overlapMillis = 60000L * Integer.valueOf(prop.getProperty(Constant.AZ_LINEAGE_ETL_OVERLAP_MINS_KEY,
+      String.valueOf(AzkabanExecWatermark.DEFAULT_OVERLAP_MINUTES)));
+    String connUrl = prop.getProperty(Constant.WH_DB_URL_KEY) + "?" + "user=" + prop.getProperty(
+      Constant.WH_DB_USERNAME_KEY) + "&password=" + prop.getProperty(Constant.WH_DB_PASSWORD_KEY);
+    try (Connection conn = DriverManager.getConnection(connUrl)) {
+      AzkabanExecWatermark watermark =
+        AzkabanExecWatermark.load(conn, appId, AzkabanExecWatermark.LINEAGE_ETL, overlapMillis);
+      AzJobChecker azJobChecker = new AzJobChecker(prop);
+      List<AzkabanJobExecRecord> jobExecList = azJobChecker.getNewFinishedJobFromFlow(watermark,
+        System.currentTimeMillis() - 60000L * timeFrame, 0);
+      azJobChecker.close();
+      run(jobExecList);
+      watermark.savePending(conn, Long.valueOf(prop.getProperty(Constant.WH_EXEC_ID_KEY)));
+    }
+  }
+
+  /**
+   * Extract the lineage of the given jobs. Will write to database stagging table
+   * @param jobExecList finished azkaban jobs
+   * @throws Exception
+   */
+  public void run(List<AzkabanJobExecRecord> jobExecList)
+    throws Exception {
     logger.info("Total number of azkaban jobs : {}", jobExecList.size());
 
     ActorSystem actorSystem = ActorSystem.create("LineageExtractor");
@@ -14,6 +14,7 @@
 package metadata.etl.lineage;
 
 import metadata.etl.EtlJob;
+import metadata.etl.scheduler.azkaban.AzkabanExecWatermark;
 import wherehows.common.Constant;
 
 import java.sql.*;
@@ -54,7 +55,7 @@ public class AzLineageMetadataEtl extends EtlJob {
   public AzLineageMetadataEtl(int appId, long whExecId, Properties properties) {
     super(appId, null, whExecId, properties);
     this.timeFrame = Integer.valueOf(this.prop.getProperty(Constant.AZ_LINEAGE_ETL_LOOKBACK_MINS_KEY, "90")); //default lookback 90 mins
-    if (this.prop.contains(Constant.AZ_LINEAGE_ETL_END_TIMESTAMP_KEY))
+    if (this.prop.containsKey(Constant.AZ_LINEAGE_ETL_END_TIMESTAMP_KEY))
       this.endTimeStamp = Long.valueOf(this.prop.getProperty(Constant.AZ_LINEAGE_ETL_END_TIMESTAMP_KEY));
     try {
       setUp();
@@ -86,7 +87,7 @@ public class AzLineageMetadataEtl extends EtlJob {
     }
 
     else if (timeFrame != null) {
-      azLineageExtractorMaster.run(timeFrame);
+      azLineageExtractorMaster.runIncremental(timeFrame);
     } else {
       azLineageExtractorMaster.run(10);
     }
@@ -115,6 +116,8 @@ public class AzLineageMetadataEtl extends EtlJob {
       .getProperty(Constant.APP_ID_KEY);
     logger.info("Azkaban Lineage load cmd :\n" + insertIntoFinalTable);
     conn.createStatement().execute(insertIntoFinalTable);
+    AzkabanExecWatermark.commit(conn, Integer.valueOf(prop.getProperty(Constant.APP_ID_KEY)),
+      AzkabanExecWatermark.LINEAGE_ETL, Long.valueOf(prop.getProperty(Constant.WH_EXEC_ID_KEY)));
 
     logger.info("Azkaban lineage metadata ETL completed");
     if (prop.getProperty(Constant.APP_ID_KEY).equals("32") || prop.getProperty(Constant.APP_ID_KEY).equals("31") ) {
@@ -0,0 +1,381 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.load;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+
+
+/**
+ * Run {@link LoadSpec}s against the wherehows database.
+ * <p>
+ * Each spec runs on its own connection : the staging rows are cleared, the file is streamed into the staging table
+ * with LOAD DATA or batched inserts, then the transform and merge steps run. All the statements of a spec are
+ * committed once at the end, and rolled back together when one fails, unless the spec commits each step. Time and
+ * row count of every step are logged and kept in {@link #getTimings()}. In dry-run mode the statements are only
+ * logged, and the rows of the files counted.
+ */
+public class BulkLoader {
+  private static final Logger logger = LoggerFactory.getLogger(BulkLoader.class);
+
+  static final int BATCH_SIZE = 1000;
+  // separator of the fields written by wherehows.common.writers.FileWriter
+  private static final char FIELD_SEPARATOR = '\u001a';
+  private static final char LINE_SEPARATOR = '\n';
+  private static final String LOAD_FILE_SQL = "LOAD DATA LOCAL INFILE '%s' INTO TABLE %s "
+    + "FIELDS TERMINATED BY '\\Z' ESCAPED BY '%s' LINES TERMINATED BY '\\n' (%s)";
+
+  private final String jdbcUrl;
+  private final String username;
+  private final String password;
+  private final boolean dryRun;
+
+  // step -> [millis, rows]
+  private final Map<String, long[]> timings = new LinkedHashMap<>();
+
+  public BulkLoader(Properties prop)
+    throws ClassNotFoundException {
+    this(prop.getProperty(Constant.WH_DB_URL_KEY), prop.getProperty(Constant.WH_DB_USERNAME_KEY),
+      prop.getProperty(Constant.WH_DB_PASSWORD_KEY),
+      Boolean.parseBoolean(prop.getProperty(Constant.ETL_LOAD_DRY_RUN_KEY, "false")));
+    if (prop.getProperty(Constant.WH_DB_DRIVER_KEY) != null) {
+      Class.forName(prop.getProperty(Constant.WH_DB_DRIVER_KEY));
+    }
+  }
+
+  public BulkLoader(String jdbcUrl, String username, String password, boolean dryRun) {
+    this.jdbcUrl = jdbcUrl;
+    this.username = username;
+    this.password = password;
+    this.dryRun = dryRun;
+  }
+
+  /**
+   * Stage, transform and merge every spec, each in its own transaction.
+   */
+  public void run(LoadSpec... specs)
+    throws Exception {
+    for (LoadSpec spec : specs) {
+      execute(spec, true, true);
+    }
+  }
+
+  /**
+   * Only load the files into the staging tables and run the transform steps.
+   */
+  public void stage(LoadSpec... specs)
+    throws Exception {
+    for (LoadSpec spec : specs) {
+      execute(spec, true, false);
+    }
+  }
+
+  /**
+   * Only run the merge steps, on staging tables loaded by {@link #stage} or by another script.
+   */
+  public void merge(LoadSpec... specs)
+    throws Exception {
+    for (LoadSpec spec : specs) {
+      execute(spec, false, true);
+    }
+  }
+
+  private void execute(LoadSpec spec, boolean stage, boolean merge)
+    throws Exception {
+    List<LoadSpec.Step> steps = new ArrayList<>();
+    if (stage) {
+      steps.addAll(spec.transformSteps);
+    }
+    if (merge) {
+      steps.addAll(spec.mergeSteps);
+    }
+    boolean loadFile = stage && spec.stagingTable != null;
+    long start = System.currentTimeMillis();
+
+    if (dryRun) {
+      if (loadFile) {
+        logStep(spec.clear);
+        long begin = System.currentTimeMillis();
+        logger.info("[dry-run] {} : {}", spec.name + ".load", loadStatement(spec));
+        record(spec.name + ".load", begin, countLines(spec.file));
+      }
+      for (LoadSpec.Step step : steps) {
+        logStep(step);
+      }
+      return;
+    }
+
+    try (Connection conn = DriverManager.getConnection(jdbcUrl, username, password)) {
+      conn.setAutoCommit(!spec.singleTransaction);
+      try {
+        if (loadFile) {
+          executeStep(conn, spec.clear);
+          loadFile(conn, spec);
+        }
+        for (LoadSpec.Step step : steps) {
+          executeStep(conn, step);
+        }
+        if (spec.singleTransaction) {
+          conn.commit();
+        }
+      } catch (Exception e) {
+        if (spec.singleTransaction) {
+          conn.rollback();
+        }
+        throw new Exception("Failed to load " + spec.name + (spec.singleTransaction ? ", rolled back" : ""), e);
+      }
+    }
+    logger.info("{} loaded in {} ms", spec.name, System.currentTimeMillis() - start);
+  }
+
+  private void logStep(LoadSpec.Step step) {
+    logger.info("[dry-run] {} : {} {}", step.name, step.sql, Arrays.toString(step.params));
+  }
+
+  private int executeStep(Connection conn, LoadSpec.Step step)
+    throws SQLException {
+    long start = System.currentTimeMillis();
+    logger.debug(step.sql);
+    try (PreparedStatement stmt = conn.prepareStatement(step.sql)) {
+      for (int i = 0; i < step.params.length; i++) {
+        stmt.setObject(i + 1, step.params[i]);
+      }
+      int rows = stmt.executeUpdate();
+      record(step.name, start, rows);
+      return rows;
+    }
+  }
+
+  private void loadFile(Connection conn, LoadSpec spec)
+    throws SQLException, IOException {
+    long start = System.currentTimeMillis();
+    long rows;
+    if (spec.mode == LoadSpec.Mode.LOAD_DATA) {
+      String sql = loadStatement(spec);
+      logger.debug(sql);
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        rows = stmt.executeUpdate();
+      }
+    } else {
+      rows = insertFile(conn, spec);
+    }
+    record(spec.name + ".load", start, rows);
+  }
+
+  static String loadStatement(LoadSpec spec) {
+    StringBuilder sql = new StringBuilder(
+      String.format(LOAD_FILE_SQL, spec.file, spec.stagingTable, sqlChar(spec.escape), join(spec.columns)));
+    String separator = " SET ";
+    for (Map.Entry<String, String> e : spec.setColumns.entrySet()) {
+      sql.append(separator).append(e.getKey()).append(" = ").append(e.getValue());
+      separator = ", ";
+    }
+    return sql.toString();
+  }
+
+  private static String sqlChar(char c) {
+    switch (c) {
+      case '\0':
+        return "\\0";
+      case '\\':
+        return "\\\\";
+      case '\'':
+        return "\\'";
+      default:
+        return String.valueOf(c);
+    }
+  }
+
+  static String insertStatement(LoadSpec spec) {
+    for (String column : spec.columns) {
+      if (column.startsWith("@")) {
+        throw new IllegalArgumentException("Batched inserts can not skip the field " + column + " of " + spec.name);
+      }
+    }
+    List<String> columns = new ArrayList<>(spec.columns);
+    columns.addAll(spec.setColumns.keySet());
+    StringBuilder sql = new StringBuilder("INSERT INTO ").append(spec.stagingTable).append(" (")
+      .append(join(columns)).append(") VALUES (");
+    for (int i = 0; i < spec.columns.size(); i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    for (String expression : spec.setColumns.values()) {
+      sql.append(", ").append(expression);
+    }
+    return sql.append(')').toString();
+  }
+
+  /**
+   * Stream the file into the staging table with batched inserts, missing trailing fields are null. The fields are
+   * read as LOAD DATA reads them, see {@link #readRecord}.
+   */
+  private long insertFile(Connection conn, LoadSpec spec)
+    throws SQLException, IOException {
+    String sql = insertStatement(spec);
+    logger.debug(sql);
+    int fieldCount = spec.columns.size();
+    long rows = 0;
+    int pending = 0;
+    try (PreparedStatement stmt = conn.prepareStatement(sql);
+        BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(spec.file), StandardCharsets.UTF_8))) {
+      List<String> fields;
+      while ((fields = readRecord(reader, spec.escape)) != null) {
+        for (int i = 0; i < fieldCount; i++) {
+          String field = i < fields.size() ? fields.get(i) : null;
+          if (field == null) {
+            stmt.setNull(i + 1, Types.VARCHAR);
+          } else {
+            stmt.setString(i + 1, field);
+          }
+        }
+        stmt.addBatch();
+        rows++;
+        if (++pending == BATCH_SIZE) {
+          stmt.executeBatch();
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        stmt.executeBatch();
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Read the fields of the next line with the escaping of LOAD DATA : {@code <escape>N} alone is a null field,
+   * {@code <escape>0}, {@code b}, {@code n}, {@code r}, {@code t} and {@code Z} are NUL, backspace, newline, carriage
+   * return, tab and 0x1A, and any other escaped character is itself, so an escaped separator or line end is part
+   * of the field.
+   * @return the fields, null at the end of the file
+   */
+  static List<String> readRecord(Reader reader, char escape)
+    throws IOException {
+    int c = reader.read();
+    if (c < 0) {
+      return null;
+    }
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean nullMarker = false;
+    while (c >= 0 && c != LINE_SEPARATOR) {
+      if (c == escape) {
+        c = reader.read();
+        if (c < 0) {
+          field.append(escape);
+          break;
+        }
+        nullMarker |= c == 'N' && field.length() == 0;
+        field.append(unescape((char) c));
+      } else if (c == FIELD_SEPARATOR) {
+        fields.add(nullMarker && field.length() == 1 ? null : field.toString());
+        field.setLength(0);
+        nullMarker = false;
+      } else {
+        field.append((char) c);
+      }
+      c = reader.read();
+    }
+    fields.add(nullMarker && field.length() == 1 ? null : field.toString());
+    return fields;
+  }
+
+  private static char unescape(char c) {
+    switch (c) {
+      case '0':
+        return '\0';
+      case 'b':
+        return '\b';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'Z':
+        return FIELD_SEPARATOR;
+      default:
+        return c;
+    }
+  }
+
+  private static long countLines(String file)
+    throws IOException {
+    long lines = 0;
+    try (BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      while (reader.readLine() != null) {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  private static String join(List<String> values) {
+    StringBuilder sb = new StringBuilder();
+    for (String v : values) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(v);
+    }
+    return sb.toString();
+  }
+
+  private void record(String step, long startMillis, long rows) {
+    long elapsed = System.currentTimeMillis() - startMillis;
+    logger.info("{} : {} rows in {} ms", step, rows, elapsed);
+    synchronized (timings) {
+      long[] t = timings.get(step);
+      if (t == null) {
+        t = new long[2];
+        timings.put(step, t);
+      }
+      t[0] += elapsed;
+      t[1] += rows;
+    }
+  }
+
+  /**
+   * @return step -> [milliseconds, rows] of the steps run so far
+   */
+  public Map<String, long[]> getTimings() {
+    Map<String, long[]> copy = new LinkedHashMap<>();
+    synchronized (timings) {
+      for (Map.Entry<String, long[]> e : timings.entrySet()) {
+        copy.put(e.getKey(), e.getValue().clone());
+      }
+    }
+    return copy;
+  }
+}
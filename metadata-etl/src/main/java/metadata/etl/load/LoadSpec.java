@@ -0,0 +1,148 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.load;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Declarative description of one load run by {@link BulkLoader} : a file streamed into a staging table, the SQL
+ * steps that transform the staging rows, and the SQL steps that merge them into the final table.
+ * <p>
+ * Every part is optional, a spec without file only runs its steps. Statements take their values as {@code ?}
+ * parameters, except the set expressions of the staging table which are copied into the LOAD DATA statement.
+ */
+public class LoadSpec {
+
+  /**
+   * How the file is streamed into the staging table.
+   */
+  public enum Mode {
+    /** LOAD DATA LOCAL INFILE, the file is read by the server */
+    LOAD_DATA,
+    /**
+     * JDBC batches of single-row inserts, for databases without LOAD DATA or files that are not local to the client.
+     * MySQL Connector/J sends the rows of a batch one by one unless the JDBC URL sets rewriteBatchedStatements=true.
+     */
+    BATCH_INSERT
+  }
+
+  /**
+   * One named SQL statement with its parameters.
+   */
+  public static class Step {
+    final String name;
+    final String sql;
+    final Object[] params;
+
+    Step(String name, String sql, Object[] params) {
+      this.name = name;
+      this.sql = sql;
+      this.params = params;
+    }
+  }
+
+  final String name;
+  Mode mode = Mode.LOAD_DATA;
+  boolean singleTransaction = true;
+
+  String stagingTable;
+  String file;
+  // escape character of the file fields, NUL as in the files of wherehows.common.writers.FileWriter
+  char escape = '\0';
+  List<String> columns = Collections.emptyList();
+  // column -> SQL expression of the columns that are not in the file
+  final Map<String, String> setColumns = new LinkedHashMap<>();
+  Step clear;
+
+  final List<Step> transformSteps = new ArrayList<>();
+  final List<Step> mergeSteps = new ArrayList<>();
+
+  /**
+   * @param name prefix of the step names in the timings and the logs
+   */
+  public LoadSpec(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Stream the file into the staging table, after deleting the staging rows that match the condition.
+   * @param columns columns of the file fields in order, {@code @var} skips a field with LOAD DATA
+   */
+  public LoadSpec stage(String stagingTable, String file, List<String> columns, String clearCondition,
+    Object... clearParams) {
+    this.stagingTable = stagingTable;
+    this.file = file;
+    this.columns = new ArrayList<>(columns);
+    this.clear = new Step(name + ".clear", "DELETE FROM " + stagingTable
+      + (clearCondition == null ? "" : " WHERE " + clearCondition), clearParams);
+    return this;
+  }
+
+  public LoadSpec stage(String stagingTable, String file, String columns, String clearCondition,
+    Object... clearParams) {
+    return stage(stagingTable, file, Arrays.asList(columns.trim().split("\\s*,\\s*")), clearCondition, clearParams);
+  }
+
+  /**
+   * Set a staging column that is not in the file, e.g. {@code app_id} to {@code 300} or {@code source_modified_time}
+   * to {@code NULLIF(@source_modified_time, '')}.
+   */
+  public LoadSpec set(String column, String expression) {
+    setColumns.put(column, expression);
+    return this;
+  }
+
+  public LoadSpec transform(String step, String sql, Object... params) {
+    transformSteps.add(new Step(name + "." + step, sql, params));
+    return this;
+  }
+
+  public LoadSpec merge(String step, String sql, Object... params) {
+    mergeSteps.add(new Step(name + "." + step, sql, params));
+    return this;
+  }
+
+  /**
+   * Escape character of the file, {@code <escape>N} is a null field and {@code <escape>t}, {@code <escape>n} etc.
+   * the control characters, the same as the ESCAPED BY clause of LOAD DATA.
+   */
+  public LoadSpec escape(char escape) {
+    this.escape = escape;
+    return this;
+  }
+
+  public LoadSpec mode(Mode mode) {
+    this.mode = mode;
+    return this;
+  }
+
+  /**
+   * Commit after every statement instead of once for the whole spec, for statements that can not run in one
+   * transaction, like the ones on non transactional tables that other connections read meanwhile.
+   */
+  public LoadSpec commitEachStep() {
+    this.singleTransaction = false;
+    return this;
+  }
+
+  public String getName() {
+    return name;
+  }
+}
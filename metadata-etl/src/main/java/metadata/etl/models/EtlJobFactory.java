@@ -24,6 +24,7 @@ import metadata.etl.ownership.DatasetOwnerEtl;
 import metadata.etl.ldap.LdapEtl;
 import metadata.etl.scheduler.azkaban.AzkabanExecEtl;
 import metadata.etl.scheduler.oozie.OozieExecEtl;
+import metadata.etl.tracking.AccessStatsEtl;
 import metadata.etl.models.EtlJobName;
 
 
@@ -52,6 +53,8 @@ public class EtlJobFactory {
         return new GitMetadataEtl(refId, whExecId, properties);
       case HIVE_DATASET_METADATA_ETL:
         return new HiveMetadataEtl(refId, whExecId, properties);
+      case ACCESS_STATS_ETL:
+        return new AccessStatsEtl(refId, whExecId, properties);
       default:
         throw new UnsupportedOperationException("Unsupported job type: " + etlJobName);
     }
@@ -23,5 +23,6 @@ public enum EtlType {
   OWNER,
   LDAP,
   VCS,
+  TRACKING,
   ALL
 }
@@ -29,6 +29,8 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Properties;
 import metadata.etl.EtlJob;
+import metadata.etl.load.BulkLoader;
+import metadata.etl.load.LoadSpec;
 import wherehows.common.Constant;
 
 
@@ -148,10 +150,59 @@ public class DatasetOwnerEtl extends EtlJob {
   @Override
   public void load() throws Exception {
     logger.info("hdfs ownership load");
-    // load into mysql
-    InputStream inputStream = classLoader.getResourceAsStream("jython/OwnerLoad.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    new BulkLoader(prop).merge(loadSpecs());
     logger.info("hdfs ownership load finished");
   }
+
+  /**
+   * Merge the stg_dataset_owner rows filled by OwnerTransform.py : the owners of the matched datasets, then the ones
+   * of the datasets up to 5 levels under a matched parent urn, and the unmatched rows are kept for a later run.
+   */
+  LoadSpec[] loadSpecs() {
+    long whExecId = Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY));
+    LoadSpec owner = new LoadSpec("dataset_owner")
+      .merge("upsert", "INSERT INTO dataset_owner (dataset_id, dataset_urn, owner_id, sort_id, namespace, app_id, "
+        + "owner_type, owner_sub_type, db_ids, is_group, is_active, source_time, created_time, wh_etl_exec_id) "
+        + "SELECT * FROM (SELECT dataset_id, dataset_urn, owner_id, sort_id, namespace, app_id, owner_type, "
+        + "owner_sub_type, group_concat(db_id ORDER BY db_id SEPARATOR ',') db_ids, is_group, is_active, source_time, "
+        + "unix_timestamp(NOW()) time_created, ? wh_etl_exec_id "
+        + "FROM stg_dataset_owner s "
+        + "WHERE s.dataset_id is not null and s.owner_id is not null and s.owner_id != '' and s.app_id is not null "
+        + "GROUP BY s.dataset_id, s.owner_id, s.sort_id, s.namespace, s.owner_type, s.owner_sub_type) sb "
+        + "ON DUPLICATE KEY UPDATE " + ownerUpdate("sb.dataset_urn"), whExecId, whExecId);
+    // matching parent level urns
+    for (int lvl = 1; lvl <= 5; lvl++) {
+      owner.merge("parent_" + lvl, "INSERT INTO dataset_owner (dataset_id, dataset_urn, owner_id, sort_id, namespace, "
+        + "app_id, owner_type, owner_sub_type, db_ids, is_group, is_active, source_time, created_time, wh_etl_exec_id) "
+        + "SELECT * FROM (SELECT DISTINCT d.id, d.urn, s.owner_id, s.sort_id, s.namespace, s.app_id, s.owner_type, "
+        + "owner_sub_type, group_concat(s.db_id ORDER BY db_id SEPARATOR ',') db_ids, s.is_group, s.is_active, "
+        + "s.source_time, unix_timestamp(NOW()) time_created, ? wh_etl_exec_id "
+        + "FROM stg_dataset_owner s JOIN dict_dataset d ON s.dataset_urn = "
+        + "substring(d.urn, 1, char_length(d.urn) - char_length(substring_index(d.urn, '/', ?)) - 1) "
+        + "WHERE s.owner_id is not null and s.owner_id != '' and s.app_id is not null "
+        + "GROUP BY d.id, s.owner_id, s.sort_id, s.namespace, s.owner_type, s.owner_sub_type) sb "
+        + "ON DUPLICATE KEY UPDATE " + ownerUpdate("sb.urn"), whExecId, -lvl, whExecId);
+    }
+    // put all unmatched dataset in to another table for future reference
+    owner.merge("unmatched", "INSERT INTO stg_dataset_owner_unmatched (dataset_urn, owner_id, sort_id, app_id, "
+      + "namespace, owner_type, owner_sub_type, is_group, db_name, db_id, is_active, source_time) "
+      + "SELECT dataset_urn, owner_id, sort_id, app_id, namespace, owner_type, owner_sub_type, is_group, db_name, "
+      + "db_id, is_active, source_time "
+      + "FROM stg_dataset_owner s WHERE dataset_id is null and is_parent_urn = 'N' "
+      + "ON DUPLICATE KEY UPDATE sort_id = s.sort_id, owner_type = s.owner_type, owner_sub_type = s.owner_sub_type, "
+      + "is_active = s.is_active, source_time = s.source_time");
+    // delete the entries that matched with dataset id in this round
+    owner.merge("matched", "DELETE u FROM stg_dataset_owner_unmatched u "
+      + "JOIN (SELECT DISTINCT dataset_urn, dataset_id FROM stg_dataset_owner) s ON u.dataset_urn = s.dataset_urn "
+      + "WHERE s.dataset_id IS NOT NULL");
+    return new LoadSpec[]{owner};
+  }
+
+  private static String ownerUpdate(String urn) {
+    return "dataset_urn = " + urn + ", sort_id = COALESCE(@sort_id, sb.sort_id), "
+      + "owner_type = COALESCE(@owner_type, sb.owner_type), "
+      + "owner_sub_type = COALESCE(@owner_sub_type, sb.owner_sub_type), app_id = sb.app_id, "
+      + "is_active = sb.is_active, db_ids = sb.db_ids, source_time = sb.source_time, wh_etl_exec_id = ?, "
+      + "modified_time = unix_timestamp(NOW())";
+  }
 }
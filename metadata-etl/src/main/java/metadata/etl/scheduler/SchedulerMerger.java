@@ -0,0 +1,745 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+import wherehows.common.enums.SchedulerType;
+
+
+/**
+ * Move the flow, job and execution files of a scheduler ETL through the staging tables into the final tables.
+ * <p>
+ * {@link #stage()} loads the files into the stg_* tables and resolves the ids, {@link #merge()} merges the staging
+ * tables into flow, flow_job, flow_dag, flow_schedule, flow_owner_permission, flow_execution and job_execution.
+ * Every statement only reads the staging rows of this app_id and wh_etl_exec_id, and the merges skip the rows that
+ * are already identical in the final table.
+ * <p>
+ * Source ids are resolved in memory : the distinct paths of the run are looked up in the id map tables in chunks,
+ * the missing ones are inserted in one batch, and the ids are written back to the staging tables with batched
+ * updates. Staging tables are loaded in parallel, each on its own connection and in its own transaction. The flow
+ * table is merged first, as the scope of the other merges reads it (see {@link #flowScope}), then the other final
+ * tables are merged in parallel as none of them reads another. Time and row count of every step are stored as json
+ * in wh_etl_job_execution.step_timings.
+ */
+public class SchedulerMerger {
+  protected static final Logger logger = LoggerFactory.getLogger(SchedulerMerger.class);
+
+  public static final int DEFAULT_MERGE_THREADS = 4;
+  static final int BATCH_SIZE = 1000;
+
+  // staging table -> file written by the extract step
+  private static final Map<String, String> STAGING_FILES = new LinkedHashMap<>();
+
+  static {
+    STAGING_FILES.put("stg_flow", "flow.csv");
+    STAGING_FILES.put("stg_flow_job", "job.csv");
+    STAGING_FILES.put("stg_flow_dag_edge", "dag.csv");
+    STAGING_FILES.put("stg_flow_owner_permission", "owner.csv");
+    STAGING_FILES.put("stg_flow_schedule", "schedule.csv");
+    STAGING_FILES.put("stg_flow_execution", "flow_exec.csv");
+    STAGING_FILES.put("stg_job_execution", "job_exec.csv");
+  }
+
+  // flow first, merge() merges it before the other tables
+  static final List<String> FINAL_TABLES =
+    Arrays.asList("flow", "flow_job", "flow_dag", "flow_schedule", "flow_owner_permission", "flow_execution",
+      "job_execution");
+
+  private static final String LOAD_FILE_SQL = "LOAD DATA LOCAL INFILE '%s/%s' INTO TABLE %s "
+    + "FIELDS TERMINATED BY '\\Z' ESCAPED BY '\\0' LINES TERMINATED BY '\\n' (%s)";
+
+  protected final int appId;
+  protected final long whExecId;
+  private final String jdbcUrl;
+  private final String username;
+  private final String password;
+  private final String metadataFolder;
+  private final int mergeThreads;
+
+  // staging table -> columns of its file
+  protected final Map<String, String> stagingColumns = new LinkedHashMap<>();
+  // step -> [millis, rows], guarded by itself
+  private final Map<String, long[]> timings = new LinkedHashMap<>();
+
+  /**
+   * One unit of work run on its own connection, committed when it returns.
+   */
+  interface TableTask {
+    void run(Connection conn, String table)
+      throws SQLException;
+  }
+
+  public SchedulerMerger(Properties prop, SchedulerType schedulerType)
+    throws ClassNotFoundException {
+    String driver = prop.getProperty(Constant.WH_DB_DRIVER_KEY);
+    if (driver != null) {
+      Class.forName(driver);
+    }
+    this.jdbcUrl = prop.getProperty(Constant.WH_DB_URL_KEY);
+    this.username = prop.getProperty(Constant.WH_DB_USERNAME_KEY);
+    this.password = prop.getProperty(Constant.WH_DB_PASSWORD_KEY);
+    this.appId = Integer.parseInt(prop.getProperty(Constant.APP_ID_KEY));
+    this.whExecId = Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY));
+    this.metadataFolder = prop.getProperty(Constant.WH_APP_FOLDER_KEY) + "/" + schedulerType + "/" + appId;
+    this.mergeThreads = Integer.parseInt(
+      prop.getProperty(Constant.SCHEDULER_MERGE_THREADS_KEY, String.valueOf(DEFAULT_MERGE_THREADS)));
+
+    stagingColumns.put("stg_flow", "app_id, flow_name, flow_path, flow_level, source_version, source_created_time, "
+      + "source_modified_time, wh_etl_exec_id");
+    stagingColumns.put("stg_flow_job", "app_id, flow_path, source_version, job_name, job_path, job_type, "
+      + "wh_etl_exec_id");
+    stagingColumns.put("stg_flow_dag_edge", "app_id, flow_path, source_version, source_job_path, target_job_path, "
+      + "wh_etl_exec_id");
+    stagingColumns.put("stg_flow_owner_permission", "app_id, flow_path, owner_id, wh_etl_exec_id");
+    stagingColumns.put("stg_flow_schedule", "app_id, flow_path, unit, frequency, effective_start_time, "
+      + "effective_end_time, ref_id, wh_etl_exec_id");
+    stagingColumns.put("stg_flow_execution", "app_id, flow_name, flow_path, flow_exec_uuid, source_version, "
+      + "flow_exec_status, attempt_id, executed_by, start_time, end_time, wh_etl_exec_id");
+    stagingColumns.put("stg_job_execution", "app_id, flow_path, flow_exec_uuid, source_version, job_name, job_path, "
+      + "job_exec_uuid, job_exec_status, attempt_id, start_time, end_time, wh_etl_exec_id");
+  }
+
+  /**
+   * Load the extracted files into the staging tables and fill in the ids and derived columns.
+   */
+  public void stage()
+    throws Exception {
+    try {
+      runParallel("load", new ArrayList<>(STAGING_FILES.keySet()), new TableTask() {
+        @Override
+        public void run(Connection conn, String table)
+          throws SQLException {
+          loadFile(conn, table);
+        }
+      });
+
+      try (Connection conn = connect()) {
+        execute(conn, "stage.clear", "DELETE FROM stg_flow_dag WHERE app_id = ?", appId);
+        conn.commit();
+        resolveFlowIds(conn);
+        resolveJobIds(conn);
+        resolveExecIds(conn);
+        conn.commit();
+        deriveJobs(conn);
+        deriveDags(conn);
+        conn.commit();
+      }
+    } finally {
+      saveTimings();
+    }
+  }
+
+  /**
+   * Merge the staging tables of this execution into the final tables.
+   */
+  public void merge()
+    throws Exception {
+    TableTask task = new TableTask() {
+      @Override
+      public void run(Connection conn, String table)
+        throws SQLException {
+        mergeTable(conn, table);
+      }
+    };
+    try {
+      // the flows first, the other merges read them
+      runParallel("merge", FINAL_TABLES.subList(0, 1), task);
+      runParallel("merge", FINAL_TABLES.subList(1, FINAL_TABLES.size()), task);
+    } finally {
+      saveTimings();
+    }
+  }
+
+  void loadFile(Connection conn, String table)
+    throws SQLException {
+    execute(conn, "stage.clear", "DELETE FROM " + table + " WHERE app_id = ?", appId);
+    execute(conn, "stage.load." + table,
+      String.format(LOAD_FILE_SQL, metadataFolder, STAGING_FILES.get(table), table, stagingColumns.get(table)));
+  }
+
+  protected void resolveFlowIds(Connection conn)
+    throws SQLException {
+    long start = System.currentTimeMillis();
+    // only stg_flow creates flow ids, the other tables look them up
+    Set<String> flowPaths = distinct(conn, "stg_flow", "flow_path");
+    Map<String, Set<String>> references = new LinkedHashMap<>();
+    Set<String> referenced = new HashSet<>();
+    for (String table : STAGING_FILES.keySet()) {
+      if (!table.equals("stg_flow")) {
+        references.put(table, distinct(conn, table, "flow_path"));
+        referenced.addAll(references.get(table));
+      }
+    }
+    Set<String> refFlowPaths = distinct(conn, "stg_flow_job", "ref_flow_path");
+    referenced.addAll(refFlowPaths);
+    referenced.removeAll(flowPaths);
+
+    Map<String, Long> flowIds =
+      resolveIds(conn, "flow_source_id_map", "flow_id", "source_id_string", flowPaths, referenced);
+    long rows = writeIds(conn, "stg_flow", "flow_id", "flow_path", flowPaths, flowIds);
+    for (Map.Entry<String, Set<String>> e : references.entrySet()) {
+      rows += writeIds(conn, e.getKey(), "flow_id", "flow_path", e.getValue(), flowIds);
+    }
+    rows += writeIds(conn, "stg_flow_job", "ref_flow_id", "ref_flow_path", refFlowPaths, flowIds);
+    record("stage.flow_id", start, rows);
+  }
+
+  protected void resolveJobIds(Connection conn)
+    throws SQLException {
+    long start = System.currentTimeMillis();
+    Set<String> jobPaths = distinct(conn, "stg_flow_job", "job_path");
+    Set<String> execJobPaths = distinct(conn, "stg_job_execution", "job_path");
+    Set<String> sourceJobPaths = distinct(conn, "stg_flow_dag_edge", "source_job_path");
+    Set<String> targetJobPaths = distinct(conn, "stg_flow_dag_edge", "target_job_path");
+    Set<String> referenced = new HashSet<>(execJobPaths);
+    referenced.addAll(sourceJobPaths);
+    referenced.addAll(targetJobPaths);
+    referenced.removeAll(jobPaths);
+
+    Map<String, Long> jobIds =
+      resolveIds(conn, "job_source_id_map", "job_id", "source_id_string", jobPaths, referenced);
+    long rows = writeIds(conn, "stg_flow_job", "job_id", "job_path", jobPaths, jobIds);
+    rows += writeIds(conn, "stg_job_execution", "job_id", "job_path", execJobPaths, jobIds);
+    rows += writeIds(conn, "stg_flow_dag_edge", "source_job_id", "source_job_path", sourceJobPaths, jobIds);
+    rows += writeIds(conn, "stg_flow_dag_edge", "target_job_id", "target_job_path", targetJobPaths, jobIds);
+    record("stage.job_id", start, rows);
+  }
+
+  /**
+   * Fill in flow_exec_id and job_exec_id when the scheduler does not provide numeric execution ids.
+   */
+  protected void resolveExecIds(Connection conn)
+    throws SQLException {
+  }
+
+  protected void deriveJobs(Connection conn)
+    throws SQLException {
+    // the extract writes the string 'null' for jobs without sub flow
+    execute(conn, "stage.job", "UPDATE stg_flow_job SET ref_flow_path = NULL "
+      + "WHERE ref_flow_path = 'null' AND app_id = ? AND wh_etl_exec_id = ?", appId, whExecId);
+    execute(conn, "stage.job", "UPDATE stg_flow_job sj JOIN cfg_job_type_reverse_map jtm "
+      + "ON sj.job_type = jtm.job_type_actual "
+      + "SET sj.job_type_id = jtm.job_type_id "
+      + "WHERE sj.app_id = ? AND sj.wh_etl_exec_id = ?", appId, whExecId);
+    execute(conn, "stage.job", "UPDATE stg_flow f LEFT JOIN stg_flow_schedule fs "
+      + "ON f.app_id = fs.app_id AND f.flow_id = fs.flow_id AND fs.wh_etl_exec_id = f.wh_etl_exec_id "
+      + "SET f.is_scheduled = CASE WHEN fs.flow_id IS NULL THEN 'N' ELSE 'Y' END "
+      + "WHERE f.app_id = ? AND f.wh_etl_exec_id = ?", appId, whExecId);
+  }
+
+  protected void deriveDags(Connection conn)
+    throws SQLException {
+    // avoid overflow of the pre_jobs and post_jobs lists
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("SET group_concat_max_len=40960");
+    }
+    execute(conn, "stage.dag", "UPDATE stg_flow_job sj JOIN "
+      + "(SELECT source_job_id AS job_id, source_version, GROUP_CONCAT(DISTINCT target_job_id SEPARATOR ',') AS post_jobs "
+      + "FROM stg_flow_dag_edge WHERE app_id = ? AND wh_etl_exec_id = ? AND source_job_id != target_job_id "
+      + "GROUP BY source_job_id, source_version) d "
+      + "ON sj.job_id = d.job_id AND sj.source_version = d.source_version "
+      + "SET sj.post_jobs = d.post_jobs "
+      + "WHERE sj.app_id = ? AND sj.wh_etl_exec_id = ?", appId, whExecId, appId, whExecId);
+    execute(conn, "stage.dag", "UPDATE stg_flow_job sj JOIN "
+      + "(SELECT target_job_id AS job_id, source_version, GROUP_CONCAT(DISTINCT source_job_id SEPARATOR ',') AS pre_jobs "
+      + "FROM stg_flow_dag_edge WHERE app_id = ? AND wh_etl_exec_id = ? AND source_job_id != target_job_id "
+      + "GROUP BY target_job_id, source_version) d "
+      + "ON sj.job_id = d.job_id AND sj.source_version = d.source_version "
+      + "SET sj.pre_jobs = d.pre_jobs "
+      + "WHERE sj.app_id = ? AND sj.wh_etl_exec_id = ?", appId, whExecId, appId, whExecId);
+    execute(conn, "stage.dag", "UPDATE stg_flow_job "
+      + "SET is_first = CASE WHEN pre_jobs IS NULL THEN 'Y' ELSE is_first END, "
+      + "is_last = CASE WHEN post_jobs IS NULL THEN 'Y' ELSE is_last END "
+      + "WHERE app_id = ? AND wh_etl_exec_id = ? AND (pre_jobs IS NULL OR post_jobs IS NULL)", appId, whExecId);
+
+    execute(conn, "stage.dag", "INSERT INTO stg_flow_dag (app_id, flow_id, source_version, wh_etl_exec_id, dag_md5) "
+      + "SELECT app_id, flow_id, source_version, wh_etl_exec_id, "
+      + "MD5(GROUP_CONCAT(source_job_id, '-', target_job_id ORDER BY source_job_id, target_job_id SEPARATOR ',')) "
+      + "FROM stg_flow_dag_edge WHERE app_id = ? AND wh_etl_exec_id = ? "
+      + "GROUP BY app_id, flow_id, source_version, wh_etl_exec_id "
+      + "UNION "
+      + "SELECT DISTINCT app_id, flow_id, source_version, wh_etl_exec_id, 0 FROM stg_flow sf "
+      + "WHERE sf.app_id = ? AND sf.wh_etl_exec_id = ? AND NOT EXISTS (SELECT * FROM stg_flow_dag_edge e "
+      + "WHERE e.app_id = sf.app_id AND e.flow_id = sf.flow_id AND e.source_version = sf.source_version "
+      + "AND e.wh_etl_exec_id = sf.wh_etl_exec_id)", appId, whExecId, appId, whExecId);
+    execute(conn, "stage.dag", "UPDATE stg_flow_dag s LEFT JOIN flow_dag f "
+      + "ON s.app_id = f.app_id AND s.flow_id = f.flow_id AND (f.is_current IS NULL OR f.is_current = 'Y') "
+      + "SET s.dag_version = CASE WHEN f.dag_md5 IS NULL THEN 0 WHEN s.dag_md5 != f.dag_md5 "
+      + "THEN f.dag_version + 1 ELSE f.dag_version END "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ?", appId, whExecId);
+    execute(conn, "stage.dag", "UPDATE stg_flow_job sj JOIN stg_flow_dag d "
+      + "ON sj.app_id = d.app_id AND sj.flow_id = d.flow_id AND sj.source_version = d.source_version "
+      + "SET sj.dag_version = d.dag_version "
+      + "WHERE sj.app_id = ? AND sj.wh_etl_exec_id = ? AND d.wh_etl_exec_id = ?", appId, whExecId, whExecId);
+  }
+
+  /**
+   * Condition on the flows whose jobs and dags are all staged by this run, so the ones missing from the staging
+   * tables are not current anymore. Empty when every run extracts all the flows of the app. May read the flow table,
+   * which {@link #merge()} merges before the tables that use this scope.
+   */
+  protected String flowScope(String flowIdColumn) {
+    return "";
+  }
+
+  protected void mergeTable(Connection conn, String table)
+    throws SQLException {
+    switch (table) {
+      case "flow":
+        mergeFlows(conn);
+        break;
+      case "flow_job":
+        mergeJobs(conn);
+        break;
+      case "flow_dag":
+        mergeDags(conn);
+        break;
+      case "flow_schedule":
+        mergeSchedules(conn);
+        break;
+      case "flow_owner_permission":
+        mergeOwnerPermissions(conn);
+        break;
+      case "flow_execution":
+        mergeFlowExecutions(conn);
+        break;
+      case "job_execution":
+        mergeJobExecutions(conn);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown scheduler table " + table);
+    }
+  }
+
+  protected void mergeFlows(Connection conn)
+    throws SQLException {
+    execute(conn, "merge.flow", "INSERT INTO flow (app_id, flow_id, flow_name, flow_group, flow_path, flow_level, "
+      + "source_created_time, source_modified_time, source_version, is_active, is_scheduled, created_time, "
+      + "modified_time, wh_etl_exec_id) "
+      + "SELECT s.app_id, s.flow_id, s.flow_name, s.flow_group, s.flow_path, s.flow_level, s.source_created_time, "
+      + "s.source_modified_time, s.source_version, s.is_active, s.is_scheduled, UNIX_TIMESTAMP(NOW()), NULL, "
+      + "s.wh_etl_exec_id "
+      + "FROM stg_flow s LEFT JOIN flow f ON f.app_id = s.app_id AND f.flow_id = s.flow_id "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ? AND (f.flow_id IS NULL OR NOT ("
+      + "f.flow_name <=> s.flow_name AND f.flow_group <=> s.flow_group AND f.flow_path <=> s.flow_path "
+      + "AND f.flow_level <=> s.flow_level AND f.source_created_time <=> s.source_created_time "
+      + "AND f.source_version <=> s.source_version AND f.is_active <=> s.is_active "
+      + "AND f.is_scheduled <=> s.is_scheduled)) "
+      + "ON DUPLICATE KEY UPDATE flow_name = s.flow_name, flow_group = s.flow_group, flow_path = s.flow_path, "
+      + "flow_level = s.flow_level, source_created_time = s.source_created_time, source_version = s.source_version, "
+      + "is_active = s.is_active, is_scheduled = s.is_scheduled, modified_time = UNIX_TIMESTAMP(NOW()), "
+      + "wh_etl_exec_id = s.wh_etl_exec_id", appId, whExecId);
+  }
+
+  protected void mergeJobs(Connection conn)
+    throws SQLException {
+    execute(conn, "merge.flow_job", "UPDATE flow_job j LEFT JOIN stg_flow_job s "
+      + "ON j.app_id = s.app_id AND j.job_id = s.job_id AND s.wh_etl_exec_id = ? "
+      + "SET j.is_current = 'N' "
+      + "WHERE (s.job_id IS NULL OR s.dag_version > j.dag_version) AND j.app_id = ? "
+      + "AND NOT (j.is_current <=> 'N')" + flowScope("j.flow_id"), whExecId, appId);
+    execute(conn, "merge.flow_job", "INSERT INTO flow_job (app_id, flow_id, first_source_version, dag_version, "
+      + "job_id, job_name, job_path, job_type_id, job_type, ref_flow_id, pre_jobs, post_jobs, is_current, is_first, "
+      + "is_last, created_time, modified_time, wh_etl_exec_id) "
+      + "SELECT app_id, flow_id, source_version, dag_version, job_id, job_name, job_path, job_type_id, job_type, "
+      + "ref_flow_id, pre_jobs, post_jobs, 'Y', is_first, is_last, UNIX_TIMESTAMP(NOW()), NULL, wh_etl_exec_id "
+      + "FROM stg_flow_job s "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ? "
+      + "ON DUPLICATE KEY UPDATE flow_id = s.flow_id, "
+      + "last_source_version = CASE WHEN s.source_version = first_source_version AND last_source_version IS NULL "
+      + "THEN NULL ELSE s.source_version END, "
+      + "job_name = s.job_name, job_path = s.job_path, job_type_id = s.job_type_id, job_type = s.job_type, "
+      + "ref_flow_id = s.ref_flow_id, pre_jobs = s.pre_jobs, post_jobs = s.post_jobs, is_current = 'Y', "
+      + "is_first = s.is_first, is_last = s.is_last, modified_time = UNIX_TIMESTAMP(NOW()), "
+      + "wh_etl_exec_id = s.wh_etl_exec_id", appId, whExecId);
+  }
+
+  protected void mergeDags(Connection conn)
+    throws SQLException {
+    // staged versions stay current, so only the others are switched off
+    execute(conn, "merge.flow_dag", "UPDATE flow_dag f LEFT JOIN stg_flow_dag s "
+      + "ON f.app_id = s.app_id AND f.flow_id = s.flow_id AND f.source_version = s.source_version "
+      + "AND s.wh_etl_exec_id = ? "
+      + "SET f.is_current = 'N' "
+      + "WHERE f.app_id = ? AND s.flow_id IS NULL AND NOT (f.is_current <=> 'N')" + flowScope("f.flow_id"),
+      whExecId, appId);
+    execute(conn, "merge.flow_dag", "INSERT INTO flow_dag (app_id, flow_id, source_version, dag_version, dag_md5, "
+      + "is_current, wh_etl_exec_id) "
+      + "SELECT s.app_id, s.flow_id, s.source_version, s.dag_version, s.dag_md5, 'Y', s.wh_etl_exec_id "
+      + "FROM stg_flow_dag s LEFT JOIN flow_dag f "
+      + "ON f.app_id = s.app_id AND f.flow_id = s.flow_id AND f.source_version = s.source_version "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ? AND (f.flow_id IS NULL OR NOT ("
+      + "f.dag_md5 <=> s.dag_md5 AND f.dag_version <=> s.dag_version AND f.is_current <=> 'Y')) "
+      + "ON DUPLICATE KEY UPDATE dag_md5 = s.dag_md5, dag_version = s.dag_version, is_current = 'Y', "
+      + "wh_etl_exec_id = s.wh_etl_exec_id", appId, whExecId);
+  }
+
+  protected void mergeSchedules(Connection conn)
+    throws SQLException {
+    execute(conn, "merge.flow_schedule", "UPDATE flow_schedule f LEFT JOIN stg_flow_schedule s "
+      + "ON f.app_id = s.app_id AND f.flow_id = s.flow_id AND f.ref_id = s.ref_id AND s.wh_etl_exec_id = ? "
+      + "SET f.is_active = 'N' "
+      + "WHERE f.app_id = ? AND s.flow_id IS NULL AND NOT (f.is_active <=> 'N')", whExecId, appId);
+    execute(conn, "merge.flow_schedule", "INSERT INTO flow_schedule (app_id, flow_id, unit, frequency, "
+      + "included_instances, excluded_instances, effective_start_time, effective_end_time, is_active, ref_id, "
+      + "created_time, modified_time, wh_etl_exec_id) "
+      + "SELECT s.app_id, s.flow_id, s.unit, s.frequency, s.included_instances, s.excluded_instances, "
+      + "s.effective_start_time, s.effective_end_time, 'Y', s.ref_id, UNIX_TIMESTAMP(NOW()), NULL, s.wh_etl_exec_id "
+      + "FROM stg_flow_schedule s LEFT JOIN flow_schedule f "
+      + "ON f.app_id = s.app_id AND f.flow_id = s.flow_id AND f.ref_id = s.ref_id "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ? AND s.flow_id IS NOT NULL AND (f.flow_id IS NULL OR NOT ("
+      + "f.unit <=> s.unit AND f.frequency <=> s.frequency AND f.is_active <=> 'Y' "
+      + "AND f.included_instances <=> s.included_instances AND f.excluded_instances <=> s.excluded_instances "
+      + "AND f.effective_start_time <=> s.effective_start_time AND f.effective_end_time <=> s.effective_end_time)) "
+      + "ON DUPLICATE KEY UPDATE unit = s.unit, frequency = s.frequency, is_active = 'Y', ref_id = s.ref_id, "
+      + "included_instances = s.included_instances, excluded_instances = s.excluded_instances, "
+      + "effective_start_time = s.effective_start_time, effective_end_time = s.effective_end_time, "
+      + "modified_time = UNIX_TIMESTAMP(NOW()), wh_etl_exec_id = s.wh_etl_exec_id", appId, whExecId);
+  }
+
+  protected void mergeOwnerPermissions(Connection conn)
+    throws SQLException {
+    execute(conn, "merge.flow_owner_permission", "INSERT INTO flow_owner_permission (app_id, flow_id, owner_id, "
+      + "permissions, owner_type, created_time, modified_time, wh_etl_exec_id) "
+      + "SELECT s.app_id, s.flow_id, s.owner_id, s.permissions, s.owner_type, UNIX_TIMESTAMP(NOW()), NULL, "
+      + "s.wh_etl_exec_id "
+      + "FROM stg_flow_owner_permission s LEFT JOIN flow_owner_permission f "
+      + "ON f.app_id = s.app_id AND f.flow_id = s.flow_id AND f.owner_id = s.owner_id "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ? AND s.flow_id IS NOT NULL AND (f.flow_id IS NULL OR NOT ("
+      + "f.permissions <=> s.permissions AND f.owner_type <=> s.owner_type)) "
+      + "ON DUPLICATE KEY UPDATE permissions = s.permissions, owner_type = s.owner_type, "
+      + "modified_time = UNIX_TIMESTAMP(NOW()), wh_etl_exec_id = s.wh_etl_exec_id", appId, whExecId);
+  }
+
+  protected void mergeFlowExecutions(Connection conn)
+    throws SQLException {
+    // executions are extracted again while they run, only the ones with a new status or time are written
+    execute(conn, "merge.flow_execution", "INSERT INTO flow_execution (app_id, flow_id, flow_name, source_version, "
+      + "flow_exec_id, flow_exec_uuid, flow_exec_status, attempt_id, executed_by, start_time, end_time, "
+      + "created_time, modified_time, wh_etl_exec_id) "
+      + "SELECT s.app_id, s.flow_id, s.flow_name, s.source_version, s.flow_exec_id, s.flow_exec_uuid, "
+      + "s.flow_exec_status, s.attempt_id, s.executed_by, NULLIF(s.start_time, 0), NULLIF(s.end_time, 0), "
+      + "UNIX_TIMESTAMP(NOW()), NULL, s.wh_etl_exec_id "
+      + "FROM stg_flow_execution s LEFT JOIN flow_execution f "
+      + "ON f.app_id = s.app_id AND f.flow_exec_id = s.flow_exec_id "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ? AND s.flow_id IS NOT NULL AND (f.flow_exec_id IS NULL OR NOT ("
+      + "f.source_version <=> s.source_version AND f.flow_exec_uuid <=> s.flow_exec_uuid "
+      + "AND f.flow_exec_status <=> s.flow_exec_status AND f.start_time <=> NULLIF(s.start_time, 0) "
+      + "AND f.end_time <=> NULLIF(s.end_time, 0))) "
+      + "ON DUPLICATE KEY UPDATE source_version = s.source_version, flow_exec_uuid = s.flow_exec_uuid, "
+      + "flow_exec_status = s.flow_exec_status, start_time = NULLIF(s.start_time, 0), "
+      + "end_time = NULLIF(s.end_time, 0), modified_time = UNIX_TIMESTAMP(NOW()), "
+      + "wh_etl_exec_id = s.wh_etl_exec_id", appId, whExecId);
+  }
+
+  protected void mergeJobExecutions(Connection conn)
+    throws SQLException {
+    execute(conn, "merge.job_execution", "INSERT INTO job_execution (app_id, flow_id, source_version, flow_exec_id, "
+      + "job_id, job_name, job_exec_id, job_exec_uuid, job_exec_status, attempt_id, start_time, end_time, "
+      + "created_time, modified_time, wh_etl_exec_id) "
+      + "SELECT s.app_id, s.flow_id, s.source_version, s.flow_exec_id, s.job_id, s.job_name, s.job_exec_id, "
+      + "s.job_exec_uuid, s.job_exec_status, s.attempt_id, NULLIF(s.start_time, 0), NULLIF(s.end_time, 0), "
+      + "UNIX_TIMESTAMP(NOW()), NULL, s.wh_etl_exec_id "
+      + "FROM stg_job_execution s LEFT JOIN job_execution f "
+      + "ON f.app_id = s.app_id AND f.job_exec_id = s.job_exec_id "
+      + "WHERE s.app_id = ? AND s.wh_etl_exec_id = ? AND s.job_id IS NOT NULL AND s.flow_id IS NOT NULL "
+      + "AND (f.job_exec_id IS NULL OR NOT ("
+      + "f.source_version <=> s.source_version AND f.attempt_id <=> s.attempt_id "
+      + "AND f.flow_exec_id <=> s.flow_exec_id AND f.job_exec_uuid <=> s.job_exec_uuid "
+      + "AND f.job_exec_status <=> s.job_exec_status AND f.start_time <=> NULLIF(s.start_time, 0) "
+      + "AND f.end_time <=> NULLIF(s.end_time, 0))) "
+      + "ON DUPLICATE KEY UPDATE source_version = s.source_version, attempt_id = s.attempt_id, "
+      + "flow_exec_id = s.flow_exec_id, job_exec_uuid = s.job_exec_uuid, job_exec_status = s.job_exec_status, "
+      + "start_time = NULLIF(s.start_time, 0), end_time = NULLIF(s.end_time, 0), "
+      + "modified_time = UNIX_TIMESTAMP(NOW()), wh_etl_exec_id = s.wh_etl_exec_id", appId, whExecId);
+  }
+
+  /**
+   * Distinct non null values of a column in the staging rows of this execution.
+   */
+  protected Set<String> distinct(Connection conn, String table, String column)
+    throws SQLException {
+    Set<String> values = new HashSet<>();
+    String sql = "SELECT DISTINCT " + column + " FROM " + table + " WHERE app_id = ? AND wh_etl_exec_id = ? AND "
+      + column + " IS NOT NULL";
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setInt(1, appId);
+      stmt.setLong(2, whExecId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          values.add(rs.getString(1));
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Look up the ids of source strings in an id map table such as flow_source_id_map. Keys in {@code create}
+   * missing from the table are inserted first to generate their ids, keys in {@code lookup} are only read.
+   * @return key -> id, compared case insensitively like the MySQL collation of the map tables
+   */
+  protected Map<String, Long> resolveIds(Connection conn, String mapTable, String idColumn, String keyColumn,
+    Collection<String> create, Collection<String> lookup)
+    throws SQLException {
+    Map<String, Long> ids = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    readIds(conn, mapTable, idColumn, keyColumn, create, ids);
+    readIds(conn, mapTable, idColumn, keyColumn, lookup, ids);
+
+    List<String> missing = new ArrayList<>();
+    for (String key : create) {
+      if (!ids.containsKey(key)) {
+        missing.add(key);
+      }
+    }
+    if (!missing.isEmpty()) {
+      String sql = "INSERT INTO " + mapTable + " (app_id, " + keyColumn + ") VALUES (?, ?)";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        for (int i = 0; i < missing.size(); i++) {
+          stmt.setInt(1, appId);
+          stmt.setString(2, missing.get(i));
+          stmt.addBatch();
+          if ((i + 1) % BATCH_SIZE == 0) {
+            stmt.executeBatch();
+          }
+        }
+        stmt.executeBatch();
+      }
+      readIds(conn, mapTable, idColumn, keyColumn, missing, ids);
+      logger.info("{} new ids in {} for app {}", missing.size(), mapTable, appId);
+    }
+    return ids;
+  }
+
+  private void readIds(Connection conn, String mapTable, String idColumn, String keyColumn, Collection<String> keys,
+    Map<String, Long> ids)
+    throws SQLException {
+    List<String> chunk = new ArrayList<>(BATCH_SIZE);
+    for (String key : keys) {
+      chunk.add(key);
+      if (chunk.size() == BATCH_SIZE) {
+        readIdChunk(conn, mapTable, idColumn, keyColumn, chunk, ids);
+        chunk.clear();
+      }
+    }
+    if (!chunk.isEmpty()) {
+      readIdChunk(conn, mapTable, idColumn, keyColumn, chunk, ids);
+    }
+  }
+
+  private void readIdChunk(Connection conn, String mapTable, String idColumn, String keyColumn, List<String> keys,
+    Map<String, Long> ids)
+    throws SQLException {
+    StringBuilder sql = new StringBuilder("SELECT ").append(keyColumn).append(", ").append(idColumn)
+      .append(" FROM ").append(mapTable).append(" WHERE app_id = ? AND ").append(keyColumn).append(" IN (");
+    for (int i = 0; i < keys.size(); i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    sql.append(')');
+    try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+      stmt.setInt(1, appId);
+      for (int i = 0; i < keys.size(); i++) {
+        stmt.setString(i + 2, keys.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          // the first id wins when a key was mapped twice, like the join of the former update statements
+          Long current = ids.get(rs.getString(1));
+          if (current == null || rs.getLong(2) < current) {
+            ids.put(rs.getString(1), rs.getLong(2));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the resolved ids to the staging rows of this execution, one batched update per distinct key.
+   * @return number of updated rows
+   */
+  protected long writeIds(Connection conn, String table, String idColumn, String keyColumn, Collection<String> keys,
+    Map<String, Long> ids)
+    throws SQLException {
+    String sql = "UPDATE " + table + " SET " + idColumn + " = ? WHERE app_id = ? AND wh_etl_exec_id = ? AND "
+      + keyColumn + " = ?";
+    long rows = 0;
+    int pending = 0;
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (String key : keys) {
+        Long id = ids.get(key);
+        if (id == null) {
+          continue;
+        }
+        stmt.setLong(1, id);
+        stmt.setInt(2, appId);
+        stmt.setLong(3, whExecId);
+        stmt.setString(4, key);
+        stmt.addBatch();
+        if (++pending == BATCH_SIZE) {
+          rows += sum(stmt.executeBatch());
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        rows += sum(stmt.executeBatch());
+      }
+    }
+    return rows;
+  }
+
+  private static long sum(int[] counts) {
+    long total = 0;
+    for (int c : counts) {
+      // SUCCESS_NO_INFO is negative
+      total += Math.max(c, 0);
+    }
+    return total;
+  }
+
+  /**
+   * Execute one statement and add its time and row count to the step.
+   */
+  protected int execute(Connection conn, String step, String sql, Object... params)
+    throws SQLException {
+    long start = System.currentTimeMillis();
+    logger.debug(sql);
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.length; i++) {
+        stmt.setObject(i + 1, params[i]);
+      }
+      int rows = stmt.executeUpdate();
+      record(step, start, rows);
+      return rows;
+    }
+  }
+
+  protected void record(String step, long startMillis, long rows) {
+    long elapsed = System.currentTimeMillis() - startMillis;
+    synchronized (timings) {
+      long[] t = timings.get(step);
+      if (t == null) {
+        t = new long[2];
+        timings.put(step, t);
+      }
+      t[0] += elapsed;
+      t[1] += rows;
+    }
+  }
+
+  /**
+   * @return step -> [milliseconds, rows] of the steps run so far
+   */
+  public Map<String, long[]> getTimings() {
+    Map<String, long[]> copy = new LinkedHashMap<>();
+    synchronized (timings) {
+      for (Map.Entry<String, long[]> e : timings.entrySet()) {
+        copy.put(e.getKey(), e.getValue().clone());
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Store the timings of all steps so far in wh_etl_job_execution. Failing to do so does not fail the ETL job.
+   */
+  void saveTimings() {
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectNode json = mapper.createObjectNode();
+    for (Map.Entry<String, long[]> e : getTimings().entrySet()) {
+      ObjectNode step = json.putObject(e.getKey());
+      step.put("ms", e.getValue()[0]);
+      step.put("rows", e.getValue()[1]);
+    }
+    logger.info("Scheduler ETL steps of app {} : {}", appId, json);
+    try (Connection conn = connect();
+        PreparedStatement stmt = conn.prepareStatement(
+          "UPDATE wh_etl_job_execution SET step_timings = ? WHERE wh_etl_exec_id = ?")) {
+      stmt.setString(1, json.toString());
+      stmt.setLong(2, whExecId);
+      stmt.executeUpdate();
+      conn.commit();
+    } catch (SQLException e) {
+      logger.warn("Failed to record step timings of execution " + whExecId, e);
+    }
+  }
+
+  private void runParallel(String phase, List<String> tables, final TableTask task)
+    throws Exception {
+    long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(mergeThreads, tables.size())));
+    try {
+      Map<String, Future<Void>> futures = new LinkedHashMap<>();
+      for (final String table : tables) {
+        futures.put(table, executor.submit(new Callable<Void>() {
+          @Override
+          public Void call()
+            throws Exception {
+            try (Connection conn = connect()) {
+              try {
+                task.run(conn, table);
+                conn.commit();
+              } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Map.Entry<String, Future<Void>> e : futures.entrySet()) {
+        try {
+          e.getValue().get();
+        } catch (ExecutionException ex) {
+          throw new Exception("Failed to " + phase + " " + e.getKey() + " of app " + appId, ex.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    record(phase, start, 0);
+  }
+
+  protected Connection connect()
+    throws SQLException {
+    Connection conn = DriverManager.getConnection(jdbcUrl, username, password);
+    conn.setAutoCommit(false);
+    return conn;
+  }
+}
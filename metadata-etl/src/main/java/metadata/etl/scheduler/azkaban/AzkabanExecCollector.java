@@ -0,0 +1,143 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+import wherehows.common.enums.SchedulerType;
+import wherehows.common.schemas.AzkabanFlowExecRecord;
+import wherehows.common.schemas.AzkabanJobExecRecord;
+import wherehows.common.utils.AzkabanJobExecUtil;
+import wherehows.common.writers.FileWriter;
+
+
+/**
+ * Write the azkaban executions finished since the last run to flow_exec.csv and job_exec.csv.
+ * <p>
+ * Only the executions after the {@link AzkabanExecWatermark} of the app are read, the lookback period is only
+ * used by the first run. The mark is committed by the load step through {@link #commitWatermark}.
+ */
+public class AzkabanExecCollector {
+  private static final Logger logger = LoggerFactory.getLogger(AzkabanExecCollector.class);
+
+  private final Properties prop;
+  private final int appId;
+  private final long whExecId;
+  private final String metadataFolder;
+
+  public AzkabanExecCollector(Properties prop)
+    throws ClassNotFoundException {
+    this.prop = prop;
+    this.appId = Integer.parseInt(prop.getProperty(Constant.APP_ID_KEY));
+    this.whExecId = Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY));
+    this.metadataFolder =
+      prop.getProperty(Constant.WH_APP_FOLDER_KEY) + "/" + SchedulerType.AZKABAN + "/" + appId;
+    if (prop.getProperty(Constant.AZ_DB_DRIVER_KEY) != null) {
+      Class.forName(prop.getProperty(Constant.AZ_DB_DRIVER_KEY));
+    }
+    if (prop.getProperty(Constant.WH_DB_DRIVER_KEY) != null) {
+      Class.forName(prop.getProperty(Constant.WH_DB_DRIVER_KEY));
+    }
+  }
+
+  /**
+   * @return number of executions written
+   */
+  public int run()
+    throws Exception {
+    long overlapMillis = 60000L * Integer.parseInt(prop.getProperty(Constant.AZ_EXEC_ETL_OVERLAP_MINS_KEY,
+      String.valueOf(AzkabanExecWatermark.DEFAULT_OVERLAP_MINUTES)));
+    long fallbackStart = System.currentTimeMillis()
+      - 60000L * Integer.parseInt(prop.getProperty(Constant.AZ_EXEC_ETL_LOOKBACK_MINS_KEY));
+    new File(metadataFolder).mkdirs();
+
+    try (Connection whConn = DriverManager.getConnection(prop.getProperty(Constant.WH_DB_URL_KEY),
+      prop.getProperty(Constant.WH_DB_USERNAME_KEY), prop.getProperty(Constant.WH_DB_PASSWORD_KEY));
+        Connection azConn = DriverManager.getConnection(prop.getProperty(Constant.AZ_DB_URL_KEY),
+          prop.getProperty(Constant.AZ_DB_USERNAME_KEY), prop.getProperty(Constant.AZ_DB_PASSWORD_KEY))) {
+      AzkabanExecWatermark mark =
+        AzkabanExecWatermark.load(whConn, appId, AzkabanExecWatermark.EXEC_ETL, overlapMillis);
+      List<Long> execIds = mark.selectNewExecIds(azConn, fallbackStart, 0);
+
+      final FileWriter flowExecWriter = new FileWriter(metadataFolder + "/flow_exec.csv");
+      final FileWriter jobExecWriter = new FileWriter(metadataFolder + "/job_exec.csv");
+      int count;
+      try {
+        count = AzkabanFlowData.readExecutions(azConn, execIds, new AzkabanFlowData.Handler() {
+          @Override
+          public void handle(AzkabanFlowData flow)
+            throws Exception {
+            write(flow, flowExecWriter, jobExecWriter);
+          }
+        });
+      } finally {
+        flowExecWriter.close();
+        jobExecWriter.close();
+      }
+      mark.savePending(whConn, whExecId);
+      logger.info("{} azkaban executions written for app {}", count, appId);
+      return count;
+    }
+  }
+
+  void write(AzkabanFlowData flow, FileWriter flowExecWriter, FileWriter jobExecWriter)
+    throws Exception {
+    String flowPath = flow.getFlowPath();
+    flowExecWriter.append(
+      new AzkabanFlowExecRecord(appId, flow.flowId, flowPath, flow.version, (int) flow.execId, flow.status,
+        flow.attempt, flow.submitUser, flow.startTime / 1000, flow.endTime / 1000, whExecId));
+
+    List<AzkabanJobExecRecord> jobExecs = new ArrayList<>();
+    addJobExecs(flow, flow.nodes, flowPath, jobExecs);
+    AzkabanJobExecUtil.sortAndSet(jobExecs);
+    for (AzkabanJobExecRecord r : jobExecs) {
+      jobExecWriter.append(r);
+    }
+  }
+
+  /**
+   * Add the executions of the nodes and, recursively, of the nodes of the embedded flows. A job of an embedded flow
+   * is qualified by the embedded flow node, e.g. project:flow/subflow/job.
+   */
+  private void addJobExecs(AzkabanFlowData flow, List<AzkabanFlowData.Node> nodes, String parentPath,
+    List<AzkabanJobExecRecord> jobExecs) {
+    for (AzkabanFlowData.Node node : nodes) {
+      String jobPath = parentPath + "/" + node.id;
+      jobExecs.add(new AzkabanJobExecRecord(appId, flow.getFlowPath(), flow.version, flow.execId, node.id, jobPath,
+        null, node.status, node.attempt, (int) (node.startTime / 1000), (int) (node.endTime / 1000), whExecId));
+      if (node.nodes != null) {
+        addJobExecs(flow, node.nodes, jobPath, jobExecs);
+      }
+    }
+  }
+
+  /**
+   * Make the mark of this ETL execution current, once its executions are loaded.
+   */
+  public static void commitWatermark(Properties prop)
+    throws Exception {
+    try (Connection whConn = DriverManager.getConnection(prop.getProperty(Constant.WH_DB_URL_KEY),
+      prop.getProperty(Constant.WH_DB_USERNAME_KEY), prop.getProperty(Constant.WH_DB_PASSWORD_KEY))) {
+      AzkabanExecWatermark.commit(whConn, Integer.parseInt(prop.getProperty(Constant.APP_ID_KEY)),
+        AzkabanExecWatermark.EXEC_ETL, Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY)));
+    }
+  }
+}
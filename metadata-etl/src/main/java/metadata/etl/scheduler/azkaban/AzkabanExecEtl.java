@@ -22,6 +22,7 @@ import metadata.etl.EtlJob;
  * Created by zechen on 8/20/15.
  */
 public class AzkabanExecEtl extends EtlJob {
+  private AzkabanMerger merger;
 
   public AzkabanExecEtl(int appId, long whExecId) {
     super(appId, null, whExecId);
@@ -38,24 +39,33 @@ public class AzkabanExecEtl extends EtlJob {
     InputStream inputStream = classLoader.getResourceAsStream("jython/AzkabanExtract.py");
     interpreter.execfile(inputStream);
     inputStream.close();
+    new AzkabanProjectCollector(prop).run();
+    new AzkabanExecCollector(prop).run();
   }
 
   @Override
   public void transform()
     throws Exception {
-    logger.info("In AzkabanExecEtl java launch transform jython scripts");
-    InputStream inputStream = classLoader.getResourceAsStream("jython/AzkabanTransform.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    logger.info("In AzkabanExecEtl java load the extracted files into the staging tables");
+    merger().stage();
   }
 
   @Override
   public void load()
     throws Exception {
-    logger.info("In AzkabanExecEtl java launch load jython scripts");
-    InputStream inputStream = classLoader.getResourceAsStream("jython/AzkabanLoad.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
-    logger.info("In AzkabanExecEtl java load jython scripts finished");
+    logger.info("In AzkabanExecEtl java merge the staging tables");
+    merger().merge();
+    AzkabanProjectCollector.commitVersions(prop);
+    AzkabanExecCollector.commitWatermark(prop);
+    logger.info("In AzkabanExecEtl java merge finished");
+  }
+
+  private AzkabanMerger merger()
+    throws ClassNotFoundException {
+    // one instance for both steps, so the timings of the load include the ones of the transform
+    if (merger == null) {
+      merger = new AzkabanMerger(prop);
+    }
+    return merger;
   }
 }
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * High-water mark of the azkaban executions already processed by one ETL of one app, kept in
+ * flow_execution_watermark.
+ * <p>
+ * The mark is the (end_time, exec_id) of the last finished execution. Executions can be written to
+ * execution_flows after executions that finished later, so every run reads again the executions that finished
+ * within an overlap before the mark, and skips the ones already processed with the same end_time. The executions
+ * of the overlap are stored with the mark for that purpose.
+ * <p>
+ * The mark of a run is saved as pending by the extract step and only becomes current with {@link #commit} once the
+ * load succeeded, so a failed run is read again by the next one.
+ */
+public class AzkabanExecWatermark {
+  private static final Logger logger = LoggerFactory.getLogger(AzkabanExecWatermark.class);
+
+  /** Name of the mark of the execution ETL */
+  public static final String EXEC_ETL = "exec";
+  /** Name of the mark of the lineage ETL */
+  public static final String LINEAGE_ETL = "lineage";
+  public static final int DEFAULT_OVERLAP_MINUTES = 15;
+
+  private final int appId;
+  private final String etlName;
+  private final long overlapMillis;
+
+  // last processed execution, in milli seconds like execution_flows.end_time, -1 before the first run
+  long endTime = -1;
+  long execId = -1;
+  // exec_id -> end_time of the executions processed within the overlap
+  Map<Long, Long> recentExecs = new HashMap<>();
+
+  // mark after the executions selected by this run
+  long newEndTime = -1;
+  long newExecId = -1;
+  Map<Long, Long> newRecentExecs = new HashMap<>();
+
+  AzkabanExecWatermark(int appId, String etlName, long overlapMillis) {
+    this.appId = appId;
+    this.etlName = etlName;
+    this.overlapMillis = overlapMillis;
+  }
+
+  /**
+   * Read the current mark of the ETL, an empty mark when it never ran.
+   */
+  public static AzkabanExecWatermark load(Connection whConn, int appId, String etlName, long overlapMillis)
+    throws SQLException {
+    AzkabanExecWatermark mark = new AzkabanExecWatermark(appId, etlName, overlapMillis);
+    try (PreparedStatement stmt = whConn.prepareStatement(
+      "SELECT end_time, exec_id, recent_execs FROM flow_execution_watermark "
+        + "WHERE app_id = ? AND etl_name = ? AND end_time IS NOT NULL")) {
+      stmt.setInt(1, appId);
+      stmt.setString(2, etlName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        if (rs.next()) {
+          mark.endTime = rs.getLong("end_time");
+          mark.execId = rs.getLong("exec_id");
+          mark.recentExecs = parseExecs(rs.getString("recent_execs"));
+        }
+      }
+    }
+    logger.info("Azkaban {} watermark of app {} : end_time {}, exec_id {}", etlName, appId, mark.endTime,
+      mark.execId);
+    return mark;
+  }
+
+  public boolean isEmpty() {
+    return endTime < 0;
+  }
+
+  /**
+   * Select the finished executions that were not processed yet, without reading their flow_data.
+   * @param fallbackStartTime start of the executions to read when there is no mark yet, in milli seconds
+   * @param endBefore only select executions finished before, in milli seconds, or 0 for no limit
+   * @return exec ids ordered by end_time
+   */
+  public List<Long> selectNewExecIds(Connection azConn, long fallbackStartTime, long endBefore)
+    throws SQLException {
+    long from = isEmpty() ? fallbackStartTime : Math.max(1, endTime - overlapMillis);
+    List<long[]> finished = new ArrayList<>();
+    String sql = "SELECT exec_id, end_time FROM execution_flows WHERE end_time >= ?"
+      + (endBefore > 0 ? " AND end_time < ?" : "") + " ORDER BY end_time, exec_id";
+    try (PreparedStatement stmt = azConn.prepareStatement(sql)) {
+      stmt.setLong(1, from);
+      if (endBefore > 0) {
+        stmt.setLong(2, endBefore);
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          finished.add(new long[]{rs.getLong(1), rs.getLong(2)});
+        }
+      }
+    }
+    return select(finished);
+  }
+
+  /**
+   * @param finished [exec_id, end_time] of the executions finished since the mark minus the overlap,
+   * ordered by end_time and exec_id
+   */
+  List<Long> select(List<long[]> finished) {
+    newEndTime = endTime;
+    newExecId = execId;
+    List<Long> selected = new ArrayList<>();
+    for (long[] e : finished) {
+      Long processedEnd = recentExecs.get(e[0]);
+      // a known execution with another end_time was restarted and is processed again
+      if (processedEnd == null || processedEnd != e[1]) {
+        selected.add(e[0]);
+      }
+      if (e[1] > newEndTime || e[1] == newEndTime && e[0] > newExecId) {
+        newEndTime = e[1];
+        newExecId = e[0];
+      }
+    }
+    newRecentExecs = new HashMap<>();
+    for (long[] e : finished) {
+      if (e[1] >= newEndTime - overlapMillis) {
+        newRecentExecs.put(e[0], e[1]);
+      }
+    }
+    logger.info("{} new azkaban executions out of {} finished since {}", selected.size(), finished.size(),
+      isEmpty() ? "the fallback start" : "the watermark");
+    return selected;
+  }
+
+  /**
+   * Save the mark reached by this run as pending, see {@link #commit}.
+   */
+  public void savePending(Connection whConn, long whExecId)
+    throws SQLException {
+    if (newEndTime < 0) {
+      return;
+    }
+    int updated;
+    try (PreparedStatement stmt = whConn.prepareStatement("UPDATE flow_execution_watermark "
+      + "SET pending_end_time = ?, pending_exec_id = ?, pending_recent_execs = ?, pending_wh_etl_exec_id = ? "
+      + "WHERE app_id = ? AND etl_name = ?")) {
+      stmt.setLong(1, newEndTime);
+      stmt.setLong(2, newExecId);
+      stmt.setString(3, formatExecs(newRecentExecs));
+      stmt.setLong(4, whExecId);
+      stmt.setInt(5, appId);
+      stmt.setString(6, etlName);
+      updated = stmt.executeUpdate();
+    }
+    if (updated == 0) {
+      try (PreparedStatement stmt = whConn.prepareStatement("INSERT INTO flow_execution_watermark "
+        + "(app_id, etl_name, pending_end_time, pending_exec_id, pending_recent_execs, pending_wh_etl_exec_id) "
+        + "VALUES (?, ?, ?, ?, ?, ?)")) {
+        stmt.setInt(1, appId);
+        stmt.setString(2, etlName);
+        stmt.setLong(3, newEndTime);
+        stmt.setLong(4, newExecId);
+        stmt.setString(5, formatExecs(newRecentExecs));
+        stmt.setLong(6, whExecId);
+        stmt.executeUpdate();
+      }
+    }
+  }
+
+  /**
+   * Make the pending mark saved by the given ETL execution current.
+   * @return false when that execution saved no mark
+   */
+  public static boolean commit(Connection whConn, int appId, String etlName, long whExecId)
+    throws SQLException {
+    try (PreparedStatement stmt = whConn.prepareStatement("UPDATE flow_execution_watermark "
+      + "SET end_time = pending_end_time, exec_id = pending_exec_id, recent_execs = pending_recent_execs, "
+      + "wh_etl_exec_id = pending_wh_etl_exec_id, pending_wh_etl_exec_id = NULL, modified_time = ? "
+      + "WHERE app_id = ? AND etl_name = ? AND pending_wh_etl_exec_id = ?")) {
+      stmt.setLong(1, System.currentTimeMillis() / 1000);
+      stmt.setInt(2, appId);
+      stmt.setString(3, etlName);
+      stmt.setLong(4, whExecId);
+      return stmt.executeUpdate() > 0;
+    }
+  }
+
+  static String formatExecs(Map<Long, Long> execs) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Long, Long> e : execs.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(e.getKey()).append(':').append(e.getValue());
+    }
+    return sb.toString();
+  }
+
+  static Map<Long, Long> parseExecs(String execs) {
+    Map<Long, Long> result = new HashMap<>();
+    if (execs == null || execs.isEmpty()) {
+      return result;
+    }
+    for (String e : execs.split(",")) {
+      int colon = e.indexOf(':');
+      result.put(Long.valueOf(e.substring(0, colon)), Long.valueOf(e.substring(colon + 1)));
+    }
+    return result;
+  }
+}
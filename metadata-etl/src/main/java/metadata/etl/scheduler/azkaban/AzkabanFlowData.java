@@ -0,0 +1,216 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The parts of the flow_data blob of azkaban execution_flows used by the execution and lineage ETL.
+ * <p>
+ * The gzipped json is parsed as a stream with one shared mapper, only the status and times of the flow and its
+ * nodes are kept, properties and execution options are skipped without being materialized.
+ */
+public class AzkabanFlowData {
+  private static final Logger logger = LoggerFactory.getLogger(AzkabanFlowData.class);
+
+  static final ObjectMapper MAPPER = new ObjectMapper();
+  static final int CHUNK_SIZE = 500;
+
+  /**
+   * One job or embedded flow of an execution.
+   */
+  public static class Node {
+    public String id;
+    public String status;
+    public int attempt;
+    public long startTime;
+    public long endTime;
+    // nodes of an embedded flow, null for a job
+    public List<Node> nodes;
+  }
+
+  /**
+   * Receives every execution read by {@link #readExecutions}.
+   */
+  public interface Handler {
+    void handle(AzkabanFlowData flow)
+      throws Exception;
+  }
+
+  // columns of execution_flows
+  public long execId;
+  public Integer version;
+  public String submitUser;
+  public long startTime;
+  public long endTime;
+
+  // fields of flow_data
+  public String projectName;
+  public String flowId;
+  public String status;
+  public int attempt;
+  public List<Node> nodes = new ArrayList<>();
+
+  public String getFlowPath() {
+    return projectName + ":" + flowId;
+  }
+
+  public static AzkabanFlowData parse(String json)
+    throws IOException {
+    return readFlow(MAPPER.getFactory().createParser(json));
+  }
+
+  public static AzkabanFlowData parse(InputStream json)
+    throws IOException {
+    return readFlow(MAPPER.getFactory().createParser(json));
+  }
+
+  private static AzkabanFlowData readFlow(JsonParser parser)
+    throws IOException {
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("flow_data is not a json object");
+      }
+      AzkabanFlowData flow = new AzkabanFlowData();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "projectName":
+            flow.projectName = parser.getValueAsString();
+            break;
+          case "flowId":
+            flow.flowId = parser.getValueAsString();
+            break;
+          case "status":
+            flow.status = parser.getValueAsString();
+            break;
+          case "attempt":
+            flow.attempt = parser.getValueAsInt();
+            break;
+          case "nodes":
+            flow.nodes = readNodes(parser);
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+      return flow;
+    } finally {
+      parser.close();
+    }
+  }
+
+  private static List<Node> readNodes(JsonParser parser)
+    throws IOException {
+    List<Node> nodes = new ArrayList<>();
+    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return nodes;
+    }
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      Node node = new Node();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "id":
+            node.id = parser.getValueAsString();
+            break;
+          case "status":
+            node.status = parser.getValueAsString();
+            break;
+          case "attempt":
+            node.attempt = parser.getValueAsInt();
+            break;
+          case "startTime":
+            node.startTime = parser.getValueAsLong();
+            break;
+          case "endTime":
+            node.endTime = parser.getValueAsLong();
+            break;
+          case "nodes":
+            node.nodes = readNodes(parser);
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+      nodes.add(node);
+    }
+    return nodes;
+  }
+
+  /**
+   * Read the given executions from execution_flows in chunks. Executions whose flow_data can not be parsed are
+   * logged and skipped.
+   * @return number of executions passed to the handler
+   */
+  public static int readExecutions(Connection azConn, List<Long> execIds, Handler handler)
+    throws Exception {
+    int count = 0;
+    for (int from = 0; from < execIds.size(); from += CHUNK_SIZE) {
+      List<Long> chunk = execIds.subList(from, Math.min(execIds.size(), from + CHUNK_SIZE));
+      StringBuilder sql = new StringBuilder(
+        "SELECT exec_id, version, submit_user, start_time, end_time, flow_data FROM execution_flows WHERE exec_id IN (");
+      for (int i = 0; i < chunk.size(); i++) {
+        sql.append(i == 0 ? "?" : ", ?");
+      }
+      sql.append(") ORDER BY end_time, exec_id");
+
+      try (PreparedStatement stmt = azConn.prepareStatement(sql.toString())) {
+        for (int i = 0; i < chunk.size(); i++) {
+          stmt.setLong(i + 1, chunk.get(i));
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            InputStream blob = rs.getBinaryStream("flow_data");
+            if (blob == null) {
+              logger.warn("Execution {} has no flow_data", rs.getLong("exec_id"));
+              continue;
+            }
+            AzkabanFlowData flow;
+            try (InputStream in = new GZIPInputStream(blob)) {
+              flow = parse(in);
+            } catch (IOException e) {
+              logger.error("Failed to parse flow_data of execution " + rs.getLong("exec_id"), e);
+              continue;
+            }
+            flow.execId = rs.getLong("exec_id");
+            flow.version = rs.getInt("version");
+            flow.submitUser = rs.getString("submit_user");
+            flow.startTime = rs.getLong("start_time");
+            flow.endTime = rs.getLong("end_time");
+            handler.handle(flow);
+            count++;
+          }
+        }
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import metadata.etl.scheduler.SchedulerMerger;
+import wherehows.common.enums.SchedulerType;
+
+
+/**
+ * Azkaban files carry flow groups, sub flows and permissions. The flows, jobs and dags only hold the projects
+ * changed since the last run, see {@link AzkabanProjectCollector}, so only the flows of those projects, and of
+ * projects azkaban does not know anymore, are switched off when missing from the extract.
+ */
+public class AzkabanMerger extends SchedulerMerger {
+
+  public AzkabanMerger(Properties prop)
+    throws ClassNotFoundException {
+    super(prop, SchedulerType.AZKABAN);
+    stagingColumns.put("stg_flow", "app_id, flow_name, flow_group, flow_path, flow_level, source_modified_time, "
+      + "source_version, is_active, wh_etl_exec_id");
+    stagingColumns.put("stg_flow_job", "app_id, flow_path, source_version, job_name, job_path, job_type, "
+      + "ref_flow_path, is_current, wh_etl_exec_id");
+    stagingColumns.put("stg_flow_owner_permission", "app_id, flow_path, owner_id, permissions, owner_type, "
+      + "wh_etl_exec_id");
+    stagingColumns.put("stg_flow_execution", "app_id, flow_name, flow_path, source_version, flow_exec_id, "
+      + "flow_exec_status, attempt_id, executed_by, start_time, end_time, wh_etl_exec_id");
+    stagingColumns.put("stg_job_execution", "app_id, flow_path, source_version, flow_exec_id, job_name, job_path, "
+      + "job_exec_id, job_exec_status, attempt_id, start_time, end_time, wh_etl_exec_id");
+  }
+
+  @Override
+  protected void mergeFlows(Connection conn)
+    throws SQLException {
+    execute(conn, "merge.flow", "UPDATE flow f LEFT JOIN flow_project_version p "
+      + "ON f.app_id = p.app_id AND f.flow_group = p.project_name "
+      + "LEFT JOIN stg_flow s ON f.app_id = s.app_id AND f.flow_id = s.flow_id AND s.wh_etl_exec_id = ? "
+      + "SET f.is_active = 'N' "
+      + "WHERE s.flow_id IS NULL AND f.app_id = ? AND (p.project_id IS NULL OR p.pending_wh_etl_exec_id = ?) "
+      + "AND NOT (f.is_active <=> 'N')", whExecId, appId, whExecId);
+    super.mergeFlows(conn);
+    // schedules are extracted for all the flows, not only the staged ones
+    execute(conn, "merge.flow", "UPDATE flow f "
+      + "SET f.is_scheduled = CASE WHEN EXISTS (SELECT * FROM stg_flow_schedule fs "
+      + "WHERE fs.app_id = f.app_id AND fs.flow_id = f.flow_id AND fs.wh_etl_exec_id = ?) THEN 'Y' ELSE 'N' END "
+      + "WHERE f.app_id = ? AND NOT (f.is_scheduled <=> CASE WHEN EXISTS (SELECT * FROM stg_flow_schedule fs "
+      + "WHERE fs.app_id = f.app_id AND fs.flow_id = f.flow_id AND fs.wh_etl_exec_id = ?) THEN 'Y' ELSE 'N' END)",
+      whExecId, appId, whExecId);
+  }
+
+  @Override
+  protected String flowScope(String flowIdColumn) {
+    return " AND " + flowIdColumn + " IN (SELECT sf.flow_id FROM flow sf LEFT JOIN flow_project_version sp "
+      + "ON sf.app_id = sp.app_id AND sf.flow_group = sp.project_name "
+      + "WHERE sf.app_id = " + appId + " AND (sp.project_id IS NULL OR sp.pending_wh_etl_exec_id = " + whExecId + "))";
+  }
+}
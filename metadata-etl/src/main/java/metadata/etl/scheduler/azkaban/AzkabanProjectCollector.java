@@ -0,0 +1,309 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+import wherehows.common.enums.SchedulerType;
+import wherehows.common.schemas.AzkabanFlowDagRecord;
+import wherehows.common.schemas.AzkabanFlowRecord;
+import wherehows.common.schemas.AzkabanJobRecord;
+import wherehows.common.writers.FileWriter;
+
+
+/**
+ * Write the flows, jobs and dag edges of the azkaban projects changed since the last run to flow.csv, job.csv and
+ * dag.csv.
+ * <p>
+ * The (project_id, version) pairs already loaded are kept in flow_project_version. A project is extracted again
+ * when its version changed or it was activated again, and marked inactive when it was deleted or deactivated. The
+ * pairs of a run are saved as pending and committed by the load step through {@link #commitVersions}, so the
+ * projects of a failed run are extracted again by the next one. {@link AzkabanMerger} only touches the flows of
+ * the pending projects.
+ */
+public class AzkabanProjectCollector {
+  private static final Logger logger = LoggerFactory.getLogger(AzkabanProjectCollector.class);
+
+  static final int CHUNK_SIZE = 500;
+  private static final int FLUSH_SIZE = 1000;
+
+  private final Properties prop;
+  private final int appId;
+  private final long whExecId;
+  private final String metadataFolder;
+
+  /**
+   * Version of a project, in azkaban or as loaded by a previous run.
+   */
+  static class Project {
+    final int id;
+    final String name;
+    final int version;
+    final boolean active;
+
+    Project(int id, String name, int version, boolean active) {
+      this.id = id;
+      this.name = name;
+      this.version = version;
+      this.active = active;
+    }
+  }
+
+  public AzkabanProjectCollector(Properties prop)
+    throws ClassNotFoundException {
+    this.prop = prop;
+    this.appId = Integer.parseInt(prop.getProperty(Constant.APP_ID_KEY));
+    this.whExecId = Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY));
+    this.metadataFolder =
+      prop.getProperty(Constant.WH_APP_FOLDER_KEY) + "/" + SchedulerType.AZKABAN + "/" + appId;
+    if (prop.getProperty(Constant.AZ_DB_DRIVER_KEY) != null) {
+      Class.forName(prop.getProperty(Constant.AZ_DB_DRIVER_KEY));
+    }
+    if (prop.getProperty(Constant.WH_DB_DRIVER_KEY) != null) {
+      Class.forName(prop.getProperty(Constant.WH_DB_DRIVER_KEY));
+    }
+  }
+
+  /**
+   * @return number of flows written
+   */
+  public int run()
+    throws Exception {
+    new File(metadataFolder).mkdirs();
+
+    try (Connection whConn = DriverManager.getConnection(prop.getProperty(Constant.WH_DB_URL_KEY),
+      prop.getProperty(Constant.WH_DB_USERNAME_KEY), prop.getProperty(Constant.WH_DB_PASSWORD_KEY));
+        Connection azConn = DriverManager.getConnection(prop.getProperty(Constant.AZ_DB_URL_KEY),
+          prop.getProperty(Constant.AZ_DB_USERNAME_KEY), prop.getProperty(Constant.AZ_DB_PASSWORD_KEY))) {
+      Map<Integer, Project> loaded = new HashMap<>();
+      Set<Integer> tracked = new HashSet<>();
+      readLoaded(whConn, loaded, tracked);
+      List<Project> changed = changedProjects(loaded, readProjects(azConn));
+
+      List<Integer> active = new ArrayList<>();
+      for (Project p : changed) {
+        if (p.active) {
+          active.add(p.id);
+        }
+      }
+      int count = writeFlows(azConn, active);
+      savePending(whConn, changed, tracked);
+      logger.info("{} flows of {} changed azkaban projects written for app {}", count, changed.size(), appId);
+      return count;
+    }
+  }
+
+  /**
+   * Read the projects committed by the previous runs in loaded, and all the projects of the app in tracked.
+   */
+  void readLoaded(Connection whConn, Map<Integer, Project> loaded, Set<Integer> tracked)
+    throws SQLException {
+    try (PreparedStatement stmt = whConn.prepareStatement(
+      "SELECT project_id, project_name, source_version, is_active FROM flow_project_version WHERE app_id = ?")) {
+      stmt.setInt(1, appId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          int id = rs.getInt("project_id");
+          tracked.add(id);
+          int version = rs.getInt("source_version");
+          if (!rs.wasNull()) {
+            loaded.put(id, new Project(id, rs.getString("project_name"), version,
+              "Y".equals(rs.getString("is_active"))));
+          }
+        }
+      }
+    }
+  }
+
+  static List<Project> readProjects(Connection azConn)
+    throws SQLException {
+    List<Project> projects = new ArrayList<>();
+    try (PreparedStatement stmt = azConn.prepareStatement("SELECT id, name, version, active FROM projects");
+        ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        projects.add(new Project(rs.getInt("id"), rs.getString("name"), rs.getInt("version"),
+          rs.getInt("active") == 1));
+      }
+    }
+    return projects;
+  }
+
+  /**
+   * @return the active projects with a version not loaded yet, and the loaded projects that are not active anymore
+   */
+  static List<Project> changedProjects(Map<Integer, Project> loaded, List<Project> current) {
+    List<Project> changed = new ArrayList<>();
+    Set<Integer> seen = new HashSet<>();
+    for (Project p : current) {
+      seen.add(p.id);
+      Project last = loaded.get(p.id);
+      if (p.active ? last == null || !last.active || last.version != p.version : last != null && last.active) {
+        changed.add(p);
+      }
+    }
+    for (Project last : loaded.values()) {
+      if (last.active && !seen.contains(last.id)) {
+        changed.add(new Project(last.id, last.name, last.version, false));
+      }
+    }
+    return changed;
+  }
+
+  int writeFlows(Connection azConn, List<Integer> projectIds)
+    throws Exception {
+    FileWriter flowWriter = new FileWriter(metadataFolder + "/flow.csv");
+    FileWriter jobWriter = new FileWriter(metadataFolder + "/job.csv");
+    FileWriter dagWriter = new FileWriter(metadataFolder + "/dag.csv");
+    int count = 0;
+    try {
+      for (int from = 0; from < projectIds.size(); from += CHUNK_SIZE) {
+        List<Integer> chunk = projectIds.subList(from, Math.min(projectIds.size(), from + CHUNK_SIZE));
+        StringBuilder sql = new StringBuilder("SELECT p.name AS project_name, f.version, f.flow_id, f.modified_time, "
+          + "f.json FROM project_flows f JOIN projects p ON f.project_id = p.id AND f.version = p.version "
+          + "WHERE p.id IN (");
+        for (int i = 0; i < chunk.size(); i++) {
+          sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement stmt = azConn.prepareStatement(sql.toString())) {
+          for (int i = 0; i < chunk.size(); i++) {
+            stmt.setInt(i + 1, chunk.get(i));
+          }
+          try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+              JsonNode json;
+              try (InputStream in = new GZIPInputStream(rs.getBinaryStream("json"))) {
+                json = AzkabanFlowData.MAPPER.readTree(in);
+              }
+              write(rs.getString("project_name"), rs.getString("flow_id"), rs.getInt("version"),
+                rs.getLong("modified_time"), json, flowWriter, jobWriter, dagWriter);
+              if (++count % FLUSH_SIZE == 0) {
+                flowWriter.flush();
+                jobWriter.flush();
+                dagWriter.flush();
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      flowWriter.close();
+      jobWriter.close();
+      dagWriter.close();
+    }
+    return count;
+  }
+
+  void write(String projectName, String flowId, int version, long modifiedTime, JsonNode json,
+    FileWriter flowWriter, FileWriter jobWriter, FileWriter dagWriter)
+    throws IOException, SQLException {
+    String flowPath = projectName + ":" + flowId;
+    flowWriter.append(new AzkabanFlowRecord(appId, flowId, projectName, flowPath, 0, modifiedTime / 1000, version,
+      'Y', whExecId));
+
+    for (JsonNode node : json.path("nodes")) {
+      String jobName = node.path("id").asText();
+      AzkabanJobRecord job = new AzkabanJobRecord(appId, flowPath, version, jobName, flowPath + "/" + jobName,
+        node.path("jobType").asText(), 'Y', whExecId);
+      if ("flow".equals(node.path("jobType").asText())) {
+        job.setRefFlowPath(projectName + ":" + node.path("embeddedFlowId").asText());
+      }
+      jobWriter.append(job);
+    }
+
+    for (JsonNode edge : json.path("edges")) {
+      dagWriter.append(new AzkabanFlowDagRecord(appId, flowPath, version,
+        flowPath + "/" + edge.path("source").asText(), flowPath + "/" + edge.path("target").asText(), whExecId));
+    }
+  }
+
+  /**
+   * Save the versions of the changed projects as pending, see {@link #commitVersions}.
+   * @param tracked projects of the app that already have a row
+   */
+  void savePending(Connection whConn, List<Project> changed, Set<Integer> tracked)
+    throws SQLException {
+    boolean autoCommit = whConn.getAutoCommit();
+    whConn.setAutoCommit(false);
+    try (PreparedStatement update = whConn.prepareStatement("UPDATE flow_project_version "
+      + "SET project_name = ?, pending_version = ?, pending_is_active = ?, pending_wh_etl_exec_id = ? "
+      + "WHERE app_id = ? AND project_id = ?");
+        PreparedStatement insert = whConn.prepareStatement("INSERT INTO flow_project_version "
+          + "(project_name, pending_version, pending_is_active, pending_wh_etl_exec_id, app_id, project_id) "
+          + "VALUES (?, ?, ?, ?, ?, ?)")) {
+      for (Project p : changed) {
+        PreparedStatement stmt = tracked.contains(p.id) ? update : insert;
+        stmt.setString(1, p.name);
+        stmt.setInt(2, p.version);
+        stmt.setString(3, p.active ? "Y" : "N");
+        stmt.setLong(4, whExecId);
+        stmt.setInt(5, appId);
+        stmt.setInt(6, p.id);
+        stmt.addBatch();
+      }
+      update.executeBatch();
+      insert.executeBatch();
+      whConn.commit();
+    } finally {
+      whConn.setAutoCommit(autoCommit);
+    }
+  }
+
+  /**
+   * Make the project versions of this ETL execution current, once its flows are loaded.
+   */
+  public static void commitVersions(Properties prop)
+    throws Exception {
+    try (Connection whConn = DriverManager.getConnection(prop.getProperty(Constant.WH_DB_URL_KEY),
+      prop.getProperty(Constant.WH_DB_USERNAME_KEY), prop.getProperty(Constant.WH_DB_PASSWORD_KEY))) {
+      commit(whConn, Integer.parseInt(prop.getProperty(Constant.APP_ID_KEY)),
+        Long.parseLong(prop.getProperty(Constant.WH_EXEC_ID_KEY)));
+    }
+  }
+
+  /**
+   * @return number of projects committed
+   */
+  static int commit(Connection whConn, int appId, long whExecId)
+    throws SQLException {
+    try (PreparedStatement stmt = whConn.prepareStatement("UPDATE flow_project_version "
+      + "SET source_version = pending_version, is_active = pending_is_active, wh_etl_exec_id = pending_wh_etl_exec_id, "
+      + "pending_wh_etl_exec_id = NULL, modified_time = ? "
+      + "WHERE app_id = ? AND pending_wh_etl_exec_id = ?")) {
+      stmt.setLong(1, System.currentTimeMillis() / 1000);
+      stmt.setInt(2, appId);
+      stmt.setLong(3, whExecId);
+      return stmt.executeUpdate();
+    }
+  }
+}
@@ -22,6 +22,7 @@ import metadata.etl.EtlJob;
  * Created by zechen on 10/1/15.
  */
 public class OozieExecEtl extends EtlJob {
+  private OozieMerger merger;
 
   public OozieExecEtl(int appId, long whExecId) {
     super(appId, null, whExecId);
@@ -43,19 +44,24 @@ public class OozieExecEtl extends EtlJob {
   @Override
   public void transform()
     throws Exception {
-    logger.info("In OozieExecEtl java launch transform jython scripts");
-    InputStream inputStream = classLoader.getResourceAsStream("jython/OozieTransform.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
+    logger.info("In OozieExecEtl java load the extracted files into the staging tables");
+    merger().stage();
   }
 
   @Override
   public void load()
     throws Exception {
-    logger.info("In OozieExecEtl java launch load jython scripts");
-    InputStream inputStream = classLoader.getResourceAsStream("jython/OozieLoad.py");
-    interpreter.execfile(inputStream);
-    inputStream.close();
-    logger.info("In OozieExecEtl java load jython scripts finished");
+    logger.info("In OozieExecEtl java merge the staging tables");
+    merger().merge();
+    logger.info("In OozieExecEtl java merge finished");
+  }
+
+  private OozieMerger merger()
+    throws ClassNotFoundException {
+    // one instance for both steps, so the timings of the load include the ones of the transform
+    if (merger == null) {
+      merger = new OozieMerger(prop);
+    }
+    return merger;
   }
 }
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.oozie;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import metadata.etl.scheduler.SchedulerMerger;
+import wherehows.common.enums.SchedulerType;
+
+
+/**
+ * Oozie executions are identified by uuid strings, their numeric ids come from flow_execution_id_map and
+ * job_execution_id_map. Fork nodes are never the last job of a flow.
+ */
+public class OozieMerger extends SchedulerMerger {
+
+  public OozieMerger(Properties prop)
+    throws ClassNotFoundException {
+    super(prop, SchedulerType.OOZIE);
+  }
+
+  @Override
+  protected void resolveExecIds(Connection conn)
+    throws SQLException {
+    long start = System.currentTimeMillis();
+    Set<String> flowExecUuids = distinct(conn, "stg_flow_execution", "flow_exec_uuid");
+    Set<String> jobFlowExecUuids = distinct(conn, "stg_job_execution", "flow_exec_uuid");
+    Set<String> referenced = new HashSet<>(jobFlowExecUuids);
+    referenced.removeAll(flowExecUuids);
+    Map<String, Long> flowExecIds = resolveIds(conn, "flow_execution_id_map", "flow_exec_id", "source_exec_uuid",
+      flowExecUuids, referenced);
+    long rows = writeIds(conn, "stg_flow_execution", "flow_exec_id", "flow_exec_uuid", flowExecUuids, flowExecIds);
+    rows += writeIds(conn, "stg_job_execution", "flow_exec_id", "flow_exec_uuid", jobFlowExecUuids, flowExecIds);
+
+    Set<String> jobExecUuids = distinct(conn, "stg_job_execution", "job_exec_uuid");
+    Map<String, Long> jobExecIds = resolveIds(conn, "job_execution_id_map", "job_exec_id", "source_exec_uuid",
+      jobExecUuids, new HashSet<String>());
+    rows += writeIds(conn, "stg_job_execution", "job_exec_id", "job_exec_uuid", jobExecUuids, jobExecIds);
+    record("stage.exec_id", start, rows);
+  }
+
+  @Override
+  protected void deriveDags(Connection conn)
+    throws SQLException {
+    super.deriveDags(conn);
+    execute(conn, "stage.dag", "UPDATE stg_flow_job SET is_last = 'N' "
+      + "WHERE job_type = ':FORK:' AND app_id = ? AND wh_etl_exec_id = ?", appId, whExecId);
+  }
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.tracking;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wherehows.common.Constant;
+import wherehows.common.utils.HyperLogLog;
+
+
+/**
+ * Roll the rows of track_object_access_log up into hourly and daily counters of track_object_access_stats.
+ * <p>
+ * Only the log rows after the id kept in track_object_access_stats_offset are read, in chunks. Each chunk is
+ * merged into the counters it touches and the offset moves forward in the same transaction, so a failed run
+ * is picked up again from the last committed chunk. The ids are given out when a row is inserted but the rows become
+ * visible when they commit, so a row may show up after a higher id was read. A chunk therefore stops at the first row
+ * inserted less than the safety lag ago: the rows below it had that long to commit. The lag is measured on logged_time,
+ * set by the database on insert, against the time of the database, as access_unixtime comes from the client clock.
+ * An access is counted in the period of access_unixtime, but never later than logged_time. Distinct users are counted
+ * with a {@link HyperLogLog} sketch stored next to each counter. The offset row is locked for the whole chunk, concurrent runs wait on each other.
+ */
+public class AccessStatsAggregator {
+  private static final Logger logger = LoggerFactory.getLogger(AccessStatsAggregator.class);
+
+  static final String OFFSET_NAME = "access_stats";
+  static final String HOUR = "hour";
+  static final String DAY = "day";
+  static final int HOUR_SECONDS = 3600;
+  static final int DAY_SECONDS = 86400;
+  static final int DEFAULT_CHUNK_SIZE = 10000;
+  static final int DEFAULT_HOUR_RETENTION_DAYS = 7;
+  static final int DEFAULT_DAY_RETENTION_DAYS = 400;
+  static final int DEFAULT_LAG_SECONDS = 300;
+  // object ids of one counter lookup
+  static final int IN_LIST_SIZE = 500;
+  // access_unixtime is in milliseconds, values below this one are seconds
+  private static final long MIN_MILLIS = 100000000000L;
+
+  private static final String SELECT_OFFSET =
+    "SELECT last_id FROM track_object_access_stats_offset WHERE name = ? FOR UPDATE";
+  private static final String INSERT_OFFSET =
+    "INSERT INTO track_object_access_stats_offset (name, last_id, modified_time) VALUES (?, 0, ?)";
+  private static final String UPDATE_OFFSET =
+    "UPDATE track_object_access_stats_offset SET last_id = ?, modified_time = ? WHERE name = ?";
+  private static final String SELECT_NOW = "SELECT CURRENT_TIMESTAMP";
+  private static final String SELECT_LOG = "SELECT id, access_unixtime, logged_time, login_id, object_type, object_id "
+    + "FROM track_object_access_log WHERE id > ? ORDER BY id LIMIT ?";
+  private static final String SELECT_STATS = "SELECT object_id, views, users_sketch FROM track_object_access_stats "
+    + "WHERE object_type = ? AND period = ? AND period_start = ? AND object_id IN (%s)";
+  private static final String INSERT_STATS = "INSERT INTO track_object_access_stats (object_type, object_id, period, "
+    + "period_start, views, distinct_users, users_sketch, modified_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String UPDATE_STATS = "UPDATE track_object_access_stats SET views = ?, distinct_users = ?, "
+    + "users_sketch = ?, modified_time = ? WHERE object_type = ? AND object_id = ? AND period = ? AND period_start = ?";
+  private static final String DELETE_EXPIRED = "DELETE FROM track_object_access_stats WHERE period = ? "
+    + "AND period_start < ?";
+
+  /**
+   * One period of one object type, the counters of a chunk are grouped by it to be read with one query.
+   */
+  static final class Bucket {
+    final String objectType;
+    final String period;
+    final long periodStart;
+
+    Bucket(String objectType, String period, long periodStart) {
+      this.objectType = objectType;
+      this.period = period;
+      this.periodStart = periodStart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Bucket)) {
+        return false;
+      }
+      Bucket b = (Bucket) o;
+      return periodStart == b.periodStart && objectType.equals(b.objectType) && period.equals(b.period);
+    }
+
+    @Override
+    public int hashCode() {
+      return (objectType.hashCode() * 31 + period.hashCode()) * 31 + (int) (periodStart ^ (periodStart >>> 32));
+    }
+  }
+
+  static final class Counter {
+    long views;
+    HyperLogLog users = new HyperLogLog();
+    boolean stored;
+  }
+
+  private final String jdbcUrl;
+  private final String username;
+  private final String password;
+  private final int chunkSize;
+  private final int hourRetentionDays;
+  private final int dayRetentionDays;
+  private final int lagSeconds;
+
+  public AccessStatsAggregator(Properties prop)
+    throws ClassNotFoundException {
+    this.jdbcUrl = prop.getProperty(Constant.WH_DB_URL_KEY);
+    this.username = prop.getProperty(Constant.WH_DB_USERNAME_KEY);
+    this.password = prop.getProperty(Constant.WH_DB_PASSWORD_KEY);
+    this.chunkSize = Integer.parseInt(prop.getProperty(Constant.TRACKING_STATS_CHUNK_SIZE_KEY,
+      String.valueOf(DEFAULT_CHUNK_SIZE)));
+    this.hourRetentionDays = Integer.parseInt(prop.getProperty(Constant.TRACKING_STATS_HOUR_RETENTION_KEY,
+      String.valueOf(DEFAULT_HOUR_RETENTION_DAYS)));
+    this.dayRetentionDays = Integer.parseInt(prop.getProperty(Constant.TRACKING_STATS_DAY_RETENTION_KEY,
+      String.valueOf(DEFAULT_DAY_RETENTION_DAYS)));
+    this.lagSeconds = Integer.parseInt(prop.getProperty(Constant.TRACKING_STATS_LAG_KEY,
+      String.valueOf(DEFAULT_LAG_SECONDS)));
+    if (prop.getProperty(Constant.WH_DB_DRIVER_KEY) != null) {
+      Class.forName(prop.getProperty(Constant.WH_DB_DRIVER_KEY));
+    }
+  }
+
+  /**
+   * Roll up all the new log rows, then drop the expired counters.
+   * @return number of log rows read
+   */
+  public long run()
+    throws SQLException {
+    long total = 0;
+    try (Connection conn = DriverManager.getConnection(jdbcUrl, username, password)) {
+      conn.setAutoCommit(false);
+      int read;
+      do {
+        read = aggregateChunk(conn, databaseTime(conn));
+        total += read;
+      } while (read == chunkSize);
+      prune(conn, databaseTime(conn));
+    }
+    logger.info("{} tracking rows rolled up into the access stats", total);
+    return total;
+  }
+
+  /**
+   * @return current time of the database in seconds, the clock of logged_time
+   */
+  private static long databaseTime(Connection conn)
+    throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(SELECT_NOW); ResultSet rs = stmt.executeQuery()) {
+      rs.next();
+      return rs.getTimestamp(1).getTime() / 1000;
+    }
+  }
+
+  /**
+   * Merge the next chunk of log rows into the counters and move the offset, in one transaction.
+   * The chunk ends before the first row inserted after now minus the safety lag.
+   * @param now current time of the database in seconds
+   * @return number of log rows read
+   */
+  int aggregateChunk(Connection conn, long now)
+    throws SQLException {
+    try {
+      long lastId = lockOffset(conn, now);
+      Map<Bucket, Map<Long, Counter>> counters = new LinkedHashMap<>();
+      int read = 0;
+      int skipped = 0;
+      try (PreparedStatement stmt = conn.prepareStatement(SELECT_LOG)) {
+        stmt.setLong(1, lastId);
+        stmt.setInt(2, chunkSize);
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            long logged = rs.getTimestamp("logged_time").getTime() / 1000;
+            if (logged > now - lagSeconds) {
+              // rows below this one may not be committed yet, read them on the next run
+              break;
+            }
+            // a client clock ahead does not count the access in a future period
+            long seconds = Math.min(toSeconds(rs.getLong("access_unixtime")), logged);
+            read++;
+            lastId = rs.getLong("id");
+            long objectId = rs.getLong("object_id");
+            if (rs.wasNull()) {
+              skipped++;
+              continue;
+            }
+            String objectType = rs.getString("object_type");
+            long loginId = rs.getLong("login_id");
+            count(counters, new Bucket(objectType, HOUR, seconds - seconds % HOUR_SECONDS), objectId, loginId);
+            count(counters, new Bucket(objectType, DAY, seconds - seconds % DAY_SECONDS), objectId, loginId);
+          }
+        }
+      }
+      if (read == 0) {
+        conn.commit();
+        return 0;
+      }
+
+      for (Map.Entry<Bucket, Map<Long, Counter>> e : counters.entrySet()) {
+        mergeStored(conn, e.getKey(), e.getValue());
+      }
+      write(conn, counters, now);
+      try (PreparedStatement stmt = conn.prepareStatement(UPDATE_OFFSET)) {
+        stmt.setLong(1, lastId);
+        stmt.setLong(2, now);
+        stmt.setString(3, OFFSET_NAME);
+        stmt.executeUpdate();
+      }
+      conn.commit();
+      logger.debug("{} tracking rows up to id {} rolled up into {} periods, {} without object id skipped", read,
+        lastId, counters.size(), skipped);
+      return read;
+    } catch (SQLException e) {
+      conn.rollback();
+      throw e;
+    }
+  }
+
+  private long lockOffset(Connection conn, long now)
+    throws SQLException {
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try (PreparedStatement stmt = conn.prepareStatement(SELECT_OFFSET)) {
+        stmt.setString(1, OFFSET_NAME);
+        try (ResultSet rs = stmt.executeQuery()) {
+          if (rs.next()) {
+            return rs.getLong(1);
+          }
+        }
+      }
+      // first run
+      try (PreparedStatement stmt = conn.prepareStatement(INSERT_OFFSET)) {
+        stmt.setString(1, OFFSET_NAME);
+        stmt.setLong(2, now);
+        stmt.executeUpdate();
+      }
+    }
+    throw new SQLException("Can not lock the offset " + OFFSET_NAME + " of track_object_access_stats_offset");
+  }
+
+  private static void count(Map<Bucket, Map<Long, Counter>> counters, Bucket bucket, long objectId, long loginId) {
+    Map<Long, Counter> objects = counters.get(bucket);
+    if (objects == null) {
+      objects = new HashMap<>();
+      counters.put(bucket, objects);
+    }
+    Counter counter = objects.get(objectId);
+    if (counter == null) {
+      counter = new Counter();
+      objects.put(objectId, counter);
+    }
+    counter.views++;
+    counter.users.add(loginId);
+  }
+
+  /**
+   * Add the stored counters of the bucket to the ones of the chunk.
+   */
+  private static void mergeStored(Connection conn, Bucket bucket, Map<Long, Counter> objects)
+    throws SQLException {
+    List<Long> ids = new ArrayList<>(objects.keySet());
+    for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+      List<Long> slice = ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()));
+      StringBuilder params = new StringBuilder();
+      for (int i = 0; i < slice.size(); i++) {
+        params.append(i == 0 ? "?" : ", ?");
+      }
+      try (PreparedStatement stmt = conn.prepareStatement(String.format(SELECT_STATS, params))) {
+        stmt.setString(1, bucket.objectType);
+        stmt.setString(2, bucket.period);
+        stmt.setLong(3, bucket.periodStart);
+        for (int i = 0; i < slice.size(); i++) {
+          stmt.setLong(4 + i, slice.get(i));
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            Counter counter = objects.get(rs.getLong("object_id"));
+            counter.stored = true;
+            counter.views += rs.getLong("views");
+            counter.users.merge(HyperLogLog.fromBytes(rs.getBytes("users_sketch")));
+          }
+        }
+      }
+    }
+  }
+
+  private static void write(Connection conn, Map<Bucket, Map<Long, Counter>> counters, long now)
+    throws SQLException {
+    try (PreparedStatement insert = conn.prepareStatement(INSERT_STATS);
+      PreparedStatement update = conn.prepareStatement(UPDATE_STATS)) {
+      for (Map.Entry<Bucket, Map<Long, Counter>> e : counters.entrySet()) {
+        Bucket bucket = e.getKey();
+        for (Map.Entry<Long, Counter> o : e.getValue().entrySet()) {
+          Counter counter = o.getValue();
+          if (counter.stored) {
+            update.setLong(1, counter.views);
+            update.setLong(2, counter.users.cardinality());
+            update.setBytes(3, counter.users.toBytes());
+            update.setLong(4, now);
+            update.setString(5, bucket.objectType);
+            update.setLong(6, o.getKey());
+            update.setString(7, bucket.period);
+            update.setLong(8, bucket.periodStart);
+            update.addBatch();
+          } else {
+            insert.setString(1, bucket.objectType);
+            insert.setLong(2, o.getKey());
+            insert.setString(3, bucket.period);
+            insert.setLong(4, bucket.periodStart);
+            insert.setLong(5, counter.views);
+            insert.setLong(6, counter.users.cardinality());
+            insert.setBytes(7, counter.users.toBytes());
+            insert.setLong(8, now);
+            insert.addBatch();
+          }
+        }
+      }
+      insert.executeBatch();
+      update.executeBatch();
+    }
+  }
+
+  /**
+   * Drop the hourly and daily counters past their retention.
+   */
+  void prune(Connection conn, long now)
+    throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(DELETE_EXPIRED)) {
+      stmt.setString(1, HOUR);
+      stmt.setLong(2, now - (long) hourRetentionDays * DAY_SECONDS);
+      int hours = stmt.executeUpdate();
+      stmt.setString(1, DAY);
+      stmt.setLong(2, now - (long) dayRetentionDays * DAY_SECONDS);
+      int days = stmt.executeUpdate();
+      conn.commit();
+      logger.info("{} hourly and {} daily access counters expired", hours, days);
+    } catch (SQLException e) {
+      conn.rollback();
+      throw e;
+    }
+  }
+
+  static long toSeconds(long accessTime) {
+    return accessTime >= MIN_MILLIS ? accessTime / 1000 : accessTime;
+  }
+}
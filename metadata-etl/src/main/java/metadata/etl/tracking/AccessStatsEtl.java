@@ -0,0 +1,55 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.tracking;
+
+import java.util.Properties;
+import metadata.etl.EtlJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Roll the web tracking events up into per object access counters, see {@link AccessStatsAggregator}.
+ * The log rows are read from the wherehows database itself, so there is nothing to extract or transform.
+ */
+public class AccessStatsEtl extends EtlJob {
+  protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+  public AccessStatsEtl(int appId, long whExecId) {
+    super(appId, null, whExecId);
+  }
+
+  public AccessStatsEtl(int appId, long whExecId, Properties prop) {
+    super(appId, null, whExecId, prop);
+  }
+
+  @Override
+  public void extract()
+      throws Exception {
+    logger.info("access stats extract: read incrementally during load");
+  }
+
+  @Override
+  public void transform()
+      throws Exception {
+    logger.info("access stats transform: nothing to transform");
+  }
+
+  @Override
+  public void load()
+      throws Exception {
+    logger.info("access stats load");
+    new AccessStatsAggregator(prop).run();
+  }
+}
@@ -0,0 +1,232 @@
+#
+# Copyright 2015 LinkedIn Corp. All rights reserved.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#
+
+from wherehows.common import Constant
+
+
+# analyze dict_dataset only when more than this fraction of its rows changed
+DEFAULT_ANALYZE_THRESHOLD = 0.05
+
+
+def get_analyze_threshold(args):
+  if Constant.DICT_DATASET_ANALYZE_THRESHOLD_KEY in args:
+    return float(args[Constant.DICT_DATASET_ANALYZE_THRESHOLD_KEY])
+  return DEFAULT_ANALYZE_THRESHOLD
+
+
+# mark missing datasets as deleted only when they are at most this fraction of the datasets of the db_id
+DEFAULT_MAX_DELETE_FRACTION = 0.1
+
+
+def get_max_delete_fraction(args):
+  if Constant.DICT_DATASET_MAX_DELETE_FRACTION_KEY in args:
+    return float(args[Constant.DICT_DATASET_MAX_DELETE_FRACTION_KEY])
+  return DEFAULT_MAX_DELETE_FRACTION
+
+
+def is_delete_missing(args):
+  """
+  Marking the missing datasets as deleted is opt-in, and never done after an extract that reported errors
+  """
+  if Constant.DICT_DATASET_EXTRACT_ERRORS_KEY in args and args[Constant.DICT_DATASET_EXTRACT_ERRORS_KEY].lower() == 'true':
+    return False
+  if Constant.DICT_DATASET_DELETE_MISSING_KEY in args:
+    return args[Constant.DICT_DATASET_DELETE_MISSING_KEY].lower() == 'true'
+  return False
+
+
+def urn_path_sql(column):
+  """
+  SQL expression of the normalized path of an urn, what follows the first '://', see DatasetUrn.getPath
+  """
+  return "case when locate('://', {c}) > 0 then substring({c}, locate('://', {c}) + 3) else {c} end".format(c=column)
+
+
+def execute(conn, logger, cmd):
+  cursor = conn.cursor()
+  for state in cmd.split(";"):
+    if len(state.strip()) == 0:
+      continue
+    logger.debug(state)
+    cursor.execute(state)
+    conn.commit()
+  cursor.close()
+
+
+def fetch_one(conn, logger, query):
+  cursor = conn.cursor()
+  logger.debug(query)
+  cursor.execute(query)
+  row = cursor.fetchone()
+  cursor.close()
+  return [int(x or 0) for x in row]
+
+
+def merge_dict_dataset(conn, logger, db_id, delete_missing=False, analyze_threshold=DEFAULT_ANALYZE_THRESHOLD,
+                       max_delete_fraction=DEFAULT_MAX_DELETE_FRACTION):
+  """
+  Merge the staged datasets of one db_id into dict_dataset, touching only rows whose content hash changed.
+  stg_dict_dataset must be fully prepared (location_prefix, parent_name ...) before this is called.
+  :param delete_missing: mark the datasets of this db_id that are not staged anymore as deleted, only for full
+    extracts. Nothing is removed, their fields, owners, comments and the other rows keyed by their id are kept
+  :param analyze_threshold: analyze dict_dataset when inserted + updated + deleted exceeds this fraction of the table
+  :param max_delete_fraction: mark none as deleted when more than this fraction of the datasets of the db_id is missing
+  :return: dict of inserted, updated, unchanged, restored and deleted counts
+  """
+  # content_hash covers every column copied to dict_dataset, coalesce keeps the positions of null columns
+  hash_cmd = '''
+        update stg_dict_dataset
+        set content_hash = md5(concat_ws(char(31),
+          `name`, coalesce(`schema`, ''), coalesce(schema_type, ''), coalesce(fields, ''), coalesce(properties, ''),
+          coalesce(source, ''), coalesce(location_prefix, ''), coalesce(parent_name, ''), coalesce(storage_type, ''),
+          coalesce(ref_dataset_id, ''), coalesce(status_id, ''), coalesce(dataset_type, ''),
+          coalesce(hive_serdes_class, ''), coalesce(is_partitioned, ''), coalesce(partition_layout_pattern_id, ''),
+          coalesce(sample_partition_full_path, ''), coalesce(source_created_time, ''),
+          coalesce(source_modified_time, '')))
+        where db_id = {db_id};
+        '''.format(db_id=db_id)
+  execute(conn, logger, hash_cmd)
+
+  inserted, updated, unchanged, restored = fetch_one(conn, logger, '''
+        select
+          sum(case when d.id is null then 1 else 0 end),
+          sum(case when d.id is not null and not (d.content_hash <=> s.content_hash) then 1 else 0 end),
+          sum(case when d.content_hash <=> s.content_hash then 1 else 0 end),
+          sum(case when d.is_deleted = 'Y' then 1 else 0 end)
+        from stg_dict_dataset s left join dict_dataset d
+          on s.urn = d.urn
+        where s.db_id = {db_id}
+        '''.format(db_id=db_id))
+
+  deleted = 0
+  # an empty staging table means a failed extract, never take it as "every dataset disappeared"
+  if delete_missing and inserted + updated + unchanged > 0:
+    missing, active = fetch_one(conn, logger, '''
+        select sum(case when s.urn is null then 1 else 0 end), count(*)
+        from dict_dataset d left join stg_dict_dataset s
+          on s.db_id = {db_id} and s.urn = d.urn
+        where d.db_id = {db_id} and coalesce(d.is_deleted, 'N') = 'N'
+        '''.format(db_id=db_id))
+    if missing > active * max_delete_fraction:
+      # more likely a partial crawl than that many datasets removed at once
+      logger.warn("dict_dataset merge for db_id {}: {} of {} datasets are missing, more than {}, none marked as deleted"
+                  .format(db_id, missing, active, max_delete_fraction))
+    else:
+      deleted = missing
+
+  merge_cmd = '''
+        -- rewrite the large text columns only for the datasets that really changed
+        update dict_dataset d join stg_dict_dataset s
+          on s.urn = d.urn
+        set d.name=s.name, d.schema=s.schema, d.schema_type=s.schema_type, d.fields=s.fields,
+          d.properties=s.properties, d.source=s.source, d.location_prefix=s.location_prefix, d.parent_name=s.parent_name,
+          d.storage_type=s.storage_type, d.ref_dataset_id=s.ref_dataset_id, d.status_id=s.status_id,
+          d.dataset_type=s.dataset_type, d.hive_serdes_class=s.hive_serdes_class, d.is_partitioned=s.is_partitioned,
+          d.partition_layout_pattern_id=s.partition_layout_pattern_id, d.sample_partition_full_path=s.sample_partition_full_path,
+          d.source_created_time=s.source_created_time, d.source_modified_time=s.source_modified_time,
+          d.db_id=s.db_id, d.content_hash=s.content_hash,
+          d.modified_time=UNIX_TIMESTAMP(now()), d.wh_etl_exec_id=s.wh_etl_exec_id
+        where s.db_id = {db_id}
+          and not (d.content_hash <=> s.content_hash)
+        ;
+
+        -- datasets marked as deleted that are back
+        update dict_dataset d join stg_dict_dataset s
+          on s.urn = d.urn
+        set d.is_deleted = 'N', d.modified_time=UNIX_TIMESTAMP(now()), d.wh_etl_exec_id=s.wh_etl_exec_id
+        where s.db_id = {db_id} and d.is_deleted = 'Y'
+        ;
+
+        -- datasets loaded before db_id was recorded
+        update dict_dataset d join stg_dict_dataset s
+          on s.urn = d.urn
+        set d.db_id = s.db_id
+        where s.db_id = {db_id} and d.db_id is null
+        ;
+
+        -- datasets loaded before urn_path was recorded, same expression as DatasetUrn.normalizedPath
+        update dict_dataset d
+        set d.urn_path = {urn_path}
+        where d.db_id = {db_id} and d.urn_path is null
+        ;
+
+        INSERT INTO dict_dataset
+        ( `name`,
+          `schema`,
+          schema_type,
+          fields,
+          properties,
+          urn,
+          source,
+          location_prefix,
+          parent_name,
+          storage_type,
+          ref_dataset_id,
+          status_id,
+          dataset_type,
+          hive_serdes_class,
+          is_partitioned,
+          partition_layout_pattern_id,
+          sample_partition_full_path,
+          source_created_time,
+          source_modified_time,
+          db_id,
+          content_hash,
+          created_time,
+          wh_etl_exec_id,
+          urn_path
+        )
+        select s.name, s.schema, s.schema_type, s.fields,
+          s.properties, s.urn,
+          s.source, s.location_prefix, s.parent_name,
+          s.storage_type, s.ref_dataset_id, s.status_id,
+          s.dataset_type, s.hive_serdes_class, s.is_partitioned,
+          s.partition_layout_pattern_id, s.sample_partition_full_path,
+          s.source_created_time, s.source_modified_time,
+          s.db_id, s.content_hash, UNIX_TIMESTAMP(now()),
+          s.wh_etl_exec_id, {new_urn_path}
+        from stg_dict_dataset s left join dict_dataset d
+          on s.urn = d.urn
+        where s.db_id = {db_id} and d.id is null
+        ;
+        '''.format(db_id=db_id, urn_path=urn_path_sql('d.urn'), new_urn_path=urn_path_sql('s.urn'))
+  execute(conn, logger, merge_cmd)
+
+  if deleted > 0:
+    mark_missing_datasets_deleted(conn, logger, db_id)
+
+  counts = {'inserted': inserted, 'updated': updated, 'unchanged': unchanged, 'restored': restored,
+            'deleted': deleted}
+  logger.info("dict_dataset merge for db_id {}: {} inserted, {} updated, {} unchanged, {} restored, {} deleted".format(
+    db_id, inserted, updated, unchanged, restored, deleted))
+
+  changed = inserted + updated + deleted
+  total = fetch_one(conn, logger, 'select count(*) from dict_dataset')[0]
+  if changed > 0 and changed > total * analyze_threshold:
+    execute(conn, logger, 'analyze table dict_dataset')
+
+  return counts
+
+
+def mark_missing_datasets_deleted(conn, logger, db_id):
+  """
+  Mark the datasets of the db_id that are not staged anymore as deleted. The rows keyed by their id, comments,
+  owners, favorites and the others users entered, are kept and show again if the dataset comes back.
+  """
+  execute(conn, logger, '''
+        update dict_dataset d
+          left join stg_dict_dataset s on s.db_id = {db_id} and s.urn = d.urn
+        set d.is_deleted = 'Y', d.modified_time = UNIX_TIMESTAMP(now())
+        where d.db_id = {db_id} and s.urn is null and coalesce(d.is_deleted, 'N') = 'N'
+        '''.format(db_id=db_id))
@@ -15,6 +15,7 @@
 import sys
 from com.ziclix.python.sql import zxJDBC
 from wherehows.common import Constant
+from wherehows.common import DatasetUrn
 import json
 import shutil
 
@@ -28,13 +29,17 @@ class DatasetTreeBuilder:
     conn_mysql = zxJDBC.connect(jdbc_url, username, password, jdbc_driver)
     cur = conn_mysql.cursor()
     try:
-      query = "select distinct id, concat(SUBSTRING_INDEX(urn, ':///', 1), '/', SUBSTRING_INDEX(urn, ':///', -1)) p from dict_dataset order by urn"
+      query = "select distinct id, urn from dict_dataset where urn is not null order by urn"
       cur.execute(query)
       datasets = cur.fetchall()
       self.dataset_dict = dict()
       for dataset in datasets:
         current = self.dataset_dict
-        path_arr = dataset[1].split('/')
+        urn = DatasetUrn.parse(dataset[1])
+        # storage type followed by the path, e.g. hdfs, data, tracking, PageViewEvent
+        path_arr = urn.getPath().lstrip('/').split('/')
+        if urn.getStorageType():
+          path_arr.insert(0, urn.getStorageType())
         for name in path_arr:
           current = current.setdefault(name, {})
         current["__ID_OF_DATASET__"] = dataset[0]
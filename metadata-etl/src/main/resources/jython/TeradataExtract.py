@@ -16,8 +16,6 @@ from com.ziclix.python.sql import zxJDBC
 import sys, os, re, json
 import datetime
 import commands
-from wherehows.common.schemas import SampleDataRecord
-from wherehows.common.writers import FileWriter
 from wherehows.common import Constant
 from org.slf4j import LoggerFactory
 
@@ -416,57 +414,9 @@ class TeradataExtract:
     self.logger.info("%s %6d tables with %6d columns processed for %12s" % (
       datetime.datetime.now(), table_idx + 1, len(rows), row[0]))
 
-  def get_sample_data(self, database_name, table_name):
+  def run(self, database_name, table_name, schema_output_file):
     """
-    find the reference dataset (if it has), select top 10 from teradata
-    :return: (reference_urn, json of sample data)
-    """
-    fullname = ''
-    columns = []
-    rows_data = []
-    # doesn't have permission for these databases, fetch sample from DWH_STG's correspond tables
-    if database_name in ['DWH_DIM', 'DWH_FACT', 'DWH_TRK', 'DWH_AGG', 'DWH_CPY', 'DWH_MSTR', 'DWH_SEC']:
-      fullname = 'DWH_STG."' + table_name + '"'
-    else:
-      fullname = database_name + '."' + table_name + '"'
-
-    sql = 'LOCK ROW FOR ACCESS SELECT top 10 * FROM ' + fullname
-    curs_td = self.conn_td.cursor()
-    rows = []
-    try:
-      curs_td.execute(sql)
-      rows = curs_td.fetchall()
-      for i, value in enumerate(rows[0]):
-        columns.append(curs_td.description[i][0])
-      for r in rows:
-        row_data = []
-        # encode each field to a new value
-        for i, value in enumerate(r):
-          new_value = unicode(value, errors='ignore')
-          if isinstance(value, bytearray):
-            new_value = ''.join(format(x, '02x') for x in value)
-          elif value is None:
-            new_value = ''
-          row_data.append(new_value)
-        rows_data.append(row_data)
-    except Exception, e:
-      self.logger.error('sql : ' + sql)
-      if len(rows) == 0:
-        self.logger.error("dataset {0} is empty".format(fullname))
-      else:
-        self.logger.error("dataset {0} is not accessible.".format(fullname))
-        self.logger.error('result : ' + str(rows))
-        self.logger.error(e)
-      pass
-
-    ref_urn = 'teradata:///' + fullname.replace('.', '/').replace('"', '')
-    data_with_column = map(lambda x:dict(zip(columns, x)), rows_data)
-    return ref_urn, json.dumps({'sample': data_with_column})
-
-  def run(self, database_name, table_name, schema_output_file, sample_output_file):
-    """
-    The entrance of the class, extract schema and sample data
-    Notice the database need to have a order that the databases have more info (DWH_STG) should be scaned first.
+    The entrance of the class, extract schema. Sample data is collected afterwards by TeradataSampleCollector
     :param database_name:
     :param table_name:
     :param schema_output_file:
@@ -480,10 +430,6 @@ class TeradataExtract:
     schema_json = open(schema_output_file, 'wb')
     os.chmod(schema_output_file, 0666)
 
-    open(sample_output_file, 'wb')
-    os.chmod(sample_output_file, 0666)
-    sample_file_writer = FileWriter(sample_output_file)
-
     if database_name is None and table_name is None:  # default route: process everything
       for database_name in self.databases:
         self.logger.info("Collecting tables in database : " + database_name)
@@ -505,27 +451,6 @@ class TeradataExtract:
         end = datetime.datetime.now().strftime("%H:%M:%S")
         f_log.write("Get view  info %12s [%s -> %s]\n" % (database_name, str(begin), str(end)))
 
-      scaned_dict = {}  # a cache of {name : {urn : _, data : _}} to avoid repeat computing
-      # collect sample data
-      for onedatabase in schema:
-        database_name = onedatabase['database']
-        if 'tables' in onedatabase:
-          alltables = onedatabase['tables']
-        else:
-          alltables = onedatabase['views']
-
-        for onetable in alltables:
-          table_name = onetable['original_name'].split('.')[1]
-          if table_name in scaned_dict:
-            sample_record = SampleDataRecord('teradata', '/' + database_name + '/' + table_name,
-                                             scaned_dict[table_name]['ref_urn'], scaned_dict[table_name]['data'])
-          else:
-            (ref_urn, sample_data) = self.get_sample_data(database_name, table_name)
-            sample_record = SampleDataRecord('teradata', '/' + database_name + '/' + table_name, '', sample_data)
-            scaned_dict[table_name] = {'ref_urn': ref_urn, 'data': sample_data}
-          sample_file_writer.append(sample_record)
-      sample_file_writer.close()
-
     # print 'byte size of schema : ' + str(sys.getsizeof(schema))
     schema_json.write(json.dumps(schema, indent=None) + '\n')
     cur.close()
@@ -554,7 +479,7 @@ if __name__ == "__main__":
     index_type = {'P': 'Primary Index', 'K': 'Primary Key', 'S': 'Secondary Index', 'Q': 'Partitioned Primary Index',
                   'J': 'Join Index', 'U': 'Unique Index'}
 
-    e.run(None, None, args[Constant.TD_SCHEMA_OUTPUT_KEY], args[Constant.TD_SAMPLE_OUTPUT_KEY])
+    e.run(None, None, args[Constant.TD_SCHEMA_OUTPUT_KEY])
   finally:
     e.conn_td.close()
 
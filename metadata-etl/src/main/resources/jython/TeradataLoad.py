@@ -15,6 +15,7 @@
 import sys
 from com.ziclix.python.sql import zxJDBC
 from wherehows.common import Constant
+import DatasetLoad
 from org.slf4j import LoggerFactory
 
 
@@ -54,50 +55,6 @@ class TeradataLoad:
         set parent_name = substring_index(substring_index(urn, '/', 4), '/', -1) /* teradata parent_name is it's schema name*/
         where db_id = {db_id} and parent_name is null;
 
-        -- insert into final table
-        INSERT INTO dict_dataset
-        ( `name`,
-          `schema`,
-          schema_type,
-          fields,
-          properties,
-          urn,
-          source,
-          location_prefix,
-          parent_name,
-          storage_type,
-          ref_dataset_id,
-          status_id,
-          dataset_type,
-          hive_serdes_class,
-          is_partitioned,
-          partition_layout_pattern_id,
-          sample_partition_full_path,
-          source_created_time,
-          source_modified_time,
-          created_time,
-          wh_etl_exec_id
-        )
-        select s.name, s.schema, s.schema_type, s.fields,
-          s.properties, s.urn,
-          s.source, s.location_prefix, s.parent_name,
-          s.storage_type, s.ref_dataset_id, s.status_id,
-          s.dataset_type, s.hive_serdes_class, s.is_partitioned,
-          s.partition_layout_pattern_id, s.sample_partition_full_path,
-          s.source_created_time, s.source_modified_time, UNIX_TIMESTAMP(now()),
-          s.wh_etl_exec_id
-        from stg_dict_dataset s
-        where s.db_id = {db_id}
-        on duplicate key update
-          `name`=s.name, `schema`=s.schema, schema_type=s.schema_type, fields=s.fields,
-          properties=s.properties, source=s.source, location_prefix=s.location_prefix, parent_name=s.parent_name,
-            storage_type=s.storage_type, ref_dataset_id=s.ref_dataset_id, status_id=s.status_id,
-                     dataset_type=s.dataset_type, hive_serdes_class=s.hive_serdes_class, is_partitioned=s.is_partitioned,
-          partition_layout_pattern_id=s.partition_layout_pattern_id, sample_partition_full_path=s.sample_partition_full_path,
-          source_created_time=s.source_created_time, source_modified_time=s.source_modified_time,
-            modified_time=UNIX_TIMESTAMP(now()), wh_etl_exec_id=s.wh_etl_exec_id
-        ;
-        analyze table dict_dataset;
         '''.format(source_file=self.input_file, db_id=self.db_id, wh_etl_exec_id=self.wh_etl_exec_id)
 
     for state in load_cmd.split(";"):
@@ -106,6 +63,9 @@ class TeradataLoad:
       self.conn_mysql.commit()
     cursor.close()
 
+    DatasetLoad.merge_dict_dataset(self.conn_mysql, self.logger, self.db_id, self.delete_missing, self.analyze_threshold,
+                                   self.max_delete_fraction)
+
   def load_field(self):
     cursor = self.conn_mysql.cursor()
     load_cmd = '''
@@ -290,6 +250,9 @@ if __name__ == "__main__":
   l.input_sampledata_file = args[Constant.TD_SAMPLE_OUTPUT_KEY]
   l.db_id = args[Constant.DB_ID_KEY]
   l.wh_etl_exec_id = args[Constant.WH_EXEC_ID_KEY]
+  l.delete_missing = DatasetLoad.is_delete_missing(args)
+  l.analyze_threshold = DatasetLoad.get_analyze_threshold(args)
+  l.max_delete_fraction = DatasetLoad.get_max_delete_fraction(args)
   l.conn_mysql = zxJDBC.connect(JDBC_URL, username, password, JDBC_DRIVER)
   try:
     l.load_metadata()
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.dataset;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+import wherehows.common.utils.SchemaFields;
+
+
+/**
+ * Analyzes schema versions stored in an in-memory H2 database.
+ */
+public class SchemaHistoryAnalyzerTest {
+  private static final String JDBC_URL = "jdbc:h2:mem:schema_history;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+  private static final String V1 = "{\"name\": \"member\", \"fields\": [{\"name\": \"id\", \"type\": \"int\"}, "
+    + "{\"name\": \"address\", \"type\": {\"type\": \"record\", \"fields\": [{\"name\": \"city\", \"type\": \"string\"}]}}]}";
+  private static final String V2 = "{\"name\": \"member\", \"fields\": [{\"name\": \"id\", \"type\": \"long\"}, "
+    + "{\"name\": \"address\", \"type\": {\"type\": \"record\", \"fields\": [{\"name\": \"city\", \"type\": \"string\"}, "
+    + "{\"name\": \"zip\", \"type\": \"string\"}]}}]}";
+
+  Connection conn;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection(JDBC_URL, "sa", "");
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE dict_dataset_schema_history (id INT AUTO_INCREMENT PRIMARY KEY, dataset_id INT, "
+        + "urn VARCHAR(128) NOT NULL, modified_date DATE, `schema` CLOB, schema_hash CHAR(40), field_count INT, "
+        + "fields_added INT, fields_removed INT, fields_changed INT, fields CLOB, field_diff CLOB)");
+    }
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws Exception {
+    conn.close();
+  }
+
+  private void insert(String urn, String date, String schema)
+    throws Exception {
+    try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO dict_dataset_schema_history "
+      + "(dataset_id, urn, modified_date, `schema`) VALUES (1, ?, ?, ?)")) {
+      stmt.setString(1, urn);
+      stmt.setDate(2, java.sql.Date.valueOf(date));
+      stmt.setString(3, schema);
+      stmt.executeUpdate();
+    }
+  }
+
+  /**
+   * @return field_count/fields_added/fields_removed/fields_changed of the version
+   */
+  private String counts(String urn, String date)
+    throws Exception {
+    try (PreparedStatement stmt = conn.prepareStatement("SELECT field_count, fields_added, fields_removed, "
+      + "fields_changed FROM dict_dataset_schema_history WHERE urn = ? AND modified_date = ?")) {
+      stmt.setString(1, urn);
+      stmt.setDate(2, java.sql.Date.valueOf(date));
+      try (ResultSet rs = stmt.executeQuery()) {
+        Assert.assertTrue(rs.next());
+        return rs.getString(1) + "/" + rs.getString(2) + "/" + rs.getString(3) + "/" + rs.getString(4);
+      }
+    }
+  }
+
+  private SchemaHistoryAnalyzer analyzer()
+    throws Exception {
+    Properties prop = new Properties();
+    prop.setProperty(Constant.WH_DB_DRIVER_KEY, "org.h2.Driver");
+    prop.setProperty(Constant.WH_DB_URL_KEY, JDBC_URL);
+    prop.setProperty(Constant.WH_DB_USERNAME_KEY, "sa");
+    prop.setProperty(Constant.WH_DB_PASSWORD_KEY, "");
+    return new SchemaHistoryAnalyzer(prop);
+  }
+
+  @Test
+  public void testFlatten()
+    throws Exception {
+    Map<String, String> v1 = SchemaHistoryAnalyzer.flatten(new ObjectMapper().readTree(V1));
+    Assert.assertEquals(v1.keySet().toString(), "[address, address.city, id]");
+    Map<String, String> v2 = SchemaHistoryAnalyzer.flatten(new ObjectMapper().readTree(V2));
+
+    // the new nested field does not change its record
+    SchemaFields.Diff diff = SchemaFields.diff(v1, v2);
+    Assert.assertEquals(diff.added.toString(), "[address.zip]");
+    Assert.assertEquals(diff.changed.toString(), "[id]");
+
+    // fields of a schema wrapped in an array, without names
+    Map<String, String> wrapped = SchemaHistoryAnalyzer.flatten(new ObjectMapper().readTree(
+      "{\"schema\": [{\"fields\": [\"a\", {\"type\": \"int\"}]}]}"));
+    Assert.assertEquals(wrapped.keySet().toString(), "[[1], a]");
+  }
+
+  @Test
+  public void testRun()
+    throws Exception {
+    insert("hdfs:///data/member", "2015-11-01", V1);
+    insert("hdfs:///data/member", "2015-11-02", V2);
+    insert("hdfs:///data/member", "2015-11-03", V1);
+    insert("hdfs:///data/broken", "2015-11-01", "{not json");
+
+    SchemaHistoryAnalyzer analyzer = analyzer();
+    Assert.assertEquals(analyzer.run(), 4);
+    // the third version has the schema of the first one
+    Assert.assertEquals(analyzer.getParsed(), 3);
+    Assert.assertEquals(analyzer.getReused(), 1);
+    Assert.assertEquals(counts("hdfs:///data/member", "2015-11-01"), "3/3/0/0");
+    Assert.assertEquals(counts("hdfs:///data/member", "2015-11-02"), "4/1/0/1");
+    Assert.assertEquals(counts("hdfs:///data/member", "2015-11-03"), "3/0/1/1");
+    Assert.assertEquals(counts("hdfs:///data/broken", "2015-11-01"), "0/0/0/0");
+
+    // nothing left, then an older version arrives and the diff of the next one follows
+    Assert.assertEquals(analyzer().run(), 0);
+    insert("hdfs:///data/member", "2015-10-31", "{\"fields\": [{\"name\": \"id\", \"type\": \"int\"}]}");
+    Assert.assertEquals(analyzer().run(), 1);
+    Assert.assertEquals(counts("hdfs:///data/member", "2015-10-31"), "1/1/0/0");
+    Assert.assertEquals(counts("hdfs:///data/member", "2015-11-01"), "3/2/0/0");
+  }
+}
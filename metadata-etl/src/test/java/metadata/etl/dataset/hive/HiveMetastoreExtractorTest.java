@@ -0,0 +1,168 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.dataset.hive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+
+
+/**
+ * Runs the extractor against an in-memory H2 database holding the metastore tables it reads.
+ */
+public class HiveMetastoreExtractorTest {
+  private static final String JDBC_URL = "jdbc:h2:mem:hive_metastore;DB_CLOSE_DELAY=-1";
+
+  Connection conn;
+  File output;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection(JDBC_URL, "sa", "");
+    String[] ddl = {
+      "CREATE TABLE DBS (DB_ID BIGINT PRIMARY KEY, NAME VARCHAR(128))",
+      "CREATE TABLE SDS (SD_ID BIGINT PRIMARY KEY, CD_ID BIGINT, LOCATION VARCHAR(4000), INPUT_FORMAT VARCHAR(4000), "
+        + "OUTPUT_FORMAT VARCHAR(4000), IS_COMPRESSED BIT, IS_STOREDASSUBDIRECTORIES BIT)",
+      "CREATE TABLE TBLS (TBL_ID BIGINT PRIMARY KEY, DB_ID BIGINT, SD_ID BIGINT, TBL_NAME VARCHAR(128), "
+        + "CREATE_TIME INT, TBL_TYPE VARCHAR(128), VIEW_EXPANDED_TEXT CLOB)",
+      "CREATE TABLE COLUMNS_V2 (CD_ID BIGINT, COMMENT VARCHAR(256), COLUMN_NAME VARCHAR(128), TYPE_NAME VARCHAR(4000), "
+        + "INTEGER_IDX INT)",
+      "CREATE TABLE SERDE_PARAMS (SERDE_ID BIGINT, PARAM_KEY VARCHAR(256), PARAM_VALUE CLOB)",
+
+      "INSERT INTO DBS VALUES (1, 'tracking'), (2, 'u_temp'), (3, 'u_kept'), (4, 'empty')",
+      "INSERT INTO SDS VALUES "
+        + "(11, 101, 'hdfs://nn:9000/data/tracking/page_view', 'org.apache.hadoop.hive.ql.io.avro.AvroContainerInputFormat', "
+        + "'org.apache.hadoop.hive.ql.io.avro.AvroContainerOutputFormat', 0, 0), "
+        + "(12, 102, 'hdfs://nn:9000/data/tracking/member', 'org.apache.hadoop.mapred.TextInputFormat', "
+        + "'org.apache.hadoop.hive.ql.io.HiveIgnoreKeyTextOutputFormat', 0, 0), "
+        + "(21, 201, 'hdfs://nn:9000/user/temp/t1', 'org.apache.hadoop.hive.ql.io.orc.OrcInputFormat', null, 0, 0), "
+        + "(31, 301, 'hdfs://nn:9000/user/kept/t1', 'org.apache.hadoop.hive.ql.io.orc.OrcInputFormat', null, 1, 0)",
+      "INSERT INTO TBLS VALUES (111, 1, 11, 'page_view', 1447000000, 'EXTERNAL_TABLE', null), "
+        + "(112, 1, 12, 'member', 1447000001, 'MANAGED_TABLE', null), "
+        + "(211, 2, 21, 't1', 1447000002, 'MANAGED_TABLE', null), "
+        + "(311, 3, 31, 't1', 1447000003, 'MANAGED_TABLE', null)",
+      "INSERT INTO COLUMNS_V2 VALUES (101, 'from deserializer', 'id', 'int', 0), "
+        + "(102, null, 'name', 'string', 1), (102, 'member id', 'id', 'bigint', 0), "
+        + "(201, null, 'c', 'string', 0), (301, null, 'c', 'string', 0)",
+      "INSERT INTO SERDE_PARAMS VALUES "
+        + "(11, 'avro.schema.literal', '{\"type\":\"record\",\"name\":\"page_view\",\n\"fields\":[{\"name\":\"id\",\"type\":\"int\"}]}'), "
+        + "(11, 'avro.schema.url', 'hdfs://nn:9000/schemas/page_view.avsc'), "
+        + "(12, 'serialization.format', '1')"};
+    try (Statement stmt = conn.createStatement()) {
+      for (String sql : ddl) {
+        stmt.execute(sql);
+      }
+    }
+    output = File.createTempFile("hive_schema", ".json");
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws Exception {
+    conn.close();
+    output.delete();
+  }
+
+  private Properties properties() {
+    Properties prop = new Properties();
+    prop.setProperty(Constant.HIVE_METASTORE_JDBC_DRIVER, "org.h2.Driver");
+    prop.setProperty(Constant.HIVE_METASTORE_JDBC_URL, JDBC_URL);
+    prop.setProperty(Constant.HIVE_METASTORE_USERNAME, "sa");
+    prop.setProperty(Constant.HIVE_METASTORE_PASSWORD, "");
+    prop.setProperty(Constant.HIVE_DATABASE_WHITELIST_KEY, "u_kept");
+    prop.setProperty(Constant.HIVE_METASTORE_MAX_CONNECTIONS_KEY, "2");
+    prop.setProperty(Constant.HIVE_METASTORE_FETCH_SIZE_KEY, "2");
+    return prop;
+  }
+
+  @Test
+  public void testExtract()
+    throws Exception {
+    HiveMetastoreExtractor extractor = new HiveMetastoreExtractor(properties());
+    Assert.assertEquals(extractor.run(output), 3);
+
+    JsonNode all = new ObjectMapper().readTree(output);
+    Assert.assertTrue(all.isArray());
+    Map<String, JsonNode> databases = new HashMap<>();
+    for (JsonNode db : all) {
+      Assert.assertEquals(db.get("type").asText(), "Hive");
+      databases.put(db.get("database").asText(), db);
+    }
+    // u_temp is filtered out, empty has no table
+    Assert.assertEquals(databases.keySet().size(), 2, databases.keySet().toString());
+
+    Map<String, JsonNode> tables = new HashMap<>();
+    for (JsonNode table : databases.get("tracking").get("tables")) {
+      tables.put(table.get("name").asText(), table);
+    }
+    Assert.assertEquals(tables.size(), 2);
+
+    JsonNode pageView = tables.get("page_view");
+    Assert.assertEquals(pageView.get("etl_source").asText(), "SERDE_PARAMS");
+    Assert.assertEquals(pageView.get("serialization_format").asText(), "Avro");
+    Assert.assertEquals(pageView.get("location").asText(), "/data/tracking/page_view");
+    Assert.assertEquals(pageView.get("TBL_ID").asLong(), 111L);
+    Assert.assertEquals(pageView.get("create_time").asLong(), 1447000000L);
+    Assert.assertFalse(pageView.get("schema_literal").asText().contains("\n"));
+    Assert.assertEquals(new ObjectMapper().readTree(pageView.get("schema_literal").asText()).get("name").asText(),
+      "page_view");
+    // urls do not pass the value filter of the original query
+    Assert.assertTrue(pageView.get("schema_url").isNull());
+    Assert.assertFalse(pageView.has("field_list"));
+
+    JsonNode member = tables.get("member");
+    Assert.assertEquals(member.get("etl_source").asText(), "COLUMN_V2");
+    Assert.assertEquals(member.get("serialization_format").asText(), "Text");
+    JsonNode fields = member.get("field_list");
+    Assert.assertEquals(fields.size(), 2);
+    Assert.assertEquals(fields.get(0).get("ColumnName").asText(), "id");
+    Assert.assertEquals(fields.get(0).get("Comment").asText(), "member id");
+    Assert.assertEquals(fields.get(1).get("ColumnName").asText(), "name");
+    Assert.assertTrue(fields.get(1).get("Comment").isNull());
+
+    JsonNode kept = databases.get("u_kept").get("tables").get(0);
+    Assert.assertEquals(kept.get("serialization_format").asText(), "ORC");
+    Assert.assertTrue(kept.get("is_compressed").asBoolean());
+  }
+
+  @Test
+  public void testLocationPath() {
+    Assert.assertEquals(HiveMetastoreExtractor.locationPath("hdfs://nn:9000/data/x"), "/data/x");
+    Assert.assertEquals(HiveMetastoreExtractor.locationPath("hdfs://nn:9000"), "");
+    Assert.assertNull(HiveMetastoreExtractor.locationPath(null));
+  }
+
+  @Test
+  public void testSerializationFormat() {
+    Assert.assertEquals(HiveMetastoreExtractor.serializationFormat("org.apache.hadoop.hive.ql.io.RCFileInputFormat"),
+      "RC");
+    Assert.assertEquals(HiveMetastoreExtractor.serializationFormat(
+      "org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat"), "Parquet");
+    Assert.assertEquals(HiveMetastoreExtractor.serializationFormat("com.example.CustomInputFormat"),
+      "com.example.CustomInputFormat");
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.dataset.teradata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+
+
+public class TeradataSampleCollectorTest {
+  private static final String SCHEMA = "["
+    + "{\"database\": \"DWH_STG\", \"type\": \"Teradata\", \"tables\": ["
+    + "{\"name\": \"member\", \"original_name\": \"DWH_STG.member\", \"lastAlterTime\": \"2015-11-01\", \"sizeInMbytes\": 10},"
+    + "{\"name\": \"company\", \"original_name\": \"DWH_STG.company\", \"lastAlterTime\": \"2015-11-02\", \"sizeInMbytes\": 20}]},"
+    + "{\"database\": \"DWH_DIM\", \"type\": \"Teradata\", \"tables\": ["
+    + "{\"name\": \"member\", \"original_name\": \"DWH_DIM.member\", \"lastAlterTime\": \"2015-11-01\", \"sizeInMbytes\": 10}]},"
+    + "{\"database\": \"DWH_DIM\", \"type\": \"Teradata\", \"views\": ["
+    + "{\"name\": \"v_member\", \"original_name\": \"DWH_DIM.v_member\", \"lastAlterTime\": \"2015-11-03\"}]}"
+    + "]";
+
+  private static File write(String prefix, String content)
+    throws IOException {
+    File f = File.createTempFile(prefix, ".tmp");
+    f.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return f;
+  }
+
+  @Test
+  public void testReadTasks()
+    throws Exception {
+    File schema = write("td_schema", SCHEMA);
+    TeradataSampleCollector collector = new TeradataSampleCollector(new Properties());
+    Map<String, TeradataSampleCollector.SampleTask> tasks = collector.readTasks(schema);
+
+    // DWH_DIM.member reads its sample from DWH_STG.member, so both share one query
+    Assert.assertEquals(tasks.size(), 3, tasks.keySet().toString());
+    TeradataSampleCollector.SampleTask member = tasks.get("DWH_STG.member");
+    Assert.assertEquals(member.targets.size(), 2);
+    Assert.assertEquals(member.refUrn(), "teradata:///DWH_STG/member");
+    Assert.assertEquals(tasks.get("DWH_STG.v_member").targets.get(0)[0], "DWH_DIM");
+  }
+
+  @Test
+  public void testSkipUnchanged()
+    throws Exception {
+    File schema = write("td_schema", SCHEMA);
+    // company grew since the last run, member did not change
+    File checkpoint = write("td_checkpoint", "DWH_STG.member\t2015-11-01|10\nDWH_STG.company\t2015-11-02|15\n");
+    Properties prop = new Properties();
+    prop.setProperty(Constant.TD_SAMPLE_CHECKPOINT_KEY, checkpoint.getPath());
+    TeradataSampleCollector collector = new TeradataSampleCollector(prop);
+    collector.loadCheckpoint();
+
+    Map<String, TeradataSampleCollector.SampleTask> tasks = collector.readTasks(schema);
+    Assert.assertEquals(collector.getSkipped(), 1);
+    Assert.assertTrue(tasks.containsKey("DWH_STG.company"));
+    // DWH_DIM.member has no previous stats of its own
+    Assert.assertEquals(tasks.get("DWH_STG.member").targets.size(), 1);
+    Assert.assertEquals(tasks.get("DWH_STG.member").targets.get(0)[0], "DWH_DIM");
+  }
+
+  @Test
+  public void testToText() {
+    Assert.assertEquals(TeradataSampleCollector.toText(null), "");
+    Assert.assertEquals(TeradataSampleCollector.toText(new byte[]{0x0a, (byte) 0xff}), "0aff");
+    Assert.assertEquals(TeradataSampleCollector.toText(12), "12");
+  }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.ldap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+
+
+/**
+ * Runs the extractor against an embedded in-memory ldap server, with pages smaller than the searches.
+ */
+public class LdapExtractorTest {
+  private static final String BASE = "dc=example,dc=com";
+  private static final String SEPR = "\u001a";
+
+  InMemoryDirectoryServer server;
+  File folder;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+    // the attributes of the test entries are not in the standard schema
+    config.setSchema(null);
+    server = new InMemoryDirectoryServer(config);
+    server.add("dn: " + BASE, "objectClass: domain", "dc: example");
+    server.add("dn: ou=people," + BASE, "objectClass: organizationalUnit", "ou: people");
+    server.add("dn: ou=disabled," + BASE, "objectClass: organizationalUnit", "ou: disabled");
+    server.add("dn: ou=groups," + BASE, "objectClass: organizationalUnit", "ou: groups");
+    for (int i = 1; i <= 5; i++) {
+      server.add("dn: uid=u" + i + ",ou=people," + BASE, "objectClass: person", "uid: u" + i, "cn: User " + i,
+        "mail: u" + i + "@example.com", "startDate: 2015");
+    }
+    server.add("dn: uid=old,ou=disabled," + BASE, "objectClass: person", "uid: old", "cn: Old User ");
+    server.add("dn: cn=g1,ou=groups," + BASE, "objectClass: posixGroup", "cn: g1", "memberUid: u1", "memberUid: g2");
+    server.add("dn: cn=g2,ou=groups," + BASE, "objectClass: posixGroup", "cn: g2", "memberUid: u2",
+      "memberUid: g3");
+    server.add("dn: cn=g3,ou=groups," + BASE, "objectClass: posixGroup", "cn: g3", "memberUid: u3",
+      "memberUid: g2", "memberUid: old");
+    server.add("dn: cn=users,ou=groups," + BASE, "objectClass: posixGroup", "cn: users", "memberUid: u1");
+    server.add("dn: cn=empty,ou=groups," + BASE, "objectClass: posixGroup", "cn: empty");
+    server.startListening();
+
+    folder = Files.createTempDirectory("ldap").toFile();
+  }
+
+  @AfterClass
+  public void tearDown() {
+    server.shutDown(true);
+  }
+
+  private Properties properties() {
+    String url = "ldap://localhost:" + server.getListenPort();
+    Properties prop = new Properties();
+    prop.setProperty(Constant.APP_ID_KEY, "300");
+    prop.setProperty(Constant.LDAP_GROUP_APP_ID_KEY, "301");
+    prop.setProperty(Constant.WH_EXEC_ID_KEY, "7");
+    prop.setProperty(Constant.WH_APP_FOLDER_KEY, folder.getPath());
+    prop.setProperty(Constant.LDAP_CONTEXT_FACTORY_KEY, "com.sun.jndi.ldap.LdapCtxFactory");
+    prop.setProperty(Constant.LDAP_CONTEXT_PROVIDER_URL_KEY, url);
+    prop.setProperty(Constant.LDAP_SEARCH_DOMAINS_KEY, "'ou=people," + BASE + "', 'ou=disabled," + BASE + "'");
+    prop.setProperty(Constant.LDAP_INACTIVE_DOMAIN_KEY, "ou=disabled," + BASE);
+    prop.setProperty(Constant.LDAP_SEARCH_RETURN_ATTRS_KEY, "'uid','dn','cn','displayName','title','employeeNumber',"
+      + "'manager','mail','departmentNumber','department','startDate','mobile'");
+    prop.setProperty(Constant.LDAP_GROUP_CONTEXT_FACTORY_KEY, "com.sun.jndi.ldap.LdapCtxFactory");
+    prop.setProperty(Constant.LDAP_GROUP_CONTEXT_PROVIDER_URL_KEY, url);
+    prop.setProperty(Constant.LDAP_GROUP_SEARCH_DOMAINS_KEY, "'ou=groups," + BASE + "'");
+    prop.setProperty(Constant.LDAP_GROUP_SEARCH_RETURN_ATTRS_KEY, "'cn', 'memberUid'");
+    prop.setProperty(Constant.LDAP_SEARCH_PAGE_SIZE_KEY, "2");
+    prop.setProperty(Constant.LDAP_GROUP_FLATTEN_THREADS_KEY, "2");
+    return prop;
+  }
+
+  private List<String> lines(String file)
+    throws Exception {
+    List<String> lines = new ArrayList<>(
+      Files.readAllLines(new File(folder, "300/" + file).toPath(), StandardCharsets.UTF_8));
+    Collections.sort(lines);
+    return lines;
+  }
+
+  @Test
+  public void testSplitProperty() {
+    Assert.assertEquals(LdapExtractor.splitProperty(" 'OU=a' , 'OU=b,OU=c'\n"), new String[]{"OU=a", "OU=b,OU=c"});
+    Assert.assertEquals(LdapExtractor.splitProperty("uid"), new String[]{"uid"});
+  }
+
+  @Test
+  public void testRun()
+    throws Exception {
+    new LdapExtractor(properties()).run();
+
+    List<String> users = lines("ldap_user_record.csv");
+    Assert.assertEquals(users.size(), 6);
+    Assert.assertEquals(users.get(0), "300" + SEPR + "N" + SEPR + "old" + SEPR + SEPR + "Old User" + SEPR + SEPR + SEPR
+      + SEPR + SEPR + SEPR + SEPR + SEPR + SEPR + SEPR + "7");
+    Assert.assertEquals(users.get(1), "300" + SEPR + "Y" + SEPR + "u1" + SEPR + SEPR + "User 1" + SEPR + SEPR + SEPR
+      + SEPR + SEPR + "u1@example.com" + SEPR + SEPR + SEPR + "20150101" + SEPR + SEPR + "7");
+
+    // users and groups without members are skipped
+    List<String> groups = lines("ldap_group_record.csv");
+    Assert.assertEquals(groups.size(), 7);
+    Assert.assertTrue(groups.contains("301" + SEPR + "g1" + SEPR + "1" + SEPR + "301" + SEPR + "g2" + SEPR + "7"));
+    Assert.assertTrue(groups.contains("301" + SEPR + "g3" + SEPR + "2" + SEPR + "300" + SEPR + "old" + SEPR + "7"));
+
+    List<String> flatten = lines("ldap_group_flatten_record.csv");
+    Assert.assertEquals(flatten.size(), 4 + 3 + 3);
+    Assert.assertTrue(flatten.contains("301" + SEPR + "g1" + SEPR + "3" + SEPR + "300" + SEPR + "old" + SEPR + "7"));
+    Assert.assertTrue(flatten.contains("301" + SEPR + "g3" + SEPR + "0" + SEPR + "300" + SEPR + "u2" + SEPR + "7"));
+  }
+}
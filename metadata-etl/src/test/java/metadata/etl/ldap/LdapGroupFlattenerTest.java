@@ -0,0 +1,97 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class LdapGroupFlattenerTest {
+
+  @Test
+  public void testFlattenCycles()
+    throws Exception {
+    Set<String> users = new HashSet<>(Arrays.asList("u1", "u2", "u3", "u4", "g6"));
+    Map<String, List<String>> groups = new LinkedHashMap<>();
+    groups.put("g1", Arrays.asList("u1", "g2", "u2"));
+    groups.put("g2", Arrays.asList("u2", "g3"));
+    groups.put("g3", Arrays.asList("u3", "g2", "g4"));
+    groups.put("g4", Arrays.asList("u4", "unknown"));
+    groups.put("g5", Arrays.asList("g5"));
+    // a group named like a user is taken as the user
+    groups.put("g6", Arrays.asList("u1"));
+    groups.put("g7", Arrays.asList("g6"));
+
+    LdapGroupFlattener flattener = new LdapGroupFlattener(groups, users);
+    // g2 and g3 contain each other
+    Assert.assertEquals(flattener.getComponentCount(), 5);
+    Assert.assertEquals(flattener.flatten("g1"), Arrays.asList("u1", "u2", "u3", "u4"));
+    Assert.assertEquals(flattener.flatten("g2"), Arrays.asList("u2", "u3", "u4"));
+    Assert.assertEquals(flattener.flatten("g3"), Arrays.asList("u2", "u3", "u4"));
+    Assert.assertTrue(flattener.flatten("g5").isEmpty());
+    Assert.assertEquals(flattener.flatten("g6"), Arrays.asList("g6"));
+    Assert.assertEquals(flattener.flatten("g7"), Arrays.asList("g6"));
+    Assert.assertTrue(flattener.flatten("unknown").isEmpty());
+  }
+
+  @Test
+  public void testFlattenDeepNestingInParallel()
+    throws Exception {
+    // g0 contains g1 ... which contains g4999, and g4999 contains g0 again
+    int depth = 5000;
+    Set<String> users = new HashSet<>();
+    Map<String, List<String>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < depth; i++) {
+      users.add("u" + i);
+      groups.put("g" + i, Arrays.asList("u" + i, "g" + ((i + 1) % depth)));
+    }
+    // top level groups each on their own chain below g0
+    for (int i = 0; i < 50; i++) {
+      groups.put("t" + i, Arrays.asList("g0", "t" + (i + 1)));
+    }
+
+    final LdapGroupFlattener flattener = new LdapGroupFlattener(groups, users);
+    Assert.assertEquals(flattener.getComponentCount(), 51);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<String>>> futures = new ArrayList<>();
+      for (final String group : groups.keySet()) {
+        futures.add(executor.submit(new Callable<List<String>>() {
+          @Override
+          public List<String> call()
+            throws Exception {
+            return flattener.flatten(group);
+          }
+        }));
+      }
+      for (Future<List<String>> f : futures) {
+        Assert.assertEquals(f.get().size(), depth);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ * Runs the loader against an in-memory H2 database, with batched inserts since H2 has no LOAD DATA.
+ */
+public class BulkLoaderTest {
+  private static final String JDBC_URL = "jdbc:h2:mem:bulk_loader;DB_CLOSE_DELAY=-1";
+
+  Connection conn;
+  File file;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection(JDBC_URL, "sa", "");
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE stg_item (app_id INT, name VARCHAR(100), size INT, wh_etl_exec_id BIGINT)");
+      stmt.execute("CREATE TABLE item (app_id INT, name VARCHAR(100) PRIMARY KEY, size INT, wh_etl_exec_id BIGINT)");
+      stmt.execute("CREATE TABLE stg_text (id INT, a VARCHAR(100), b VARCHAR(100))");
+    }
+    file = File.createTempFile("bulk_loader", ".csv");
+    file.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write("a\u001a1\nb\u001a2\nc\n".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws Exception {
+    conn.close();
+  }
+
+  @BeforeMethod
+  public void clear()
+    throws Exception {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("DELETE FROM stg_item");
+      stmt.execute("DELETE FROM item");
+      stmt.execute("DELETE FROM stg_text");
+      stmt.execute("INSERT INTO stg_item VALUES (1, 'old', 0, 0), (2, 'other', 0, 0)");
+    }
+  }
+
+  private LoadSpec spec() {
+    return new LoadSpec("item")
+      .mode(LoadSpec.Mode.BATCH_INSERT)
+      .stage("stg_item", file.getPath(), "name, size", "app_id = ?", 1)
+      .set("app_id", "1")
+      .set("wh_etl_exec_id", "42")
+      .transform("size", "UPDATE stg_item SET size = 0 WHERE app_id = ? AND size IS NULL", 1)
+      .merge("insert", "INSERT INTO item SELECT app_id, name, size, wh_etl_exec_id FROM stg_item WHERE app_id = ?", 1);
+  }
+
+  private int count(String sql)
+    throws Exception {
+    try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  @Test
+  public void testRun()
+    throws Exception {
+    BulkLoader loader = new BulkLoader(JDBC_URL, "sa", "", false);
+    loader.run(spec());
+
+    // the old rows of the app are cleared, the ones of other apps kept
+    Assert.assertEquals(count("SELECT COUNT(*) FROM stg_item WHERE app_id = 1"), 3);
+    Assert.assertEquals(count("SELECT COUNT(*) FROM stg_item WHERE app_id = 2"), 1);
+    Assert.assertEquals(count("SELECT COUNT(*) FROM item WHERE wh_etl_exec_id = 42"), 3);
+    Assert.assertEquals(count("SELECT size FROM item WHERE name = 'c'"), 0);
+    Assert.assertEquals(count("SELECT size FROM item WHERE name = 'b'"), 2);
+
+    Map<String, long[]> timings = loader.getTimings();
+    Assert.assertEquals(timings.get("item.load")[1], 3L);
+    Assert.assertEquals(timings.get("item.insert")[1], 3L);
+  }
+
+  @Test
+  public void testStageThenMerge()
+    throws Exception {
+    BulkLoader loader = new BulkLoader(JDBC_URL, "sa", "", false);
+    loader.stage(spec());
+    Assert.assertEquals(count("SELECT COUNT(*) FROM item"), 0);
+    loader.merge(spec());
+    Assert.assertEquals(count("SELECT COUNT(*) FROM item"), 3);
+  }
+
+  @Test
+  public void testRollback()
+    throws Exception {
+    LoadSpec spec = spec().merge("fail", "INSERT INTO missing_table VALUES (1)");
+    try {
+      new BulkLoader(JDBC_URL, "sa", "", false).run(spec);
+      Assert.fail("expected the load to fail");
+    } catch (Exception e) {
+      Assert.assertEquals(e.getMessage(), "Failed to load item, rolled back");
+    }
+    // the staging rows are back and nothing is merged
+    Assert.assertEquals(count("SELECT COUNT(*) FROM stg_item WHERE name = 'old'"), 1);
+    Assert.assertEquals(count("SELECT COUNT(*) FROM item"), 0);
+  }
+
+  @Test
+  public void testDryRun()
+    throws Exception {
+    BulkLoader loader = new BulkLoader(JDBC_URL, "sa", "", true);
+    loader.run(spec());
+    Assert.assertEquals(count("SELECT COUNT(*) FROM stg_item"), 2);
+    Assert.assertEquals(count("SELECT COUNT(*) FROM item"), 0);
+    Assert.assertEquals(loader.getTimings().get("item.load")[1], 3L);
+  }
+
+  private File writeFile(String content)
+    throws Exception {
+    File f = File.createTempFile("bulk_loader", ".csv");
+    f.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return f;
+  }
+
+  private String text(int id, String column)
+    throws Exception {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT " + column + " FROM stg_text WHERE id = " + id)) {
+      Assert.assertTrue(rs.next(), "row " + id);
+      return rs.getString(1);
+    }
+  }
+
+  @Test
+  public void testEscapes()
+    throws Exception {
+    File f = writeFile("1\u001atab\\there\u001a\\N\n"
+      + "2\u001aback\\\\slash\u001aN\n"
+      + "3\u001amulti\\\nline\u001a\\Z\n"
+      + "4\u001asep\\\u001ainside\u001a\\Nx\n"
+      + "5\u001a\\0\\b\\r\\n\\q\n");
+    new BulkLoader(JDBC_URL, "sa", "", false).stage(new LoadSpec("text")
+      .mode(LoadSpec.Mode.BATCH_INSERT)
+      .escape('\\')
+      .stage("stg_text", f.getPath(), "id, a, b", null));
+
+    Assert.assertEquals(count("SELECT COUNT(*) FROM stg_text"), 5);
+    Assert.assertEquals(text(1, "a"), "tab\there");
+    Assert.assertNull(text(1, "b"));
+    Assert.assertEquals(text(2, "a"), "back\\slash");
+    Assert.assertEquals(text(2, "b"), "N");
+    Assert.assertEquals(text(3, "a"), "multi\nline");
+    Assert.assertEquals(text(3, "b"), "\u001a");
+    Assert.assertEquals(text(4, "a"), "sep\u001ainside");
+    Assert.assertEquals(text(4, "b"), "Nx");
+    Assert.assertEquals(text(5, "a"), "\0\b\r\nq");
+    Assert.assertNull(text(5, "b"));
+  }
+
+  @Test
+  public void testReadRecord()
+    throws Exception {
+    // the default escape is NUL, backslashes are plain characters
+    StringReader reader = new StringReader("a\\t\u001a\0N\u001a\0\0\nnull\u001a\n\0");
+    Assert.assertEquals(BulkLoader.readRecord(reader, '\0'), Arrays.asList("a\\t", null, "\0"));
+    Assert.assertEquals(BulkLoader.readRecord(reader, '\0'), Arrays.asList("null", ""));
+    // a dangling escape at the end of the file is kept
+    Assert.assertEquals(BulkLoader.readRecord(reader, '\0'), Arrays.asList("\0"));
+    Assert.assertNull(BulkLoader.readRecord(reader, '\0'));
+  }
+
+  @Test
+  public void testStatements() {
+    LoadSpec spec = new LoadSpec("git.commit")
+      .stage("stg_commit", "/tmp/commit.csv", "commit_id, @author, path", null)
+      .set("app_id", "300")
+      .set("author", "NULLIF(@author, '')");
+    Assert.assertEquals(BulkLoader.loadStatement(spec), "LOAD DATA LOCAL INFILE '/tmp/commit.csv' INTO TABLE stg_commit "
+      + "FIELDS TERMINATED BY '\\Z' ESCAPED BY '\\0' LINES TERMINATED BY '\\n' (commit_id, @author, path) "
+      + "SET app_id = 300, author = NULLIF(@author, '')");
+    try {
+      BulkLoader.insertStatement(spec);
+      Assert.fail("expected @author to be rejected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().contains("@author"));
+    }
+    Assert.assertEquals(BulkLoader.loadStatement(new LoadSpec("text").escape('\\').stage("stg_text", "/tmp/text.csv",
+      "id, a, b", null)), "LOAD DATA LOCAL INFILE '/tmp/text.csv' INTO TABLE stg_text "
+      + "FIELDS TERMINATED BY '\\Z' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (id, a, b)");
+    Assert.assertEquals(BulkLoader.insertStatement(spec().mode(LoadSpec.Mode.BATCH_INSERT)),
+      "INSERT INTO stg_item (name, size, app_id, wh_etl_exec_id) VALUES (?, ?, 1, 42)");
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+import wherehows.common.enums.SchedulerType;
+
+
+/**
+ * Checks the in memory id resolution and the timing record against an in-memory H2 database.
+ */
+public class SchedulerMergerTest {
+  private static final String JDBC_URL = "jdbc:h2:mem:wherehows_scheduler;DB_CLOSE_DELAY=-1";
+
+  Connection conn;
+  SchedulerMerger merger;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection(JDBC_URL, "sa", "");
+    String[] ddl = {
+      "CREATE TABLE flow_source_id_map (app_id SMALLINT, flow_id INT AUTO_INCREMENT, source_id_string VARCHAR(1024))",
+      "CREATE TABLE stg_flow_job (app_id SMALLINT, flow_id INT, flow_path VARCHAR(1024), job_path VARCHAR(1024), "
+        + "wh_etl_exec_id BIGINT)",
+      "CREATE TABLE wh_etl_job_execution (wh_etl_exec_id BIGINT PRIMARY KEY, step_timings CLOB)",
+
+      "INSERT INTO flow_source_id_map (app_id, flow_id, source_id_string) VALUES (31, 7, 'project:a'), "
+        + "(32, 8, 'project:b')",
+      "INSERT INTO stg_flow_job VALUES (31, null, 'project:a', 'project:a/j1', 100), "
+        + "(31, null, 'project:a', 'project:a/j2', 100), (31, null, 'project:b', 'project:b/j1', 100), "
+        + "(31, null, 'project:c', 'project:c/j1', 100), (31, null, 'project:a', 'project:a/j1', 99)",
+      "INSERT INTO wh_etl_job_execution VALUES (100, null)"};
+    try (Statement stmt = conn.createStatement()) {
+      for (String sql : ddl) {
+        stmt.execute(sql);
+      }
+    }
+
+    Properties prop = new Properties();
+    prop.setProperty(Constant.WH_DB_DRIVER_KEY, "org.h2.Driver");
+    prop.setProperty(Constant.WH_DB_URL_KEY, JDBC_URL);
+    prop.setProperty(Constant.WH_DB_USERNAME_KEY, "sa");
+    prop.setProperty(Constant.WH_DB_PASSWORD_KEY, "");
+    prop.setProperty(Constant.APP_ID_KEY, "31");
+    prop.setProperty(Constant.WH_EXEC_ID_KEY, "100");
+    merger = new SchedulerMerger(prop, SchedulerType.GENERIC);
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws Exception {
+    conn.close();
+  }
+
+  private long count(String sql)
+    throws Exception {
+    try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  @Test
+  public void testResolveIds()
+    throws Exception {
+    Set<String> paths = merger.distinct(conn, "stg_flow_job", "flow_path");
+    Assert.assertEquals(paths, new HashSet<>(Arrays.asList("project:a", "project:b", "project:c")));
+
+    // project:b only exists for another app, project:d is only looked up
+    Map<String, Long> ids = merger.resolveIds(conn, "flow_source_id_map", "flow_id", "source_id_string",
+      Arrays.asList("project:a", "project:b"), Collections.singleton("project:d"));
+    Assert.assertEquals(ids.get("project:a"), Long.valueOf(7L));
+    Assert.assertNotNull(ids.get("project:b"));
+    Assert.assertNotEquals(ids.get("project:b"), Long.valueOf(8L));
+    Assert.assertFalse(ids.containsKey("project:d"));
+    Assert.assertEquals(count("SELECT COUNT(*) FROM flow_source_id_map WHERE app_id = 31"), 2L);
+
+    // a second run does not create the ids again
+    Map<String, Long> again = merger.resolveIds(conn, "flow_source_id_map", "flow_id", "source_id_string",
+      paths, Collections.<String>emptySet());
+    Assert.assertEquals(again.get("project:b"), ids.get("project:b"));
+    Assert.assertEquals(count("SELECT COUNT(*) FROM flow_source_id_map WHERE app_id = 31"), 3L);
+
+    long rows = merger.writeIds(conn, "stg_flow_job", "flow_id", "flow_path", paths, again);
+    Assert.assertEquals(rows, 4L);
+    Assert.assertEquals(count("SELECT COUNT(*) FROM stg_flow_job WHERE flow_id = 7"), 2L);
+    // rows of an older execution are not touched
+    Assert.assertEquals(count("SELECT COUNT(*) FROM stg_flow_job WHERE wh_etl_exec_id = 99 AND flow_id IS NULL"), 1L);
+  }
+
+  @Test
+  public void testSaveTimings()
+    throws Exception {
+    merger.record("merge.flow", System.currentTimeMillis(), 5);
+    merger.record("merge.flow", System.currentTimeMillis(), 2);
+    Assert.assertEquals(merger.getTimings().get("merge.flow")[1], 7L);
+
+    merger.saveTimings();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT step_timings FROM wh_etl_job_execution WHERE wh_etl_exec_id = 100")) {
+      Assert.assertTrue(rs.next());
+      Assert.assertTrue(rs.getString(1).contains("\"merge.flow\":{\"ms\":"), rs.getString(1));
+      Assert.assertTrue(rs.getString(1).contains("\"rows\":7}"), rs.getString(1));
+    }
+  }
+}
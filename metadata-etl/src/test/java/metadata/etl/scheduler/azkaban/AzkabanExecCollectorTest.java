@@ -0,0 +1,76 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+import wherehows.common.writers.FileWriter;
+
+
+/**
+ * Writes the job executions of a flow with an embedded flow and checks their paths.
+ */
+public class AzkabanExecCollectorTest {
+
+  @Test
+  public void testEmbeddedFlowJobs()
+    throws Exception {
+    File folder = Files.createTempDirectory("azkaban_exec").toFile();
+    Properties prop = new Properties();
+    prop.setProperty(Constant.APP_ID_KEY, "31");
+    prop.setProperty(Constant.WH_EXEC_ID_KEY, "7");
+    prop.setProperty(Constant.WH_APP_FOLDER_KEY, folder.getPath());
+    AzkabanExecCollector collector = new AzkabanExecCollector(prop);
+
+    AzkabanFlowData flow = AzkabanFlowData.parse("{\"projectName\": \"p\", \"flowId\": \"main\", "
+      + "\"status\": \"SUCCEEDED\", \"attempt\": 0, \"nodes\": ["
+      + "{\"id\": \"load\", \"status\": \"SUCCEEDED\", \"startTime\": 1000, \"endTime\": 2000}, "
+      + "{\"id\": \"sub\", \"status\": \"SUCCEEDED\", \"startTime\": 2000, \"endTime\": 5000, \"flowId\": \"inner\", "
+      + "\"nodes\": [{\"id\": \"extract\", \"status\": \"SUCCEEDED\", \"startTime\": 2000, \"endTime\": 3000}, "
+      + "{\"id\": \"deep\", \"status\": \"SUCCEEDED\", \"startTime\": 3000, \"endTime\": 5000, "
+      + "\"nodes\": [{\"id\": \"load\", \"status\": \"SUCCEEDED\", \"startTime\": 3000, \"endTime\": 5000}]}]}]}");
+    flow.execId = 12;
+
+    File flowExecFile = new File(folder, "flow_exec.csv");
+    File jobExecFile = new File(folder, "job_exec.csv");
+    FileWriter flowExecWriter = new FileWriter(flowExecFile.getPath());
+    FileWriter jobExecWriter = new FileWriter(jobExecFile.getPath());
+    collector.write(flow, flowExecWriter, jobExecWriter);
+    flowExecWriter.close();
+    jobExecWriter.close();
+
+    List<String> jobPaths = new ArrayList<>();
+    for (String line : Files.readAllLines(jobExecFile.toPath(), StandardCharsets.UTF_8)) {
+      String[] fields = line.split("\u001a");
+      Assert.assertEquals(fields[1], "p:main");
+      jobPaths.add(fields[5]);
+    }
+    // sorted by job name
+    Assert.assertEquals(jobPaths,
+      Arrays.asList("p:main/sub/deep", "p:main/sub/extract", "p:main/load", "p:main/sub/deep/load", "p:main/sub"));
+
+    for (File f : folder.listFiles()) {
+      f.delete();
+    }
+    folder.delete();
+  }
+}
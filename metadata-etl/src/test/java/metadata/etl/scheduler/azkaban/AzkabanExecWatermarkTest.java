@@ -0,0 +1,164 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+
+/**
+ * Runs the watermark and the flow_data reader against an in-memory H2 database holding both the azkaban
+ * execution_flows table and the wherehows flow_execution_watermark table.
+ */
+public class AzkabanExecWatermarkTest {
+  private static final String JDBC_URL = "jdbc:h2:mem:azkaban_exec;DB_CLOSE_DELAY=-1";
+  private static final long MINUTE = 60000L;
+
+  Connection conn;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection(JDBC_URL, "sa", "");
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE execution_flows (exec_id INT PRIMARY KEY, version INT, submit_user VARCHAR(64), "
+        + "start_time BIGINT, end_time BIGINT, flow_data BLOB)");
+      stmt.execute("CREATE TABLE flow_execution_watermark (app_id SMALLINT, etl_name VARCHAR(31), end_time BIGINT, "
+        + "exec_id BIGINT, recent_execs CLOB, wh_etl_exec_id BIGINT, pending_end_time BIGINT, pending_exec_id BIGINT, "
+        + "pending_recent_execs CLOB, pending_wh_etl_exec_id BIGINT, modified_time INT, "
+        + "PRIMARY KEY (app_id, etl_name))");
+    }
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws Exception {
+    conn.close();
+  }
+
+  private static byte[] gzip(String json)
+    throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(json.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  private void insertExecution(int execId, long endTime)
+    throws Exception {
+    String json = "{\"execId\":" + execId + ",\"projectName\":\"p\",\"flowId\":\"f" + execId + "\",\"status\":\"SUCCEEDED\","
+      + "\"attempt\":0,\"properties\":[{\"source\":\"f.job\"}],\"nodes\":[{\"id\":\"j\",\"status\":\"SUCCEEDED\","
+      + "\"attempt\":0,\"startTime\":" + (endTime - 1000) + ",\"endTime\":" + endTime + ",\"outNodes\":[]}]}";
+    try (PreparedStatement stmt = conn.prepareStatement("MERGE INTO execution_flows VALUES (?, 1, 'u', ?, ?, ?)")) {
+      stmt.setInt(1, execId);
+      stmt.setLong(2, endTime - 1000);
+      stmt.setLong(3, endTime);
+      stmt.setBytes(4, gzip(json));
+      stmt.executeUpdate();
+    }
+  }
+
+  @Test
+  public void testSelectLateAndRestartedExecutions() {
+    AzkabanExecWatermark mark = new AzkabanExecWatermark(31, AzkabanExecWatermark.EXEC_ETL, 10 * MINUTE);
+    List<Long> first = mark.select(Arrays.asList(new long[]{1, 100 * MINUTE}, new long[]{2, 105 * MINUTE}));
+    Assert.assertEquals(first, Arrays.asList(1L, 2L));
+    Assert.assertEquals(mark.newEndTime, 105 * MINUTE);
+    Assert.assertEquals(mark.newExecId, 2L);
+
+    AzkabanExecWatermark next = new AzkabanExecWatermark(31, AzkabanExecWatermark.EXEC_ETL, 10 * MINUTE);
+    next.endTime = mark.newEndTime;
+    next.execId = mark.newExecId;
+    next.recentExecs = AzkabanExecWatermark.parseExecs(AzkabanExecWatermark.formatExecs(mark.newRecentExecs));
+    Assert.assertEquals(next.recentExecs.size(), 2);
+
+    // 3 was written after 2 although it finished before, 1 was restarted and finished again
+    List<Long> second = next.select(Arrays.asList(new long[]{1, 97 * MINUTE + 1}, new long[]{3, 104 * MINUTE},
+      new long[]{2, 105 * MINUTE}, new long[]{4, 120 * MINUTE}));
+    Assert.assertEquals(second, Arrays.asList(1L, 3L, 4L));
+    Assert.assertEquals(next.newEndTime, 120 * MINUTE);
+    Assert.assertEquals(next.newRecentExecs.keySet(), new HashSet<>(Arrays.asList(4L)));
+  }
+
+  @Test
+  public void testPendingWatermark()
+    throws Exception {
+    long now = 1000 * MINUTE;
+    insertExecution(11, now - 30 * MINUTE);
+    insertExecution(12, now - 5 * MINUTE);
+
+    AzkabanExecWatermark mark = AzkabanExecWatermark.load(conn, 32, AzkabanExecWatermark.LINEAGE_ETL, 10 * MINUTE);
+    Assert.assertTrue(mark.isEmpty());
+    Assert.assertEquals(mark.selectNewExecIds(conn, now - 60 * MINUTE, 0), Arrays.asList(11L, 12L));
+    mark.savePending(conn, 500L);
+
+    // the run failed before its load, the next one reads the same executions
+    mark = AzkabanExecWatermark.load(conn, 32, AzkabanExecWatermark.LINEAGE_ETL, 10 * MINUTE);
+    Assert.assertTrue(mark.isEmpty());
+    Assert.assertFalse(AzkabanExecWatermark.commit(conn, 32, AzkabanExecWatermark.LINEAGE_ETL, 499L));
+    Assert.assertTrue(AzkabanExecWatermark.commit(conn, 32, AzkabanExecWatermark.LINEAGE_ETL, 500L));
+
+    insertExecution(13, now - 6 * MINUTE);
+    mark = AzkabanExecWatermark.load(conn, 32, AzkabanExecWatermark.LINEAGE_ETL, 10 * MINUTE);
+    Assert.assertEquals(mark.endTime, now - 5 * MINUTE);
+    List<Long> execIds = mark.selectNewExecIds(conn, 0, 0);
+    Assert.assertEquals(execIds, Arrays.asList(13L));
+
+    final List<AzkabanFlowData> flows = new ArrayList<>();
+    AzkabanFlowData.readExecutions(conn, execIds, new AzkabanFlowData.Handler() {
+      @Override
+      public void handle(AzkabanFlowData flow) {
+        flows.add(flow);
+      }
+    });
+    Assert.assertEquals(flows.size(), 1);
+    Assert.assertEquals(flows.get(0).execId, 13L);
+    Assert.assertEquals(flows.get(0).getFlowPath(), "p:f13");
+    Assert.assertEquals(flows.get(0).endTime, now - 6 * MINUTE);
+    Assert.assertEquals(flows.get(0).nodes.get(0).endTime, now - 6 * MINUTE);
+  }
+
+  @Test
+  public void testParseNestedFlow()
+    throws Exception {
+    AzkabanFlowData flow = AzkabanFlowData.parse("{\"projectName\":\"p\",\"flowId\":\"f\",\"status\":\"FAILED\","
+      + "\"attempt\":2,\"executionOptions\":{\"failureEmails\":[\"a\"],\"flowParameters\":{}},\"nodes\":["
+      + "{\"id\":\"sub\",\"type\":\"flow\",\"status\":\"FAILED\",\"nodes\":[{\"id\":\"inner\",\"startTime\":\"1000\","
+      + "\"endTime\":2000,\"status\":\"FAILED\"}]},"
+      + "{\"id\":\"last\",\"status\":\"CANCELLED\",\"attempt\":1,\"inNodes\":[\"sub\"]}]}");
+    Assert.assertEquals(flow.getFlowPath(), "p:f");
+    Assert.assertEquals(flow.status, "FAILED");
+    Assert.assertEquals(flow.attempt, 2);
+    Assert.assertEquals(flow.nodes.size(), 2);
+    Assert.assertEquals(flow.nodes.get(0).nodes.get(0).id, "inner");
+    Assert.assertEquals(flow.nodes.get(0).nodes.get(0).startTime, 1000L);
+    Assert.assertNull(flow.nodes.get(1).nodes);
+    Assert.assertEquals(flow.nodes.get(1).attempt, 1);
+  }
+}
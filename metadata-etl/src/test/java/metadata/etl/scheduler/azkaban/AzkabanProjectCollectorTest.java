@@ -0,0 +1,196 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.scheduler.azkaban;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+
+
+/**
+ * Runs the collector against an in-memory H2 database holding both the azkaban project tables and the wherehows
+ * flow_project_version table.
+ */
+public class AzkabanProjectCollectorTest {
+  private static final String JDBC_URL = "jdbc:h2:mem:azkaban_project;DB_CLOSE_DELAY=-1";
+  private static final String FLOW_JSON = "{\"project.id\":1,\"layedout\":false,\"nodes\":["
+    + "{\"id\":\"a\",\"jobType\":\"command\",\"layout\":{\"x\":1}},"
+    + "{\"id\":\"b\",\"jobType\":\"flow\",\"embeddedFlowId\":\"sub\"}],"
+    + "\"edges\":[{\"source\":\"a\",\"target\":\"b\"}],\"props\":[]}";
+
+  Connection conn;
+  File folder;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection(JDBC_URL, "sa", "");
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE projects (id INT PRIMARY KEY, name VARCHAR(64), active TINYINT, version INT)");
+      stmt.execute("CREATE TABLE project_flows (project_id INT, version INT, flow_id VARCHAR(128), "
+        + "modified_time BIGINT, json BLOB, PRIMARY KEY (project_id, version, flow_id))");
+      stmt.execute("CREATE TABLE flow_project_version (app_id SMALLINT, project_id INT, project_name VARCHAR(255), "
+        + "source_version INT, is_active CHAR(1), wh_etl_exec_id BIGINT, pending_version INT, "
+        + "pending_is_active CHAR(1), pending_wh_etl_exec_id BIGINT, modified_time INT, "
+        + "PRIMARY KEY (app_id, project_id))");
+    }
+    folder = Files.createTempDirectory("azkaban_project").toFile();
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws Exception {
+    conn.close();
+  }
+
+  private Properties properties(long whExecId) {
+    Properties prop = new Properties();
+    prop.setProperty(Constant.APP_ID_KEY, "31");
+    prop.setProperty(Constant.WH_EXEC_ID_KEY, String.valueOf(whExecId));
+    prop.setProperty(Constant.WH_APP_FOLDER_KEY, folder.getPath());
+    prop.setProperty(Constant.WH_DB_URL_KEY, JDBC_URL);
+    prop.setProperty(Constant.WH_DB_USERNAME_KEY, "sa");
+    prop.setProperty(Constant.WH_DB_PASSWORD_KEY, "");
+    prop.setProperty(Constant.AZ_DB_URL_KEY, JDBC_URL);
+    prop.setProperty(Constant.AZ_DB_USERNAME_KEY, "sa");
+    prop.setProperty(Constant.AZ_DB_PASSWORD_KEY, "");
+    return prop;
+  }
+
+  private void upload(int projectId, String name, int version, String... flowIds)
+    throws Exception {
+    try (PreparedStatement stmt = conn.prepareStatement("MERGE INTO projects VALUES (?, ?, 1, ?)")) {
+      stmt.setInt(1, projectId);
+      stmt.setString(2, name);
+      stmt.setInt(3, version);
+      stmt.executeUpdate();
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(FLOW_JSON.getBytes(StandardCharsets.UTF_8));
+    }
+    try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO project_flows VALUES (?, ?, ?, 1447000000000, ?)")) {
+      for (String flowId : flowIds) {
+        stmt.setInt(1, projectId);
+        stmt.setInt(2, version);
+        stmt.setString(3, flowId);
+        stmt.setBytes(4, bytes.toByteArray());
+        stmt.executeUpdate();
+      }
+    }
+  }
+
+  private List<String> lines(String file)
+    throws Exception {
+    return Files.readAllLines(new File(folder, "AZKABAN/31/" + file).toPath(), StandardCharsets.UTF_8);
+  }
+
+  private Map<Integer, String> pending()
+    throws Exception {
+    Map<Integer, String> pending = new HashMap<>();
+    try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(
+      "SELECT project_id, pending_version, pending_is_active, pending_wh_etl_exec_id FROM flow_project_version")) {
+      while (rs.next()) {
+        if (rs.getObject("pending_wh_etl_exec_id") != null) {
+          pending.put(rs.getInt(1), rs.getInt(2) + rs.getString(3));
+        }
+      }
+    }
+    return pending;
+  }
+
+  @Test
+  public void testChangedProjects() {
+    Map<Integer, AzkabanProjectCollector.Project> loaded = new HashMap<>();
+    loaded.put(1, new AzkabanProjectCollector.Project(1, "same", 3, true));
+    loaded.put(2, new AzkabanProjectCollector.Project(2, "uploaded", 3, true));
+    loaded.put(3, new AzkabanProjectCollector.Project(3, "deactivated", 3, true));
+    loaded.put(4, new AzkabanProjectCollector.Project(4, "removed", 3, true));
+    loaded.put(5, new AzkabanProjectCollector.Project(5, "reactivated", 3, false));
+    loaded.put(6, new AzkabanProjectCollector.Project(6, "still inactive", 3, false));
+
+    List<AzkabanProjectCollector.Project> changed = AzkabanProjectCollector.changedProjects(loaded, Arrays.asList(
+      new AzkabanProjectCollector.Project(1, "same", 3, true),
+      new AzkabanProjectCollector.Project(2, "uploaded", 4, true),
+      new AzkabanProjectCollector.Project(3, "deactivated", 3, false),
+      new AzkabanProjectCollector.Project(5, "reactivated", 3, true),
+      new AzkabanProjectCollector.Project(6, "still inactive", 3, false),
+      new AzkabanProjectCollector.Project(7, "new", 1, true)));
+
+    Map<Integer, Boolean> active = new HashMap<>();
+    for (AzkabanProjectCollector.Project p : changed) {
+      active.put(p.id, p.active);
+    }
+    Map<Integer, Boolean> expected = new HashMap<>();
+    expected.put(2, true);
+    expected.put(3, false);
+    expected.put(4, false);
+    expected.put(5, true);
+    expected.put(7, true);
+    Assert.assertEquals(active, expected);
+  }
+
+  @Test
+  public void testOnlyChangedProjectsAreExtracted()
+    throws Exception {
+    upload(1, "p1", 1, "f1", "f2");
+    upload(2, "p2", 1, "f3");
+    Assert.assertEquals(new AzkabanProjectCollector(properties(100L)).run(), 3);
+    Assert.assertEquals(lines("flow.csv").size(), 3);
+    Assert.assertEquals(lines("job.csv").size(), 6);
+    Assert.assertEquals(lines("dag.csv").size(), 3);
+    Assert.assertTrue(lines("job.csv").contains("31\u001ap1:f1\u001a1\u001ab\u001ap1:f1/b\u001aflow\u001ap1:sub\u001aY\u001a100"),
+      lines("job.csv").toString());
+    Assert.assertEquals(pending().size(), 2);
+
+    // the load of the first run failed, so its projects are extracted again
+    Assert.assertEquals(new AzkabanProjectCollector(properties(101L)).run(), 3);
+    Assert.assertEquals(AzkabanProjectCollector.commit(conn, 31, 100L), 0);
+    Assert.assertEquals(AzkabanProjectCollector.commit(conn, 31, 101L), 2);
+
+    Assert.assertEquals(new AzkabanProjectCollector(properties(102L)).run(), 0);
+    Assert.assertTrue(lines("flow.csv").isEmpty());
+    Assert.assertTrue(pending().isEmpty());
+
+    upload(2, "p2", 2, "f3", "f4");
+    try (Statement stmt = conn.createStatement()) {
+      stmt.executeUpdate("UPDATE projects SET active = 0 WHERE id = 1");
+    }
+    Assert.assertEquals(new AzkabanProjectCollector(properties(103L)).run(), 2);
+    Assert.assertTrue(lines("flow.csv").contains("31\u001af4\u001ap2\u001ap2:f4\u001a0\u001a1447000000\u001a2\u001aY\u001a103"),
+      lines("flow.csv").toString());
+    Map<Integer, String> expected = new HashMap<>();
+    expected.put(1, "1N");
+    expected.put(2, "2Y");
+    Assert.assertEquals(pending(), expected);
+  }
+}
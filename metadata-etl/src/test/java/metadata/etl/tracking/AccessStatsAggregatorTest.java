@@ -0,0 +1,204 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package metadata.etl.tracking;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import wherehows.common.Constant;
+
+
+/**
+ * Rolls tracking rows up in an in-memory H2 database holding the tracking tables.
+ */
+public class AccessStatsAggregatorTest {
+  private static final String JDBC_URL = "jdbc:h2:mem:access_stats;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+  Connection conn;
+  // 10:00 UTC yesterday, in seconds
+  long start;
+
+  @BeforeClass
+  public void setUp()
+    throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection(JDBC_URL, "sa", "");
+    start = (System.currentTimeMillis() / 1000 / AccessStatsAggregator.DAY_SECONDS - 1)
+      * AccessStatsAggregator.DAY_SECONDS + 10 * AccessStatsAggregator.HOUR_SECONDS;
+    String[] ddl = {
+      "CREATE TABLE track_object_access_log (id BIGINT AUTO_INCREMENT, access_unixtime BIGINT NOT NULL, "
+        + "login_id INT NOT NULL, object_type VARCHAR(20) NOT NULL, object_id BIGINT, object_name VARCHAR(500), "
+        + "parameters VARCHAR(500), logged_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+        + "PRIMARY KEY (access_unixtime, login_id, object_type))",
+      "CREATE TABLE track_object_access_stats (object_type VARCHAR(20) NOT NULL, object_id BIGINT NOT NULL, "
+        + "period VARCHAR(4) NOT NULL, period_start INT NOT NULL, views INT NOT NULL DEFAULT 0, "
+        + "distinct_users INT NOT NULL DEFAULT 0, users_sketch VARBINARY(2049), modified_time INT, "
+        + "PRIMARY KEY (object_type, object_id, period, period_start))",
+      "CREATE TABLE track_object_access_stats_offset (name VARCHAR(50) NOT NULL, last_id BIGINT NOT NULL DEFAULT 0, "
+        + "modified_time INT, PRIMARY KEY (name))"};
+    try (Statement stmt = conn.createStatement()) {
+      for (String sql : ddl) {
+        stmt.execute(sql);
+      }
+    }
+  }
+
+  @AfterClass
+  public void tearDown()
+    throws Exception {
+    conn.close();
+  }
+
+  private void log(long seconds, int loginId, String objectType, Long objectId)
+    throws Exception {
+    log(seconds, seconds, loginId, objectType, objectId);
+  }
+
+  /**
+   * @param seconds access time sent by the client
+   * @param loggedSeconds time the row was inserted
+   */
+  private void log(long seconds, long loggedSeconds, int loginId, String objectType, Long objectId)
+    throws Exception {
+    try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO track_object_access_log (access_unixtime, "
+      + "login_id, object_type, object_id, object_name, parameters, logged_time) VALUES (?, ?, ?, ?, 'name', '', ?)")) {
+      stmt.setLong(1, seconds * 1000);
+      stmt.setInt(2, loginId);
+      stmt.setString(3, objectType);
+      if (objectId == null) {
+        stmt.setNull(4, java.sql.Types.BIGINT);
+      } else {
+        stmt.setLong(4, objectId);
+      }
+      stmt.setTimestamp(5, new Timestamp(loggedSeconds * 1000));
+      stmt.executeUpdate();
+    }
+  }
+
+  /**
+   * @return views/distinct_users, null when the counter does not exist
+   */
+  private String stats(String objectType, long objectId, String period, long periodStart)
+    throws Exception {
+    try (PreparedStatement stmt = conn.prepareStatement("SELECT views, distinct_users FROM track_object_access_stats "
+      + "WHERE object_type = ? AND object_id = ? AND period = ? AND period_start = ?")) {
+      stmt.setString(1, objectType);
+      stmt.setLong(2, objectId);
+      stmt.setString(3, period);
+      stmt.setLong(4, periodStart);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getLong(1) + "/" + rs.getLong(2) : null;
+      }
+    }
+  }
+
+  private AccessStatsAggregator aggregator() throws Exception {
+    Properties prop = new Properties();
+    prop.setProperty(Constant.WH_DB_DRIVER_KEY, "org.h2.Driver");
+    prop.setProperty(Constant.WH_DB_URL_KEY, JDBC_URL);
+    prop.setProperty(Constant.WH_DB_USERNAME_KEY, "sa");
+    prop.setProperty(Constant.WH_DB_PASSWORD_KEY, "");
+    prop.setProperty(Constant.TRACKING_STATS_CHUNK_SIZE_KEY, "2");
+    return new AccessStatsAggregator(prop);
+  }
+
+  @Test
+  public void testIncrementalRollUp()
+    throws Exception {
+    long hour = AccessStatsAggregator.HOUR_SECONDS;
+    long day = start - start % AccessStatsAggregator.DAY_SECONDS;
+    log(start + 1, 1, "dataset", 10L);
+    log(start + 2, 1, "dataset", 10L);
+    log(start + 3, 2, "dataset", 10L);
+    log(start + 4, 1, "flow", 10L);
+    log(start + 5, 1, "lineage:data", null);
+    log(start + hour, 3, "dataset", 10L);
+
+    // chunks of 2 rows, the last one is partial
+    Assert.assertEquals(aggregator().run(), 6);
+    Assert.assertEquals(stats("dataset", 10, "hour", start), "3/2");
+    Assert.assertEquals(stats("dataset", 10, "hour", start + hour), "1/1");
+    Assert.assertEquals(stats("dataset", 10, "day", day), "4/3");
+    Assert.assertEquals(stats("flow", 10, "day", day), "1/1");
+
+    // only the new rows are read, and merged into the stored counters
+    Assert.assertEquals(aggregator().run(), 0);
+    log(start + 10, 2, "dataset", 10L);
+    log(start + 11, 4, "dataset", 10L);
+    log(start + 12, 1, "dataset", 11L);
+    Assert.assertEquals(aggregator().run(), 3);
+    Assert.assertEquals(stats("dataset", 10, "hour", start), "5/3");
+    Assert.assertEquals(stats("dataset", 10, "day", day), "6/4");
+    Assert.assertEquals(stats("dataset", 11, "day", day), "1/1");
+
+    try (Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery("SELECT last_id FROM track_object_access_stats_offset")) {
+      Assert.assertTrue(rs.next());
+      Assert.assertEquals(rs.getLong(1), 9);
+    }
+  }
+
+  @Test(dependsOnMethods = "testIncrementalRollUp")
+  public void testPrune()
+    throws Exception {
+    long now = start + AccessStatsAggregator.DAY_SECONDS;
+    long old = now - (AccessStatsAggregator.DEFAULT_HOUR_RETENTION_DAYS + 1) * AccessStatsAggregator.DAY_SECONDS;
+    try (Statement stmt = conn.createStatement()) {
+      stmt.executeUpdate("INSERT INTO track_object_access_stats (object_type, object_id, period, period_start, views, "
+        + "distinct_users) VALUES ('dataset', 10, 'hour', " + old + ", 1, 1), ('dataset', 10, 'day', " + old
+        + ", 1, 1)");
+    }
+    aggregator().prune(conn, now);
+    Assert.assertNull(stats("dataset", 10, "hour", old));
+    Assert.assertNotNull(stats("dataset", 10, "day", old));
+    Assert.assertNotNull(stats("dataset", 10, "hour", start));
+  }
+
+  @Test(dependsOnMethods = "testIncrementalRollUp")
+  public void testSafetyLag()
+    throws Exception {
+    long now = System.currentTimeMillis() / 1000;
+    long day = start - start % AccessStatsAggregator.DAY_SECONDS;
+    log(start + 20, 5, "dataset", 12L);
+    // sent by a client whose clock is a day ahead, counted at its insert time and not blocking the later rows
+    log(now + AccessStatsAggregator.DAY_SECONDS, start + 21, 6, "dataset", 12L);
+    // sent by a client whose clock is behind, but inserted just now
+    log(start + 22, now, 7, "dataset", 12L);
+    log(start + 23, start + 23, 8, "dataset", 12L);
+
+    // the chunk stops at the row inserted just now, the offset stays below it
+    Assert.assertEquals(aggregator().run(), 2);
+    Assert.assertEquals(stats("dataset", 12, "day", day), "2/2");
+
+    try (Connection later = DriverManager.getConnection(JDBC_URL, "sa", "")) {
+      later.setAutoCommit(false);
+      Assert.assertEquals(aggregator().aggregateChunk(later, now + AccessStatsAggregator.DEFAULT_LAG_SECONDS), 2);
+    }
+    Assert.assertEquals(stats("dataset", 12, "day", day), "4/4");
+  }
+
+  @Test
+  public void testToSeconds() {
+    Assert.assertEquals(AccessStatsAggregator.toSeconds(1447000000123L), 1447000000L);
+    Assert.assertEquals(AccessStatsAggregator.toSeconds(1447000000L), 1447000000L);
+  }
+}
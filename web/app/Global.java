@@ -11,6 +11,7 @@
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
  */
+import dao.TrackingDAO;
 import play.*;
 
 import org.springframework.context.ApplicationContext;
@@ -33,6 +34,12 @@ public class Global extends GlobalSettings{
       public void onStart(Application arg0) {
             applicationContext = new ClassPathXmlApplicationContext("components.xml");
       }
+
+      @Override
+      public void onStop(Application arg0) {
+            // write the queued tracking events
+            TrackingDAO.close();
+      }
      
       @Override
       public <A> A getControllerInstance(Class<A> type) throws Exception {
@@ -13,8 +13,11 @@
  */
 package controllers;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import dao.UserDAO;
 import play.data.DynamicForm;
+import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
 import play.Logger;
@@ -179,6 +182,44 @@ public class Application extends Controller
 
     public static Result loadTree(String key)
     {
-        return ok(Tree.loadTreeJsonNode(key + TREE_NAME_SUBFIX));
+        Tree.TreeSnapshot snapshot = Tree.getTreeSnapshot(key + TREE_NAME_SUBFIX);
+        if (snapshot == null)
+        {
+            return ok(Json.toJson(""));
+        }
+        response().setHeader(ETAG, snapshot.getETag());
+        if (isNotModified(snapshot))
+        {
+            return status(NOT_MODIFIED);
+        }
+        return ok(snapshot.toJsonString()).as("application/json");
+    }
+
+    public static Result loadTreeChildren(String key, String path)
+    {
+        Tree.TreeSnapshot snapshot = Tree.getTreeSnapshot(key + TREE_NAME_SUBFIX);
+        if (snapshot == null)
+        {
+            return notFound(Json.toJson(""));
+        }
+        response().setHeader(ETAG, snapshot.getETag());
+        if (isNotModified(snapshot))
+        {
+            return status(NOT_MODIFIED);
+        }
+        ArrayNode children = snapshot.getChildren(path);
+        if (children == null)
+        {
+            return notFound(Json.toJson(""));
+        }
+        ObjectNode result = Json.newObject();
+        result.set("children", children);
+        return ok(result);
+    }
+
+    private static boolean isNotModified(Tree.TreeSnapshot snapshot)
+    {
+        String ifNoneMatch = request().getHeader(IF_NONE_MATCH);
+        return StringUtils.isNotBlank(ifNoneMatch) && ifNoneMatch.contains(snapshot.getETag());
     }
 }
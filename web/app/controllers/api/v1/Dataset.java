@@ -17,6 +17,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.DatasetColumn;
+import models.DatasetOwner;
 import models.ImpactDataset;
 import play.api.libs.json.JsValue;
 import play.libs.Json;
@@ -27,6 +28,7 @@ import play.Logger;
 import org.apache.commons.lang3.StringUtils;
 import dao.DatasetsDAO;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -164,21 +166,18 @@ public class Dataset extends Controller
 
     public static Result getDatasetSampleDataByID(int id)
     {
-        JsonNode sampleData = DatasetsDAO.getDatasetSampleDataByID(id);
-
-        ObjectNode result = Json.newObject();
+        String sampleData = DatasetsDAO.getDatasetSampleDataByID(id);
 
         if (sampleData != null)
         {
-            result.put("status", "ok");
-            result.set("sampleData", sampleData);
-        }
-        else
-        {
-            result.put("status", "error");
-            result.put("message", "record not found");
+            // the masked sample is already serialized, so it is wrapped without parsing it again
+            return ok("{\"status\":\"ok\",\"sampleData\":" + sampleData + "}").as("application/json");
         }
 
+        ObjectNode result = Json.newObject();
+        result.put("status", "error");
+        result.put("message", "record not found");
+
         return ok(result);
     }
 
@@ -242,6 +241,45 @@ public class Dataset extends Controller
         return ok(result);
     }
 
+    /**
+     * Replaces the owners of many datasets at once. The body is a JSON array of
+     * {"datasetId": 1, "owners": [{"userName": ..., "isGroup": ..., "type": ..., "subType": ...}, ...]},
+     * and the response carries the result of each dataset.
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public static Result updateDatasetsOwners()
+    {
+        ObjectNode result = Json.newObject();
+        String username = session("user");
+        if (StringUtils.isBlank(username))
+        {
+            result.put("status", "failed");
+            result.put("error", "true");
+            result.put("msg", "Unauthorized User.");
+            return ok(result);
+        }
+
+        JsonNode req = request().body().asJson();
+        if (req == null || !req.isArray())
+        {
+            return badRequest("Expecting a JSON array of dataset owners");
+        }
+
+        Map<Integer, List<DatasetOwner>> ownersByDataset = new LinkedHashMap<Integer, List<DatasetOwner>>();
+        for (JsonNode dataset : req)
+        {
+            if (!dataset.has("datasetId") || !dataset.get("datasetId").canConvertToInt())
+            {
+                return badRequest("Expecting a datasetId in " + dataset.toString());
+            }
+            ownersByDataset.put(dataset.get("datasetId").asInt(), DatasetsDAO.parseDatasetOwners(dataset.get("owners")));
+        }
+
+        result.put("status", "ok");
+        result.set("results", Json.toJson(DatasetsDAO.updateDatasetOwners(ownersByDataset)));
+        return ok(result);
+    }
+
     public static Result favoriteDataset(int id)
     {
         ObjectNode result = Json.newObject();
@@ -88,10 +88,39 @@ public class SchemaHistory extends Controller
         return ok(result);
     }
 
+    private static Long getIdParam(String name)
+    {
+        String value = request().getQueryString(name);
+        if (StringUtils.isBlank(value))
+        {
+            return null;
+        }
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch(NumberFormatException e)
+        {
+            Logger.error("SchemaHistory Controller wrong " + name + " parameter. Error message: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The timeline of the versions of a dataset, or with the left and right version ids, the diff of two versions
+     */
     public static Result getSchemaHistory(int id)
     {
         ObjectNode result = Json.newObject();
 
+        Long right = getIdParam("right");
+        if (right != null)
+        {
+            result.put("status", "ok");
+            result.set("diff", SchemaHistoryDAO.getSchemaHistoryDiff(id, getIdParam("left"), right));
+            return ok(result);
+        }
+
         result.put("status", "ok");
         result.set("data", Json.toJson(SchemaHistoryDAO.getSchemaHistoryByDatasetID(id)));
         return ok(result);
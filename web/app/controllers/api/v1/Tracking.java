@@ -17,6 +17,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import dao.TrackingDAO;
+import play.Logger;
 import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
@@ -55,4 +56,47 @@ public class Tracking extends Controller
             return unauthorized(result);
         }
     }
+
+    public static Result getTrackingMetrics()
+    {
+        ObjectNode result = Json.newObject();
+        result.put("status", "ok");
+        result.set("metrics", TrackingDAO.getTrackingMetrics());
+        return ok(result);
+    }
+
+    private static int getIntParam(String name, int defaultValue)
+    {
+        String value = request().getQueryString(name);
+        if (StringUtils.isBlank(value))
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch(NumberFormatException e)
+        {
+            Logger.error("Tracking Controller wrong " + name + " parameter. Error message: " + e.getMessage());
+            return defaultValue;
+        }
+    }
+
+    public static Result getAccessStats(String objectType, Long objectId)
+    {
+        ObjectNode result = Json.newObject();
+        result.put("status", "ok");
+        result.set("stats", TrackingDAO.getAccessStats(objectType, objectId, getIntParam("days", 30)));
+        return ok(result);
+    }
+
+    public static Result getPopularObjects(String objectType)
+    {
+        ObjectNode result = Json.newObject();
+        result.put("status", "ok");
+        result.set("objects", TrackingDAO.getPopularObjects(objectType, getIntParam("days", 30),
+                getIntParam("limit", 20)));
+        return ok(result);
+    }
 }
@@ -15,6 +15,8 @@ package dao;
 
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import play.Play;
+import wherehows.common.utils.CfgRegistry;
 
 public class AbstractMySQLOpenSourceDAO
 {
@@ -25,6 +27,10 @@ public class AbstractMySQLOpenSourceDAO
     private static NamedParameterJdbcTemplate namedJdbcTemplate =
         new NamedParameterJdbcTemplate(DataSource.getDataSource(MYSQL_DB_WHEREHOWS_OPENSOURCE));
 
+    // cached cfg_application and cfg_database, reloaded every cfg.refresh.interval seconds
+    private static CfgRegistry cfgRegistry = new CfgRegistry(jdbcTemplate.getDataSource(),
+        Play.application().configuration().getLong("cfg.refresh.interval", 60L) * 1000);
+
     protected static JdbcTemplate getJdbcTemplate()
   {
     return jdbcTemplate;
@@ -35,4 +41,9 @@ public class AbstractMySQLOpenSourceDAO
     return namedJdbcTemplate;
   }
 
+    protected static CfgRegistry getCfgRegistry()
+  {
+    return cfgRegistry;
+  }
+
 }
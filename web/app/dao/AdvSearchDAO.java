@@ -32,15 +32,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class AdvSearchDAO extends AbstractMySQLOpenSourceDAO
 {
 	public final static String GET_DATASET_SOURCES = "SELECT source " +
 			"FROM dict_dataset GROUP BY 1 ORDER BY count(*) DESC";
 
-	public final static String GET_FLOW_APPCODES = "SELECT DISTINCT app_code " +
-			"FROM cfg_application GROUP BY 1 ORDER BY 1";
-
 	public final static String GET_DATASET_SCOPES = "SELECT DISTINCT parent_name " +
 			"FROM dict_dataset WHERE parent_name is not null order by 1;";
 
@@ -164,7 +163,15 @@ public class AdvSearchDAO extends AbstractMySQLOpenSourceDAO
 
 	public static List<String> getFlowApplicationCodes()
 	{
-		return getJdbcTemplate().queryForList(GET_FLOW_APPCODES, String.class);
+		Set<String> appCodes = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		for (Map<String, Object> app : getCfgRegistry().getAllApps())
+		{
+			if (app.get("app_code") != null)
+			{
+				appCodes.add((String)app.get("app_code"));
+			}
+		}
+		return new ArrayList<String>(appCodes);
 	}
 
 	public static List<String> getFlowNames(String applications)
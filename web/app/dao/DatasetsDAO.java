@@ -25,11 +25,11 @@ import java.text.SimpleDateFormat;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -43,6 +43,9 @@ import play.libs.Json;
 import models.*;
 import play.libs.WS;
 import utils.Lineage;
+import utils.SampleData;
+import wherehows.common.utils.DatasetOwnerBatchUpdater;
+import wherehows.common.utils.FieldNameIndex;
 
 public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 {
@@ -170,6 +173,12 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 	private final static String GET_DATASET_SAMPLE_DATA_BY_REFID =
 			"SELECT data FROM dict_dataset_sample WHERE dataset_id=?";
 
+	private final static String GET_DATASET_SAMPLE_VERSION_BY_ID =
+			"SELECT s.ref_id, COALESCE(s.modified, s.created) as sample_time, s.id as sample_row, " +
+			"CRC32(s.data) as sample_crc, COALESCE(r.modified, r.created) as ref_sample_time, " +
+			"r.id as ref_sample_row, CRC32(r.data) as ref_sample_crc FROM dict_dataset_sample s " +
+			"LEFT JOIN dict_dataset_sample r ON r.dataset_id = s.ref_id AND s.ref_id <> 0 WHERE s.dataset_id=?";
+
 	private final static String GET_DATASET_URN_BY_ID =
 			"SELECT urn FROM dict_dataset WHERE id=?";
 
@@ -205,9 +214,6 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			"ON DUPLICATE KEY UPDATE owner_type = ?, is_group = ?, is_deleted = 'N', " +
 			"sort_id = ?, modified_time= UNIX_TIMESTAMP(), owner_sub_type=?";
 
-	private final static String MARK_DATASET_OWNERS_AS_DELETED = "UPDATE dataset_owner " +
-			"set is_deleted = 'Y' WHERE dataset_id = ?";
-
 	private final static String GET_FAVORITES = "SELECT DISTINCT d.id, d.name, d.urn, d.source " +
 			"FROM dict_dataset d JOIN favorites f ON d.id = f.dataset_id " +
 			"JOIN users u ON f.dataset_id = d.id and f.user_id = u.id WHERE u.username = ? ORDER BY d.urn";
@@ -289,11 +295,8 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 	private final static String GET_COLUMN_NAME_BY_ID =
 			"SELECT UPPER(field_name) FROM dict_field_detail WHERE field_id = ?";
 
-	private final static String GET_SIMILAR_COMMENTS_BY_FIELD_NAME =
-			"SELECT count(*) as count, fd.dataset_id, " +
-			"fd.default_comment_id as comment_id, fc.comment FROM dict_field_detail fd LEFT JOIN " +
-			"field_comments fc ON fc.id = fd.default_comment_id WHERE UPPER(fd.field_name) = ? " +
-			"AND fd.default_comment_id IS NOT NULL GROUP BY fd.default_comment_id ORDER BY count DESC";
+	private final static String GET_COLUMN_COMMENTS_BY_IDS =
+			"SELECT id, comment FROM field_comments WHERE id IN (:ids)";
 
 	private final static String SET_COLUMN_COMMENT_TO_FALSE = "UPDATE dict_dataset_field_comment " +
 			"SET is_default = false WHERE dataset_id = ? AND field_id = ? AND is_default = true";
@@ -302,13 +305,33 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			"dict_dataset_field_comment (dataset_id, field_id, comment_id, is_default) " +
 			"VALUES (?, ?, ?, true) ON DUPLICATE KEY UPDATE is_default = true";
 
-	private final static String GET_SIMILAR_COLUMNS_BY_FIELD_NAME = "SELECT d.id as dataset_id, " +
-			"d.name as dataset_name, dfd.field_id, dfd.data_type, fc.id as comment_id, fc.comment, d.source " +
+	private final static String GET_SIMILAR_COLUMNS_BY_IDS = "SELECT d.id as dataset_id, " +
+			"d.name as dataset_name, dfd.field_id, dfd.data_type, d.source " +
 			"FROM dict_field_detail dfd JOIN dict_dataset d ON dfd.dataset_id = d.id " +
-			"LEFT JOIN dict_dataset_field_comment ddfc ON ddfc.dataset_id = d.id " +
-			"AND ddfc.field_id = dfd.field_id AND ddfc.is_default = 1 " +
-			"LEFT JOIN field_comments fc ON ddfc.comment_id = fc.id " +
-			"WHERE dfd.dataset_id <> ? AND dfd.field_name = ? ORDER BY d.name asc";
+			"WHERE dfd.field_id IN (:ids)";
+
+	// diffs the owners of many datasets against dataset_owner and writes the changes in one transaction
+	private final static DatasetOwnerBatchUpdater ownerUpdater =
+			new DatasetOwnerBatchUpdater(getJdbcTemplate().getDataSource());
+
+	// masking rules of the sample data, compiled once
+	private final static SampleData.Rules sampleMaskRules = new SampleData.Rules(
+			getStringList("sample.mask.columns", SampleData.DEFAULT_MASKED_COLUMNS),
+			getStringList("sample.mask.column.patterns", Collections.<String>emptyList()),
+			getStringList("sample.mask.fields", SampleData.DEFAULT_MASKED_FIELDS));
+
+	// masked sample data by dataset id, until the sample rows change
+	private final static SampleData.Cache sampleCache = new SampleData.Cache(
+			Play.application().configuration().getLong("sample.cache.max.chars", 50000000L));
+
+	// similar columns of very common names, like id, are cut at this number
+	private final static int MAX_SIMILAR_COLUMNS = 1000;
+
+	// fields and comments by field name, loaded on demand and kept up to date with the ETL and the comment writes
+	private final static FieldNameIndex fieldNameIndex = new FieldNameIndex(getJdbcTemplate().getDataSource(),
+			Play.application().configuration().getLong("similar.index.max.postings", 5000000L),
+			Play.application().configuration().getLong("similar.index.refresh.interval", 60L) * 1000,
+			Play.application().configuration().getLong("similar.index.ttl", 3600L) * 1000);
 
 	public static ObjectNode getPagedDatasets(String urn, Integer page, Integer size, String user)
 	{
@@ -738,17 +761,48 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 		return propNode;
 	}
 
-	public static JsonNode getDatasetSampleDataByID(int id)
+	private static List<String> getStringList(String key, List<String> defaultList)
+	{
+		List<String> list = Play.application().configuration().getStringList(key);
+		return list == null ? defaultList : list;
+	}
+
+	/**
+	 * Returns the masked sample data JSON of the dataset, or null if it has none.
+	 */
+	public static String getDatasetSampleDataByID(int id)
 	{
 		List<Map<String, Object>> rows = null;
-		JsonNode sampleNode = null;
 		String strSampleData = null;
 		Integer refID = 0;
 
-		rows = getJdbcTemplate().queryForList(GET_DATASET_SAMPLE_DATA_BY_ID, id);
+		rows = getJdbcTemplate().queryForList(GET_DATASET_SAMPLE_VERSION_BY_ID, id);
+		if (rows.isEmpty())
+		{
+			return null;
+		}
+		Map<String, Object> versionRow = rows.get(0);
+		refID = (Integer)versionRow.get("ref_id");
+		Object sampleTime = versionRow.get("sample_time");
+		Object refSampleTime = versionRow.get("ref_sample_time");
+		// without a timestamp a change of the sample can not be noticed, so it is not cached
+		String version = null;
+		if (sampleTime != null && (refID == null || refID == 0 || refSampleTime != null))
+		{
+			// the times only have a second precision, the row id and the checksum of the data tell two rewrites
+			// of the same second apart
+			version = sampleTime + "|" + versionRow.get("sample_row") + "|" + versionRow.get("sample_crc") + "|" +
+					refID + "|" + refSampleTime + "|" + versionRow.get("ref_sample_row") + "|" +
+					versionRow.get("ref_sample_crc");
+			String cached = sampleCache.get(id, version);
+			if (cached != null)
+			{
+				return cached;
+			}
+		}
 
+		rows = getJdbcTemplate().queryForList(GET_DATASET_SAMPLE_DATA_BY_ID, id);
 		for (Map row : rows) {
-			refID = (Integer)row.get("ref_id");
 			strSampleData = (String)row.get("data");
 			break;
 		}
@@ -765,15 +819,19 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 
 		if (StringUtils.isNotBlank(strSampleData)) {
 			try {
-				sampleNode = Json.parse(strSampleData);
-				return utils.SampleData.secureSampleData(sampleNode);
+				String masked = SampleData.mask(strSampleData, sampleMaskRules);
+				if (version != null)
+				{
+					sampleCache.put(id, version, masked);
+				}
+				return masked;
 			} catch (Exception e) {
 				Logger.error("Dataset getDatasetSampleDataByID parse properties failed, id = " + id);
 				Logger.error("Exception = " + e.getMessage());
 			}
 		}
 
-		return sampleNode;
+		return null;
 	}
 
 	public static List<DatasetOwner> getDatasetOwnersByID(int id)
@@ -1403,6 +1461,7 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 						columnId,
 						commentId
 				);
+				refreshFieldNameIndex(columnId);
 				result = "";
 			} catch(DataAccessException e) {
 				result = "Post comment failed. Please try again.";
@@ -1461,14 +1520,39 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 				Logger.error("Exception = " + e.getMessage());
 			}
 		}
+		refreshFieldNameIndex(columnId);
 
 		return result;
 	}
 
+	private static void refreshFieldNameIndex(int columnId)
+	{
+		try {
+			fieldNameIndex.refreshField(columnId);
+		} catch(DataAccessException e) {
+			Logger.error("Dataset refresh field name index failed, columnId = " + Integer.toString(columnId));
+			Logger.error("Exception = " + e.getMessage());
+		}
+	}
+
+	private static Map<Long, String> getColumnComments(Collection<Long> commentIds)
+	{
+		Map<Long, String> comments = new HashMap<Long, String>();
+		if (commentIds.isEmpty())
+		{
+			return comments;
+		}
+		for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(GET_COLUMN_COMMENTS_BY_IDS,
+				new MapSqlParameterSource("ids", commentIds)))
+		{
+			comments.put(((Number) row.get("id")).longValue(), (String) row.get("comment"));
+		}
+		return comments;
+	}
+
 	public static List similarColumnComments(int datasetId, int columnId)
 	{
 		List<SimilarComments> comments = new ArrayList<SimilarComments>();
-		List<Map<String, Object>> rows = null;
 		String fieldName = "";
 		try {
 			fieldName = (String)getJdbcTemplate().queryForObject(
@@ -1483,17 +1567,18 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 		}
 
 		try {
-			rows = getJdbcTemplate().queryForList(
-					GET_SIMILAR_COMMENTS_BY_FIELD_NAME,
-					fieldName
-			);
-			for(Map row : rows) {
-
+			List<FieldNameIndex.CommentUsage> usages = fieldNameIndex.getCommentUsages(fieldName);
+			List<Long> commentIds = new ArrayList<Long>();
+			for (FieldNameIndex.CommentUsage usage : usages) {
+				commentIds.add(usage.commentId);
+			}
+			Map<Long, String> texts = getColumnComments(commentIds);
+			for (FieldNameIndex.CommentUsage usage : usages) {
 				SimilarComments sc = new SimilarComments();
-				sc.count = (Long)row.get("count");
-				sc.commentId = (Long)row.get("comment_id");
-				sc.comment = (String)row.get("comment");
-				sc.datasetId = (Long)row.get("dataset_id");
+				sc.count = (long) usage.count;
+				sc.commentId = usage.commentId;
+				sc.comment = texts.get(usage.commentId);
+				sc.datasetId = usage.datasetId;
 				comments.add(sc);
 			}
 		} catch(DataAccessException e) {
@@ -1528,6 +1613,7 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 					columnId,
 					commentId
 			);
+			refreshFieldNameIndex(columnId);
 			result = true;
 		} catch(DataAccessException e) {
 			Logger.error("Dataset assignColumnComment - set current default to false, datasetId = " +
@@ -1541,7 +1627,6 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 	public static List similarColumns(int datasetId, int columnId)
 	{
 		List<SimilarColumns> columns = new ArrayList<SimilarColumns>();
-		List<Map<String, Object>> rows = null;
 		String fieldName = "";
 		try {
 			fieldName = (String)getJdbcTemplate().queryForObject(
@@ -1555,22 +1640,47 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			return columns;
 		}
 		try {
-			rows = getJdbcTemplate().queryForList(
-					GET_SIMILAR_COLUMNS_BY_FIELD_NAME,
-					datasetId,
-					fieldName
-			);
-			for(Map row : rows) {
+			List<FieldNameIndex.Posting> postings = fieldNameIndex.getPostings(fieldName, datasetId,
+					MAX_SIMILAR_COLUMNS);
+			if (postings.isEmpty()) {
+				return columns;
+			}
+			List<Long> fieldIds = new ArrayList<Long>();
+			Set<Long> commentIds = new HashSet<Long>();
+			for (FieldNameIndex.Posting posting : postings) {
+				fieldIds.add(posting.fieldId);
+				if (posting.commentId != null) {
+					commentIds.add(posting.commentId);
+				}
+			}
+			Map<Long, Map<String, Object>> details = new HashMap<Long, Map<String, Object>>();
+			for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(GET_SIMILAR_COLUMNS_BY_IDS,
+					new MapSqlParameterSource("ids", fieldIds))) {
+				details.put(((Number) row.get("field_id")).longValue(), row);
+			}
+			Map<Long, String> texts = getColumnComments(commentIds);
+			for (FieldNameIndex.Posting posting : postings) {
+				Map<String, Object> row = details.get(posting.fieldId);
+				if (row == null) {
+					// removed since the name was indexed
+					continue;
+				}
 				SimilarColumns sc = new SimilarColumns();
-				sc.datasetId = (Long)row.get("dataset_id");
+				sc.datasetId = posting.datasetId;
 				sc.datasetName = (String)row.get("dataset_name");
-				sc.columnId = (Long)row.get("field_id");
+				sc.columnId = posting.fieldId;
 				sc.dataType = (String)row.get("data_type");
 				sc.source = (String)row.get("source");
-				sc.commentId = (Long)row.get("comment_id");
-				sc.comment = (String)row.get("comment");
+				sc.commentId = posting.commentId;
+				sc.comment = posting.commentId == null ? null : texts.get(posting.commentId);
 				columns.add(sc);
 			}
+			Collections.sort(columns, new Comparator<SimilarColumns>() {
+				@Override
+				public int compare(SimilarColumns a, SimilarColumns b) {
+					return StringUtils.defaultString(a.datasetName).compareTo(StringUtils.defaultString(b.datasetName));
+				}
+			});
 		} catch(DataAccessException e) {
 			Logger.error("Dataset similarColumns - get columns by field name, datasetId = " +
 					Integer.toString(datasetId) + " columnId = " + Integer.toString(columnId));
@@ -1580,41 +1690,102 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 		return columns;
 	}
 
-	public static void updateDatasetOwnerDatabase(int datasetId, String datasetUrn, List<DatasetOwner> owners)
+	/**
+	 * Parses an owner list posted by the owners tab, in priority order. Owners without user name are skipped.
+	 */
+	public static List<DatasetOwner> parseDatasetOwners(JsonNode node)
 	{
-		getJdbcTemplate().batchUpdate(UPDATE_DATASET_OWNERS,
-				new BatchPreparedStatementSetter() {
-					@Override
-					public void setValues(PreparedStatement ps, int i)
-							throws SQLException {
-						DatasetOwner owner = owners.get(i);
-						ps.setInt(1, datasetId);
-						ps.setString(2, owner.userName);
-						ps.setInt(3, owner.isGroup ? 301 : 300);
-						ps.setString(4, owner.namespace);
-						ps.setString(5, owner.type);
-						ps.setString(6, owner.isGroup ? "Y" : "N");
-						ps.setInt(7, owner.sortId);
-						ps.setString(8, datasetUrn);
-						ps.setString(9, owner.subType);
-						ps.setString(10, owner.type);
-						ps.setString(11, owner.isGroup ? "Y" : "N");
-						ps.setInt(12, owner.sortId);
-						ps.setString(13, owner.subType);
-					}
+		List<DatasetOwner> owners = new ArrayList<DatasetOwner>();
+		if (node == null || !node.isArray())
+		{
+			return owners;
+		}
+		for(int i = 0; i < node.size(); i++) {
+			JsonNode ownerNode = node.get(i);
+			if (ownerNode != null)
+			{
+				String userName = "";
+				if (ownerNode.has("userName"))
+				{
+					userName = ownerNode.get("userName").asText();
+				}
+				if (StringUtils.isBlank(userName))
+				{
+					continue;
+				}
+				Boolean isGroup = false;
+				if (ownerNode.has("isGroup"))
+				{
+					isGroup = ownerNode.get("isGroup").asBoolean();
+				}
+				String type = "";
+				if (ownerNode.has("type") && (!ownerNode.get("type").isNull()))
+				{
+					type = ownerNode.get("type").asText();
+				}
+				String subType = "";
+				if (ownerNode.has("subType") && (!ownerNode.get("subType").isNull()))
+				{
+					subType = ownerNode.get("subType").asText();
+				}
 
-					@Override
-					public int getBatchSize()
-					{
-						return owners.size();
-					}
+				DatasetOwner owner = new DatasetOwner();
+				owner.userName = userName;
+				owner.isGroup = isGroup;
+				if (isGroup)
+				{
+					owner.namespace = "urn:li:griduser";
+				}
+				else
+				{
+					owner.namespace = "urn:li:corpuser";
 				}
-		);
+				owner.type = type;
+				owner.subType = subType;
+				owner.sortId = i;
+				owners.add(owner);
+			}
+		}
+		return owners;
+	}
+
+	/**
+	 * Replaces the owners of many datasets at once. The owners of each dataset are diffed against its current
+	 * dataset_owner rows, and the changes of all the datasets are written with batched statements in one transaction.
+	 *
+	 * @param ownersByDataset the new owners of each dataset in priority order, an empty list removes all the owners
+	 * @return the result of each dataset, in the order of the input
+	 */
+	public static List<DatasetOwnerBatchUpdater.DatasetResult> updateDatasetOwners(
+			Map<Integer, List<DatasetOwner>> ownersByDataset)
+	{
+		Map<Integer, List<DatasetOwnerBatchUpdater.Owner>> owners =
+				new LinkedHashMap<Integer, List<DatasetOwnerBatchUpdater.Owner>>();
+		for (Map.Entry<Integer, List<DatasetOwner>> entry : ownersByDataset.entrySet())
+		{
+			List<DatasetOwnerBatchUpdater.Owner> datasetOwners = new ArrayList<DatasetOwnerBatchUpdater.Owner>();
+			for (DatasetOwner owner : entry.getValue())
+			{
+				datasetOwners.add(new DatasetOwnerBatchUpdater.Owner(owner.userName,
+						owner.isGroup != null && owner.isGroup, owner.type, owner.subType));
+			}
+			owners.put(entry.getKey(), datasetOwners);
+		}
+
+		List<DatasetOwnerBatchUpdater.DatasetResult> results = ownerUpdater.update(owners);
+		for (DatasetOwnerBatchUpdater.DatasetResult result : results)
+		{
+			if (!result.isSuccess())
+			{
+				Logger.error("Dataset updateDatasetOwners failed, id = " + result.getDatasetId());
+				Logger.error("Exception = " + result.getError());
+			}
+		}
+		return results;
 	}
 
 	public static boolean updateDatasetOwners(int datasetId, Map<String, String[]> ownersMap, String user)
 	{
-		boolean result = true;
 		if ((ownersMap == null) || ownersMap.size() == 0)
 		{
 			return false;
@@ -1625,75 +1796,12 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			String[] textArray = ownersMap.get("owners");
 			if (textArray != null && textArray.length > 0)
 			{
-				JsonNode node = Json.parse(textArray[0]);
-				for(int i = 0; i < node.size(); i++) {
-					JsonNode ownerNode = node.get(i);
-					if (ownerNode != null)
-					{
-						String userName = "";
-						if (ownerNode.has("userName"))
-						{
-							userName = ownerNode.get("userName").asText();
-						}
-						if (StringUtils.isBlank(userName))
-						{
-							continue;
-						}
-						Boolean isGroup = false;
-						if (ownerNode.has("isGroup"))
-						{
-							isGroup = ownerNode.get("isGroup").asBoolean();
-						}
-						String type = "";
-						if (ownerNode.has("type") && (!ownerNode.get("type").isNull()))
-						{
-							type = ownerNode.get("type").asText();
-						}
-						String subType = "";
-						if (ownerNode.has("subType") && (!ownerNode.get("subType").isNull()))
-						{
-							subType = ownerNode.get("subType").asText();
-						}
-
-						DatasetOwner owner = new DatasetOwner();
-						owner.userName = userName;
-						owner.isGroup = isGroup;
-						if (isGroup)
-						{
-							owner.namespace = "urn:li:griduser";
-						}
-						else
-						{
-							owner.namespace = "urn:li:corpuser";
-						}
-						owner.type = type;
-						owner.subType = subType;
-						owner.sortId = i;
-						owners.add(owner);
-					}
-				}
-			}
-		}
-
-		getJdbcTemplate().update(MARK_DATASET_OWNERS_AS_DELETED, datasetId);
-		if (owners.size() > 0)
-		{
-			String urn = null;
-			try
-			{
-				urn = (String)getJdbcTemplate().queryForObject(
-						GET_DATASET_URN_BY_ID,
-						String.class,
-						datasetId);
+				owners = parseDatasetOwners(Json.parse(textArray[0]));
 			}
-			catch(EmptyResultDataAccessException e)
-			{
-				Logger.error("Dataset updateDatasetOwners get urn failed, id = " + datasetId);
-				Logger.error("Exception = " + e.getMessage());
-			}
-			updateDatasetOwnerDatabase(datasetId, urn, owners);
 		}
 
-		return result;
+		List<DatasetOwnerBatchUpdater.DatasetResult> results =
+				updateDatasetOwners(Collections.singletonMap(datasetId, owners));
+		return results.get(0).isSuccess();
 	}
 }
@@ -30,8 +30,6 @@ import play.libs.Json;
 
 public class FlowsDAO extends AbstractMySQLOpenSourceDAO
 {
-	private final static String GET_APP_ID  =
-			"SELECT app_id FROM cfg_application WHERE LOWER(app_code) = ?";
 
 	private final static String GET_PAGED_PROJECTS = "SELECT SQL_CALC_FOUND_ROWS " +
 			"DISTINCT IFNULL(f.flow_group, 'NA') as project_name, f.app_id, f.flow_group, a.app_code " +
@@ -73,10 +71,8 @@ public class FlowsDAO extends AbstractMySQLOpenSourceDAO
 	{
 		Integer applicationId = 0;
 		try {
-			applicationId = getJdbcTemplate().queryForObject(
-					GET_APP_ID,
-					new Object[]{applicationName.replace(".", " ")},
-					Integer.class);
+			applicationId = ((Number)getCfgRegistry().getAppByCode(applicationName.replace(".", " ")).get("app_id"))
+					.intValue();
 		} catch (EmptyResultDataAccessException e) {
 			applicationId = 0;
 			Logger.error("Get application id failed, application name = " + applicationName);
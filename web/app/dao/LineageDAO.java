@@ -38,32 +38,27 @@ public class LineageDAO extends AbstractMySQLOpenSourceDAO
 	private final static String GET_FLOW_NAME = "SELECT flow_name FROM " +
 			"flow WHERE app_id = ? and flow_id = ?";
 
-	private final static String GET_JOB = "SELECT ca.app_id, ca.app_code as cluster, je.flow_id, je.job_id, jedl.job_name, " +
+	private final static String GET_JOB = "SELECT jedl.app_id, je.flow_id, je.job_id, jedl.job_name, " +
 			"fj.job_path, fj.job_type, jedl.flow_path, jedl.storage_type, jedl.source_target_type, jedl.operation, " +
 			"max(jedl.job_exec_id) as job_exec_id, FROM_UNIXTIME(jedl.job_start_unixtime) as start_time, " +
 			"FROM_UNIXTIME(jedl.job_finished_unixtime) as end_time FROM job_execution_data_lineage jedl " +
-			"JOIN cfg_application ca on ca.app_id = jedl.app_id " +
 			"JOIN job_execution je on jedl.app_id = je.app_id " +
 			"and jedl.flow_exec_id = je.flow_exec_id and jedl.job_exec_id = je.job_exec_id " +
 			"JOIN flow_job fj on je.app_id = fj.app_id and je.flow_id = fj.flow_id and je.job_id = fj.job_id " +
 			"WHERE abstracted_object_name = ? and " +
-			"FROM_UNIXTIME(job_finished_unixtime) >  CURRENT_DATE - INTERVAL ? DAY GROUP BY ca.app_id, je.job_id, je.flow_id";
+			"FROM_UNIXTIME(job_finished_unixtime) >  CURRENT_DATE - INTERVAL ? DAY GROUP BY jedl.app_id, je.job_id, je.flow_id";
 
 	private final static String GET_DATA = "SELECT storage_type, operation, " +
 			"abstracted_object_name, source_target_type " +
 			"FROM job_execution_data_lineage WHERE app_id = ? and job_exec_id = ?";
 
 
-	private final static String GET_APP_ID  = "SELECT app_id FROM cfg_application WHERE LOWER(app_code) = ?";
-
-
-	private final static String GET_FLOW_JOB = "SELECT ca.app_id, ca.app_code, je.flow_id, je.job_id, " +
+	private final static String GET_FLOW_JOB = "SELECT jedl.app_id, je.flow_id, je.job_id, " +
 			"jedl.job_name, fj.job_path, fj.job_type, jedl.flow_path, jedl.storage_type, " +
 			"jedl.source_target_type, jedl.operation, jedl.job_exec_id, fj.pre_jobs, fj.post_jobs, " +
 			"FROM_UNIXTIME(jedl.job_start_unixtime) as start_time, " +
 			"FROM_UNIXTIME(jedl.job_finished_unixtime) as end_time " +
 			"FROM job_execution_data_lineage jedl " +
-			"JOIN cfg_application ca on ca.app_id = jedl.app_id " +
 			"JOIN job_execution je on jedl.app_id = je.app_id and " +
 			"jedl.flow_exec_id = je.flow_exec_id and jedl.job_exec_id = je.job_exec_id " +
 			"JOIN flow_job fj on je.app_id = fj.app_id and je.flow_id = fj.flow_id and je.job_id = fj.job_id " +
@@ -73,18 +68,17 @@ public class LineageDAO extends AbstractMySQLOpenSourceDAO
 	private final static String GET_LATEST_FLOW_EXEC_ID = "SELECT max(flow_exec_id) FROM " +
 			"flow_execution where app_id = ? and flow_id = ?";
 
-	private final static String GET_FLOW_DATA_LINEAGE = "SELECT ca.app_code, jedl.job_exec_id, jedl.job_name, " +
+	private final static String GET_FLOW_DATA_LINEAGE = "SELECT jedl.job_exec_id, jedl.job_name, " +
 			"jedl.storage_type, jedl.abstracted_object_name, jedl.source_target_type, jedl.record_count, " +
 			"jedl.app_id, jedl.partition_type, jedl.operation, jedl.partition_start, " +
 			"jedl.partition_end, jedl.full_object_name, " +
 			"FROM_UNIXTIME(jedl.job_start_unixtime) as start_time, " +
 			"FROM_UNIXTIME(jedl.job_finished_unixtime) as end_time FROM job_execution_data_lineage jedl " +
-			"JOIN cfg_application ca on ca.app_id = jedl.app_id " +
 			"WHERE jedl.app_id = ? and jedl.flow_exec_id = ? ORDER BY jedl.partition_end DESC";
 
     private final static String GET_ONE_LEVEL_IMPACT_DATABASES = "SELECT DISTINCT j.storage_type, " +
             "j.abstracted_object_name, d.id FROM job_execution_data_lineage j " +
-            "Left join dict_dataset d on substring_index(d.urn, '://', -1) = j.abstracted_object_name " +
+            "Left join dict_dataset d on d.urn_path = j.abstracted_object_name " +
             "WHERE (app_id, job_exec_id) in ( " +
             "SELECT app_id, job_exec_id FROM job_execution_data_lineage " +
             "WHERE abstracted_object_name in (:pathlist) and source_target_type = 'source' and " +
@@ -184,7 +178,7 @@ public class LineageDAO extends AbstractMySQLOpenSourceDAO
 				node._sort_list = new ArrayList<String>();
 				node.node_type = "script";
 				node.job_type = (String)row.get("job_type");
-				node.cluster = (String)row.get("cluster");
+				node.cluster = getCfgRegistry().findAppCode(((Number)row.get("app_id")).intValue());
 				node.job_path = (String)row.get("job_path");
 				node.job_name = (String)row.get("job_name");
 				node.job_start_time = row.get("start_time").toString();
@@ -423,12 +417,12 @@ public class LineageDAO extends AbstractMySQLOpenSourceDAO
 		String applicationName = application.replace(".", " ");
 
 		int appID = 0;
+		String appCode = null;
 		try
 		{
-			appID = getJdbcTemplate().queryForObject(
-					GET_APP_ID,
-					new Object[] {applicationName},
-					Integer.class);
+			Map<String, Object> app = getCfgRegistry().getAppByCode(applicationName);
+			appID = ((Number)app.get("app_id")).intValue();
+			appCode = (String)app.get("app_code");
 		}
 		catch(EmptyResultDataAccessException e)
 		{
@@ -489,7 +483,7 @@ public class LineageDAO extends AbstractMySQLOpenSourceDAO
 					}
 
 					node.application_id = (int)row.get("app_id");
-					node.cluster = (String)row.get("app_code");
+					node.cluster = appCode;
 					node.partition_type = (String)row.get("partition_type");
 					node.operation = (String)row.get("operation");
 					node.partition_start = (String)row.get("partition_start");
@@ -540,7 +534,7 @@ public class LineageDAO extends AbstractMySQLOpenSourceDAO
 					node._sort_list = new ArrayList<String>();
 					node.node_type = "script";
 					node.job_type = (String)row.get("job_type");
-					node.cluster = (String)row.get("app_code");
+					node.cluster = appCode;
 					node.job_path = (String)row.get("job_path");
 					node.job_name = (String)row.get("job_name");
 					node.pre_jobs = (String)row.get("pre_jobs");
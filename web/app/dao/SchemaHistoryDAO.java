@@ -13,7 +13,9 @@
  */
 package dao;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.*;
@@ -25,6 +27,7 @@ import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 import play.Logger;
 import play.libs.Json;
+import wherehows.common.utils.SchemaFields;
 
 public class SchemaHistoryDAO extends AbstractMySQLOpenSourceDAO{
 
@@ -49,8 +52,14 @@ public class SchemaHistoryDAO extends AbstractMySQLOpenSourceDAO{
 			"FROM dict_dataset_schema_history WHERE dataset_id = ? and urn LIKE ? " +
 			"GROUP BY 1 ORDER BY urn LIMIT ?, ?";
 
-	private final static String GET_SCHEMA_HISTORY_BY_DATASET_ID = "SELECT DATE_FORMAT(modified_date,'%Y-%m-%d') " +
-            "as modified_date, `schema` FROM dict_dataset_schema_history WHERE dataset_id = ? ORDER BY 1";
+	private final static String GET_SCHEMA_HISTORY_BY_DATASET_ID = "SELECT id, " +
+			"DATE_FORMAT(modified_date,'%Y-%m-%d') as modified_date, field_count, fields_added, fields_removed, " +
+			"fields_changed FROM dict_dataset_schema_history WHERE dataset_id = ? ORDER BY modified_date, id";
+
+	private final static String GET_SCHEMA_VERSIONS = "SELECT h.id, h.`schema`, h.fields, h.field_diff, " +
+			"(SELECT p.id FROM dict_dataset_schema_history p WHERE p.urn = h.urn AND p.modified_date < h.modified_date " +
+			"ORDER BY p.modified_date DESC LIMIT 1) as previous_id " +
+			"FROM dict_dataset_schema_history h WHERE h.dataset_id = ? AND h.id IN (?, ?)";
 
 	public static ObjectNode getPagedSchemaDataset(String name, Long datasetId, int page, int size)
 	{
@@ -134,4 +143,45 @@ public class SchemaHistoryDAO extends AbstractMySQLOpenSourceDAO{
 				id);
 	}
 
+	/**
+	 * Schemas of two versions of a dataset and the fields added, removed and changed from the left one to the right
+	 * one. The diff of consecutive versions is the one stored by the ETL, other diffs are computed from the fields
+	 * stored with each version, the schemas are not parsed.
+	 * @param leftId null to compare the right version with an empty schema
+	 */
+	public static ObjectNode getSchemaHistoryDiff(int datasetId, Long leftId, Long rightId)
+	{
+		Map<Long, Map<String, Object>> versions = new HashMap<Long, Map<String, Object>>();
+		for (Map<String, Object> row : getJdbcTemplate().queryForList(GET_SCHEMA_VERSIONS, datasetId,
+				leftId == null ? 0L : leftId, rightId))
+		{
+			versions.put(((Number) row.get("id")).longValue(), row);
+		}
+		Map<String, Object> left = leftId == null ? null : versions.get(leftId);
+		Map<String, Object> right = versions.get(rightId);
+
+		SchemaFields.Diff diff;
+		Number previousId = right == null ? null : (Number) right.get("previous_id");
+		boolean consecutive = leftId == null ? previousId == null :
+				previousId != null && previousId.longValue() == leftId;
+		if (right != null && consecutive && right.get("field_diff") != null)
+		{
+			diff = SchemaFields.Diff.decode((String) right.get("field_diff"));
+		}
+		else
+		{
+			diff = SchemaFields.diff(
+					SchemaFields.decode(left == null ? null : (String) left.get("fields")),
+					SchemaFields.decode(right == null ? null : (String) right.get("fields")));
+		}
+
+		ObjectNode result = Json.newObject();
+		result.put("left", left == null ? null : (String) left.get("schema"));
+		result.put("right", right == null ? null : (String) right.get("schema"));
+		result.set("added", Json.toJson(diff.added));
+		result.set("removed", Json.toJson(diff.removed));
+		result.set("changed", Json.toJson(diff.changed));
+		return result;
+	}
+
 }
@@ -13,41 +13,26 @@
  */
 package dao;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import models.SchemaDataset;
 import models.SchemaHistoryData;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.jdbc.core.RowMapper;
-import play.Logger;
-import play.libs.Json;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Date;
-import java.sql.Time;
 
 public class SchemaHistoryDataRowMapper implements RowMapper<SchemaHistoryData>
 {
     @Override
     public SchemaHistoryData mapRow(ResultSet rs, int rowNum) throws SQLException
     {
-        String modified = rs.getString("modified_date");
-        String schema = rs.getString("schema");
-        int fieldCount = 0;
-        if (StringUtils.isNotBlank(schema))
-        {
-            try {
-                JsonNode schemaNode = Json.parse(schema);
-                fieldCount =  utils.SchemaHistory.calculateFieldCount(schemaNode);
-            } catch (Exception e) {
-                Logger.error("SchemaHistoryDataRowMapper get field count parse schema failed");
-                Logger.error("Exception = " + e.getMessage());
-            }
-        }
+        // the counts are computed once per version by the dataset ETL, the schema is not read here
         SchemaHistoryData schemaHistoryData = new SchemaHistoryData();
-        schemaHistoryData.modified = modified;
-        schemaHistoryData.schema = schema;
-        schemaHistoryData.fieldCount = fieldCount;
+        schemaHistoryData.id = rs.getLong("id");
+        schemaHistoryData.modified = rs.getString("modified_date");
+        schemaHistoryData.fieldCount = rs.getInt("field_count");
+        schemaHistoryData.analyzed = !rs.wasNull();
+        schemaHistoryData.added = rs.getInt("fields_added");
+        schemaHistoryData.removed = rs.getInt("fields_removed");
+        schemaHistoryData.changed = rs.getInt("fields_changed");
         return schemaHistoryData;
     }
 }
\ No newline at end of file
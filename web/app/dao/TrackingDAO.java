@@ -14,13 +14,19 @@
 package dao;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.*;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.dao.EmptyResultDataAccessException;
 import play.Logger;
+import play.Play;
 import play.libs.Json;
+import wherehows.common.utils.AsyncBatcher;
+import wherehows.common.utils.HyperLogLog;
 
 public class TrackingDAO extends AbstractMySQLOpenSourceDAO
 {
@@ -36,9 +42,115 @@ public class TrackingDAO extends AbstractMySQLOpenSourceDAO
 
     private final static String GET_USER_ID = "SELECT id FROM users WHERE username = ?";
 
-    private final static String ADD_TRACKING_EVENT  = "INSERT INTO track_object_access_log (access_unixtime, " +
-            "login_id, object_type, object_id, object_name, parameters) VALUES (?, ?, ?, ?, ?, ?) ";
+    // a duplicated event, e.g. a double click, must not fail the other rows of its batch
+    private final static String ADD_TRACKING_EVENTS  = "INSERT IGNORE INTO track_object_access_log (access_unixtime, " +
+            "login_id, object_type, object_id, object_name, parameters) VALUES ";
 
+    private final static String TRACKING_EVENT_VALUES = "(?, ?, ?, ?, ?, ?)";
+
+    private final static int TRACKING_EVENT_COLUMNS = 6;
+
+    // the counters are rolled up from track_object_access_log by the ACCESS_STATS_ETL job
+    private final static String GET_DAILY_ACCESS_STATS = "SELECT period_start, views, distinct_users, users_sketch " +
+            "FROM track_object_access_stats WHERE object_type = ? AND object_id = ? AND period = 'day' " +
+            "AND period_start >= ? ORDER BY period_start";
+
+    private final static String GET_POPULAR_OBJECTS = "SELECT object_id, SUM(views) AS views " +
+            "FROM track_object_access_stats WHERE object_type = ? AND period = 'day' AND period_start >= ? " +
+            "GROUP BY object_id ORDER BY views DESC LIMIT ?";
+
+    private final static int DAY_SECONDS = 86400;
+
+    // days of daily counters kept by the ETL job
+    public final static int MAX_STATS_DAYS = 400;
+
+    public final static int MAX_POPULAR_OBJECTS = 1000;
+
+    // the counters change once per ETL run, the popular objects are cached for this many milliseconds
+    private final static long POPULAR_CACHE_INTERVAL =
+            Play.application().configuration().getLong("tracking.stats.cache.interval", 300L) * 1000;
+
+    private final static int POPULAR_CACHE_SIZE = 100;
+
+    private static class PopularObjects
+    {
+        final long loadedTime = System.currentTimeMillis();
+
+        final ArrayNode objects;
+
+        PopularObjects(ArrayNode objects)
+        {
+            this.objects = objects;
+        }
+    }
+
+    private final static Map<String, PopularObjects> popularCache = new ConcurrentHashMap<String, PopularObjects>();
+
+    // usernames to ids, cleared when it grows past the limit
+    private final static int USER_ID_CACHE_SIZE = 10000;
+
+    private final static Map<String, Integer> userIdCache = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The events are queued and written by a background thread, with one multi-row insert per batch.
+     */
+    private final static AsyncBatcher<Object[]> trackingBatcher = new AsyncBatcher<Object[]>("tracking",
+            Play.application().configuration().getInt("tracking.queue.capacity", 10000),
+            Play.application().configuration().getInt("tracking.batch.size", 100),
+            Play.application().configuration().getLong("tracking.batch.interval", 1000L),
+            new AsyncBatcher.Sink<Object[]>()
+            {
+                @Override
+                public void write(List<Object[]> batch)
+                {
+                    insertTrackingEvents(batch);
+                }
+            });
+
+    private static void insertTrackingEvents(List<Object[]> events)
+    {
+        StringBuilder sql = new StringBuilder(ADD_TRACKING_EVENTS);
+        Object[] args = new Object[events.size() * TRACKING_EVENT_COLUMNS];
+        for (int i = 0; i < events.size(); i++)
+        {
+            if (i > 0)
+            {
+                sql.append(", ");
+            }
+            sql.append(TRACKING_EVENT_VALUES);
+            System.arraycopy(events.get(i), 0, args, i * TRACKING_EVENT_COLUMNS, TRACKING_EVENT_COLUMNS);
+        }
+        getJdbcTemplate().update(sql.toString(), args);
+    }
+
+    private static Integer getUserId(String user)
+    {
+        Integer userId = userIdCache.get(user);
+        if (userId == null)
+        {
+            try
+            {
+                userId = getJdbcTemplate().queryForObject(GET_USER_ID, Integer.class, user);
+            }
+            catch(EmptyResultDataAccessException e)
+            {
+                Logger.error("TrackingDAO addTrackingEvent get user id failed, username = " + user);
+                Logger.error("Exception = " + e.getMessage());
+                return null;
+            }
+            if (userIdCache.size() >= USER_ID_CACHE_SIZE)
+            {
+                userIdCache.clear();
+            }
+            userIdCache.put(user, userId);
+        }
+        return userId;
+    }
+
+    /**
+     * Validate the event and queue it, it is written asynchronously.
+     * @return an empty message when the event was accepted, the error otherwise
+     */
     public static String addTrackingEvent(JsonNode requestNode, String user)
 	{
         String message = "Internal error";
@@ -98,43 +210,17 @@ public class TrackingDAO extends AbstractMySQLOpenSourceDAO
             return "Missing " + TRACKING_PARAMETERS_COLUMN;
         }
 
-        Integer userId = 0;
+        Integer userId = null;
         if (StringUtils.isNotBlank(user))
         {
-            try
-            {
-                userId = (Integer)getJdbcTemplate().queryForObject(
-                        GET_USER_ID,
-                        Integer.class,
-                        user);
-            }
-            catch(EmptyResultDataAccessException e)
-            {
-                Logger.error("TrackingDAO addTrackingEvent get user id failed, username = " + user);
-                Logger.error("Exception = " + e.getMessage());
-            }
+            userId = getUserId(user);
         }
 
         if (userId != null && userId > 0)
         {
-            try
-            {
-                int row = getJdbcTemplate().update(
-                        ADD_TRACKING_EVENT,
-                        accessTime,
-                        userId,
-                        objectType,
-                        objectId,
-                        objectName,
-                        parameters);
-                if (row > 0) {
-                    message = "";
-                }
-            }
-            catch (Exception e)
-            {
-                message = e.getMessage();
-            }
+            // tracking is best effort, an event dropped under overload is counted in the metrics only
+            trackingBatcher.offer(new Object[] {accessTime, userId, objectType, objectId, objectName, parameters});
+            message = "";
         }
         else
         {
@@ -143,4 +229,96 @@ public class TrackingDAO extends AbstractMySQLOpenSourceDAO
         return message;
     }
 
+    /**
+     * Counters of the tracking pipeline
+     */
+    public static ObjectNode getTrackingMetrics()
+    {
+        ObjectNode metrics = Json.newObject();
+        metrics.put("capacity", trackingBatcher.getCapacity());
+        metrics.put("pending", trackingBatcher.getPending());
+        metrics.put("enqueued", trackingBatcher.getEnqueued());
+        metrics.put("dropped", trackingBatcher.getDropped());
+        metrics.put("written", trackingBatcher.getWritten());
+        metrics.put("failed", trackingBatcher.getFailed());
+        metrics.put("batches", trackingBatcher.getBatches());
+        metrics.put("cachedUsers", userIdCache.size());
+        return metrics;
+    }
+
+    private static long daysSince(int days)
+    {
+        days = Math.max(1, Math.min(days, MAX_STATS_DAYS));
+        return (System.currentTimeMillis() / 1000 / DAY_SECONDS - days + 1) * DAY_SECONDS;
+    }
+
+    /**
+     * Views and distinct users of one object over the last days, today included, with the daily counters
+     */
+    public static ObjectNode getAccessStats(String objectType, Long objectId, int days)
+    {
+        List<Map<String, Object>> rows = getJdbcTemplate().queryForList(GET_DAILY_ACCESS_STATS, objectType,
+                objectId, daysSince(days));
+        long views = 0;
+        HyperLogLog users = new HyperLogLog();
+        ArrayNode daily = Json.newObject().arrayNode();
+        for (Map<String, Object> row : rows)
+        {
+            ObjectNode day = Json.newObject();
+            day.put("periodStart", ((Number) row.get("period_start")).longValue());
+            day.put("views", ((Number) row.get("views")).longValue());
+            day.put("users", ((Number) row.get("distinct_users")).longValue());
+            daily.add(day);
+            views += ((Number) row.get("views")).longValue();
+            // the users of several days are counted once, by merging the sketches of the days
+            users.merge(HyperLogLog.fromBytes((byte[]) row.get("users_sketch")));
+        }
+        ObjectNode stats = Json.newObject();
+        stats.put("objectType", objectType);
+        stats.put("objectId", objectId);
+        stats.put("views", views);
+        stats.put("users", users.cardinality());
+        stats.set("daily", daily);
+        return stats;
+    }
+
+    /**
+     * The most viewed objects of a type over the last days, most viewed first
+     */
+    public static ArrayNode getPopularObjects(String objectType, int days, int limit)
+    {
+        days = Math.max(1, Math.min(days, MAX_STATS_DAYS));
+        limit = Math.max(1, Math.min(limit, MAX_POPULAR_OBJECTS));
+        String key = objectType + ":" + days + ":" + limit;
+        PopularObjects cached = popularCache.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.loadedTime < POPULAR_CACHE_INTERVAL)
+        {
+            return cached.objects.deepCopy();
+        }
+
+        ArrayNode objects = Json.newObject().arrayNode();
+        for (Map<String, Object> row : getJdbcTemplate().queryForList(GET_POPULAR_OBJECTS, objectType,
+                daysSince(days), limit))
+        {
+            ObjectNode object = Json.newObject();
+            object.put("objectId", ((Number) row.get("object_id")).longValue());
+            object.put("views", ((Number) row.get("views")).longValue());
+            objects.add(object);
+        }
+        if (popularCache.size() >= POPULAR_CACHE_SIZE)
+        {
+            popularCache.clear();
+        }
+        popularCache.put(key, new PopularObjects(objects));
+        return objects.deepCopy();
+    }
+
+    /**
+     * Write the queued events, called when the application stops
+     */
+    public static void close()
+    {
+        trackingBatcher.close();
+    }
+
 }
@@ -15,9 +15,13 @@ package models;
 
 public class SchemaHistoryData {
 
+    public Long id;
     public String modified;
-    public String schema;
-    public String fields;
     public int fieldCount;
+    public int added;
+    public int removed;
+    public int changed;
+    // false until the version is analyzed by the dataset ETL, the counts are 0 meanwhile
+    public boolean analyzed;
 
 }
\ No newline at end of file
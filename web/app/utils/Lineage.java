@@ -17,6 +17,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.LineagePathInfo;
 import org.apache.commons.lang3.StringUtils;
+import wherehows.common.DatasetUrn;
 
 import play.Logger;
 
@@ -37,54 +38,34 @@ public class Lineage
             return null;
 
         LineagePathInfo pathInfo = new LineagePathInfo();
-
-        String[] pathArray = urn.split(":///");
-        if (pathArray != null && pathArray.length > 0)
+        DatasetUrn datasetUrn = DatasetUrn.parse(urn);
+        String storageType = datasetUrn.getStorageType();
+        // the path without its leading slash
+        String relative = datasetUrn.getPath().startsWith("/") ? datasetUrn.getPath().substring(1) : datasetUrn.getPath();
+        if (DatasetUrn.HDFS.equals(storageType) || "nas".equals(storageType))
         {
-            String storageType = pathArray[0];
             pathInfo.storageType = storageType;
-            if (StringUtils.isNotBlank(storageType))
+            if (StringUtils.isNotBlank(relative))
             {
-                if (storageType.equalsIgnoreCase("hdfs"))
-                {
-                    if (pathArray.length > 1 && StringUtils.isNotBlank(pathArray[1]))
-                    {
-                        pathInfo.filePath = "/" + pathArray[1];
-                    }
-                }
-                else if (storageType.equalsIgnoreCase("teradata"))
-                {
-                    if (pathArray.length > 1 && StringUtils.isNotBlank(pathArray[1]))
-                    {
-                        int index = pathArray[1].indexOf("/");
-                        if (index != -1)
-                        {
-                            pathInfo.schemaName = pathArray[1].substring(0, index);
-                            pathInfo.filePath = pathArray[1].substring(index+1);
-                        }
-                    }
-                }
-                else if (storageType.equalsIgnoreCase("nas"))
-                {
-                    if (pathArray.length > 1 && StringUtils.isNotBlank(pathArray[1]))
-                    {
-                        pathInfo.filePath = "/" + pathArray[1];
-                    }
-                }
-                else
-                {
-                    pathInfo.storageType = null;
-                    pathInfo.schemaName = null;
-                    pathInfo.filePath = urn;
-                }
+                pathInfo.filePath = "/" + relative;
             }
-            else
+        }
+        else if (DatasetUrn.TERADATA.equals(storageType))
+        {
+            pathInfo.storageType = storageType;
+            int index = relative.indexOf("/");
+            if (index != -1)
             {
-                pathInfo.storageType = null;
-                pathInfo.schemaName = null;
-                pathInfo.filePath = urn;
+                pathInfo.schemaName = relative.substring(0, index);
+                pathInfo.filePath = relative.substring(index+1);
             }
         }
+        else
+        {
+            pathInfo.storageType = null;
+            pathInfo.schemaName = null;
+            pathInfo.filePath = urn;
+        }
 
         return pathInfo;
     }
@@ -97,22 +78,8 @@ public class Lineage
         String filePath = "";
         if (StringUtils.isNotBlank(pathInfo.filePath))
         {
-            if(pathInfo.filePath.charAt(0) == '/')
-            {
-                filePath = pathInfo.filePath.substring(1);
-            }
-            else
-            {
-                filePath = pathInfo.filePath;
-            }
-        }
-        if (StringUtils.isNotBlank(pathInfo.storageType) && pathInfo.storageType.equalsIgnoreCase("teradata"))
-        {
-            return "teradata:///" + pathInfo.schemaName + "/" + filePath;
-        }
-        else
-        {
-            return pathInfo.storageType.toLowerCase() + ":///" + filePath;
+            filePath = pathInfo.filePath.charAt(0) == '/' ? pathInfo.filePath.substring(1) : pathInfo.filePath;
         }
+        return DatasetUrn.of(pathInfo.storageType, pathInfo.schemaName, filePath).getUrn();
     }
 }
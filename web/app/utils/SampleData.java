@@ -13,196 +13,434 @@
  */
 package utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
+/**
+ * Masks the sensitive values of a dataset sample. The sample JSON is rewritten in one pass from the
+ * parser to the generator, following {@link Rules} compiled once from the configuration:
+ * <ul>
+ *   <li>tabular samples, {"sample": {"columnNames": [...], "data": [[...], ...]}}, have every value of a
+ *   column masked when the column name is listed or matches one of the column patterns</li>
+ *   <li>record samples, {"sample": [{...}, ...]}, have the fields of each record rewritten by dotted path,
+ *   e.g. header.auditHeader.messageId, with one of the actions mask, hex or size</li>
+ * </ul>
+ */
 public class SampleData
 {
-    private final static String MEMBER_ID = "memberId";
-    private final static String TREE_ID = "treeId";
-    private final static String TRACKING_ID = "trackingId";
-    private final static String IP_AS_BYTES = "ip_as_bytes";
-    private final static String ATTACHMENTS = "attachments";
-    private final static String PAYLOAD = "payload";
-    private final static String MEDIA = "MEDIA";
-    private final static String HEADER = "header";
-    private final static String GUID = "guid";
-    private final static String AUDITHEADER = "auditHeader";
-    private final static String MESSAGE_ID = "messageId";
-    private final static String REQUEST = "request";
-    private final static String REQUEST_HEADER = "requestHeader";
-
-    public static String convertToHexString(JsonNode node)
+    public final static String MASK = "********";
+
+    public final static List<String> DEFAULT_MASKED_COLUMNS =
+            Arrays.asList("member_sk", "membersk", "member_id", "memberid", "mem_sk", "mem_id");
+
+    public final static List<String> DEFAULT_MASKED_FIELDS = Arrays.asList(
+            "memberId:mask", "treeId:hex", "trackingId:hex", "ip_as_bytes:hex", "attachments.payload:size",
+            "MEDIA:hex", "header.memberId:mask", "header.guid:hex", "header.treeId:hex",
+            "header.auditHeader.messageId:hex", "request.attachments.payload:size", "requestHeader.ip_as_bytes:hex");
+
+    private final static String SAMPLE = "sample";
+    private final static String COLUMN_NAMES = "columnNames";
+    private final static String DATA = "data";
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+    private final static JsonFactory FACTORY = MAPPER.getFactory();
+
+    enum Action
     {
-        String result = null;
-        if (node != null)
+        // replace the value with ********
+        MASK,
+        // replace an array of bytes with the hex string of their first bytes
+        HEX,
+        // replace a binary payload with its size
+        SIZE
+    }
+
+    /**
+     * One state of the field path automaton: the action for the path ending here and the transitions
+     * to the nested fields.
+     */
+    static class FieldRule
+    {
+        Action action;
+        final Map<String, FieldRule> children = new HashMap<String, FieldRule>();
+    }
+
+    public static class Rules
+    {
+        private final Set<String> columns = new HashSet<String>();
+        private final Pattern columnPattern;
+        private final FieldRule fields = new FieldRule();
+
+        /**
+         * @param columns column names masked in tabular samples, case insensitive
+         * @param columnPatterns regular expressions of column names masked in tabular samples, case insensitive
+         * @param fieldRules dotted field paths of record samples with their action, e.g. header.guid:hex
+         */
+        public Rules(Collection<String> columns, Collection<String> columnPatterns, Collection<String> fieldRules)
         {
-            if (node.isArray())
+            for (String column : columns)
+            {
+                if (StringUtils.isNotBlank(column))
+                {
+                    this.columns.add(column.trim().toLowerCase());
+                }
+            }
+
+            StringBuilder regex = new StringBuilder();
+            for (String pattern : columnPatterns)
+            {
+                if (StringUtils.isNotBlank(pattern))
+                {
+                    regex.append(regex.length() == 0 ? "" : "|").append("(?:").append(pattern.trim()).append(")");
+                }
+            }
+            this.columnPattern = regex.length() == 0 ? null : Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+
+            for (String fieldRule : fieldRules)
             {
-                Iterator<JsonNode> arrayIterator = node.elements();
-                StringBuilder sb = new StringBuilder();
-                while (arrayIterator.hasNext()) {
-                    JsonNode elementNode = arrayIterator.next();
-                    if (elementNode != null)
+                int split = fieldRule.lastIndexOf(':');
+                if (split <= 0)
+                {
+                    throw new IllegalArgumentException("Sample mask rule without action: " + fieldRule);
+                }
+                FieldRule state = fields;
+                for (String name : fieldRule.substring(0, split).trim().split("\\."))
+                {
+                    FieldRule next = state.children.get(name);
+                    if (next == null)
                     {
-                        String text = elementNode.asText();
-                        if (StringUtils.isNotBlank(text))
-                        {
-                            byte[] bytes = text.getBytes();
-                            if (bytes != null && bytes.length > 0)
-                            {
-                                sb.append(String.format("%02x", text.getBytes()[0]));
-                            }
-                        }
+                        next = new FieldRule();
+                        state.children.put(name, next);
                     }
+                    state = next;
                 }
-                result = sb.toString();
+                state.action = Action.valueOf(fieldRule.substring(split + 1).trim().toUpperCase());
             }
-            else
+        }
+
+        boolean isMaskedColumn(String name)
+        {
+            return name != null && (columns.contains(name.toLowerCase())
+                    || (columnPattern != null && columnPattern.matcher(name).matches()));
+        }
+
+        /**
+         * Returns the masked flag of each column, or null if no column is masked.
+         */
+        boolean[] maskedColumns(JsonNode columnNames)
+        {
+            if (columnNames == null || !columnNames.isArray())
             {
-                result = node.asText();
+                return null;
             }
+            boolean[] masked = new boolean[columnNames.size()];
+            boolean any = false;
+            for (int i = 0; i < masked.length; i++)
+            {
+                masked[i] = isMaskedColumn(columnNames.get(i).asText());
+                any |= masked[i];
+            }
+            return any ? masked : null;
         }
-
-        return result;
     }
 
-    public static JsonNode secureSampleData(JsonNode sample) {
-
-        String[] nameArray = new String[]{"member_sk", "membersk", "member_id", "memberid", "mem_sk", "mem_id"};
-        if (sample != null && sample.has("sample")) {
-            JsonNode sampleNode = sample.get("sample");
-            if (sampleNode != null && sampleNode.has("columnNames") && sampleNode.has("data")) {
-                JsonNode namesNode = sampleNode.get("columnNames");
-                JsonNode dataNode = sampleNode.get("data");
-                if (namesNode != null && namesNode.isArray()) {
-                    for (int i = 0; i < namesNode.size(); i++) {
-                        if (Arrays.asList(nameArray).contains(namesNode.get(i).asText().toLowerCase())) {
-                            if (dataNode != null && dataNode.isArray()) {
-                                for (JsonNode node : dataNode) {
-                                    JsonNode valueNode = node.get(i);
-                                    ((ArrayNode)node).set(i, new TextNode("********"));
-                                }
-                            }
-                        }
+    /**
+     * Returns the sample JSON with its sensitive values masked by the given rules.
+     */
+    public static String mask(String sample, Rules rules) throws IOException
+    {
+        StringWriter writer = new StringWriter(sample.length());
+        JsonParser parser = FACTORY.createParser(sample);
+        JsonGenerator generator = FACTORY.createGenerator(writer);
+        try
+        {
+            if (parser.nextToken() == JsonToken.START_OBJECT)
+            {
+                generator.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    if (SAMPLE.equals(parser.getCurrentName()))
+                    {
+                        generator.writeFieldName(SAMPLE);
+                        parser.nextToken();
+                        maskSample(parser, generator, rules);
+                    }
+                    else
+                    {
+                        generator.copyCurrentStructure(parser);
                     }
                 }
+                generator.writeEndObject();
             }
-            else
+            else if (parser.getCurrentToken() != null)
             {
-                int index = 0;
-                Iterator<JsonNode> arrayIterator = sampleNode.elements();
-                while (arrayIterator.hasNext()) {
-                    JsonNode sampleRowNode = arrayIterator.next();
-                    if (sampleRowNode != null)
-                    {
-                        if (sampleRowNode.has(MEMBER_ID))
-                        {
-                            ((ObjectNode)sampleRowNode).put(MEMBER_ID, new TextNode("********"));
-                        }
-                        if (sampleRowNode.has(TREE_ID))
-                        {
-                            JsonNode treeIdNode = sampleRowNode.get(TREE_ID);
-                            String convertedValue = convertToHexString(treeIdNode);
-                            ((ObjectNode) sampleRowNode).put(TREE_ID, new TextNode(convertedValue));
-                        }
-                        if (sampleRowNode.has(TRACKING_ID))
-                        {
-                            JsonNode trackingIdNode = sampleRowNode.get(TRACKING_ID);
-                            String convertedValue = convertToHexString(trackingIdNode);
-                            ((ObjectNode) sampleRowNode).put(TRACKING_ID, new TextNode(convertedValue));
-                        }
-                        if (sampleRowNode.has(IP_AS_BYTES))
-                        {
-                            JsonNode ipNode = sampleRowNode.get(IP_AS_BYTES);
-                            String convertedValue = convertToHexString(ipNode);
-                            ((ObjectNode) sampleRowNode).put(IP_AS_BYTES, new TextNode(convertedValue));
-                        }
-                        if (sampleRowNode.has(ATTACHMENTS))
-                        {
-                            JsonNode attachmentNode = sampleRowNode.get(ATTACHMENTS);
-                            if (attachmentNode.has(PAYLOAD))
-                            {
-                                JsonNode payloadNode = attachmentNode.get(PAYLOAD);
-                                String value = "** " + Integer.toString(payloadNode.size()) + " bytes binary data **";
-                                ((ObjectNode) attachmentNode).put(PAYLOAD, new TextNode(value));
-                            }
-                        }
-                        if (sampleRowNode.has(MEDIA))
-                        {
-                            JsonNode mediaNode = sampleRowNode.get(MEDIA);
-                            String convertedValue = convertToHexString(mediaNode);
-                            ((ObjectNode) sampleRowNode).put(MEDIA, new TextNode(convertedValue));
-                        }
-                        if (sampleRowNode.has(HEADER))
-                        {
-                            JsonNode headerNode = sampleRowNode.get(HEADER);
-                            if (headerNode != null)
-                            {
-                                if (headerNode.has(MEMBER_ID))
-                                {
-                                    ((ObjectNode)headerNode).put(MEMBER_ID, new TextNode("********"));
-                                }
-                                if (headerNode.has(GUID))
-                                {
-                                    JsonNode guidNode = headerNode.get(GUID);
-                                    String convertedValue = convertToHexString(guidNode);
-                                    ((ObjectNode) headerNode).put(GUID, new TextNode(convertedValue));
-                                }
-                                if (headerNode.has(TREE_ID))
-                                {
-                                    JsonNode headerTreeIdNode = headerNode.get(TREE_ID);
-                                    String convertedValue = convertToHexString(headerTreeIdNode);
-                                    ((ObjectNode) headerNode).put(TREE_ID, new TextNode(convertedValue));
-                                }
-                                if (headerNode.has(AUDITHEADER))
-                                {
-                                    JsonNode auditHeaderNode = headerNode.get(AUDITHEADER);
-                                    if (auditHeaderNode != null && auditHeaderNode.has(MESSAGE_ID))
-                                    {
-                                        JsonNode messageIdNode = auditHeaderNode.get(MESSAGE_ID);
-                                        String convertedValue = convertToHexString(messageIdNode);
-                                        ((ObjectNode) auditHeaderNode).put(MESSAGE_ID, new TextNode(convertedValue));
-                                    }
-                                }
-                            }
-                        }
-                        if (sampleRowNode.has(REQUEST))
-                        {
-                            JsonNode requestNode = sampleRowNode.get(REQUEST);
-                            if (requestNode != null && requestNode.has(ATTACHMENTS))
-                            {
-                                JsonNode attachmentsNode = requestNode.get(ATTACHMENTS);
-                                if (attachmentsNode != null && attachmentsNode.has(PAYLOAD))
-                                {
-                                    JsonNode payloadNode = attachmentsNode.get(PAYLOAD);
-                                    String value = "** " +
-                                            Integer.toString(payloadNode.size()) +
-                                            " bytes binary data **";
-                                    ((ObjectNode) attachmentsNode).put(PAYLOAD, new TextNode(value));
-                                }
-                            }
-                        }
-                        if (sampleRowNode.has(REQUEST_HEADER))
-                        {
-                            JsonNode requestHeaderNode = sampleRowNode.get(REQUEST_HEADER);
-                            if (requestHeaderNode != null && requestHeaderNode.has(IP_AS_BYTES))
-                            {
-                                JsonNode ipNode = requestHeaderNode.get(IP_AS_BYTES);
-                                String convertedValue = convertToHexString(ipNode);
-                                ((ObjectNode) requestHeaderNode).put(IP_AS_BYTES, new TextNode(convertedValue));
-                            }
-                        }
-                    }
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        finally
+        {
+            parser.close();
+            generator.close();
+        }
+        return writer.toString();
+    }
+
+    private static void maskSample(JsonParser parser, JsonGenerator generator, Rules rules) throws IOException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_ARRAY)
+        {
+            generator.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY)
+            {
+                maskRecord(parser, generator, rules.fields);
+            }
+            generator.writeEndArray();
+        }
+        else if (token == JsonToken.START_OBJECT)
+        {
+            // the columns are usually listed before the data, otherwise the data is held until they are known
+            JsonNode columnNames = null;
+            JsonNode pendingData = null;
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (COLUMN_NAMES.equals(name))
+                {
+                    columnNames = parser.readValueAsTree();
+                    generator.writeFieldName(name);
+                    generator.writeTree(columnNames);
+                }
+                else if (DATA.equals(name) && columnNames == null)
+                {
+                    pendingData = parser.readValueAsTree();
                 }
+                else if (DATA.equals(name))
+                {
+                    generator.writeFieldName(name);
+                    maskData(parser, generator, rules.maskedColumns(columnNames));
+                }
+                else
+                {
+                    generator.writeFieldName(name);
+                    maskRecord(parser, generator, rules.fields);
+                }
+            }
+            if (pendingData != null)
+            {
+                JsonParser dataParser = pendingData.traverse(MAPPER);
+                dataParser.nextToken();
+                generator.writeFieldName(DATA);
+                if (columnNames != null)
+                {
+                    maskData(dataParser, generator, rules.maskedColumns(columnNames));
+                }
+                else
+                {
+                    maskRecord(dataParser, generator, rules.fields);
+                }
+            }
+            generator.writeEndObject();
+        }
+        else
+        {
+            generator.copyCurrentStructure(parser);
+        }
+    }
+
+    private static void maskData(JsonParser parser, JsonGenerator generator, boolean[] masked) throws IOException
+    {
+        if (masked == null || parser.getCurrentToken() != JsonToken.START_ARRAY)
+        {
+            generator.copyCurrentStructure(parser);
+            return;
+        }
+        generator.writeStartArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY)
+        {
+            if (parser.getCurrentToken() != JsonToken.START_ARRAY)
+            {
+                generator.copyCurrentStructure(parser);
+                continue;
+            }
+            generator.writeStartArray();
+            int i = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY)
+            {
+                if (i < masked.length && masked[i])
+                {
+                    parser.skipChildren();
+                    generator.writeString(MASK);
+                }
+                else
+                {
+                    generator.copyCurrentStructure(parser);
+                }
+                i++;
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void maskRecord(JsonParser parser, JsonGenerator generator, FieldRule state) throws IOException
+    {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT || state.children.isEmpty())
+        {
+            generator.copyCurrentStructure(parser);
+            return;
+        }
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            FieldRule next = state.children.get(parser.getCurrentName());
+            if (next == null)
+            {
+                generator.copyCurrentStructure(parser);
+                continue;
+            }
+            generator.writeFieldName(parser.getCurrentName());
+            parser.nextToken();
+            if (next.action != null)
+            {
+                generator.writeString(apply(parser, next.action));
+            }
+            else
+            {
+                maskRecord(parser, generator, next);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Consumes the current value and returns its replacement.
+     */
+    private static String apply(JsonParser parser, Action action) throws IOException
+    {
+        switch (action)
+        {
+            case HEX:
+                return toHexString(parser);
+            case SIZE:
+                return "** " + Integer.toString(countElements(parser)) + " bytes binary data **";
+            default:
+                parser.skipChildren();
+                return MASK;
+        }
+    }
+
+    /**
+     * An array of bytes becomes the hex string of the first byte of each element, any other scalar its text.
+     */
+    static String toHexString(JsonParser parser) throws IOException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT)
+        {
+            parser.skipChildren();
+            return "";
+        }
+        if (token != JsonToken.START_ARRAY)
+        {
+            return parser.getText();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY)
+        {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)
+            {
+                parser.skipChildren();
+                continue;
+            }
+            String text = parser.getText();
+            if (StringUtils.isNotBlank(text))
+            {
+                char c = text.charAt(0);
+                int b = c < 0x80 ? c : text.getBytes()[0] & 0xff;
+                sb.append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0x0f]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int countElements(JsonParser parser) throws IOException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT)
+        {
+            return 0;
+        }
+        int count = 0;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT)
+        {
+            if (token == JsonToken.FIELD_NAME)
+            {
+                parser.nextToken();
+            }
+            parser.skipChildren();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Masked samples by dataset id, each tagged with the version of the sample rows it was built from.
+     * The least recently used samples are dropped once the cached text exceeds the given number of chars.
+     */
+    public static class Cache
+    {
+        private final long maxChars;
+        private long chars = 0;
+        private final LinkedHashMap<Integer, String[]> samples = new LinkedHashMap<Integer, String[]>(16, 0.75f, true);
+
+        public Cache(long maxChars)
+        {
+            this.maxChars = maxChars;
+        }
+
+        public synchronized String get(int datasetId, String version)
+        {
+            String[] sample = samples.get(datasetId);
+            return sample != null && sample[0].equals(version) ? sample[1] : null;
+        }
+
+        public synchronized void put(int datasetId, String version, String masked)
+        {
+            if (masked.length() > maxChars)
+            {
+                return;
+            }
+            String[] previous = samples.put(datasetId, new String[]{version, masked});
+            chars += masked.length() - (previous == null ? 0 : previous[1].length());
+            Iterator<String[]> eldest = samples.values().iterator();
+            while (chars > maxChars && eldest.hasNext())
+            {
+                chars -= eldest.next()[1].length();
+                eldest.remove();
             }
         }
-        return sample;
     }
-}
\ No newline at end of file
+}
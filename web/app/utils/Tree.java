@@ -14,27 +14,250 @@
 package utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.lang3.StringUtils;
 import play.Logger;
 import play.Play;
 import play.libs.Json;
+import wherehows.common.DatasetUrn;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Tree
 {
-    public static JsonNode loadTreeJsonNode(String key) {
-        if (StringUtils.isNotBlank(key)) {
-            String treeName = Play.application().configuration().getString(key);
-            if (StringUtils.isNotBlank(treeName)) {
-                try {
-                    return Json.parse(new FileInputStream(new File(treeName)));
-                } catch (Exception e) {
-                    Logger.error(e.getMessage());
+    private final static String CHILDREN = "children";
+    private final static String TITLE = "title";
+    private final static String LAZY = "lazy";
+    private final static String PATH_DELIMITER = "/";
+
+    private final static Map<String, TreeSnapshot> treeCache = new ConcurrentHashMap<String, TreeSnapshot>();
+
+    /**
+     * An immutable, parsed view of one tree file. A snapshot is only replaced when the
+     * modification time or size of the underlying file changes.
+     */
+    public static class TreeSnapshot
+    {
+        private final long lastModified;
+        private final long length;
+        private final JsonNode root;
+        // folders with the same title under the same parent share a path, their children are listed together
+        private final Map<String, List<JsonNode>> folders;
+        private final String etag;
+        private volatile String serialized;
+
+        TreeSnapshot(long lastModified, long length, JsonNode root)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.root = root;
+            this.folders = Collections.unmodifiableMap(indexFolders(root));
+            this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        }
+
+        boolean isCurrent(File file)
+        {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        public JsonNode getRoot()
+        {
+            return root;
+        }
+
+        public String getETag()
+        {
+            return etag;
+        }
+
+        public String toJsonString()
+        {
+            String result = serialized;
+            if (result == null)
+            {
+                result = Json.stringify(root);
+                serialized = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns one level of children below the given path, or null if the path is unknown.
+         * The returned nodes carry no grand children; folders are flagged as lazy instead. Sibling folders
+         * with the same title are listed once, with the children of all of them.
+         */
+        public ArrayNode getChildren(String path)
+        {
+            String normalized = normalizePath(path);
+            List<JsonNode> parents = StringUtils.isEmpty(normalized) ? Collections.<JsonNode>singletonList(root)
+                    : folders.get(normalized);
+            if (parents == null || !parents.get(0).has(CHILDREN))
+            {
+                return null;
+            }
+
+            ArrayNode result = Json.newObject().arrayNode();
+            Set<String> folderTitles = new HashSet<String>();
+            for (JsonNode parent : parents)
+            {
+                addShallowChildren(parent, folderTitles, result);
+            }
+            return result;
+        }
+
+        private static void addShallowChildren(JsonNode parent, Set<String> folderTitles, ArrayNode result)
+        {
+            for (JsonNode child : parent.get(CHILDREN))
+            {
+                JsonNode grandChildren = child.get(CHILDREN);
+                boolean folder = grandChildren != null && grandChildren.size() > 0;
+                if (folder && !folderTitles.add(child.has(TITLE) ? child.get(TITLE).asText() : ""))
+                {
+                    // the folder of the same title already listed opens the children of both
+                    continue;
+                }
+                ObjectNode shallow = Json.newObject();
+                Iterator<Map.Entry<String, JsonNode>> fields = child.fields();
+                while (fields.hasNext())
+                {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    if (!CHILDREN.equals(field.getKey()))
+                    {
+                        shallow.set(field.getKey(), field.getValue());
+                    }
                 }
+                shallow.put(LAZY, folder);
+                result.add(shallow);
             }
         }
+    }
+
+    public static String normalizePath(String path)
+    {
+        if (StringUtils.isBlank(path))
+        {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String segment : path.replace(DatasetUrn.URN_DELIMITER, PATH_DELIMITER).split(PATH_DELIMITER))
+        {
+            if (StringUtils.isNotEmpty(segment))
+            {
+                if (sb.length() > 0)
+                {
+                    sb.append(PATH_DELIMITER);
+                }
+                sb.append(segment);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, List<JsonNode>> indexFolders(JsonNode root)
+    {
+        Map<String, List<JsonNode>> index = new HashMap<String, List<JsonNode>>();
+        // breadth first, so folders sharing a path are kept in the order of the file
+        Deque<Map.Entry<String, JsonNode>> queue = new ArrayDeque<Map.Entry<String, JsonNode>>();
+        queue.add(new AbstractMap.SimpleImmutableEntry<String, JsonNode>("", root));
+        while (!queue.isEmpty())
+        {
+            Map.Entry<String, JsonNode> entry = queue.poll();
+            JsonNode children = entry.getValue().get(CHILDREN);
+            if (children == null || !children.isArray())
+            {
+                continue;
+            }
+            for (JsonNode child : children)
+            {
+                JsonNode grandChildren = child.get(CHILDREN);
+                if (grandChildren == null || grandChildren.size() == 0)
+                {
+                    // leaf nodes share their title with the folder node of the same name
+                    continue;
+                }
+                String title = child.has(TITLE) ? child.get(TITLE).asText() : "";
+                String childPath = StringUtils.isEmpty(entry.getKey()) ? title : entry.getKey() + PATH_DELIMITER + title;
+                List<JsonNode> sameTitle = index.get(childPath);
+                if (sameTitle == null)
+                {
+                    sameTitle = new ArrayList<JsonNode>();
+                    index.put(childPath, sameTitle);
+                }
+                sameTitle.add(child);
+                queue.add(new AbstractMap.SimpleImmutableEntry<String, JsonNode>(childPath, child));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the parsed tree configured under the given key, re-parsing the file only when it
+     * has changed since the last call. Returns null if the tree is not configured or unreadable.
+     */
+    public static TreeSnapshot getTreeSnapshot(String key)
+    {
+        if (StringUtils.isBlank(key))
+        {
+            return null;
+        }
+        String treeName = Play.application().configuration().getString(key);
+        if (StringUtils.isBlank(treeName))
+        {
+            return null;
+        }
+
+        File treeFile = new File(treeName);
+        TreeSnapshot snapshot = treeCache.get(key);
+        if (snapshot != null && snapshot.isCurrent(treeFile))
+        {
+            return snapshot;
+        }
+
+        synchronized (treeCache)
+        {
+            snapshot = treeCache.get(key);
+            if (snapshot != null && snapshot.isCurrent(treeFile))
+            {
+                return snapshot;
+            }
+            long lastModified = treeFile.lastModified();
+            long length = treeFile.length();
+            try (InputStream in = new FileInputStream(treeFile))
+            {
+                TreeSnapshot loaded = new TreeSnapshot(lastModified, length, Json.parse(in));
+                treeCache.put(key, loaded);
+                return loaded;
+            }
+            catch (Exception e)
+            {
+                Logger.error("Tree loadTree failed for " + treeName + ". Error message: " + e.getMessage());
+                // keep serving the previous version while the file is being rewritten
+                return snapshot;
+            }
+        }
+    }
+
+    public static JsonNode loadTreeJsonNode(String key) {
+        TreeSnapshot snapshot = getTreeSnapshot(key);
+        if (snapshot != null)
+        {
+            return snapshot.getRoot();
+        }
 
         return Json.toJson("");
     }
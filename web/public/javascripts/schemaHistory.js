@@ -38,6 +38,7 @@
         var currentLeft, currentRight, leftSelected, rightSelected;
         var chartData = [];
         var schemaData = [];
+        var currentDatasetId;
         var skipChangeEvent = false;
 
         function updateSchemas(page, datasetId)
@@ -83,6 +84,38 @@
             jsondiffpatch.formatters.html.hideUnchanged();
         }
 
+        // fetch the schemas of two versions, by their index in schemaData, and show their diff
+        function showDiff(leftIndex, rightIndex)
+        {
+            if (rightIndex == null)
+            {
+                currentLeft = {};
+                currentRight = {};
+                updateDiffView();
+                return;
+            }
+            var diffUrl = '/api/v1/schemaHistory/historyData/' + currentDatasetId + '?right=' +
+                schemaData[rightIndex].id;
+            if (leftIndex != null)
+            {
+                diffUrl += '&left=' + schemaData[leftIndex].id;
+            }
+            $.get(diffUrl, function(data) {
+                if (data && data.status == "ok" && data.diff)
+                {
+                    currentLeft = data.diff.left ? JSON.parse(data.diff.left) : {};
+                    currentRight = data.diff.right ? JSON.parse(data.diff.right) : {};
+                    updateDiffView();
+                }
+            });
+        }
+
+        function selectedIndex(selector)
+        {
+            var selected = $(selector).val();
+            return selected == 'na' ? null : parseInt(selected);
+        }
+
         function updateTimeLine(id, highlightFirstRow)
         {
             var historyUrl = '/api/v1/schemaHistory/historyData/' + id;
@@ -95,11 +128,10 @@
                         highlightRow(null, null, true);
                     }
                     schemaData = data.data;
-                    currentRight = JSON.parse(schemaData[schemaData.length-1].schema);
-                    currentLeft = {};
+                    currentDatasetId = id;
                     rightSelected = schemaData[schemaData.length-1];
                     leftSelected = null;
-                    updateDiffView();
+                    showDiff(null, schemaData.length-1);
                     chartData = [];
                     $("#leftSchemaSelector").html('');
                     $("#leftSchemaSelector").append(new Option('-- choose a date --', 'na'));
@@ -122,15 +154,7 @@
                         {
                             return;
                         }
-                        var selected = $('#leftSchemaSelector').val();
-                        if (selected == 'na'){
-                            currentLeft = {};
-                        } else {
-                            var index = parseInt(selected);
-                            var left = JSON.parse(schemaData[selected].schema);
-                            currentLeft = left;
-                        }
-                        updateDiffView();
+                        showDiff(selectedIndex('#leftSchemaSelector'), selectedIndex('#rightSchemaSelector'));
                     });
 
                     $('#rightSchemaSelector').change(function(){
@@ -138,15 +162,7 @@
                         {
                             return;
                         }
-                        var selected = $('#rightSchemaSelector').val();
-                        if (selected == 'na'){
-                            currentRight = {};
-                        } else {
-                            var index = parseInt(selected);
-                            var right = JSON.parse(schemaData[selected].schema);
-                            currentRight = right;
-                        }
-                        updateDiffView();
+                        showDiff(selectedIndex('#leftSchemaSelector'), selectedIndex('#rightSchemaSelector'));
                     });
                     $('#rightSchemaSelector').val((schemaData.length-1).toString());
                     $('#leftSchemaSelector').val('na');
@@ -188,17 +204,13 @@
                                                 {
                                                     $('#leftSchemaSelector').val((index-1).toString());
                                                 }
-                                                currentRight = JSON.parse(schemaData[index].schema);
-                                                currentLeft = JSON.parse(schemaData[index-1].schema);
-                                                updateDiffView();
+                                                showDiff(index-1, index);
                                             }
                                             else if (index == 0)
                                             {
                                                 $('#rightSchemaSelector').val(index.toString());
                                                 $('#leftSchemaSelector').val('na');
-                                                currentRight = JSON.parse(schemaData[index].schema);
-                                                currentLeft = {};
-                                                updateDiffView();
+                                                showDiff(null, index);
                                             }
                                         }
                                         skipChangeEvent = false;
@@ -218,7 +230,6 @@
                         tooltip: {
                             formatter: function() {
                                 var index = this.point.index;
-                                var changed = 0;
                                 var text = "<b>" + Highcharts.dateFormat('%b %e %Y', this.point.x) + '</b><br/>'
                                 if (index == 0)
                                 {
@@ -227,35 +238,16 @@
                                     text+= 'Click the node to view schema</span>';
                                     return text;
                                 }
-                                else
-                                {
-                                    changed = schemaData[index].fieldCount - schemaData[index-1].fieldCount;
-                                }
-
-                                if (changed == 0)
-                                {
-                                    text += "No";
-                                }
-                                else{
-                                    text += Math.abs(changed);
-                                }
 
-                                if (changed == 1 || changed == -1) {
-                                    text += ' column has been ';
-                                }
-                                else {
-                                    text += ' columns has been ';
-                                }
-                                if (changed == 0)
+                                var version = schemaData[index];
+                                if (version.added + version.removed + version.changed == 0)
                                 {
-                                    text += ' added/removed ';
+                                    text += 'No column has been added/removed ';
                                 }
-                                else if (changed > 0)
+                                else
                                 {
-                                    text += ' added ';
-                                }
-                                else {
-                                    text += ' removed ';
+                                    text += version.added + ' added, ' + version.removed + ' removed, ' +
+                                        version.changed + ' changed ';
                                 }
                                 text += 'since last change <br/><span style="color:blue;' +
                                 'font-style: italic;">';
@@ -1,7 +1,14 @@
 import org.junit.*;
 
+import play.GlobalSettings;
 import play.mvc.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
 import static play.test.Helpers.*;
 import static org.fest.assertions.Assertions.*;
 
@@ -16,5 +23,58 @@ public class ApplicationTest {
         assertThat(contentType(html)).isEqualTo("text/html");
     }
 
+    private static void writeTree(File file, String json, long lastModified)
+    {
+        try
+        {
+            Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        file.setLastModified(lastModified);
+    }
+
+    @Test
+    public void treeETag() throws Exception
+    {
+        final File tree = File.createTempFile("tree", ".json");
+        tree.deleteOnExit();
+        writeTree(tree, "{\"children\": [{\"title\": \"hdfs\", \"children\": [{\"title\": \"a\"}]}]}", 1000000L);
+
+        // the default global settings, the tree needs no spring context
+        running(fakeApplication(Collections.singletonMap("test.tree.name", tree.getPath()), new GlobalSettings()),
+                new Runnable()
+        {
+            public void run()
+            {
+                Result result = callAction(controllers.routes.ref.Application.loadTree("test"));
+                assertThat(status(result)).isEqualTo(OK);
+                String etag = header(ETAG, result);
+                assertThat(etag).isNotNull();
+
+                // the not modified responses carry the etag too, for the browser to keep revalidating with it
+                result = callAction(controllers.routes.ref.Application.loadTree("test"),
+                        fakeRequest().withHeader(IF_NONE_MATCH, etag));
+                assertThat(status(result)).isEqualTo(NOT_MODIFIED);
+                assertThat(header(ETAG, result)).isEqualTo(etag);
+
+                result = callAction(controllers.routes.ref.Application.loadTreeChildren("test", "hdfs"),
+                        fakeRequest().withHeader(IF_NONE_MATCH, etag));
+                assertThat(status(result)).isEqualTo(NOT_MODIFIED);
+                assertThat(header(ETAG, result)).isEqualTo(etag);
+
+                // a rewritten file is served again with a new etag
+                writeTree(tree, "{\"children\": [{\"title\": \"hive\", \"children\": [{\"title\": \"b\"}]}]}", 2000000L);
+                result = callAction(controllers.routes.ref.Application.loadTreeChildren("test", "hive"),
+                        fakeRequest().withHeader(IF_NONE_MATCH, etag));
+                assertThat(status(result)).isEqualTo(OK);
+                assertThat(header(ETAG, result)).isNotEqualTo(etag);
+                assertThat(contentAsString(result)).contains("\"title\":\"b\"");
+            }
+        });
+    }
+
 
 }
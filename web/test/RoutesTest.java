@@ -0,0 +1,35 @@
+import org.junit.*;
+
+import play.GlobalSettings;
+import play.libs.Json;
+import play.mvc.*;
+
+import java.util.Collections;
+
+import static play.test.Helpers.*;
+import static org.fest.assertions.Assertions.*;
+
+
+public class RoutesTest {
+
+    @Test
+    public void bulkDatasetOwnersRoute()
+    {
+        running(fakeApplication(Collections.<String, Object>emptyMap(), new GlobalSettings()), new Runnable()
+        {
+            public void run()
+            {
+                // reaches updateDatasetsOwners, not updateDatasetOwners with "owners" as the dataset id
+                Result result = route(fakeRequest(POST, "/api/v1/datasets/owners"));
+                assertThat(result).isNotNull();
+                assertThat(status(result)).isEqualTo(OK);
+                assertThat(contentAsString(result)).contains("Unauthorized User.");
+
+                result = route(fakeRequest(POST, "/api/v1/datasets/owners").withSession("user", "test")
+                        .withJsonBody(Json.parse("{}")));
+                assertThat(status(result)).isEqualTo(BAD_REQUEST);
+                assertThat(contentAsString(result)).isEqualTo("Expecting a JSON array of dataset owners");
+            }
+        });
+    }
+}
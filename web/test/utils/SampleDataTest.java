@@ -0,0 +1,142 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.*;
+
+/**
+ * The expected samples are the output of the tree based secureSampleData the streaming masking replaced,
+ * compared as JSON trees since the order of the fields may differ.
+ */
+public class SampleDataTest
+{
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+
+    private final static SampleData.Rules DEFAULT_RULES = new SampleData.Rules(SampleData.DEFAULT_MASKED_COLUMNS,
+            Collections.<String>emptyList(), SampleData.DEFAULT_MASKED_FIELDS);
+
+    private static void assertMasked(String sample, String expected) throws Exception
+    {
+        assertThat(MAPPER.readTree(SampleData.mask(sample, DEFAULT_RULES))).isEqualTo(MAPPER.readTree(expected));
+    }
+
+    @Test
+    public void maskColumns() throws Exception
+    {
+        assertMasked(
+                "{\"sample\": {\"columnNames\": [\"MEMBER_SK\", \"name\", \"mem_id\"], " +
+                        "\"data\": [[1, \"john\", 3], [2, \"jane\", null]]}, \"urn\": \"hdfs:///data/member\"}",
+                "{\"sample\": {\"columnNames\": [\"MEMBER_SK\", \"name\", \"mem_id\"], " +
+                        "\"data\": [[\"********\", \"john\", \"********\"], [\"********\", \"jane\", \"********\"]]}, " +
+                        "\"urn\": \"hdfs:///data/member\"}");
+    }
+
+    @Test
+    public void maskColumnsListedAfterData() throws Exception
+    {
+        assertMasked(
+                "{\"sample\": {\"data\": [[1, \"john\"], [2, \"jane\"]], \"columnNames\": [\"memberId\", \"name\"]}}",
+                "{\"sample\": {\"columnNames\": [\"memberId\", \"name\"], " +
+                        "\"data\": [[\"********\", \"john\"], [\"********\", \"jane\"]]}}");
+    }
+
+    @Test
+    public void maskRecordFields() throws Exception
+    {
+        assertMasked(
+                "{\"sample\": [{\"memberId\": 5, \"treeId\": [65, 66], \"trackingId\": \"abc\", " +
+                        "\"ip_as_bytes\": [\"Z\", \"1\"], \"attachments\": {\"payload\": [1, 2, 3]}, " +
+                        "\"MEDIA\": [1], \"other\": {\"memberId\": 1}}, {\"name\": \"no rule\"}]}",
+                "{\"sample\": [{\"memberId\": \"********\", \"treeId\": \"3636\", \"trackingId\": \"abc\", " +
+                        "\"ip_as_bytes\": \"5a31\", \"attachments\": {\"payload\": \"** 3 bytes binary data **\"}, " +
+                        "\"MEDIA\": \"31\", \"other\": {\"memberId\": 1}}, {\"name\": \"no rule\"}]}");
+    }
+
+    @Test
+    public void maskNestedHeaders() throws Exception
+    {
+        assertMasked(
+                "{\"sample\": [{\"header\": {\"memberId\": 7, \"guid\": [\"a\", \"b\"], \"treeId\": \"x\", " +
+                        "\"time\": 1447000000, \"auditHeader\": {\"messageId\": [97, 98], \"server\": \"app01\"}}, " +
+                        "\"request\": {\"attachments\": {\"payload\": {\"a\": 1, \"b\": 2}}}, " +
+                        "\"requestHeader\": {\"ip_as_bytes\": [10, 20], \"path\": \"/\"}}]}",
+                "{\"sample\": [{\"header\": {\"memberId\": \"********\", \"guid\": \"6162\", \"treeId\": \"x\", " +
+                        "\"time\": 1447000000, \"auditHeader\": {\"messageId\": \"3939\", \"server\": \"app01\"}}, " +
+                        "\"request\": {\"attachments\": {\"payload\": \"** 2 bytes binary data **\"}}, " +
+                        "\"requestHeader\": {\"ip_as_bytes\": \"3132\", \"path\": \"/\"}}]}");
+    }
+
+    @Test
+    public void hexAndSizeOfOtherValues() throws Exception
+    {
+        assertMasked(
+                "{\"sample\": [{\"treeId\": {\"high\": 1}, \"trackingId\": null, \"MEDIA\": [\"\", \" \", [1], \"z\"], " +
+                        "\"attachments\": {\"payload\": \"text\"}}]}",
+                "{\"sample\": [{\"treeId\": \"\", \"trackingId\": \"null\", \"MEDIA\": \"7a\", " +
+                        "\"attachments\": {\"payload\": \"** 0 bytes binary data **\"}}]}");
+    }
+
+    @Test
+    public void cacheVersion()
+    {
+        SampleData.Cache cache = new SampleData.Cache(100);
+        cache.put(1, "2015-11-20 10:00:00|1|42", "masked");
+        assertThat(cache.get(1, "2015-11-20 10:00:00|1|42")).isEqualTo("masked");
+        // the sample was rewritten
+        assertThat(cache.get(1, "2015-11-20 10:00:00|1|43")).isNull();
+        assertThat(cache.get(2, "2015-11-20 10:00:00|1|42")).isNull();
+
+        cache.put(1, "2015-11-20 10:00:00|1|43", "masked again");
+        assertThat(cache.get(1, "2015-11-20 10:00:00|1|43")).isEqualTo("masked again");
+        assertThat(cache.get(1, "2015-11-20 10:00:00|1|42")).isNull();
+    }
+
+    @Test
+    public void cacheLeastRecentlyUsed()
+    {
+        SampleData.Cache cache = new SampleData.Cache(10);
+        cache.put(1, "v", "aaaa");
+        cache.put(2, "v", "bbbb");
+        // 1 becomes the most recently used
+        assertThat(cache.get(1, "v")).isEqualTo("aaaa");
+        cache.put(3, "v", "cccc");
+        assertThat(cache.get(2, "v")).isNull();
+        assertThat(cache.get(1, "v")).isEqualTo("aaaa");
+        assertThat(cache.get(3, "v")).isEqualTo("cccc");
+
+        // a replaced sample only counts with its new size: 1 and 3 hold 2 + 4 chars, 4 more fit
+        cache.put(1, "w", "aa");
+        cache.put(4, "v", "dddd");
+        assertThat(cache.get(1, "w")).isEqualTo("aa");
+        assertThat(cache.get(3, "v")).isEqualTo("cccc");
+        assertThat(cache.get(4, "v")).isEqualTo("dddd");
+
+        // larger than the whole cache, not kept and nothing evicted for it
+        cache.put(5, "v", "eeeeeeeeeee");
+        assertThat(cache.get(5, "v")).isNull();
+        assertThat(cache.get(4, "v")).isEqualTo("dddd");
+
+        // growing a sample evicts the least recently used others, 3 was read before 1
+        assertThat(cache.get(1, "w")).isEqualTo("aa");
+        cache.put(4, "w", "dddddddd");
+        assertThat(cache.get(4, "w")).isEqualTo("dddddddd");
+        assertThat(cache.get(1, "w")).isEqualTo("aa");
+        assertThat(cache.get(3, "v")).isNull();
+    }
+}
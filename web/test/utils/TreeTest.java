@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.Test;
+import play.libs.Json;
+
+import static org.fest.assertions.Assertions.*;
+
+public class TreeTest
+{
+    private final static String TREE = "{\"children\": ["
+            + "{\"title\": \"hdfs\", \"children\": ["
+            + "{\"title\": \"data\", \"children\": [{\"title\": \"a\"}, {\"title\": \"b\"}]}]}, "
+            + "{\"title\": \"hdfs\", \"children\": ["
+            + "{\"title\": \"data\", \"children\": [{\"title\": \"c\"}]}, {\"title\": \"jobs\"}]}, "
+            + "{\"title\": \"teradata\"}]}";
+
+    private static Tree.TreeSnapshot snapshot()
+    {
+        return new Tree.TreeSnapshot(1L, 2L, Json.parse(TREE));
+    }
+
+    private static String titles(ArrayNode nodes)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (JsonNode node : nodes)
+        {
+            sb.append(node.get("title").asText()).append(node.get("lazy").asBoolean() ? "+ " : " ");
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void children()
+    {
+        assertThat(titles(snapshot().getChildren(""))).isEqualTo("hdfs+ teradata");
+        assertThat(snapshot().getChildren("hdfs/data/a")).isNull();
+        assertThat(snapshot().getChildren("missing")).isNull();
+    }
+
+    @Test
+    public void foldersWithTheSameTitle()
+    {
+        Tree.TreeSnapshot snapshot = snapshot();
+        // the two hdfs folders are listed once, with the children of both
+        assertThat(titles(snapshot.getChildren("hdfs"))).isEqualTo("data+ jobs");
+        assertThat(titles(snapshot.getChildren("/hdfs/data/"))).isEqualTo("a b c");
+        assertThat(titles(snapshot.getChildren("hdfs:///data"))).isEqualTo("a b c");
+    }
+
+    @Test
+    public void etag()
+    {
+        assertThat(snapshot().getETag()).isEqualTo("\"1-2\"");
+        assertThat(new Tree.TreeSnapshot(1L, 3L, Json.parse(TREE)).getETag()).isNotEqualTo(snapshot().getETag());
+    }
+}
@@ -36,8 +36,12 @@ public class Constant {
   public static final String AZ_DB_PASSWORD_KEY = "az.db.password";
   public static final String AZ_DB_DRIVER_KEY = "az.db.driver";
 
-  /** The property_name field in wh_etl_job_property table. The time period backtrace for execution data ETL */
+  /** The property_name field in wh_etl_job_property table. The time period backtrace for execution data ETL,
+   * only used before the first successful run, later runs start from the last processed execution */
   public static final String AZ_EXEC_ETL_LOOKBACK_MINS_KEY = "az.exec_etl.lookback_period.in.minutes";
+  /** The property_name field in wh_etl_job_property table. Optional, default 15. Executions finished this long
+   * before the last processed one are checked again, for the ones written late to the azkaban database */
+  public static final String AZ_EXEC_ETL_OVERLAP_MINS_KEY = "az.exec_etl.overlap_period.in.minutes";
 
   /** The property_name field in wh_etl_job_property table. Hadoop job history url for retrieving map-reduce job logs */
   public static final String AZ_HADOOP_JOBHISTORY_KEY = "az.hadoop.jobhistory.server.url";
@@ -45,6 +49,8 @@ public class Constant {
   public static final String AZ_DEFAULT_HADOOP_DATABASE_ID_KEY = "az.default.hadoop.database.id";
   /** The property_name field in wh_etl_job_property table. For this period of jobs that finished, we will extract their lineage */
   public static final String AZ_LINEAGE_ETL_LOOKBACK_MINS_KEY = "az.lineage_etl.lookback_period.in.minutes";
+  /** The property_name field in wh_etl_job_property table. Optional, default 15. Same as the execution ETL overlap */
+  public static final String AZ_LINEAGE_ETL_OVERLAP_MINS_KEY = "az.lineage_etl.overlap_period.in.minutes";
   /** The property_name field in wh_etl_job_property table. In lineage ETl, Akka actor time out time */
   public static final String LINEAGE_ACTOR_TIMEOUT_KEY = "az.lineage.actor.timeout";
 
@@ -65,6 +71,11 @@ public class Constant {
   /** The property_name field in wh_etl_job_property table. Oozie execution info ETL lookback time */
   public static final String OZ_EXEC_ETL_LOOKBACK_MINS_KEY = "oz.exec_etl.lookback_period.in.minutes";
 
+  // Scheduler
+  /** The property_name field in wh_etl_job_property table. Optional, default 4.
+   * Number of staging files loaded and final flow and execution tables merged in parallel */
+  public static final String SCHEDULER_MERGE_THREADS_KEY = "scheduler.merge.threads";
+
   // Teradata
   /** The property_name field in wh_etl_job_property table. Teradata connection info */
   public static final String TD_DB_URL_KEY = "teradata.db.jdbc.url";
@@ -85,6 +96,16 @@ public class Constant {
   public static final String TD_TARGET_DATABASES_KEY = "teradata.databases";
   /** The property_name field in wh_etl_job_property table. Used for connecting */
   public static final String TD_DEFAULT_DATABASE_KEY = "teradata.default_database";
+  /** The property_name field in wh_etl_job_property table. Optional, default 4. Number of parallel sample queries */
+  public static final String TD_SAMPLE_MAX_CONNECTIONS_KEY = "teradata.sample.max_connections";
+  /** The property_name field in wh_etl_job_property table. Optional, default 60. Timeout of one sample query in seconds */
+  public static final String TD_SAMPLE_QUERY_TIMEOUT_KEY = "teradata.sample.query_timeout";
+  /** The property_name field in wh_etl_job_property table. Optional, default 5. Sample queries started per second,
+   * 0 for no limit */
+  public static final String TD_SAMPLE_MAX_QUERIES_PER_SECOND_KEY = "teradata.sample.max_queries_per_second";
+  /** The property_name field in wh_etl_job_property table. Optional local file of table stats of the last sampling.
+   * When set, tables with unchanged last alter time and size are not sampled again */
+  public static final String TD_SAMPLE_CHECKPOINT_KEY = "teradata.sample.checkpoint";
 
   // Hdfs
   /** The property_name field in wh_etl_job_property table. The hfds remote user that run the hadoop job on gateway */
@@ -110,6 +131,15 @@ public class Constant {
   public static final String HDFS_WHITE_LIST_KEY = "hdfs.white_list";
   /** The property_name field in wh_etl_job_property table. Number of thread to do the metadata collecting */
   public static final String HDFS_NUM_OF_THREAD_KEY = "hdfs.num_of_thread";
+  /** The property_name field in wh_etl_job_property table. Optional cap of NameNode RPCs per second while crawling */
+  public static final String HDFS_NAMENODE_MAX_RPC_PER_SECOND_KEY = "hdfs.namenode.max_rpc_per_second";
+  /** The property_name field in wh_etl_job_property table. Optional checkpoint file location store on remote hadoop gateway.
+   * When set, only datasets that changed since the last successful load are collected */
+  public static final String HDFS_CHECKPOINT_REMOTE_PATH_KEY = "hdfs.remote.checkpoint";
+  /** Suffix of the checkpoint written by the current run, moved in place after the load succeeded */
+  public static final String HDFS_CHECKPOINT_PENDING_SUFFIX = ".new";
+  /** The property_name field in wh_etl_job_property table. Ignore the checkpoint and collect all datasets */
+  public static final String HDFS_FULL_RESCAN_KEY = "hdfs.full_rescan";
   /** The property_name field in wh_etl_job_property table.  The hfds metadata file (in csv format) location store on local machine */
   public static final String HDFS_SCHEMA_RESULT_KEY = "hdfs.local.metadata";
   /** The property_name field in wh_etl_job_property table.  The field metadata file (in csv format) location store on local machine */
@@ -146,16 +176,30 @@ public class Constant {
   public static final String LDAP_GROUP_APP_ID_KEY = "ldap.group.app.id";
   public static final String LDAP_GROUP_SEARCH_DOMAINS_KEY = "ldap.group.search.domains";
   public static final String LDAP_GROUP_SEARCH_RETURN_ATTRS_KEY = "ldap.group.search.return.attributes";
+  /** The property_name field in wh_etl_job_property table. Optional, default 500. Entries per page of the ldap
+   * searches */
+  public static final String LDAP_SEARCH_PAGE_SIZE_KEY = "ldap.search.page.size";
+  /** The property_name field in wh_etl_job_property table. Optional, default 4. Number of groups flattened in
+   * parallel */
+  public static final String LDAP_GROUP_FLATTEN_THREADS_KEY = "ldap.group.flatten.threads";
 
   // git
   public static final String GIT_HOST_KEY = "git.host";
   public static final String GIT_PROJECT_WHITELIST_KEY = "git.project.whitelist";
+  /** The property_name field in wh_etl_job_property table. Optional, default 4. Number of git repos fetched and
+   * walked in parallel */
+  public static final String GIT_EXTRACT_THREADS_KEY = "git.extract.threads";
 
   // hive
   public static final String HIVE_METASTORE_JDBC_DRIVER = "hive.metastore.jdbc.driver";
   public static final String HIVE_METASTORE_JDBC_URL = "hive.metastore.jdbc.url";
   public static final String HIVE_METASTORE_USERNAME = "hive.metstore.username";
   public static final String HIVE_METASTORE_PASSWORD = "hive.metastore.password";
+  /** The property_name field in wh_etl_job_property table. Optional, default 4.
+   * Number of hive databases collected in parallel, each with its own metastore connection */
+  public static final String HIVE_METASTORE_MAX_CONNECTIONS_KEY = "hive.metastore.max_connections";
+  /** The property_name field in wh_etl_job_property table. Optional, default 1000. JDBC fetch size of metastore queries */
+  public static final String HIVE_METASTORE_FETCH_SIZE_KEY = "hive.metastore.fetch_size";
 
   public static final String HIVE_DATABASE_WHITELIST_KEY = "hive.database_white_list";
   public static final String HIVE_SCHEMA_JSON_FILE_KEY = "hive.schema_json_file";
@@ -163,6 +207,34 @@ public class Constant {
   public static final String HIVE_SCHEMA_CSV_FILE_KEY = "hive.schema_csv_file";
   public static final String HIVE_FIELD_METADATA_KEY = "hive.field_metadata";
 
+  // dataset load
+  /** The property_name field in wh_etl_job_property table. Optional, default false.
+   * Mark the datasets of the database that are missing from a full extract as deleted */
+  public static final String DICT_DATASET_DELETE_MISSING_KEY = "dict_dataset.delete_missing";
+  /** The property_name field in wh_etl_job_property table. Optional, default 0.1.
+   * Largest fraction of the datasets of the database one load may mark as deleted, none are above it */
+  public static final String DICT_DATASET_MAX_DELETE_FRACTION_KEY = "dict_dataset.max_delete_fraction";
+  /** Set by the ETL job when its extract reported errors, the missing datasets are then not marked as deleted */
+  public static final String DICT_DATASET_EXTRACT_ERRORS_KEY = "dict_dataset.extract_errors";
+  /** The property_name field in wh_etl_job_property table. Optional, default 0.05.
+   * Analyze dict_dataset only when this fraction of its rows was inserted, updated or deleted */
+  public static final String DICT_DATASET_ANALYZE_THRESHOLD_KEY = "dict_dataset.analyze_threshold";
+  /** The property_name field in wh_etl_job_property table. Optional, default false.
+   * Loads run by BulkLoader only log their statements and the number of rows of their files */
+  public static final String ETL_LOAD_DRY_RUN_KEY = "etl.load.dry_run";
+
+  // tracking access stats
+  /** The property_name field in wh_etl_job_property table. Optional, default 10000.
+   * Number of track_object_access_log rows rolled up in one transaction */
+  public static final String TRACKING_STATS_CHUNK_SIZE_KEY = "tracking.stats.chunk_size";
+  /** The property_name field in wh_etl_job_property table. Optional, default 7. Days the hourly counters are kept */
+  public static final String TRACKING_STATS_HOUR_RETENTION_KEY = "tracking.stats.hour_retention_days";
+  /** The property_name field in wh_etl_job_property table. Optional, default 400. Days the daily counters are kept */
+  public static final String TRACKING_STATS_DAY_RETENTION_KEY = "tracking.stats.day_retention_days";
+  /** The property_name field in wh_etl_job_property table. Optional, default 300.
+   * Seconds a log row waits after its insert before it is rolled up, so the rows with lower ids had time to commit */
+  public static final String TRACKING_STATS_LAG_KEY = "tracking.stats.lag_seconds";
+
   /** Property name of app id. For ETL process. ETL process will use this to identify the application */
   public static final String APP_ID_KEY = "app.id";
   /** Property name of database id. ETL process will use this to identify the database */
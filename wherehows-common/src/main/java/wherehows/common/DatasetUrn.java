@@ -0,0 +1,179 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Parsed dataset urn, e.g. hdfs:///data/tracking/PageViewEvent or teradata:///dwh_dim/dim_member.
+ * <p>
+ * The parts are computed once when the urn is parsed, and the values are immutable. {@link #parse(String)} keeps the
+ * recently parsed urns in a bounded cache, so the same urn string gives back the same instance while it is cached.
+ * <p>
+ * The normalized path is what follows the {@code ://} of the urn, with its leading slash, it is the form used as
+ * abstracted_object_name in the lineage and persisted as dict_dataset.urn_path.
+ */
+public final class DatasetUrn {
+  public static final String SCHEME_DELIMITER = "://";
+  public static final String URN_DELIMITER = ":///";
+
+  public static final String HDFS = "hdfs";
+  public static final String TERADATA = "teradata";
+
+  static final int CACHE_SIZE = 10000;
+
+  private static final Set<String> VALID_STORAGE_TYPES = new HashSet<>(Arrays.asList(HDFS, TERADATA));
+
+  // least recently used urns are dropped first
+  private static final Map<String, DatasetUrn> CACHE = new LinkedHashMap<String, DatasetUrn>(1024, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, DatasetUrn> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  };
+
+  private final String urn;
+  private final String storageType;
+  private final String path;
+  private final String schemaName;
+  private final String abstractObjectName;
+
+  private DatasetUrn(String urn) {
+    this.urn = urn;
+    int index = urn.indexOf(SCHEME_DELIMITER);
+    if (index < 0) {
+      storageType = null;
+      path = urn;
+    } else {
+      // few distinct values, share them
+      storageType = urn.substring(0, index).toLowerCase().intern();
+      path = urn.substring(index + SCHEME_DELIMITER.length());
+    }
+    String relative = path.startsWith("/") ? path.substring(1) : path;
+
+    if (HDFS.equals(storageType)) {
+      // hdfs:///data/tracking/PageViewEvent -> '', '/data/tracking/PageViewEvent'
+      schemaName = "";
+      abstractObjectName = "/" + relative;
+    } else if (TERADATA.equals(storageType)) {
+      // teradata:///dwh/dwh_dim/domain_name -> 'dwh/dwh_dim', 'domain_name'
+      int last = relative.lastIndexOf('/');
+      schemaName = last < 0 ? "" : relative.substring(0, last);
+      abstractObjectName = relative.substring(last + 1);
+    } else {
+      schemaName = null;
+      abstractObjectName = relative;
+    }
+  }
+
+  /**
+   * @return the parsed urn, from the cache if it was parsed recently, null for a null urn
+   */
+  public static DatasetUrn parse(String urn) {
+    if (urn == null) {
+      return null;
+    }
+    DatasetUrn parsed;
+    // an access ordered map changes on get too, the parse itself is cheap enough to be done under the lock
+    synchronized (CACHE) {
+      parsed = CACHE.get(urn);
+      if (parsed == null) {
+        parsed = new DatasetUrn(urn);
+        CACHE.put(urn, parsed);
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Build the urn of a dataset, e.g. ('teradata', 'dwh_dim', 'dim_member') or ('hdfs', null, '/data/tracking/x')
+   */
+  public static DatasetUrn of(String storageType, String schemaName, String name) {
+    String type = storageType.toLowerCase();
+    if (TERADATA.equals(type)) {
+      return parse(TERADATA + URN_DELIMITER + schemaName + "/" + name);
+    }
+    return parse(type + URN_DELIMITER + (name.startsWith("/") ? name.substring(1) : name));
+  }
+
+  /**
+   * @return true if the urn is a hdfs or teradata urn with a path
+   */
+  public static boolean isValid(String urn) {
+    if (urn == null || !urn.contains(URN_DELIMITER)) {
+      return false;
+    }
+    DatasetUrn parsed = parse(urn);
+    return VALID_STORAGE_TYPES.contains(parsed.storageType) && parsed.path.length() > 1;
+  }
+
+  /**
+   * The normalized path of the urn, as persisted in dict_dataset.urn_path
+   */
+  public static String normalizedPath(String urn) {
+    return urn == null ? null : parse(urn).path;
+  }
+
+  public String getUrn() {
+    return urn;
+  }
+
+  /**
+   * @return the lower case scheme of the urn, null if it has none
+   */
+  public String getStorageType() {
+    return storageType;
+  }
+
+  /**
+   * @return what follows the {@code ://}, e.g. /data/tracking/PageViewEvent, the whole urn if it has no scheme
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return the schema of a teradata urn, '' for hdfs, null for the other types
+   */
+  public String getSchemaName() {
+    return schemaName;
+  }
+
+  /**
+   * @return the path of a hdfs urn, the table of a teradata urn, the path without leading slash for the other types
+   */
+  public String getAbstractObjectName() {
+    return abstractObjectName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o || (o instanceof DatasetUrn && urn.equals(((DatasetUrn) o).urn));
+  }
+
+  @Override
+  public int hashCode() {
+    return urn.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return urn;
+  }
+}
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import wherehows.common.schemas.PartitionLayout;
+import wherehows.common.utils.PartitionPatternMatcher;
 
 
 /**
@@ -29,8 +31,11 @@ import java.util.regex.Pattern;
 public class PathAnalyzer {
   public static PathAnalyzer instance = null;
 
-  private static List<Layout> _layoutsInfo;
-  private static List<String> _filePattherns;
+  private static final Pattern HDFS_HEADER_PATTERN = Pattern.compile("hdfs://.*:\\d{4}(/.*)");
+  private static final Pattern TCP_HEADER_PATTERN = Pattern.compile("tcp://.*:\\d{5}/(.*)");
+
+  private static PartitionPatternMatcher _layoutsInfo;
+  private static List<Pattern> _filePattherns;
 
   /**
    * Put the layout info from database into memory
@@ -44,20 +49,21 @@ public class PathAnalyzer {
     }
     String layoutQuery = "SELECT * FROM dataset_partition_layout_pattern ORDER BY sort_id";
     ResultSet resultSet = connection.createStatement().executeQuery(layoutQuery);
-    _layoutsInfo = new ArrayList<>();
+    List<PartitionLayout> layouts = new ArrayList<>();
     while (resultSet.next()) {
-      Layout layout =
-        new Layout(resultSet.getInt("layout_id"), resultSet.getString("regex"), resultSet.getString("mask"),
-          resultSet.getInt("leading_path_index"), resultSet.getInt("partition_index"),
-          resultSet.getString("partition_pattern_group"));
-      _layoutsInfo.add(layout);
+      PartitionLayout layout =
+        new PartitionLayout(resultSet.getInt("layout_id"), resultSet.getString("regex"), resultSet.getString("mask"),
+          resultSet.getInt("leading_path_index"), resultSet.getInt("partition_index"), null,
+          resultSet.getInt("sort_id"), resultSet.getString("partition_pattern_group"));
+      layouts.add(layout);
     }
+    _layoutsInfo = new PartitionPatternMatcher(layouts);
 
     String fileQuery = "SELECT regex FROM filename_pattern";
     ResultSet fpRs = connection.createStatement().executeQuery(fileQuery);
     _filePattherns = new ArrayList<>();
     while (fpRs.next()) {
-      _filePattherns.add(fpRs.getString("regex"));
+      _filePattherns.add(Pattern.compile(fpRs.getString("regex")));
     }
   }
 
@@ -74,8 +80,7 @@ public class PathAnalyzer {
     datasetPath.fullPath = fullPath;
 
     // remove the "hdfs://.../" header
-    Pattern headerPattern = Pattern.compile("hdfs://.*:\\d{4}(/.*)");
-    Matcher headerMatcher = headerPattern.matcher(fullPath);
+    Matcher headerMatcher = HDFS_HEADER_PATTERN.matcher(fullPath);
     if (headerMatcher.matches()) {
       fullPath = headerMatcher.group(1);
     }
@@ -88,31 +93,26 @@ public class PathAnalyzer {
     // sometimes the input is a file, sometimes the input is a directory,
     // If this is a file, need to remove the file partition
     // e.g. (.*)/part-\d+, (.*)/part-\d+\.avro, (.*)/part-m-\d+\.avro, (.*)/part-r-\d+\.avro
-    for (String filePattern : _filePattherns) {
-      Pattern p = Pattern.compile(filePattern);
+    for (Pattern p : _filePattherns) {
       Matcher m = p.matcher(fullPath);
       if (m.matches()) {
         fullPath = m.group(1);
       }
     }
 
-    for (Layout layoutRecord : _layoutsInfo) {
-      Pattern p = Pattern.compile(layoutRecord.regex);
-      Matcher m = p.matcher(fullPath);
-      if (m.matches()) {
-        datasetPath.abstractPath = m.group(layoutRecord.leadingPathIndex);
-        datasetPath.layoutId = layoutRecord.layoutId;
-        datasetPath.partitionStart = m.group(layoutRecord.partitionIndex);
-        datasetPath.partitionEnd = m.group(layoutRecord.partitionIndex);
-        datasetPath.partitionType = layoutRecord.partitionPatternGroup;
-        // System.out.println("Matched, the abstract path is : " + datasetPath.abstractPath);
-        break;
-      }
+    PartitionPatternMatcher.Match match = _layoutsInfo.match(fullPath);
+    if (match != null) {
+      PartitionLayout layoutRecord = match.getLayout();
+      Matcher m = match.getMatcher();
+      datasetPath.abstractPath = m.group(layoutRecord.getLeadingPathIndex());
+      datasetPath.layoutId = layoutRecord.getLayoutId();
+      datasetPath.partitionStart = m.group(layoutRecord.getPartitionIndex());
+      datasetPath.partitionEnd = m.group(layoutRecord.getPartitionIndex());
+      datasetPath.partitionType = layoutRecord.getPartitionPatternGroup();
     }
 
     // handle this case : tcp://hostname:port/tablename
-    Pattern tcpHeaderPattern = Pattern.compile("tcp://.*:\\d{5}/(.*)");
-    Matcher tcpheaderMatcher = tcpHeaderPattern.matcher(fullPath);
+    Matcher tcpheaderMatcher = TCP_HEADER_PATTERN.matcher(fullPath);
     if (tcpheaderMatcher.matches()) {
       datasetPath.abstractPath = tcpheaderMatcher.group(1);
     }
@@ -124,26 +124,4 @@ public class PathAnalyzer {
 
     return datasetPath;
   }
-
-  /**
-   * Inner class for Layout.
-   */
-  static class Layout {
-    int layoutId;
-    String regex;
-    String mask;
-    int leadingPathIndex;
-    int partitionIndex;
-    String partitionPatternGroup;
-
-    public Layout(int layoutId, String regex, String mask, int leadingPathIndex, int partitionIndex,
-      String partitionPatternGroup) {
-      this.layoutId = layoutId;
-      this.regex = regex;
-      this.mask = mask;
-      this.leadingPathIndex = leadingPathIndex;
-      this.partitionIndex = partitionIndex;
-      this.partitionPatternGroup = partitionPatternGroup;
-    }
-  }
 }
@@ -29,6 +29,7 @@ public class DatasetJsonRecord implements Record {
   String codec;
   String storage;
   String data_source;
+  Long recordCount;
 
   public DatasetJsonRecord(String schema, String abstractPath, Long modificationTime, String owner, String group,
     String permission, String codec, String storage, String data_source) {
@@ -55,6 +56,7 @@ public class DatasetJsonRecord implements Record {
       // "\"size\":" + data_size + "," +
       "\"codec\": \"" + codec + "\"," +
       "\"storage_type\": \"" + storage + "\"," +
+      (recordCount != null ? "\"record_count\":" + recordCount + "," : "") +
       "\"source\":\"" + data_source + "\"}" +
       "}");
     return result;
@@ -65,6 +67,17 @@ public class DatasetJsonRecord implements Record {
     return null;
   }
 
+  /**
+   * Number of records, for formats that keep it in the file footer
+   */
+  public void setRecordCount(Long recordCount) {
+    this.recordCount = recordCount;
+  }
+
+  public String getSchemaString() {
+    return schemaString;
+  }
+
   public void setAbstractPath(String abstractPath) {
     this.abstractPath = abstractPath;
   }
@@ -15,6 +15,7 @@ package wherehows.common.schemas;
 
 import java.util.ArrayList;
 import java.util.List;
+import wherehows.common.DatasetUrn;
 
 
 /**
@@ -73,6 +74,13 @@ public class DatasetRecord extends AbstractRecord {
     allFields.add(System.currentTimeMillis()/1000);
     allFields.add(null);
     allFields.add(null);
+    // db_id and content_hash, filled by the dataset ETL merge
+    allFields.add(null);
+    allFields.add(null);
+    // the normalized urn path
+    allFields.add(DatasetUrn.normalizedPath(urn));
+    // is_deleted
+    allFields.add("N");
     return allFields;
   }
 
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.schemas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * One member of an ldap group, a direct member or a user of the flattened group.
+ */
+public class LdapGroupMemberRecord extends AbstractRecord {
+  Integer appId;
+  String groupId;
+  Integer sortId;
+  Integer userAppId;
+  String userId;
+  Long whExecId;
+
+  public LdapGroupMemberRecord(Integer appId, String groupId, Integer sortId, Integer userAppId, String userId,
+    Long whExecId) {
+    this.appId = appId;
+    this.groupId = groupId;
+    this.sortId = sortId;
+    this.userAppId = userAppId;
+    this.userId = userId;
+    this.whExecId = whExecId;
+  }
+
+  @Override
+  public List<Object> fillAllFields() {
+    List<Object> allFields = new ArrayList<>();
+    allFields.add(appId);
+    allFields.add(groupId);
+    allFields.add(sortId);
+    allFields.add(userAppId);
+    allFields.add(userId);
+    allFields.add(whExecId);
+    return allFields;
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.schemas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * One user of the ldap user search, with the values of the returned attributes in the order of
+ * ldap.search.return.attributes, empty when the user has no value.
+ */
+public class LdapUserRecord extends AbstractRecord {
+  Integer appId;
+  Character isActive;
+  List<String> attributes;
+  Long whExecId;
+
+  public LdapUserRecord(Integer appId, Character isActive, List<String> attributes, Long whExecId) {
+    this.appId = appId;
+    this.isActive = isActive;
+    this.attributes = attributes;
+    this.whExecId = whExecId;
+  }
+
+  @Override
+  public List<Object> fillAllFields() {
+    List<Object> allFields = new ArrayList<>();
+    allFields.add(appId);
+    allFields.add(isActive);
+    allFields.addAll(attributes);
+    allFields.add(whExecId);
+    return allFields;
+  }
+}
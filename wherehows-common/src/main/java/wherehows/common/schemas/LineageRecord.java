@@ -96,6 +96,19 @@ public class LineageRecord implements Record, Comparable<LineageRecord> {
   }
 
   public String toDatabaseValue() {
+    StringBuilder sb = new StringBuilder();
+    for (Object o : fillAllFields()) {
+      sb.append(StringUtil.toDbString(o));
+      sb.append(",");
+    }
+    sb.deleteCharAt(sb.length() - 1);
+    return sb.toString();
+  }
+
+  /**
+   * All the column values of job_execution_data_lineage, in the column order of the table
+   */
+  public List<Object> fillAllFields() {
     allFields = new ArrayList<>();
     allFields.add(appId);
     allFields.add(flowExecId);
@@ -125,13 +138,7 @@ public class LineageRecord implements Record, Comparable<LineageRecord> {
     // add the created_date and wh_etl_exec_id
     allFields.add(System.currentTimeMillis()/1000);
     allFields.add(null);
-    StringBuilder sb = new StringBuilder();
-    for (Object o : allFields) {
-      sb.append(StringUtil.toDbString(o));
-      sb.append(",");
-    }
-    sb.deleteCharAt(sb.length() - 1);
-    return sb.toString();
+    return allFields;
   }
 
   /**
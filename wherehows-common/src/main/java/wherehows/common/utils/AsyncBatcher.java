@@ -0,0 +1,188 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Collect items from many threads and write them in batches from one background thread.
+ * <p>
+ * {@link #offer(Object)} never blocks: the items go into a bounded ring buffer, and are dropped and counted when it
+ * is full. The background thread hands a batch to the sink once it has batchSize items or its oldest item waited
+ * maxDelayMs. A batch the sink fails on is logged and counted, not retried. {@link #close()} stops accepting items
+ * and writes what is left.
+ */
+public class AsyncBatcher<T> implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(AsyncBatcher.class);
+
+  // how long close waits for the pending items to be written
+  private static final long CLOSE_TIMEOUT_MS = 10000;
+  // how long an idle worker waits before checking whether it was closed
+  private static final long IDLE_POLL_MS = 100;
+
+  /**
+   * Writes one batch, called from the background thread only.
+   */
+  public interface Sink<T> {
+    void write(List<T> batch)
+      throws Exception;
+  }
+
+  private final String name;
+  private final int capacity;
+  private final int batchSize;
+  private final long maxDelayMs;
+  private final Sink<T> sink;
+  private final BlockingQueue<T> queue;
+  private final Thread worker;
+  private volatile boolean running = true;
+
+  private final AtomicLong enqueued = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+
+  public AsyncBatcher(String name, int capacity, int batchSize, long maxDelayMs, Sink<T> sink) {
+    if (capacity <= 0 || batchSize <= 0 || maxDelayMs <= 0) {
+      throw new IllegalArgumentException("capacity, batch size and max delay must be positive");
+    }
+    this.name = name;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.maxDelayMs = maxDelayMs;
+    this.sink = sink;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, name + "-batcher");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  /**
+   * @return false if the item was dropped, because the buffer is full or the batcher is closed
+   */
+  public boolean offer(T item) {
+    if (running && queue.offer(item)) {
+      enqueued.incrementAndGet();
+      return true;
+    }
+    long count = dropped.incrementAndGet();
+    // one line per power of two drops, not one per item
+    if (Long.bitCount(count) == 1) {
+      logger.warn("{} dropped {} items so far, {} pending", name, count, queue.size());
+    }
+    return false;
+  }
+
+  private void drain() {
+    List<T> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        T first = queue.poll(Math.min(maxDelayMs, IDLE_POLL_MS), TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + maxDelayMs;
+        while (running && batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          long wait = deadline - System.currentTimeMillis();
+          if (batch.size() >= batchSize || wait <= 0) {
+            break;
+          }
+          T next = queue.poll(Math.min(wait, IDLE_POLL_MS), TimeUnit.MILLISECONDS);
+          if (next != null) {
+            batch.add(next);
+          }
+        }
+        // top up with what is already queued, the loop above stops early once closed
+        queue.drainTo(batch, batchSize - batch.size());
+        write(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void write(List<T> batch) {
+    try {
+      sink.write(batch);
+      written.addAndGet(batch.size());
+      batches.incrementAndGet();
+    } catch (Exception e) {
+      failed.addAndGet(batch.size());
+      logger.error(name + " failed to write a batch of " + batch.size() + " items", e);
+    }
+  }
+
+  /**
+   * Stop accepting items, and wait until the pending ones are written
+   */
+  @Override
+  public void close() {
+    running = false;
+    try {
+      worker.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (worker.isAlive()) {
+      logger.warn("{} closed with {} items not written", name, queue.size());
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getPending() {
+    return queue.size();
+  }
+
+  public long getEnqueued() {
+    return enqueued.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public long getWritten() {
+    return written.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  public long getBatches() {
+    return batches.get();
+  }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+
+/**
+ * In-memory copy of cfg_application and cfg_database, for the lookups on the ingestion and lineage paths.
+ * <p>
+ * The rows are held in an immutable snapshot indexed by id, by code and by short connection string, names are
+ * compared case insensitively like the default MySQL collation does. Readers use the current snapshot without
+ * locking, a refresh builds a new snapshot and swaps it in. The snapshot is reloaded on the first lookup after the
+ * refresh interval, and should be refreshed right after a row is added or changed. If a reload fails the previous
+ * snapshot is kept until the next interval.
+ */
+public class CfgRegistry {
+  private static final Logger logger = LoggerFactory.getLogger(CfgRegistry.class);
+
+  public static final String GET_ALL_APPS = "SELECT * FROM cfg_application ORDER BY app_id";
+  public static final String GET_ALL_DBS = "SELECT * FROM cfg_database ORDER BY db_id";
+
+  /**
+   * The rows of one table and their indexes.
+   */
+  static class Table {
+    final List<Map<String, Object>> rows;
+    final Map<Integer, Map<String, Object>> byId = new HashMap<>();
+    final Map<String, Map<String, Object>> byCode = new HashMap<>();
+    final Map<String, Map<String, Object>> byShortConnectionString = new HashMap<>();
+
+    Table(List<Map<String, Object>> rows, String idColumn, String codeColumn) {
+      List<Map<String, Object>> copy = new ArrayList<>(rows.size());
+      for (Map<String, Object> row : rows) {
+        Map<String, Object> r = Collections.unmodifiableMap(row);
+        copy.add(r);
+        byId.put(((Number) row.get(idColumn)).intValue(), r);
+        Object code = row.get(codeColumn);
+        if (code != null) {
+          byCode.put(code.toString().toLowerCase(), r);
+        }
+        Object shortConnectionString = row.get("short_connection_string");
+        if (shortConnectionString != null) {
+          byShortConnectionString.put(shortConnectionString.toString().toLowerCase(), r);
+        }
+      }
+      this.rows = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Ids of the rows whose short connection string is like the SQL LIKE pattern
+     */
+    List<Integer> idsLike(String pattern, String idColumn) {
+      List<Integer> ids = new ArrayList<>();
+      Pattern p = likePattern(pattern);
+      for (Map<String, Object> row : rows) {
+        Object shortConnectionString = row.get("short_connection_string");
+        if (shortConnectionString != null && p.matcher(shortConnectionString.toString()).matches()) {
+          ids.add(((Number) row.get(idColumn)).intValue());
+        }
+      }
+      return ids;
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+  private final long refreshIntervalMs;
+
+  private volatile Table apps;
+  private volatile Table dbs;
+  private volatile long loadedTime;
+
+  public CfgRegistry(DataSource dataSource, long refreshIntervalMs) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.refreshIntervalMs = refreshIntervalMs;
+  }
+
+  /**
+   * Reload both tables now
+   */
+  public synchronized void refresh() {
+    Table newApps = new Table(jdbcTemplate.queryForList(GET_ALL_APPS), "app_id", "app_code");
+    Table newDbs = new Table(jdbcTemplate.queryForList(GET_ALL_DBS), "db_id", "db_code");
+    apps = newApps;
+    dbs = newDbs;
+    loadedTime = System.currentTimeMillis();
+    logger.debug("Loaded {} applications and {} databases", newApps.rows.size(), newDbs.rows.size());
+  }
+
+  private void refreshIfStale() {
+    if (apps != null && System.currentTimeMillis() - loadedTime <= refreshIntervalMs) {
+      return;
+    }
+    synchronized (this) {
+      if (apps != null && System.currentTimeMillis() - loadedTime <= refreshIntervalMs) {
+        return;
+      }
+      try {
+        refresh();
+      } catch (DataAccessException e) {
+        if (apps == null) {
+          throw e;
+        }
+        logger.warn("Failed to reload cfg_application and cfg_database, keep the previous ones", e);
+        loadedTime = System.currentTimeMillis();
+      }
+    }
+  }
+
+  private Table apps() {
+    refreshIfStale();
+    return apps;
+  }
+
+  private Table dbs() {
+    refreshIfStale();
+    return dbs;
+  }
+
+  private static String key(String name) {
+    return name == null ? null : name.toLowerCase();
+  }
+
+  private static Map<String, Object> found(Map<String, Object> row, String kind, Object key) {
+    if (row == null) {
+      throw new EmptyResultDataAccessException("No " + kind + " " + key, 1);
+    }
+    return row;
+  }
+
+  public List<Map<String, Object>> getAllApps() {
+    return apps().rows;
+  }
+
+  public List<Map<String, Object>> getAllDbs() {
+    return dbs().rows;
+  }
+
+  /**
+   * @throws EmptyResultDataAccessException if there is no such application, like queryForMap
+   */
+  public Map<String, Object> getAppById(int id) {
+    return found(apps().byId.get(id), "application", id);
+  }
+
+  public Map<String, Object> getAppByName(String shortConnectionString) {
+    return found(apps().byShortConnectionString.get(key(shortConnectionString)), "application", shortConnectionString);
+  }
+
+  public Map<String, Object> getAppByCode(String appCode) {
+    return found(apps().byCode.get(key(appCode)), "application", appCode);
+  }
+
+  public Map<String, Object> getDbById(int id) {
+    return found(dbs().byId.get(id), "database", id);
+  }
+
+  public Map<String, Object> getDbByName(String shortConnectionString) {
+    return found(dbs().byShortConnectionString.get(key(shortConnectionString)), "database", shortConnectionString);
+  }
+
+  public Map<String, Object> getDbByCode(String dbCode) {
+    return found(dbs().byCode.get(key(dbCode)), "database", dbCode);
+  }
+
+  /**
+   * @return the application id, null if there is no such application
+   */
+  public Integer findAppId(String shortConnectionString) {
+    Map<String, Object> row = apps().byShortConnectionString.get(key(shortConnectionString));
+    return row == null ? null : ((Number) row.get("app_id")).intValue();
+  }
+
+  public Integer findDbId(String shortConnectionString) {
+    Map<String, Object> row = dbs().byShortConnectionString.get(key(shortConnectionString));
+    return row == null ? null : ((Number) row.get("db_id")).intValue();
+  }
+
+  /**
+   * @return the application code, null if there is no such application
+   */
+  public String findAppCode(int appId) {
+    Map<String, Object> row = apps().byId.get(appId);
+    return row == null ? null : (String) row.get("app_code");
+  }
+
+  public String findAppShortConnectionString(int appId) {
+    Map<String, Object> row = apps().byId.get(appId);
+    return row == null ? null : (String) row.get("short_connection_string");
+  }
+
+  /**
+   * Ids of the applications whose short connection string is like the pattern, to replace a join on cfg_application
+   * @param pattern SQL LIKE pattern, e.g. {@code %} or {@code azkaban-%}
+   */
+  public List<Integer> getAppIdsLike(String pattern) {
+    return apps().idsLike(pattern, "app_id");
+  }
+
+  public List<Integer> getDbIdsLike(String pattern) {
+    return dbs().idsLike(pattern, "db_id");
+  }
+
+  /**
+   * Convert a SQL LIKE pattern to a case insensitive regex, as the default MySQL collation compares
+   */
+  static Pattern likePattern(String like) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (int i = 0; i < like.length(); i++) {
+      char c = like.charAt(i);
+      if (c == '\\' && i + 1 < like.length()) {
+        literal.append(like.charAt(++i));
+      } else if (c == '%' || c == '_') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '%' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+  }
+}
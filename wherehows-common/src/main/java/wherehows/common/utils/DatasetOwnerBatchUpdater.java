@@ -0,0 +1,354 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * Replaces the owners of many datasets at once.
+ * <p>
+ * The current dataset_owner rows of the datasets are read with a few IN queries and diffed in memory against the
+ * new owner lists: missing owners are inserted, changed or previously removed owners are updated, and owners left
+ * out are marked as deleted. The changes of all the datasets are written with batched statements in one transaction.
+ * If the transaction fails, each dataset is diffed and written again in its own transaction so that one bad dataset
+ * does not fail the others, and the result of every dataset is reported.
+ */
+public class DatasetOwnerBatchUpdater {
+  private static final Logger logger = LoggerFactory.getLogger(DatasetOwnerBatchUpdater.class);
+
+  static final String GET_DATASET_URNS = "SELECT id, urn FROM dict_dataset WHERE id IN (:ids)";
+  static final String GET_DATASET_OWNERS = "SELECT dataset_id, owner_id, app_id, owner_type, owner_sub_type, "
+    + "is_group, is_deleted, sort_id FROM dataset_owner WHERE dataset_id IN (:ids)";
+  static final String INSERT_OWNER = "INSERT INTO dataset_owner (dataset_id, owner_id, app_id, namespace, "
+    + "owner_type, is_group, is_active, is_deleted, sort_id, created_time, modified_time, wh_etl_exec_id, "
+    + "dataset_urn, owner_sub_type) VALUES (?, ?, ?, ?, ?, ?, 'Y', 'N', ?, ?, ?, 0, ?, ?)";
+  static final String UPDATE_OWNER = "UPDATE dataset_owner SET owner_type = ?, is_group = ?, is_deleted = 'N', "
+    + "sort_id = ?, modified_time = ?, owner_sub_type = ? WHERE dataset_id = ? AND owner_id = ? AND app_id = ?";
+  static final String DELETE_OWNER = "UPDATE dataset_owner SET is_deleted = 'Y', modified_time = ? "
+    + "WHERE dataset_id = ? AND owner_id = ? AND app_id = ?";
+
+  // datasets per IN query
+  static final int CHUNK_SIZE = 500;
+  static final int BATCH_SIZE = 1000;
+
+  public static final int USER_APP_ID = 300;
+  public static final int GROUP_APP_ID = 301;
+
+  /**
+   * One owner of a dataset, its position in the list is its sort id.
+   */
+  public static class Owner {
+    final String ownerId;
+    final boolean isGroup;
+    final String type;
+    final String subType;
+    int sortId;
+
+    public Owner(String ownerId, boolean isGroup, String type, String subType) {
+      this.ownerId = ownerId;
+      this.isGroup = isGroup;
+      this.type = type;
+      this.subType = subType;
+    }
+
+    int appId() {
+      return isGroup ? GROUP_APP_ID : USER_APP_ID;
+    }
+
+    String namespace() {
+      return isGroup ? "urn:li:griduser" : "urn:li:corpuser";
+    }
+
+    String key() {
+      return ownerId + "\t" + appId();
+    }
+  }
+
+  public enum Status {
+    UPDATED, UNCHANGED, NOT_FOUND, FAILED
+  }
+
+  /**
+   * Outcome of the owners of one dataset.
+   */
+  public static class DatasetResult {
+    private final int datasetId;
+    private final List<Owner> owners;
+    private Status status;
+    private int inserted;
+    private int updated;
+    private int deleted;
+    private String error;
+
+    // the changes to write, the deleted owners as their dataset_id, owner_id, app_id key
+    private String urn;
+    private final List<Owner> inserts = new ArrayList<Owner>();
+    private final List<Owner> updates = new ArrayList<Owner>();
+    private final List<Object[]> deletes = new ArrayList<Object[]>();
+
+    DatasetResult(int datasetId, List<Owner> owners) {
+      this.datasetId = datasetId;
+      this.owners = owners;
+    }
+
+    void fail(Exception e) {
+      this.status = Status.FAILED;
+      this.error = e.getMessage();
+      this.inserted = this.updated = this.deleted = 0;
+    }
+
+    boolean hasChanges() {
+      return inserts.size() + updates.size() + deletes.size() > 0;
+    }
+
+    public int getDatasetId() {
+      return datasetId;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public boolean isSuccess() {
+      return status == Status.UPDATED || status == Status.UNCHANGED;
+    }
+
+    public int getInserted() {
+      return inserted;
+    }
+
+    public int getUpdated() {
+      return updated;
+    }
+
+    public int getDeleted() {
+      return deleted;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+  private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  public DatasetOwnerBatchUpdater(DataSource dataSource) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+  }
+
+  /**
+   * Replace the owners of the datasets
+   * @param ownersByDataset the new owners of each dataset in priority order, an empty list removes all the owners
+   * @return the result of each dataset, in the order of the input
+   */
+  public List<DatasetResult> update(Map<Integer, List<Owner>> ownersByDataset) {
+    List<DatasetResult> results = new ArrayList<DatasetResult>(ownersByDataset.size());
+    for (Map.Entry<Integer, List<Owner>> entry : ownersByDataset.entrySet()) {
+      results.add(new DatasetResult(entry.getKey(), dedupe(entry.getValue())));
+    }
+
+    try {
+      write(diff(results));
+    } catch (DataAccessException e) {
+      logger.warn("Owners of " + results.size() + " datasets failed, retrying each dataset alone: " + e.getMessage());
+      for (DatasetResult result : results) {
+        try {
+          write(diff(Collections.singletonList(result)));
+        } catch (DataAccessException de) {
+          result.fail(de);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Keep the first of duplicated owners, and number the owners by their position
+   */
+  static List<Owner> dedupe(List<Owner> owners) {
+    Map<String, Owner> unique = new LinkedHashMap<String, Owner>();
+    for (Owner owner : owners) {
+      if (owner.ownerId != null && !owner.ownerId.trim().isEmpty() && !unique.containsKey(owner.key())) {
+        owner.sortId = unique.size();
+        unique.put(owner.key(), owner);
+      }
+    }
+    return new ArrayList<Owner>(unique.values());
+  }
+
+  /**
+   * Compare the new owners of the datasets with their current rows
+   * @return the datasets with changes to write
+   */
+  List<DatasetResult> diff(List<DatasetResult> results) {
+    List<DatasetResult> changed = new ArrayList<DatasetResult>();
+    for (int start = 0; start < results.size(); start += CHUNK_SIZE) {
+      final Map<Integer, DatasetResult> chunk = new HashMap<Integer, DatasetResult>();
+      for (DatasetResult result : results.subList(start, Math.min(start + CHUNK_SIZE, results.size()))) {
+        result.urn = null;
+        result.inserts.clear();
+        result.updates.clear();
+        result.deletes.clear();
+        chunk.put(result.datasetId, result);
+      }
+      MapSqlParameterSource ids = new MapSqlParameterSource("ids", chunk.keySet());
+
+      namedParameterJdbcTemplate.query(GET_DATASET_URNS, ids, new RowCallbackHandler() {
+        @Override
+        public void processRow(ResultSet rs)
+          throws SQLException {
+          chunk.get(rs.getInt("id")).urn = rs.getString("urn");
+        }
+      });
+
+      final Map<Integer, Map<String, Owner>> pending = new HashMap<Integer, Map<String, Owner>>();
+      for (DatasetResult result : chunk.values()) {
+        Map<String, Owner> owners = new HashMap<String, Owner>();
+        for (Owner owner : result.owners) {
+          owners.put(owner.key(), owner);
+        }
+        pending.put(result.datasetId, owners);
+      }
+
+      namedParameterJdbcTemplate.query(GET_DATASET_OWNERS, ids, new RowCallbackHandler() {
+        @Override
+        public void processRow(ResultSet rs)
+          throws SQLException {
+          int datasetId = rs.getInt("dataset_id");
+          String ownerId = rs.getString("owner_id");
+          int appId = rs.getInt("app_id");
+          boolean deleted = "Y".equals(rs.getString("is_deleted"));
+          DatasetResult result = chunk.get(datasetId);
+          Owner owner = pending.get(datasetId).remove(ownerId + "\t" + appId);
+          if (owner == null) {
+            if (!deleted) {
+              result.deletes.add(new Object[]{datasetId, ownerId, appId});
+            }
+          } else if (deleted || rs.getInt("sort_id") != owner.sortId
+            || !same(rs.getString("owner_type"), owner.type) || !same(rs.getString("owner_sub_type"), owner.subType)
+            || !same(rs.getString("is_group"), owner.isGroup ? "Y" : "N")) {
+            result.updates.add(owner);
+          }
+        }
+      });
+
+      for (DatasetResult result : chunk.values()) {
+        if (result.urn == null) {
+          result.status = Status.NOT_FOUND;
+          result.error = "Unknown dataset " + result.datasetId;
+          continue;
+        }
+        // the owners without a current row, in priority order
+        for (Owner owner : result.owners) {
+          if (pending.get(result.datasetId).containsKey(owner.key())) {
+            result.inserts.add(owner);
+          }
+        }
+        result.status = result.hasChanges() ? Status.UPDATED : Status.UNCHANGED;
+        if (result.hasChanges()) {
+          changed.add(result);
+        }
+      }
+    }
+    return changed;
+  }
+
+  private static boolean same(String current, String value) {
+    return (current == null ? "" : current).equals(value == null ? "" : value);
+  }
+
+  /**
+   * Write the changes of the datasets in one transaction, and count them once committed
+   */
+  private void write(final List<DatasetResult> datasets) {
+    if (datasets.isEmpty()) {
+      return;
+    }
+    final int modifiedTime = (int) (System.currentTimeMillis() / 1000);
+    final List<Object[]> inserts = new ArrayList<Object[]>();
+    final List<Object[]> updates = new ArrayList<Object[]>();
+    final List<Object[]> deletes = new ArrayList<Object[]>();
+    for (DatasetResult dataset : datasets) {
+      for (Owner owner : dataset.inserts) {
+        inserts.add(new Object[]{dataset.datasetId, owner.ownerId, owner.appId(), owner.namespace(), owner.type,
+          owner.isGroup ? "Y" : "N", owner.sortId, modifiedTime, modifiedTime, dataset.urn, owner.subType});
+      }
+      for (Owner owner : dataset.updates) {
+        updates.add(new Object[]{owner.type, owner.isGroup ? "Y" : "N", owner.sortId, modifiedTime, owner.subType,
+          dataset.datasetId, owner.ownerId, owner.appId()});
+      }
+      for (Object[] key : dataset.deletes) {
+        deletes.add(new Object[]{modifiedTime, key[0], key[1], key[2]});
+      }
+    }
+
+    transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+      @Override
+      protected void doInTransactionWithoutResult(TransactionStatus status) {
+        batchUpdate(DELETE_OWNER, deletes);
+        batchUpdate(UPDATE_OWNER, updates);
+        batchUpdate(INSERT_OWNER, inserts);
+      }
+    });
+    for (DatasetResult dataset : datasets) {
+      dataset.status = Status.UPDATED;
+      dataset.error = null;
+      dataset.inserted = dataset.inserts.size();
+      dataset.updated = dataset.updates.size();
+      dataset.deleted = dataset.deletes.size();
+    }
+  }
+
+  private void batchUpdate(String sql, Collection<Object[]> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    jdbcTemplate.batchUpdate(sql, rows, BATCH_SIZE, new ParameterizedPreparedStatementSetter<Object[]>() {
+      @Override
+      public void setValues(PreparedStatement ps, Object[] row)
+        throws SQLException {
+        for (int i = 0; i < row.length; i++) {
+          ps.setObject(i + 1, row[i]);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+
+/**
+ * Inverted index from field name to the fields of dict_field_detail with that name, and the comments used on them.
+ * <p>
+ * The postings of a name are loaded on its first lookup with one indexed query, then kept in memory, the least
+ * recently used names are evicted past maxPostings postings. Names are compared case insensitively like the
+ * default MySQL collation does. The comment of a field is its default comment in dict_dataset_field_comment, or
+ * the default_comment_id set by the ETL. The index is kept up to date incrementally :
+ * <ul>
+ *   <li>the names of the fields modified since the last check, e.g. by a schema ETL, are evicted at most once
+ *   per refresh interval, and reloaded on their next lookup</li>
+ *   <li>{@link #refreshField(long)} reloads the comment of one field, to be called after a comment write</li>
+ *   <li>a name is reloaded after entryTtlMs anyway, for the fields deleted since it was loaded</li>
+ * </ul>
+ */
+public class FieldNameIndex {
+  private static final Logger logger = LoggerFactory.getLogger(FieldNameIndex.class);
+
+  static final String GET_FIELDS_BY_NAME = "SELECT fd.dataset_id, fd.field_id, "
+    + "COALESCE(ddfc.comment_id, fd.default_comment_id) AS comment_id FROM dict_field_detail fd "
+    + "LEFT JOIN dict_dataset_field_comment ddfc ON ddfc.dataset_id = fd.dataset_id AND ddfc.field_id = fd.field_id "
+    + "AND ddfc.is_default = 1 WHERE fd.field_name = ?";
+  static final String GET_FIELD_BY_ID = "SELECT fd.dataset_id, fd.field_name, "
+    + "COALESCE(ddfc.comment_id, fd.default_comment_id) AS comment_id FROM dict_field_detail fd "
+    + "LEFT JOIN dict_dataset_field_comment ddfc ON ddfc.dataset_id = fd.dataset_id AND ddfc.field_id = fd.field_id "
+    + "AND ddfc.is_default = 1 WHERE fd.field_id = ?";
+  static final String GET_MODIFIED_NAMES = "SELECT DISTINCT field_name FROM dict_field_detail WHERE modified >= ?";
+  static final String GET_NOW = "SELECT CURRENT_TIMESTAMP";
+
+  /**
+   * A field with the looked up name
+   */
+  public static class Posting {
+    public final long datasetId;
+    public final long fieldId;
+    // null when the field has no comment
+    public final Long commentId;
+
+    Posting(long datasetId, long fieldId, Long commentId) {
+      this.datasetId = datasetId;
+      this.fieldId = fieldId;
+      this.commentId = commentId;
+    }
+  }
+
+  /**
+   * A comment used on fields with the looked up name
+   */
+  public static class CommentUsage {
+    public final long commentId;
+    // number of fields using it
+    public final int count;
+    // one of the datasets of these fields
+    public final long datasetId;
+
+    CommentUsage(long commentId, int count, long datasetId) {
+      this.commentId = commentId;
+      this.count = count;
+      this.datasetId = datasetId;
+    }
+  }
+
+  /**
+   * The fields of one name. The postings are datasetId << 32 | fieldId, sorted, with the comment id of each field
+   * at the same position, 0 for none.
+   */
+  static final class Entry {
+    final long[] postings;
+    final long[] comments;
+    final Map<Long, Integer> commentCounts = new HashMap<>();
+    final long loadedTime;
+
+    Entry(long[] postings, long[] comments, long loadedTime) {
+      this.postings = postings;
+      this.comments = comments;
+      this.loadedTime = loadedTime;
+      for (long comment : comments) {
+        if (comment != 0) {
+          count(comment, 1);
+        }
+      }
+    }
+
+    void count(long comment, int delta) {
+      Integer count = commentCounts.get(comment);
+      int updated = (count == null ? 0 : count) + delta;
+      if (updated > 0) {
+        commentCounts.put(comment, updated);
+      } else {
+        commentCounts.remove(comment);
+      }
+    }
+
+    void setComment(long datasetId, long fieldId, long comment) {
+      int i = Arrays.binarySearch(postings, posting(datasetId, fieldId));
+      if (i < 0 || comments[i] == comment) {
+        return;
+      }
+      if (comments[i] != 0) {
+        count(comments[i], -1);
+      }
+      if (comment != 0) {
+        count(comment, 1);
+      }
+      comments[i] = comment;
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+  private final long maxPostings;
+  private final long refreshIntervalMs;
+  private final long entryTtlMs;
+
+  // guarded by this, in access order
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedPostings = 0;
+  // database time of the last check, null before the first lookup
+  private Timestamp modifiedSince;
+  private long lastRefresh;
+
+  public FieldNameIndex(DataSource dataSource, long maxPostings, long refreshIntervalMs, long entryTtlMs) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.maxPostings = maxPostings;
+    this.refreshIntervalMs = refreshIntervalMs;
+    this.entryTtlMs = entryTtlMs;
+  }
+
+  public static String normalize(String fieldName) {
+    return fieldName.trim().toUpperCase(Locale.ROOT);
+  }
+
+  static long posting(long datasetId, long fieldId) {
+    return datasetId << 32 | fieldId;
+  }
+
+  /**
+   * @param excludeDatasetId fields of this dataset are left out
+   * @param limit maximum number of fields returned, in dataset id order
+   */
+  public List<Posting> getPostings(String fieldName, long excludeDatasetId, int limit) {
+    Entry entry = getEntry(fieldName);
+    List<Posting> postings = new ArrayList<>();
+    synchronized (this) {
+      for (int i = 0; i < entry.postings.length && postings.size() < limit; i++) {
+        long datasetId = entry.postings[i] >>> 32;
+        if (datasetId != excludeDatasetId) {
+          long comment = entry.comments[i];
+          postings.add(new Posting(datasetId, entry.postings[i] & 0xffffffffL, comment == 0 ? null : comment));
+        }
+      }
+    }
+    return postings;
+  }
+
+  /**
+   * @return the comments used on the fields of this name, most used first
+   */
+  public List<CommentUsage> getCommentUsages(String fieldName) {
+    Entry entry = getEntry(fieldName);
+    List<CommentUsage> usages = new ArrayList<>();
+    synchronized (this) {
+      Map<Long, Long> datasets = new HashMap<>();
+      for (int i = 0; i < entry.comments.length; i++) {
+        if (entry.comments[i] != 0 && !datasets.containsKey(entry.comments[i])) {
+          datasets.put(entry.comments[i], entry.postings[i] >>> 32);
+        }
+      }
+      for (Map.Entry<Long, Integer> e : entry.commentCounts.entrySet()) {
+        usages.add(new CommentUsage(e.getKey(), e.getValue(), datasets.get(e.getKey())));
+      }
+    }
+    Collections.sort(usages, new Comparator<CommentUsage>() {
+      @Override
+      public int compare(CommentUsage a, CommentUsage b) {
+        return a.count != b.count ? Integer.compare(b.count, a.count) : Long.compare(a.commentId, b.commentId);
+      }
+    });
+    return usages;
+  }
+
+  /**
+   * Reload the comment of one field, after its default comment was set, changed or removed.
+   */
+  public void refreshField(long fieldId) {
+    List<Map<String, Object>> rows = jdbcTemplate.queryForList(GET_FIELD_BY_ID, fieldId);
+    if (rows.isEmpty()) {
+      return;
+    }
+    Map<String, Object> row = rows.get(0);
+    synchronized (this) {
+      Entry entry = entries.get(normalize((String) row.get("field_name")));
+      if (entry != null) {
+        Number comment = (Number) row.get("comment_id");
+        entry.setComment(((Number) row.get("dataset_id")).longValue(), fieldId,
+          comment == null ? 0 : comment.longValue());
+      }
+    }
+  }
+
+  public synchronized void invalidate(String fieldName) {
+    Entry entry = entries.remove(normalize(fieldName));
+    if (entry != null) {
+      cachedPostings -= entry.postings.length;
+    }
+  }
+
+  public synchronized int getCachedNames() {
+    return entries.size();
+  }
+
+  public synchronized long getCachedPostings() {
+    return cachedPostings;
+  }
+
+  private Entry getEntry(String fieldName) {
+    refreshIfStale();
+    String key = normalize(fieldName);
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && System.currentTimeMillis() - entry.loadedTime < entryTtlMs) {
+        return entry;
+      }
+    }
+    // loaded outside of the lock, a concurrent load of the same name only costs one more query
+    Entry entry = load(fieldName);
+    synchronized (this) {
+      Entry previous = entries.put(key, entry);
+      if (previous != null) {
+        cachedPostings -= previous.postings.length;
+      }
+      cachedPostings += entry.postings.length;
+      Iterator<Entry> it = entries.values().iterator();
+      while (cachedPostings > maxPostings && it.hasNext()) {
+        Entry eldest = it.next();
+        if (eldest != entry) {
+          cachedPostings -= eldest.postings.length;
+          it.remove();
+        }
+      }
+    }
+    return entry;
+  }
+
+  private Entry load(String fieldName) {
+    long loadedTime = System.currentTimeMillis();
+    List<Map<String, Object>> rows = jdbcTemplate.queryForList(GET_FIELDS_BY_NAME, fieldName.trim());
+    Map<Long, Long> fields = new HashMap<>(rows.size() * 2);
+    for (Map<String, Object> row : rows) {
+      long key = posting(((Number) row.get("dataset_id")).longValue(), ((Number) row.get("field_id")).longValue());
+      Number comment = (Number) row.get("comment_id");
+      if (!fields.containsKey(key) || fields.get(key) == 0) {
+        fields.put(key, comment == null ? 0 : comment.longValue());
+      }
+    }
+    long[] postings = new long[fields.size()];
+    int n = 0;
+    for (long key : fields.keySet()) {
+      postings[n++] = key;
+    }
+    Arrays.sort(postings);
+    long[] comments = new long[postings.length];
+    for (int i = 0; i < postings.length; i++) {
+      comments[i] = fields.get(postings[i]);
+    }
+    return new Entry(postings, comments, loadedTime);
+  }
+
+  /**
+   * Evict the names of the fields modified since the last check, once per refresh interval.
+   */
+  void refreshIfStale() {
+    Timestamp since;
+    synchronized (this) {
+      if (modifiedSince != null && System.currentTimeMillis() - lastRefresh < refreshIntervalMs) {
+        return;
+      }
+      lastRefresh = System.currentTimeMillis();
+      since = modifiedSince;
+    }
+    try {
+      Timestamp now = jdbcTemplate.queryForObject(GET_NOW, Timestamp.class);
+      // nothing is cached before the first check
+      List<String> names = since == null ? Collections.<String>emptyList()
+        : jdbcTemplate.queryForList(GET_MODIFIED_NAMES, String.class, since);
+      synchronized (this) {
+        for (String name : names) {
+          invalidate(name);
+        }
+        modifiedSince = now;
+      }
+      if (!names.isEmpty()) {
+        logger.debug("{} modified field names evicted from the index", names.size());
+      }
+    } catch (DataAccessException e) {
+      // the cached names are kept, and checked again at the next interval
+      logger.error("Failed to check the modified fields", e);
+    }
+  }
+}
@@ -16,23 +16,29 @@ package wherehows.common.utils;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -77,6 +83,30 @@ public class GitUtil {
     g.close();
   }
 
+  /**
+   * Fetch the remote git repo into an existing clone of the local directory, or clone it when there is none
+   * @param remoteUri remote git url e.g. git://gitli.example.com/project/repo.git
+   * @param localDir local clone directory
+   * @throws IOException
+   * @throws GitAPIException
+   */
+  public static void cloneOrFetch(String remoteUri, String localDir) throws IOException, GitAPIException {
+    File localGitRepo = new File(localDir);
+    if (!new File(localGitRepo, ".git").isDirectory()) {
+      clone(remoteUri, localDir);
+      return;
+    }
+
+    Git g = Git.open(localGitRepo);
+    try {
+      // only the remote tracking branches move, the working tree is not needed to read the history
+      g.fetch().setRemote(remoteUri).setRefSpecs(new RefSpec(
+        "+refs/heads/*:refs/remotes/origin/*")).setRemoveDeletedRefs(true).call();
+    } finally {
+      g.close();
+    }
+  }
+
   /**
    * Crawlling the project page to get list of repositories, only works for Gitorious
    * @param projectUrl the project url e.g. https://git.example.com/project
@@ -108,51 +138,106 @@ public class GitUtil {
    * @throws GitAPIException
    */
   public static List<CommitMetadata> getRepoMetadata(String repoDir) throws IOException, GitAPIException {
+    return getRepoMetadata(repoDir, Collections.<String>emptyList());
+  }
+
+  /**
+   * Fetch the metadata of the commits of the current branch that are not reachable from the processed ones.
+   * <p>
+   * The history is walked once and every commit is compared with its parents, a commit is attributed to the files
+   * it adds or modifies. Like git log with a path, a merge commit is only attributed to the files that differ from
+   * all its parents. Processed commits unknown to the repo, after a rewritten history, are ignored.
+   * @param repoDir repository directory
+   * @param processedCommitIds commits already extracted, with all their ancestors
+   * @return list of commit metadata, newest commits first
+   * @throws IOException
+   */
+  public static List<CommitMetadata> getRepoMetadata(String repoDir, Collection<String> processedCommitIds)
+    throws IOException {
 
     List<CommitMetadata> metadataList = new ArrayList<>();
 
     FileRepositoryBuilder builder = new FileRepositoryBuilder();
     Repository repository = builder.setGitDir(new File(repoDir, ".git")).readEnvironment().findGitDir().build();
 
-    // Current branch may not be master. Instead of hard coding determine the current branch
-    String currentBranch = repository.getBranch();
-    Ref head = repository.getRef("refs/heads/" + currentBranch); // current branch may not be "master"
-    if (head == null) {
-      return metadataList;
-    }
+    try {
+      // Current branch may not be master. Instead of hard coding determine the current branch
+      String currentBranch = repository.getBranch();
+      // a fetched clone only moves the remote tracking branch
+      Ref head = repository.getRef("refs/remotes/origin/" + currentBranch);
+      if (head == null) {
+        head = repository.getRef("refs/heads/" + currentBranch);
+      }
+      if (head == null) {
+        return metadataList;
+      }
 
-    Git git = new Git(repository);
-
-    RevWalk walk = new RevWalk(repository);
-    RevCommit commit = walk.parseCommit(head.getObjectId());
-
-    TreeWalk treeWalk = new TreeWalk(repository);
-    treeWalk.addTree(commit.getTree());
-    treeWalk.setRecursive(true);
-    while (treeWalk.next()) {
-      String filePath = treeWalk.getPathString();
-      Iterable<RevCommit> commitLog = git.log().add(repository.resolve(Constants.HEAD)).addPath(filePath).call();
-      for (RevCommit r : commitLog) {
-        CommitMetadata metadata = new CommitMetadata(r.getName());
-        metadata.setFilePath(filePath);
-        metadata.setFileName(FilenameUtils.getName(filePath));
-        metadata.setMessage(r.getShortMessage().trim());
-        // Difference between committer and author
-        // refer to: http://git-scm.com/book/ch2-3.html
-        PersonIdent committer = r.getCommitterIdent();
-        PersonIdent author = r.getAuthorIdent();
-        metadata.setAuthor(author.getName());
-        metadata.setAuthorEmail(author.getEmailAddress());
-        metadata.setCommitter(committer.getName());
-        metadata.setCommitterEmail(committer.getEmailAddress());
-        metadata.setCommitTime(committer.getWhen());
-        metadataList.add(metadata);
+      try (ObjectReader reader = repository.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+        walk.markStart(walk.parseCommit(head.getObjectId()));
+        for (String commitId : processedCommitIds) {
+          try {
+            walk.markUninteresting(walk.parseCommit(ObjectId.fromString(commitId)));
+          } catch (MissingObjectException | IllegalArgumentException e) {
+            logger.warn("Processed commit {} is not in {}", commitId, repoDir);
+          }
+        }
+
+        TreeWalk treeWalk = new TreeWalk(reader);
+        treeWalk.setRecursive(true);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        for (RevCommit r : walk) {
+          treeWalk.reset();
+          if (r.getParentCount() == 0) {
+            treeWalk.addTree(new EmptyTreeIterator());
+          }
+          for (RevCommit parent : r.getParents()) {
+            walk.parseHeaders(parent);
+            treeWalk.addTree(parent.getTree());
+          }
+          treeWalk.addTree(r.getTree());
+          int last = treeWalk.getTreeCount() - 1;
+
+          while (treeWalk.next()) {
+            // deleted files are not attributed
+            if (treeWalk.getRawMode(last) == 0 || sameAsAParent(treeWalk, last)) {
+              continue;
+            }
+            metadataList.add(toMetadata(r, treeWalk.getPathString()));
+          }
+        }
       }
+    } finally {
+      repository.close();
     }
-    git.close();
     return metadataList;
   }
 
+  private static boolean sameAsAParent(TreeWalk treeWalk, int last) {
+    for (int i = 0; i < last; i++) {
+      if (treeWalk.idEqual(i, last) && treeWalk.getRawMode(i) == treeWalk.getRawMode(last)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static CommitMetadata toMetadata(RevCommit r, String filePath) {
+    CommitMetadata metadata = new CommitMetadata(r.getName());
+    metadata.setFilePath(filePath);
+    metadata.setFileName(FilenameUtils.getName(filePath));
+    metadata.setMessage(r.getShortMessage().trim());
+    // Difference between committer and author
+    // refer to: http://git-scm.com/book/ch2-3.html
+    PersonIdent committer = r.getCommitterIdent();
+    PersonIdent author = r.getAuthorIdent();
+    metadata.setAuthor(author.getName());
+    metadata.setAuthorEmail(author.getEmailAddress());
+    metadata.setCommitter(committer.getName());
+    metadata.setCommitterEmail(committer.getEmailAddress());
+    metadata.setCommitTime(committer.getWhen());
+    return metadata;
+  }
+
   public static String getHttpsUrl(String host, String path) {
     return HTTPS_PROTOCAL + "://" + host + "/" + path;
   }
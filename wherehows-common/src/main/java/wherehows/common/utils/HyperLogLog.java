@@ -0,0 +1,175 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * HyperLogLog sketch counting the distinct values added to it.
+ * <p>
+ * A sketch starts sparse and keeps the exact hashes of its values, so the small counts of most objects are exact.
+ * Past {@link #SPARSE_LIMIT} values it switches to 2^{@link #PRECISION} registers of one byte, with a standard
+ * error of about 2.3%. Sketches of the same precision merge losslessly, which is how hourly counts roll up into
+ * daily ones. Not thread safe.
+ */
+public class HyperLogLog {
+  static final int PRECISION = 11;
+  static final int REGISTERS = 1 << PRECISION;
+  // a sparse sketch holds at most this many hashes, half the size of the dense registers once serialized
+  static final int SPARSE_LIMIT = REGISTERS / 16;
+
+  private static final byte SPARSE = 1;
+  private static final byte DENSE = 2;
+
+  private Set<Long> sparse = new HashSet<>();
+  private byte[] registers;
+
+  /**
+   * @return true when the sketch changed
+   */
+  public boolean add(long value) {
+    return addHash(hash(value));
+  }
+
+  private boolean addHash(long hash) {
+    if (registers == null) {
+      if (!sparse.add(hash)) {
+        return false;
+      }
+      if (sparse.size() > SPARSE_LIMIT) {
+        toDense();
+      }
+      return true;
+    }
+    int index = (int) (hash >>> (64 - PRECISION));
+    byte rank = (byte) (Math.min(Long.numberOfLeadingZeros(hash << PRECISION), 64 - PRECISION) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+      return true;
+    }
+    return false;
+  }
+
+  private void toDense() {
+    registers = new byte[REGISTERS];
+    for (long hash : sparse) {
+      addHash(hash);
+    }
+    sparse = null;
+  }
+
+  /**
+   * Add the values of another sketch to this one.
+   */
+  public void merge(HyperLogLog other) {
+    if (other.registers == null) {
+      for (long hash : other.sparse) {
+        addHash(hash);
+      }
+      return;
+    }
+    if (registers == null) {
+      toDense();
+    }
+    for (int i = 0; i < REGISTERS; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+  }
+
+  public boolean isSparse() {
+    return registers == null;
+  }
+
+  /**
+   * @return the number of distinct values added, exact while the sketch is sparse
+   */
+  public long cardinality() {
+    if (registers == null) {
+      return sparse.size();
+    }
+    double sum = 0;
+    int zeros = 0;
+    for (byte r : registers) {
+      sum += 1.0 / (1L << r);
+      if (r == 0) {
+        zeros++;
+      }
+    }
+    double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+    double estimate = alpha * REGISTERS * REGISTERS / sum;
+    if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+      // linear counting is more accurate for the small cardinalities
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  public byte[] toBytes() {
+    if (registers == null) {
+      ByteBuffer buffer = ByteBuffer.allocate(1 + 8 * sparse.size());
+      buffer.put(SPARSE);
+      for (long hash : sparse) {
+        buffer.putLong(hash);
+      }
+      return buffer.array();
+    }
+    byte[] bytes = new byte[1 + REGISTERS];
+    bytes[0] = DENSE;
+    System.arraycopy(registers, 0, bytes, 1, REGISTERS);
+    return bytes;
+  }
+
+  /**
+   * @param bytes serialized by {@link #toBytes()}, null or empty for an empty sketch
+   */
+  public static HyperLogLog fromBytes(byte[] bytes) {
+    HyperLogLog hll = new HyperLogLog();
+    if (bytes == null || bytes.length == 0) {
+      return hll;
+    }
+    if (bytes[0] == SPARSE && (bytes.length - 1) % 8 == 0) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+      while (buffer.hasRemaining()) {
+        hll.sparse.add(buffer.getLong());
+      }
+      return hll;
+    }
+    if (bytes[0] == DENSE && bytes.length == 1 + REGISTERS) {
+      hll.sparse = null;
+      hll.registers = new byte[REGISTERS];
+      System.arraycopy(bytes, 1, hll.registers, 0, REGISTERS);
+      return hll;
+    }
+    throw new IllegalArgumentException("Not a serialized sketch of precision " + PRECISION + ", " + bytes.length
+      + " bytes");
+  }
+
+  /**
+   * 64-bit finalizer of MurmurHash3, spreads ids that are close to each other over all the bits.
+   */
+  static long hash(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
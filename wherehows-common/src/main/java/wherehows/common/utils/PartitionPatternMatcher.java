@@ -13,22 +13,103 @@
  */
 package wherehows.common.utils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import wherehows.common.schemas.PartitionLayout;
 
 
 /**
+ * Match partition paths against the layouts of dataset_partition_layout_pattern, the first layout in sort order wins.
+ * <p>
+ * The regexes are compiled once when the matcher is built, and the matcher is immutable so it can be shared between
+ * threads and reused until the layouts change. Before running a regex, the path is checked against the literal parts
+ * the regex requires : the literal prefix (e.g. {@code /data/tracking/}) and the longest literal outside any group
+ * (e.g. {@code /daily/}). Most layouts fail these cheap checks, and only the few left are matched.
  * Created by zechen on 10/16/15.
  */
 public class PartitionPatternMatcher {
-  List<PartitionLayout> layoutList;
+  private static final Logger logger = LoggerFactory.getLogger(PartitionPatternMatcher.class);
+
+  /**
+   * A layout with its compiled regex and the literals a matching path must contain.
+   */
+  static class CompiledLayout {
+    final PartitionLayout layout;
+    final Pattern pattern;
+    final String prefix;
+    final String literal;
+
+    CompiledLayout(PartitionLayout layout, Pattern pattern) {
+      this.layout = layout;
+      this.pattern = pattern;
+      Literals literals = requiredLiterals(layout.getRegex());
+      this.prefix = literals.prefix;
+      String longest = "";
+      for (String l : literals.runs) {
+        if (l.length() > longest.length()) {
+          longest = l;
+        }
+      }
+      this.literal = longest;
+    }
+
+    boolean mayMatch(String path) {
+      return path.startsWith(prefix) && path.contains(literal);
+    }
+  }
+
+  /**
+   * The layout that matched, with the matcher to read its groups.
+   */
+  public static class Match {
+    private final PartitionLayout layout;
+    private final Matcher matcher;
+
+    Match(PartitionLayout layout, Matcher matcher) {
+      this.layout = layout;
+      this.matcher = matcher;
+    }
+
+    public PartitionLayout getLayout() {
+      return layout;
+    }
+
+    public Matcher getMatcher() {
+      return matcher;
+    }
+  }
+
+  /**
+   * Literal runs required by a regex, the prefix is the run the regex starts with, empty if it starts otherwise.
+   */
+  static class Literals {
+    String prefix = "";
+    final List<String> runs = new ArrayList<>();
+  }
+
+  final List<CompiledLayout> layoutList;
 
   public PartitionPatternMatcher(List<PartitionLayout> layoutList) {
-    Collections.sort(layoutList, (PartitionLayout o1, PartitionLayout o2) -> o1.getSortId().compareTo(o2.getSortId()));
-    this.layoutList = layoutList;
+    List<PartitionLayout> sorted = new ArrayList<>(layoutList);
+    Collections.sort(sorted, (PartitionLayout o1, PartitionLayout o2) -> o1.getSortId().compareTo(o2.getSortId()));
+    List<CompiledLayout> compiled = new ArrayList<>(sorted.size());
+    for (PartitionLayout pl : sorted) {
+      if (pl.getRegex() == null) {
+        continue;
+      }
+      try {
+        compiled.add(new CompiledLayout(pl, Pattern.compile(pl.getRegex())));
+      } catch (PatternSyntaxException e) {
+        logger.error("Skip layout {} with invalid regex {}", pl.getLayoutId(), pl.getRegex(), e);
+      }
+    }
+    this.layoutList = Collections.unmodifiableList(compiled);
   }
 
   /**
@@ -38,17 +119,129 @@ public class PartitionPatternMatcher {
    * @return layout id
    */
   public Integer analyze(String partitionFullPath) {
-    for (PartitionLayout pl : this.layoutList) {
-      Pattern p = Pattern.compile(pl.getRegex());
-      Matcher m = p.matcher(partitionFullPath);
+    Match m = match(partitionFullPath);
+    return m == null ? null : m.layout.getLayoutId();
+  }
+
+  /**
+   * Find the first layout matching the whole path
+   * @param partitionFullPath
+   * @return the match, null if no layout matches
+   */
+  public Match match(String partitionFullPath) {
+    if (partitionFullPath == null) {
+      return null;
+    }
+    for (CompiledLayout cl : this.layoutList) {
+      if (!cl.mayMatch(partitionFullPath)) {
+        continue;
+      }
+      Matcher m = cl.pattern.matcher(partitionFullPath);
       if (m.matches()) {
-        return pl.getLayoutId();
+        return new Match(cl.layout, m);
       }
     }
-
     return null;
   }
 
+  public int size() {
+    return layoutList.size();
+  }
+
+  /**
+   * Literal runs that every string matching the regex contains, read from the top level of the regex only : the
+   * content of groups and character classes, the characters made optional by a quantifier, and the escapes of
+   * character classes break a run, and the bounds of {m,n} quantifiers are skipped. Regexes with alternation, inline
+   * flags or quoting return no literal, since their literals may not be required or may not match case-sensitively,
+   * and so do regexes with escapes taking an argument, like a property, hex or control escape, whose argument is not
+   * text.
+   * @param regex
+   * @return literal runs in the order of the regex, no run when nothing can be required
+   */
+  static Literals requiredLiterals(String regex) {
+    Literals literals = new Literals();
+    if (regex.contains("|") || regex.contains("(?") || regex.contains("\\Q") || hasEscapeWithArgument(regex)) {
+      return literals;
+    }
+    StringBuilder run = new StringBuilder();
+    // nothing but '^' read so far, the first run is the prefix
+    boolean leading = true;
+    int depth = 0;
+    int i = regex.startsWith("^") ? 1 : 0;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      String literal = null;
+      int next = i + 1;
+      if (c == '\\' && i + 1 < regex.length()) {
+        char e = regex.charAt(i + 1);
+        if (!Character.isLetterOrDigit(e)) {
+          literal = String.valueOf(e);
+        }
+        next = i + 2;
+      } else if (c == '[') {
+        // skip the character class, a ']' right after '[' or '[^' is a literal of the class
+        next = i + 1;
+        if (next < regex.length() && regex.charAt(next) == '^') {
+          next++;
+        }
+        if (next < regex.length() && regex.charAt(next) == ']') {
+          next++;
+        }
+        while (next < regex.length() && regex.charAt(next) != ']') {
+          next += regex.charAt(next) == '\\' ? 2 : 1;
+        }
+        next++;
+      } else if (c == '{') {
+        // skip the bounds of the quantifier
+        next = regex.indexOf('}', i);
+        next = next < 0 ? regex.length() : next + 1;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (".^$*+?{}".indexOf(c) < 0) {
+        literal = String.valueOf(c);
+      }
+
+      // a quantifier after the literal makes it optional or repeated, it can not extend the run
+      boolean quantified = next < regex.length() && "*+?{".indexOf(regex.charAt(next)) >= 0;
+      if (literal != null && depth == 0 && !quantified) {
+        run.append(literal);
+      } else {
+        if (literal != null && depth == 0 && regex.charAt(next) == '+') {
+          // x+ still requires one x
+          run.append(literal);
+        }
+        closeRun(literals, run, leading);
+        leading = false;
+      }
+      i = next;
+    }
+    closeRun(literals, run, leading);
+    return literals;
+  }
 
+  /**
+   * Whether the regex has an escape followed by an argument, a backslash followed by one of p, P, x, u, 0, c, N or k.
+   * An escaped backslash followed by one of these letters is taken as such too, which only costs the literal
+   * filtering of that regex.
+   */
+  static boolean hasEscapeWithArgument(String regex) {
+    for (int i = regex.indexOf('\\'); i >= 0 && i + 1 < regex.length(); i = regex.indexOf('\\', i + 2)) {
+      if ("pPxu0cNk".indexOf(regex.charAt(i + 1)) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
 
+  private static void closeRun(Literals literals, StringBuilder run, boolean leading) {
+    if (run.length() > 0) {
+      literals.runs.add(run.toString());
+      if (leading) {
+        literals.prefix = run.toString();
+      }
+      run.setLength(0);
+    }
+  }
 }
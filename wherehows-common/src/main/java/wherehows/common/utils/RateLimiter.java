@@ -0,0 +1,50 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+/**
+ * Smooth rate limiter shared by worker threads, used to cap the calls made to a remote system
+ * (NameNode RPCs, warehouse queries). A non-positive rate disables the limit.
+ */
+public class RateLimiter {
+  private final long intervalNanos;
+  private long nextFreeSlot;
+
+  public RateLimiter(double permitsPerSecond) {
+    this.intervalNanos = permitsPerSecond > 0 ? (long) (1000000000L / permitsPerSecond) : 0L;
+    this.nextFreeSlot = System.nanoTime();
+  }
+
+  /**
+   * Block until the caller is allowed to issue one more call.
+   */
+  public void acquire()
+    throws InterruptedException {
+    if (intervalNanos == 0) {
+      return;
+    }
+    long waitNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      if (nextFreeSlot < now) {
+        nextFreeSlot = now;
+      }
+      waitNanos = nextFreeSlot - now;
+      nextFreeSlot += intervalNanos;
+    }
+    if (waitNanos > 0) {
+      Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+    }
+  }
+}
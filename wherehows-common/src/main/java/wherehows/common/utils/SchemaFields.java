@@ -0,0 +1,166 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Compact text form of the fields of a schema version, and the differences between two versions.
+ * <p>
+ * The fields of a version are kept as one line per field, its dotted path and a signature of its definition,
+ * sorted by path. Two versions are compared on these lines only, without parsing their schemas again : a field is
+ * added or removed when its path appears or disappears, changed when its signature differs.
+ */
+public class SchemaFields {
+  private static final char SEPARATOR = '\t';
+  private static final char NEWLINE = '\n';
+  private static final char ADDED = '+';
+  private static final char REMOVED = '-';
+  private static final char CHANGED = '~';
+
+  private SchemaFields() {
+  }
+
+  /**
+   * Added, removed and changed field paths, each list sorted
+   */
+  public static class Diff {
+    public final List<String> added;
+    public final List<String> removed;
+    public final List<String> changed;
+
+    public Diff(List<String> added, List<String> removed, List<String> changed) {
+      this.added = added;
+      this.removed = removed;
+      this.changed = changed;
+    }
+
+    public String encode() {
+      StringBuilder sb = new StringBuilder();
+      append(sb, ADDED, added);
+      append(sb, REMOVED, removed);
+      append(sb, CHANGED, changed);
+      return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, char kind, List<String> paths) {
+      for (String path : paths) {
+        sb.append(kind).append(path).append(NEWLINE);
+      }
+    }
+
+    public static Diff decode(String text) {
+      List<String> added = new ArrayList<>();
+      List<String> removed = new ArrayList<>();
+      List<String> changed = new ArrayList<>();
+      if (text != null) {
+        for (String line : lines(text)) {
+          switch (line.charAt(0)) {
+            case ADDED:
+              added.add(line.substring(1));
+              break;
+            case REMOVED:
+              removed.add(line.substring(1));
+              break;
+            case CHANGED:
+              changed.add(line.substring(1));
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown diff line: " + line);
+          }
+        }
+      }
+      return new Diff(added, removed, changed);
+    }
+  }
+
+  /**
+   * @param fields path to signature
+   */
+  public static String encode(Map<String, String> fields) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> e : new TreeMap<>(fields).entrySet()) {
+      sb.append(clean(e.getKey())).append(SEPARATOR).append(clean(e.getValue())).append(NEWLINE);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return path to signature, in path order, empty for a null text
+   */
+  public static Map<String, String> decode(String text) {
+    Map<String, String> fields = new LinkedHashMap<>();
+    if (text == null) {
+      return fields;
+    }
+    for (String line : lines(text)) {
+      int sep = line.lastIndexOf(SEPARATOR);
+      if (sep < 0) {
+        throw new IllegalArgumentException("Not a field line: " + line);
+      }
+      fields.put(line.substring(0, sep), line.substring(sep + 1));
+    }
+    return fields;
+  }
+
+  public static Diff diff(Map<String, String> before, Map<String, String> after) {
+    List<String> added = new ArrayList<>();
+    List<String> removed = new ArrayList<>();
+    List<String> changed = new ArrayList<>();
+    for (Map.Entry<String, String> e : after.entrySet()) {
+      String previous = before.get(e.getKey());
+      if (previous == null) {
+        added.add(e.getKey());
+      } else if (!previous.equals(e.getValue())) {
+        changed.add(e.getKey());
+      }
+    }
+    for (String path : before.keySet()) {
+      if (!after.containsKey(path)) {
+        removed.add(path);
+      }
+    }
+    Collections.sort(added);
+    Collections.sort(removed);
+    Collections.sort(changed);
+    return new Diff(added, removed, changed);
+  }
+
+  private static List<String> lines(String text) {
+    List<String> lines = new ArrayList<>();
+    int start = 0;
+    while (start < text.length()) {
+      int end = text.indexOf(NEWLINE, start);
+      if (end < 0) {
+        end = text.length();
+      }
+      if (end > start) {
+        lines.add(text.substring(start, end));
+      }
+      start = end + 1;
+    }
+    return lines;
+  }
+
+  // paths come from field names, which may hold any character
+  private static String clean(String s) {
+    return s.replace(SEPARATOR, ' ').replace(NEWLINE, ' ');
+  }
+}
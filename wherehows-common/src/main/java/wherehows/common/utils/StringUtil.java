@@ -41,4 +41,49 @@ public class StringUtil {
       return s.replace(target, "null");
     }
   }
+
+  /**
+   * Remove control, format, private use, surrogate and unassigned code points (regex class [\n\r\p{C}]).
+   * Returns the input itself when there is nothing to remove.
+   */
+  public static String removeControlCharacters(String s) {
+    if (s == null) {
+      return null;
+    }
+    int i = 0;
+    while (i < s.length()) {
+      int cp = s.codePointAt(i);
+      if (isControlCharacter(cp)) {
+        break;
+      }
+      i += Character.charCount(cp);
+    }
+    if (i == s.length()) {
+      return s;
+    }
+
+    StringBuilder sb = new StringBuilder(s.length());
+    sb.append(s, 0, i);
+    while (i < s.length()) {
+      int cp = s.codePointAt(i);
+      if (!isControlCharacter(cp)) {
+        sb.appendCodePoint(cp);
+      }
+      i += Character.charCount(cp);
+    }
+    return sb.toString();
+  }
+
+  private static boolean isControlCharacter(int codePoint) {
+    switch (Character.getType(codePoint)) {
+      case Character.CONTROL:
+      case Character.FORMAT:
+      case Character.PRIVATE_USE:
+      case Character.SURROGATE:
+      case Character.UNASSIGNED:
+        return true;
+      default:
+        return false;
+    }
+  }
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class DatasetUrnTest {
+
+  @Test
+  public void testParse() {
+    DatasetUrn hdfs = DatasetUrn.parse("hdfs:///data/tracking/PageViewEvent");
+    Assert.assertEquals(hdfs.getStorageType(), "hdfs");
+    Assert.assertEquals(hdfs.getPath(), "/data/tracking/PageViewEvent");
+    Assert.assertEquals(hdfs.getSchemaName(), "");
+    Assert.assertEquals(hdfs.getAbstractObjectName(), "/data/tracking/PageViewEvent");
+
+    DatasetUrn teradata = DatasetUrn.parse("Teradata:///dwh/dwh_dim/domain_name");
+    Assert.assertEquals(teradata.getStorageType(), "teradata");
+    Assert.assertEquals(teradata.getPath(), "/dwh/dwh_dim/domain_name");
+    Assert.assertEquals(teradata.getSchemaName(), "dwh/dwh_dim");
+    Assert.assertEquals(teradata.getAbstractObjectName(), "domain_name");
+
+    DatasetUrn kafka = DatasetUrn.parse("kafka:///PageViewEvent");
+    Assert.assertEquals(kafka.getStorageType(), "kafka");
+    Assert.assertNull(kafka.getSchemaName());
+    Assert.assertEquals(kafka.getAbstractObjectName(), "PageViewEvent");
+
+    DatasetUrn noScheme = DatasetUrn.parse("/data/something");
+    Assert.assertNull(noScheme.getStorageType());
+    Assert.assertEquals(noScheme.getPath(), "/data/something");
+    Assert.assertNull(DatasetUrn.parse(null));
+    Assert.assertEquals(DatasetUrn.normalizedPath("hdfs:///data/a"), "/data/a");
+  }
+
+  @Test
+  public void testOf() {
+    Assert.assertEquals(DatasetUrn.of("Teradata", "dwh_dim", "dim_member").getUrn(), "teradata:///dwh_dim/dim_member");
+    Assert.assertEquals(DatasetUrn.of("hdfs", null, "/data/x").getUrn(), "hdfs:///data/x");
+    Assert.assertEquals(DatasetUrn.of("hdfs", "", "data/x"), DatasetUrn.parse("hdfs:///data/x"));
+  }
+
+  @Test
+  public void testIsValid() {
+    Assert.assertTrue(DatasetUrn.isValid("hdfs:///data/x"));
+    Assert.assertTrue(DatasetUrn.isValid("teradata:///dwh/x"));
+    Assert.assertFalse(DatasetUrn.isValid("hdfs:///"));
+    Assert.assertFalse(DatasetUrn.isValid("kafka:///x"));
+    Assert.assertFalse(DatasetUrn.isValid("hdfs://data/x"));
+    Assert.assertFalse(DatasetUrn.isValid(null));
+  }
+
+  @Test
+  public void testCache() {
+    DatasetUrn first = DatasetUrn.parse("hdfs:///data/cached");
+    Assert.assertSame(DatasetUrn.parse(new String("hdfs:///data/cached")), first);
+
+    for (int i = 0; i <= DatasetUrn.CACHE_SIZE; i++) {
+      DatasetUrn.parse("hdfs:///data/other/" + i);
+    }
+    // evicted, parsed again into an equal value
+    DatasetUrn again = DatasetUrn.parse("hdfs:///data/cached");
+    Assert.assertNotSame(again, first);
+    Assert.assertEquals(again, first);
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class AsyncBatcherTest {
+
+  /**
+   * Keeps the size of every batch written
+   */
+  static class RecordingSink implements AsyncBatcher.Sink<Integer> {
+    final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Integer> sizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Override
+    public void write(List<Integer> batch) {
+      items.addAll(batch);
+      sizes.add(batch.size());
+    }
+  }
+
+  @Test
+  public void testBatchSize() {
+    RecordingSink sink = new RecordingSink();
+    // the delay is long enough to only write full batches before close
+    AsyncBatcher<Integer> batcher = new AsyncBatcher<>("test", 1000, 10, 60000, sink);
+    for (int i = 0; i < 25; i++) {
+      Assert.assertTrue(batcher.offer(i));
+    }
+    batcher.close();
+
+    Assert.assertEquals(sink.items.size(), 25);
+    Assert.assertEquals(sink.items.get(24), Integer.valueOf(24));
+    for (int size : sink.sizes) {
+      Assert.assertTrue(size <= 10, sink.sizes.toString());
+    }
+    Assert.assertEquals(batcher.getEnqueued(), 25);
+    Assert.assertEquals(batcher.getWritten(), 25);
+    Assert.assertEquals(batcher.getDropped(), 0);
+    Assert.assertFalse(batcher.offer(25));
+    Assert.assertEquals(batcher.getDropped(), 1);
+  }
+
+  @Test
+  public void testMaxDelay()
+    throws InterruptedException {
+    RecordingSink sink = new RecordingSink();
+    AsyncBatcher<Integer> batcher = new AsyncBatcher<>("test", 1000, 100, 50, sink);
+    batcher.offer(1);
+    batcher.offer(2);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (sink.items.size() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    // written without waiting for a full batch
+    Assert.assertEquals(sink.items.size(), 2);
+    Assert.assertEquals(batcher.getPending(), 0);
+    batcher.close();
+  }
+
+  @Test
+  public void testDropWhenFull()
+    throws InterruptedException {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    AsyncBatcher<Integer> batcher = new AsyncBatcher<>("test", 5, 1, 1000, new AsyncBatcher.Sink<Integer>() {
+      @Override
+      public void write(List<Integer> batch)
+        throws Exception {
+        writing.countDown();
+        release.await();
+      }
+    });
+    batcher.offer(0);
+    Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+    // the sink holds item 0, the buffer takes 5 more
+    int accepted = 0;
+    for (int i = 1; i <= 10; i++) {
+      if (batcher.offer(i)) {
+        accepted++;
+      }
+    }
+    Assert.assertEquals(accepted, 5);
+    Assert.assertEquals(batcher.getDropped(), 5);
+    Assert.assertEquals(batcher.getPending(), 5);
+    release.countDown();
+    batcher.close();
+    Assert.assertEquals(batcher.getWritten(), 6);
+  }
+
+  @Test
+  public void testFailedBatch() {
+    AsyncBatcher<Integer> batcher = new AsyncBatcher<>("test", 100, 10, 60000, new AsyncBatcher.Sink<Integer>() {
+      @Override
+      public void write(List<Integer> batch) {
+        throw new IllegalStateException("database is down");
+      }
+    });
+    for (int i = 0; i < 15; i++) {
+      batcher.offer(i);
+    }
+    batcher.close();
+    Assert.assertEquals(batcher.getFailed(), 15);
+    Assert.assertEquals(batcher.getWritten(), 0);
+  }
+}
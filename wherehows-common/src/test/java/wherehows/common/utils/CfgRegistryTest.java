@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class CfgRegistryTest {
+  DriverManagerDataSource dataSource;
+  JdbcTemplate jdbcTemplate;
+
+  @BeforeMethod
+  public void setUp() {
+    dataSource = new DriverManagerDataSource("jdbc:h2:mem:cfg_registry;DB_CLOSE_DELAY=-1", "sa", "");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("DROP ALL OBJECTS");
+    jdbcTemplate.execute("CREATE TABLE cfg_application (app_id INT PRIMARY KEY, app_code VARCHAR(128), "
+      + "short_connection_string VARCHAR(50))");
+    jdbcTemplate.execute("CREATE TABLE cfg_database (db_id INT PRIMARY KEY, db_code VARCHAR(30), "
+      + "short_connection_string VARCHAR(50))");
+    jdbcTemplate.update("INSERT INTO cfg_application VALUES (31, 'AZKABAN PROD', 'azkaban-prod'), "
+      + "(32, 'AZKABAN DEV', 'azkaban-dev'), (41, 'OOZIE', 'oozie-prod')");
+    jdbcTemplate.update("INSERT INTO cfg_database VALUES (10001, 'HDFS', 'hdfs-prod'), (10002, 'TD', 'td-prod')");
+  }
+
+  @Test
+  public void testLookup() {
+    CfgRegistry registry = new CfgRegistry(dataSource, 60000);
+    Assert.assertEquals(registry.getAllApps().size(), 3);
+    Assert.assertEquals(registry.getAllDbs().size(), 2);
+
+    Assert.assertEquals(registry.getAppById(31).get("app_code"), "AZKABAN PROD");
+    Assert.assertEquals(registry.getAppByCode("azkaban prod").get("app_id"), 31);
+    Assert.assertEquals(registry.getAppByName("AZKABAN-DEV").get("app_id"), 32);
+    Assert.assertEquals(registry.getDbByCode("td").get("db_id"), 10002);
+    Assert.assertEquals(registry.findAppId("oozie-prod"), Integer.valueOf(41));
+    Assert.assertEquals(registry.findDbId("hdfs-prod"), Integer.valueOf(10001));
+    Assert.assertNull(registry.findAppId("unknown"));
+    Assert.assertNull(registry.findAppId(null));
+    Assert.assertEquals(registry.findAppCode(41), "OOZIE");
+    Assert.assertEquals(registry.findAppShortConnectionString(32), "azkaban-dev");
+
+    Assert.assertEquals(registry.getAppIdsLike("azkaban-%"), Arrays.asList(31, 32));
+    Assert.assertEquals(registry.getAppIdsLike("%"), Arrays.asList(31, 32, 41));
+    Assert.assertEquals(registry.getDbIdsLike("TD-PROD"), Collections.singletonList(10002));
+    try {
+      registry.getAppById(99);
+      Assert.fail("No application 99");
+    } catch (EmptyResultDataAccessException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testLikePattern() {
+    Assert.assertTrue(CfgRegistry.likePattern("azkaban-%").matcher("Azkaban-Prod").matches());
+    Assert.assertTrue(CfgRegistry.likePattern("a_c").matcher("abc").matches());
+    Assert.assertFalse(CfgRegistry.likePattern("a_c").matcher("abbc").matches());
+    Assert.assertTrue(CfgRegistry.likePattern("a\\_c").matcher("a_c").matches());
+    Assert.assertFalse(CfgRegistry.likePattern("a\\_c").matcher("abc").matches());
+    Assert.assertTrue(CfgRegistry.likePattern("a.b%").matcher("a.bc").matches());
+    Assert.assertFalse(CfgRegistry.likePattern("a.b%").matcher("axbc").matches());
+  }
+
+  @Test
+  public void testRefresh()
+    throws InterruptedException {
+    CfgRegistry registry = new CfgRegistry(dataSource, 60000);
+    Assert.assertNull(registry.findAppId("spark-prod"));
+    jdbcTemplate.update("INSERT INTO cfg_application VALUES (51, 'SPARK', 'spark-prod')");
+    // not reloaded before the interval
+    Assert.assertNull(registry.findAppId("spark-prod"));
+    registry.refresh();
+    Assert.assertEquals(registry.findAppId("spark-prod"), Integer.valueOf(51));
+
+    CfgRegistry stale = new CfgRegistry(dataSource, 0);
+    Assert.assertEquals(stale.getAllApps().size(), 4);
+    jdbcTemplate.update("DELETE FROM cfg_application WHERE app_id = 51");
+    Thread.sleep(5);
+    Assert.assertEquals(stale.getAllApps().size(), 3);
+  }
+
+  @Test
+  public void testKeepSnapshotOnFailure()
+    throws InterruptedException {
+    CfgRegistry registry = new CfgRegistry(dataSource, 0);
+    Assert.assertEquals(registry.getAllDbs().size(), 2);
+    jdbcTemplate.execute("DROP TABLE cfg_database");
+    Thread.sleep(5);
+    Assert.assertEquals(registry.findDbId("td-prod"), Integer.valueOf(10002));
+
+    try {
+      new CfgRegistry(dataSource, 0).getAllDbs();
+      Assert.fail("Nothing loaded yet");
+    } catch (DataAccessException e) {
+      // expected
+    }
+  }
+}
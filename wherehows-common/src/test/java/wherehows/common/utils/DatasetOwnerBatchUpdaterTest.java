@@ -0,0 +1,176 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import wherehows.common.utils.DatasetOwnerBatchUpdater.DatasetResult;
+import wherehows.common.utils.DatasetOwnerBatchUpdater.Owner;
+import wherehows.common.utils.DatasetOwnerBatchUpdater.Status;
+
+
+public class DatasetOwnerBatchUpdaterTest {
+  private static final Logger logger = LoggerFactory.getLogger(DatasetOwnerBatchUpdaterTest.class);
+
+  DriverManagerDataSource dataSource;
+  JdbcTemplate jdbcTemplate;
+  DatasetOwnerBatchUpdater updater;
+
+  @BeforeMethod
+  public void setUp() {
+    dataSource = new DriverManagerDataSource("jdbc:h2:mem:dataset_owner;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("DROP ALL OBJECTS");
+    jdbcTemplate.execute("CREATE TABLE dict_dataset (id INT PRIMARY KEY, urn VARCHAR(200))");
+    jdbcTemplate.execute("CREATE TABLE dataset_owner (dataset_id INT NOT NULL, dataset_urn VARCHAR(200) NOT NULL, "
+      + "owner_id VARCHAR(127) NOT NULL, app_id SMALLINT NOT NULL, namespace VARCHAR(127), owner_type VARCHAR(127), "
+      + "owner_sub_type VARCHAR(127), db_ids VARCHAR(127), is_group CHAR(1), is_active CHAR(1), is_deleted CHAR(1), "
+      + "sort_id SMALLINT, source_time INT, created_time INT, modified_time INT, wh_etl_exec_id BIGINT, "
+      + "PRIMARY KEY (dataset_id, owner_id, app_id), UNIQUE KEY (dataset_urn, owner_id, app_id))");
+    jdbcTemplate.execute("INSERT INTO dict_dataset VALUES (1, 'hdfs:///data/a'), (2, 'hdfs:///data/b'), "
+      + "(3, 'hdfs:///data/c')");
+    // owners of b: alice, bob removed earlier, and a group loaded by the ETL
+    jdbcTemplate.execute("INSERT INTO dataset_owner (dataset_id, dataset_urn, owner_id, app_id, namespace, "
+      + "owner_type, owner_sub_type, is_group, is_active, is_deleted, sort_id) VALUES "
+      + "(2, 'hdfs:///data/b', 'alice', 300, 'urn:li:corpuser', 'Producer', NULL, 'N', 'Y', 'N', 0), "
+      + "(2, 'hdfs:///data/b', 'bob', 300, 'urn:li:corpuser', 'Producer', '', 'N', 'Y', 'Y', 1), "
+      + "(2, 'hdfs:///data/b', 'hadoop', 301, 'urn:li:griduser', 'Producer', '', 'Y', 'Y', 'N', 1)");
+    updater = new DatasetOwnerBatchUpdater(dataSource);
+  }
+
+  // owner ids starting with @ are groups
+  private static List<Owner> owners(String... ids) {
+    List<Owner> owners = new ArrayList<Owner>();
+    for (String id : ids) {
+      boolean isGroup = id.startsWith("@");
+      owners.add(new Owner(isGroup ? id.substring(1) : id, isGroup, "Producer", ""));
+    }
+    return owners;
+  }
+
+  private String current(int datasetId) {
+    return jdbcTemplate.queryForList("SELECT owner_id FROM dataset_owner WHERE dataset_id = ? AND is_deleted = 'N' "
+      + "ORDER BY sort_id", String.class, datasetId).toString();
+  }
+
+  @Test
+  public void testUpdate() {
+    Map<Integer, List<Owner>> owners = new LinkedHashMap<Integer, List<Owner>>();
+    owners.put(1, owners("carol", "alice", "carol"));
+    owners.put(2, owners("alice", "bob"));
+    owners.put(4, owners("alice"));
+    List<DatasetResult> results = updater.update(owners);
+
+    Assert.assertEquals(results.size(), 3);
+    Assert.assertEquals(results.get(0).getStatus(), Status.UPDATED);
+    Assert.assertEquals(results.get(0).getInserted(), 2);
+    Assert.assertEquals(current(1), "[carol, alice]");
+
+    // bob is restored, the group is left out, alice does not change
+    Assert.assertEquals(results.get(1).getStatus(), Status.UPDATED);
+    Assert.assertEquals(results.get(1).getInserted(), 0);
+    Assert.assertEquals(results.get(1).getUpdated(), 1);
+    Assert.assertEquals(results.get(1).getDeleted(), 1);
+    Assert.assertEquals(current(2), "[alice, bob]");
+
+    Assert.assertEquals(results.get(2).getStatus(), Status.NOT_FOUND);
+    Assert.assertFalse(results.get(2).isSuccess());
+
+    results = updater.update(Collections.singletonMap(2, owners("alice", "bob")));
+    Assert.assertEquals(results.get(0).getStatus(), Status.UNCHANGED);
+
+    results = updater.update(Collections.singletonMap(2, owners("bob", "alice", "@hadoop")));
+    Assert.assertEquals(results.get(0).getUpdated(), 3);
+    Assert.assertEquals(current(2), "[bob, alice, hadoop]");
+    Assert.assertEquals((int) jdbcTemplate.queryForObject("SELECT app_id FROM dataset_owner WHERE owner_id = 'hadoop'",
+      Integer.class), DatasetOwnerBatchUpdater.GROUP_APP_ID);
+
+    results = updater.update(Collections.singletonMap(2, owners()));
+    Assert.assertEquals(results.get(0).getDeleted(), 3);
+    Assert.assertEquals(current(2), "[]");
+  }
+
+  @Test
+  public void testFailedDataset() {
+    char[] tooLong = new char[200];
+    Arrays.fill(tooLong, 'x');
+    Map<Integer, List<Owner>> owners = new LinkedHashMap<Integer, List<Owner>>();
+    owners.put(1, owners("carol"));
+    owners.put(3, owners(new String(tooLong)));
+    List<DatasetResult> results = updater.update(owners);
+
+    // only the dataset with the invalid owner fails
+    Assert.assertTrue(results.get(0).isSuccess());
+    Assert.assertEquals(current(1), "[carol]");
+    Assert.assertEquals(results.get(1).getStatus(), Status.FAILED);
+    Assert.assertNotNull(results.get(1).getError());
+    Assert.assertEquals(results.get(1).getInserted(), 0);
+    Assert.assertEquals(current(3), "[]");
+  }
+
+  // timing run on a few thousand datasets, excluded from the default test task, see performanceTest
+  @Test(groups = {"performance"})
+  public void testLargeBatch() {
+    int datasets = 5000;
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 10; i < 10 + datasets; i++) {
+      rows.add(new Object[]{i, "hdfs:///data/bulk/" + i});
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO dict_dataset VALUES (?, ?)", rows);
+
+    Map<Integer, List<Owner>> owners = new LinkedHashMap<Integer, List<Owner>>();
+    for (int i = 10; i < 10 + datasets; i++) {
+      owners.put(i, owners("u" + (i % 7), "u" + (i % 11), "u" + (i % 13), "@g" + (i % 5)));
+    }
+    long start = System.currentTimeMillis();
+    List<DatasetResult> results = updater.update(owners);
+    long inserted = System.currentTimeMillis() - start;
+    int total = 0;
+    for (DatasetResult result : results) {
+      Assert.assertEquals(result.getStatus(), Status.UPDATED);
+      total += result.getInserted();
+    }
+    Assert.assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dataset_owner", Integer.class).intValue(),
+      total);
+
+    // swap the first two owners and drop the group of every other dataset
+    for (int i = 10; i < 10 + datasets; i++) {
+      owners.put(i, i % 2 == 0 ? owners("u" + (i % 11), "u" + (i % 7), "u" + (i % 13))
+        : owners("u" + (i % 7), "u" + (i % 11), "u" + (i % 13), "@g" + (i % 5)));
+    }
+    start = System.currentTimeMillis();
+    results = updater.update(owners);
+    long updated = System.currentTimeMillis() - start;
+    int changed = 0;
+    for (DatasetResult result : results) {
+      Assert.assertTrue(result.isSuccess());
+      Assert.assertEquals(result.getInserted(), 0);
+      changed += result.getStatus() == Status.UPDATED ? 1 : 0;
+    }
+    Assert.assertEquals(changed, datasets / 2);
+    Assert.assertEquals(current(12), "[u1, u5, u12]");
+    logger.info("Owners of {} datasets inserted in {} ms, updated in {} ms", datasets, inserted, updated);
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class FieldNameIndexTest {
+  DriverManagerDataSource dataSource;
+  JdbcTemplate jdbcTemplate;
+
+  @BeforeMethod
+  public void setUp() {
+    dataSource = new DriverManagerDataSource("jdbc:h2:mem:field_name_index;DB_CLOSE_DELAY=-1", "sa", "");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("DROP ALL OBJECTS");
+    // field names compare case insensitively, like the utf8_general_ci collation of MySQL
+    jdbcTemplate.execute("CREATE TABLE dict_field_detail (field_id INT PRIMARY KEY, dataset_id INT, "
+      + "field_name VARCHAR_IGNORECASE(100), default_comment_id INT, modified TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+    jdbcTemplate.execute("CREATE TABLE dict_dataset_field_comment (field_id INT, comment_id INT, dataset_id INT, "
+      + "is_default TINYINT DEFAULT 0, PRIMARY KEY (field_id, comment_id))");
+    jdbcTemplate.update("INSERT INTO dict_field_detail (field_id, dataset_id, field_name, default_comment_id) VALUES "
+      + "(11, 1, 'ID', NULL), (21, 2, 'ID', 100), (31, 3, 'Id', NULL), (41, 4, 'id', 200), (42, 4, 'name', NULL)");
+    jdbcTemplate.update("INSERT INTO dict_dataset_field_comment VALUES (31, 100, 3, 1), (41, 300, 4, 1), "
+      + "(41, 100, 4, 0)");
+  }
+
+  @Test
+  public void testLookup() {
+    FieldNameIndex index = new FieldNameIndex(dataSource, 1000, 60000, 3600000);
+    List<FieldNameIndex.Posting> postings = index.getPostings("id ", 1, 10);
+    Assert.assertEquals(postings.size(), 3);
+    Assert.assertEquals(postings.get(0).datasetId, 2);
+    Assert.assertEquals(postings.get(0).fieldId, 21);
+    Assert.assertEquals(postings.get(0).commentId, Long.valueOf(100));
+    Assert.assertEquals(postings.get(1).commentId, Long.valueOf(100));
+    // the default comment set in the web app overrides the one of the ETL
+    Assert.assertEquals(postings.get(2).commentId, Long.valueOf(300));
+    Assert.assertEquals(index.getPostings("ID", 0, 2).size(), 2);
+    Assert.assertTrue(index.getPostings("unknown", 0, 10).isEmpty());
+
+    List<FieldNameIndex.CommentUsage> usages = index.getCommentUsages("Id");
+    Assert.assertEquals(usages.size(), 2);
+    Assert.assertEquals(usages.get(0).commentId, 100);
+    Assert.assertEquals(usages.get(0).count, 2);
+    Assert.assertEquals(usages.get(0).datasetId, 2);
+    Assert.assertEquals(usages.get(1).commentId, 300);
+
+    // ID and UNKNOWN, whatever the case they were looked up with
+    Assert.assertEquals(index.getCachedNames(), 2);
+    Assert.assertEquals(index.getCachedPostings(), 4);
+  }
+
+  @Test
+  public void testRefreshField() {
+    FieldNameIndex index = new FieldNameIndex(dataSource, 1000, 60000, 3600000);
+    Assert.assertEquals(index.getCommentUsages("ID").get(0).count, 2);
+
+    jdbcTemplate.update("INSERT INTO dict_dataset_field_comment VALUES (11, 100, 1, 1)");
+    jdbcTemplate.update("UPDATE dict_dataset_field_comment SET is_default = 0 WHERE field_id = 41");
+    index.refreshField(11);
+    index.refreshField(41);
+    List<FieldNameIndex.CommentUsage> usages = index.getCommentUsages("ID");
+    Assert.assertEquals(usages.size(), 2);
+    Assert.assertEquals(usages.get(0).count, 3);
+    // back to the comment of the ETL
+    Assert.assertEquals(usages.get(1).commentId, 200);
+    Assert.assertEquals(usages.get(1).count, 1);
+  }
+
+  @Test
+  public void testModifiedFields() {
+    FieldNameIndex index = new FieldNameIndex(dataSource, 1000, 0, 3600000);
+    Assert.assertEquals(index.getPostings("ID", 0, 10).size(), 4);
+    Assert.assertEquals(index.getPostings("name", 0, 10).size(), 1);
+
+    // a schema ETL adds a field
+    jdbcTemplate.update("INSERT INTO dict_field_detail (field_id, dataset_id, field_name) VALUES (51, 5, 'ID')");
+    Assert.assertEquals(index.getPostings("ID", 0, 10).size(), 5);
+  }
+
+  @Test
+  public void testEviction() {
+    FieldNameIndex index = new FieldNameIndex(dataSource, 4, 60000, 3600000);
+    index.getPostings("name", 0, 10);
+    index.getPostings("ID", 0, 10);
+    // the least recently used name goes first
+    Assert.assertEquals(index.getCachedNames(), 1);
+    Assert.assertEquals(index.getCachedPostings(), 4);
+
+    index.invalidate("id");
+    Assert.assertEquals(index.getCachedNames(), 0);
+    Assert.assertEquals(index.getCachedPostings(), 0);
+  }
+}
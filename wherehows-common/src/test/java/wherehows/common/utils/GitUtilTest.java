@@ -13,6 +13,16 @@
  */
 package wherehows.common.utils;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 /**
@@ -20,10 +30,56 @@ import org.testng.annotations.Test;
  */
 public class GitUtilTest {
 
+  private static RevCommit commit(Git git, String message, String... files)
+      throws Exception {
+    File dir = git.getRepository().getWorkTree();
+    for (String file : files) {
+      File f = new File(dir, file);
+      f.getParentFile().mkdirs();
+      Files.write(f.toPath(), (message + "\n").getBytes(StandardCharsets.UTF_8));
+      git.add().addFilepattern(file).call();
+    }
+    return git.commit().setMessage(message).setAuthor("author", "author@example.com").call();
+  }
+
+  private static List<String> files(List<GitUtil.CommitMetadata> metadata, RevCommit commit) {
+    List<String> files = new ArrayList<>();
+    for (GitUtil.CommitMetadata m : metadata) {
+      if (m.getCommitId().equals(commit.getName())) {
+        files.add(m.getFilePath());
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
   @Test
   public void testClone()
       throws Exception {
     //GitUtil.clone("git://git.example.com/project/repo.git", "/tmp/project/repo");
+    File remoteDir = Files.createTempDirectory("git_remote").toFile();
+    File localDir = new File(Files.createTempDirectory("git_local").toFile(), "repo");
+    try (Git remote = Git.init().setDirectory(remoteDir).call()) {
+      RevCommit c1 = commit(remote, "first", "a.txt");
+      GitUtil.cloneOrFetch(remoteDir.toURI().toString(), localDir.getPath());
+      Assert.assertEquals(GitUtil.getRepoMetadata(localDir.getPath()).size(), 1);
+
+      // the clone is kept and only fetches the new commit
+      File marker = new File(localDir, "untracked.txt");
+      Assert.assertTrue(marker.createNewFile());
+      RevCommit c2 = commit(remote, "second", "b/b.txt");
+      GitUtil.cloneOrFetch(remoteDir.toURI().toString(), localDir.getPath());
+      Assert.assertTrue(marker.exists());
+
+      List<GitUtil.CommitMetadata> metadata =
+          GitUtil.getRepoMetadata(localDir.getPath(), Arrays.asList(c1.getName()));
+      Assert.assertEquals(metadata.size(), 1);
+      Assert.assertEquals(metadata.get(0).getCommitId(), c2.getName());
+      Assert.assertEquals(metadata.get(0).getFilePath(), "b/b.txt");
+      Assert.assertEquals(metadata.get(0).getFileName(), "b.txt");
+      Assert.assertEquals(metadata.get(0).getAuthorEmail(), "author@example.com");
+      Assert.assertEquals(metadata.get(0).getMessage(), "second");
+    }
   }
 
   @Test
@@ -37,5 +93,48 @@ public class GitUtilTest {
   public void testGetRepoMetadata()
       throws Exception {
     //GitUtil.getRepoMetadata("/tmp/project/repo");
+    File dir = Files.createTempDirectory("git_repo").toFile();
+    try (Git git = Git.init().setDirectory(dir).call()) {
+      RevCommit c1 = commit(git, "c1", "a.txt", "b.txt");
+      RevCommit c2 = commit(git, "c2", "a.txt");
+      git.rm().addFilepattern("b.txt").call();
+      RevCommit c3 = commit(git, "c3", "c.txt");
+
+      List<GitUtil.CommitMetadata> metadata = GitUtil.getRepoMetadata(dir.getPath());
+      Assert.assertEquals(metadata.size(), 4);
+      Assert.assertEquals(files(metadata, c1), Arrays.asList("a.txt", "b.txt"));
+      Assert.assertEquals(files(metadata, c2), Arrays.asList("a.txt"));
+      // deleted files are not attributed
+      Assert.assertEquals(files(metadata, c3), Arrays.asList("c.txt"));
+
+      metadata = GitUtil.getRepoMetadata(dir.getPath(), Arrays.asList(c2.getName(), "not a commit id"));
+      Assert.assertEquals(metadata.size(), 1);
+      Assert.assertEquals(metadata.get(0).getCommitId(), c3.getName());
+      Assert.assertTrue(GitUtil.getRepoMetadata(dir.getPath(), Arrays.asList(c3.getName())).isEmpty());
+    }
+  }
+
+  @Test
+  public void testGetRepoMetadataMerge()
+      throws Exception {
+    File dir = Files.createTempDirectory("git_merge").toFile();
+    try (Git git = Git.init().setDirectory(dir).call()) {
+      RevCommit base = commit(git, "base", "a.txt", "b.txt");
+      git.checkout().setCreateBranch(true).setName("side").setStartPoint(base).call();
+      RevCommit side = commit(git, "side", "b.txt");
+      git.checkout().setName("master").call();
+      RevCommit main = commit(git, "main", "a.txt");
+      git.merge().include(side).setMessage("merge").call();
+      RevCommit merge = git.log().setMaxCount(1).call().iterator().next();
+      Assert.assertEquals(merge.getParentCount(), 2);
+
+      List<GitUtil.CommitMetadata> metadata =
+          GitUtil.getRepoMetadata(dir.getPath(), Arrays.asList(base.getName()));
+      Assert.assertEquals(files(metadata, side), Arrays.asList("b.txt"));
+      Assert.assertEquals(files(metadata, main), Arrays.asList("a.txt"));
+      // a clean merge takes every file from one of its parents
+      Assert.assertTrue(files(metadata, merge).isEmpty());
+      Assert.assertEquals(metadata.size(), 2);
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class HyperLogLogTest {
+
+  @Test
+  public void testSparseIsExact() {
+    HyperLogLog hll = new HyperLogLog();
+    for (int i = 0; i < HyperLogLog.SPARSE_LIMIT; i++) {
+      Assert.assertTrue(hll.add(i));
+      Assert.assertFalse(hll.add(i));
+    }
+    Assert.assertTrue(hll.isSparse());
+    Assert.assertEquals(hll.cardinality(), HyperLogLog.SPARSE_LIMIT);
+
+    hll.add(HyperLogLog.SPARSE_LIMIT);
+    Assert.assertFalse(hll.isSparse());
+  }
+
+  @Test
+  public void testDenseError() {
+    for (int n : new int[]{1000, 10000, 200000}) {
+      HyperLogLog hll = new HyperLogLog();
+      for (int i = 0; i < n; i++) {
+        hll.add(i);
+        hll.add(i);
+      }
+      double error = Math.abs(hll.cardinality() - n) / (double) n;
+      Assert.assertTrue(error < 0.06, n + " counted as " + hll.cardinality());
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    // two hours with overlapping users roll up into one day
+    HyperLogLog hour1 = new HyperLogLog();
+    HyperLogLog hour2 = new HyperLogLog();
+    for (int i = 0; i < 50; i++) {
+      hour1.add(i);
+      hour2.add(i + 25);
+    }
+    HyperLogLog day = new HyperLogLog();
+    day.merge(hour1);
+    day.merge(hour2);
+    Assert.assertEquals(day.cardinality(), 75);
+    Assert.assertTrue(day.isSparse());
+
+    HyperLogLog big = new HyperLogLog();
+    for (int i = 0; i < 5000; i++) {
+      big.add(i);
+    }
+    day.merge(big);
+    Assert.assertFalse(day.isSparse());
+    Assert.assertEquals(day.cardinality(), big.cardinality());
+
+    // merging a dense sketch into a sparse one
+    hour1.merge(big);
+    Assert.assertEquals(hour1.cardinality(), big.cardinality());
+  }
+
+  @Test
+  public void testBytes() {
+    HyperLogLog empty = HyperLogLog.fromBytes(null);
+    Assert.assertEquals(empty.cardinality(), 0);
+    Assert.assertEquals(HyperLogLog.fromBytes(empty.toBytes()).cardinality(), 0);
+
+    HyperLogLog hll = new HyperLogLog();
+    for (int i = 0; i < 10; i++) {
+      hll.add(i * 7);
+    }
+    Assert.assertEquals(hll.toBytes().length, 81);
+    Assert.assertEquals(HyperLogLog.fromBytes(hll.toBytes()).cardinality(), 10);
+
+    for (int i = 0; i < 3000; i++) {
+      hll.add(i);
+    }
+    byte[] bytes = hll.toBytes();
+    Assert.assertEquals(bytes.length, HyperLogLog.REGISTERS + 1);
+    Assert.assertEquals(HyperLogLog.fromBytes(bytes).cardinality(), hll.cardinality());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBadBytes() {
+    HyperLogLog.fromBytes(new byte[]{2, 0, 0});
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import wherehows.common.schemas.PartitionLayout;
+
+
+public class PartitionPatternMatcherTest {
+
+  private static PartitionLayout layout(int id, String regex, int sortId) {
+    return new PartitionLayout(id, regex, null, 1, 2, null, sortId, null);
+  }
+
+  @Test
+  public void testRequiredLiterals() {
+    PartitionPatternMatcher.Literals l =
+        PartitionPatternMatcher.requiredLiterals("^/data/tracking/(\\w+)/daily/(\\d{4}/\\d{2}/\\d{2})$");
+    Assert.assertEquals(l.prefix, "/data/tracking/");
+    Assert.assertEquals(l.runs, Arrays.asList("/data/tracking/", "/daily/"));
+
+    l = PartitionPatternMatcher.requiredLiterals("(/[^/]+)+/daily/(\\d{4}/\\d{2}/\\d{2})");
+    Assert.assertEquals(l.prefix, "");
+    Assert.assertEquals(l.runs, Arrays.asList("/daily/"));
+
+    // optional and repeated characters
+    l = PartitionPatternMatcher.requiredLiterals("a?b\\.c+d[x]e");
+    Assert.assertEquals(l.prefix, "");
+    Assert.assertEquals(l.runs, Arrays.asList("b.c", "d", "e"));
+
+    Assert.assertTrue(PartitionPatternMatcher.requiredLiterals("(.*)/hourly|(.*)/daily").runs.isEmpty());
+    Assert.assertTrue(PartitionPatternMatcher.requiredLiterals("(?i)/DATA/(.*)").runs.isEmpty());
+  }
+
+  @Test
+  public void testQuantifierBounds() {
+    PartitionPatternMatcher.Literals l = PartitionPatternMatcher.requiredLiterals("(.*)_\\d{2,4}");
+    Assert.assertEquals(l.runs, Arrays.asList("_"));
+    l = PartitionPatternMatcher.requiredLiterals("/data/x{2}/daily");
+    Assert.assertEquals(l.runs, Arrays.asList("/data/", "/daily"));
+
+    PartitionPatternMatcher ppm = new PartitionPatternMatcher(Arrays.asList(layout(1, "(.*)_\\d{2,4}", 1)));
+    Assert.assertEquals(ppm.analyze("/data/tracking/PageViewEvent_2015"), Integer.valueOf(1));
+    Assert.assertNull(ppm.analyze("/data/tracking/PageViewEvent_2"));
+  }
+
+  @Test
+  public void testEscapesWithArgument() {
+    String[] regexes = {"(.*)/\\p{Alpha}+", "(.*)/\\P{Digit}", "(.*)/\\x41", "(.*)/\\u0041", "(.*)/\\0101",
+        "(.*)/\\cA"};
+    for (String regex : regexes) {
+      Assert.assertTrue(PartitionPatternMatcher.requiredLiterals(regex).runs.isEmpty(), regex);
+    }
+
+    List<PartitionLayout> layouts = new ArrayList<>();
+    layouts.add(layout(1, "(/.*)/\\p{Alpha}{5}", 1));
+    layouts.add(layout(2, "(/.*)/\\x41\\u0042\\0103", 2));
+    layouts.add(layout(3, "(/.*)/(.*)", 3));
+    PartitionPatternMatcher ppm = new PartitionPatternMatcher(layouts);
+    Assert.assertEquals(ppm.analyze("/data/daily"), Integer.valueOf(1));
+    Assert.assertEquals(ppm.analyze("/data/ABC"), Integer.valueOf(2));
+    Assert.assertEquals(ppm.analyze("/data/2015"), Integer.valueOf(3));
+  }
+
+  @Test
+  public void testAnalyze() {
+    List<PartitionLayout> layouts = new ArrayList<>();
+    layouts.add(layout(1, "(/.*)/(\\d{4}/\\d{2}/\\d{2})", 20));
+    layouts.add(layout(2, "(/.*)/daily/(\\d{4}/\\d{2}/\\d{2})", 10));
+    layouts.add(layout(3, "/jobs/(.*)/(part-\\d+)", 30));
+    layouts.add(layout(4, "([invalid", 5));
+    layouts.add(layout(5, null, 6));
+    PartitionPatternMatcher ppm = new PartitionPatternMatcher(layouts);
+
+    Assert.assertEquals(ppm.size(), 3);
+    // the lowest sort id wins
+    Assert.assertEquals(ppm.analyze("/data/tracking/PageViewEvent/daily/2015/12/01"), Integer.valueOf(2));
+    Assert.assertEquals(ppm.analyze("/data/tracking/PageViewEvent/hourly/2015/12/01"), Integer.valueOf(1));
+    Assert.assertEquals(ppm.analyze("/jobs/wherehows/part-00001"), Integer.valueOf(3));
+    Assert.assertNull(ppm.analyze("/data/tracking/PageViewEvent"));
+    Assert.assertNull(ppm.analyze(null));
+
+    PartitionPatternMatcher.Match m = ppm.match("/data/tracking/PageViewEvent/daily/2015/12/01");
+    Assert.assertEquals(m.getMatcher().group(m.getLayout().getLeadingPathIndex()), "/data/tracking/PageViewEvent");
+    Assert.assertEquals(m.getMatcher().group(m.getLayout().getPartitionIndex()), "2015/12/01");
+  }
+
+  /**
+   * Compare with compiling and trying every layout for each path, on 10k paths and 200 layouts.
+   */
+  @Test
+  public void testThroughput() {
+    Random random = new Random(0);
+    String[] granularities = {"daily", "hourly", "weekly", "monthly"};
+    List<PartitionLayout> layouts = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      String regex = (i % 4 == 0 ? "(/[^/]+)+" : "/data/d" + (i % 50) + "/(.*)")
+          + "/" + granularities[i % granularities.length] + "_" + i + "/(\\d{4}/\\d{2}/\\d{2})";
+      layouts.add(layout(i + 1, regex, i));
+    }
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      int l = random.nextInt(250);
+      paths.add("/data/d" + (l % 50) + "/dataset" + i + "/" + granularities[l % granularities.length] + "_" + l
+          + "/2015/12/" + String.format("%02d", 1 + random.nextInt(28)));
+    }
+
+    Integer[] expected = new Integer[paths.size()];
+    for (int i = 0; i < paths.size(); i++) {
+      for (PartitionLayout pl : layouts) {
+        if (Pattern.compile(pl.getRegex()).matcher(paths.get(i)).matches()) {
+          expected[i] = pl.getLayoutId();
+          break;
+        }
+      }
+    }
+
+    PartitionPatternMatcher ppm = new PartitionPatternMatcher(layouts);
+    for (int i = 0; i < paths.size(); i++) {
+      Assert.assertEquals(ppm.analyze(paths.get(i)), expected[i], paths.get(i));
+    }
+  }
+}
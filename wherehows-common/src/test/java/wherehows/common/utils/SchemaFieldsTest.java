@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class SchemaFieldsTest {
+
+  @Test
+  public void testEncode() {
+    Map<String, String> fields = new HashMap<>();
+    fields.put("name", "b2");
+    fields.put("address.city", "c3");
+    fields.put("id", "a1");
+    fields.put("odd\tname", "d4");
+
+    String text = SchemaFields.encode(fields);
+    Assert.assertEquals(text, "address.city\tc3\nid\ta1\nname\tb2\nodd name\td4\n");
+    Map<String, String> decoded = SchemaFields.decode(text);
+    Assert.assertEquals(decoded.keySet().toString(), "[address.city, id, name, odd name]");
+    Assert.assertEquals(decoded.get("id"), "a1");
+    Assert.assertTrue(SchemaFields.decode(null).isEmpty());
+    Assert.assertTrue(SchemaFields.decode("").isEmpty());
+  }
+
+  @Test
+  public void testDiff() {
+    Map<String, String> before = SchemaFields.decode("id\ta1\nname\tb2\nphone\te5\n");
+    Map<String, String> after = SchemaFields.decode("id\ta1\nname\tb9\nzip\tf6\naddress\tc3\n");
+
+    SchemaFields.Diff diff = SchemaFields.diff(before, after);
+    Assert.assertEquals(diff.added, Arrays.asList("address", "zip"));
+    Assert.assertEquals(diff.removed, Collections.singletonList("phone"));
+    Assert.assertEquals(diff.changed, Collections.singletonList("name"));
+
+    String text = diff.encode();
+    Assert.assertEquals(text, "+address\n+zip\n-phone\n~name\n");
+    SchemaFields.Diff decoded = SchemaFields.Diff.decode(text);
+    Assert.assertEquals(decoded.added, diff.added);
+    Assert.assertEquals(decoded.removed, diff.removed);
+    Assert.assertEquals(decoded.changed, diff.changed);
+
+    // the first version only adds fields
+    SchemaFields.Diff first = SchemaFields.diff(SchemaFields.decode(null), before);
+    Assert.assertEquals(first.added.size(), 3);
+    Assert.assertTrue(first.removed.isEmpty());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBadLine() {
+    SchemaFields.decode("no separator\n");
+  }
+}